@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.agent;
+
+import com.netflix.spinnaker.cats.cache.CacheData;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The changes to a single type since an agent's previous run, for agents that can cheaply detect
+ * change (e.g. from a watch or event stream).
+ *
+ * <p>Together, the upserted and unchanged ids are the agent's complete set of items for the type;
+ * only the upserted items are written, and only the deleted ids are evicted.
+ */
+public class CacheChangeSet {
+  private final Collection<CacheData> upserts;
+  private final Collection<String> deletes;
+  private final Collection<String> unchangedIds;
+
+  public CacheChangeSet(
+      Collection<CacheData> upserts, Collection<String> deletes, Collection<String> unchangedIds) {
+    this.upserts = upserts == null ? Collections.emptyList() : upserts;
+    this.deletes = deletes == null ? Collections.emptyList() : deletes;
+    this.unchangedIds = unchangedIds == null ? Collections.emptyList() : unchangedIds;
+  }
+
+  /** @return items that are new or changed */
+  public Collection<CacheData> getUpserts() {
+    return upserts;
+  }
+
+  /** @return ids of items that no longer exist */
+  public Collection<String> getDeletes() {
+    return deletes;
+  }
+
+  /** @return ids of items that still exist but have not changed */
+  public Collection<String> getUnchangedIds() {
+    return unchangedIds;
+  }
+
+  /** @return the ids of all items the agent currently has for the type */
+  public Set<String> getAllIds() {
+    Set<String> ids = new HashSet<>(unchangedIds);
+    for (CacheData upsert : upserts) {
+      ids.add(upsert.getId());
+    }
+    return ids;
+  }
+}
@@ -39,6 +39,21 @@ public interface CacheResult {
     return Collections.emptyMap();
   }
 
+  /**
+   * Provides per-type change sets as an alternative to a complete set of items in
+   * getCacheResults().
+   *
+   * <p>For a type with a change set, only the upserted items are written and only the deleted ids
+   * are evicted; the stored items are not diffed against the result. A type should appear in
+   * either getCacheResults() or getChangeSets(), not both. Change sets are applied by putCacheResult,
+   * so results carrying them should not be partial.
+   *
+   * @return The change sets, keyed by item type.
+   */
+  default Map<String, CacheChangeSet> getChangeSets() {
+    return Collections.emptyMap();
+  }
+
   default Map<String, Object> getIntrospectionDetails() {
     return Collections.emptyMap();
   }
@@ -20,10 +20,12 @@ import com.netflix.spinnaker.cats.cache.AgentIntrospection;
 import com.netflix.spinnaker.cats.cache.CacheData;
 import com.netflix.spinnaker.cats.cache.CacheIntrospectionStore;
 import com.netflix.spinnaker.cats.cache.DefaultAgentIntrospection;
+import com.netflix.spinnaker.cats.cluster.AgentChangeHistory;
 import com.netflix.spinnaker.cats.provider.ProviderCache;
 import com.netflix.spinnaker.cats.provider.ProviderRegistry;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
@@ -76,6 +78,7 @@ public interface CachingAgent extends Agent {
       introspection.finish(result);
       CacheIntrospectionStore.getStore().recordAgent(introspection);
       storeAgentResult(agent, result);
+      AgentChangeHistory.getHistory().record(agent.getAgentType(), result);
     }
 
     public CacheResult executeAgentWithoutStore(Agent agent) {
@@ -103,9 +106,12 @@ public interface CachingAgent extends Agent {
           if (cacheKeyPatternForType != null) {
             try {
               Set<String> cachedIdentifiersForType =
-                  result.getCacheResults().get(type).stream()
+                  result.getCacheResults().getOrDefault(type, Collections.emptyList()).stream()
                       .map(CacheData::getId)
-                      .collect(Collectors.toSet());
+                      .collect(Collectors.toCollection(HashSet::new));
+              if (result.getChangeSets().containsKey(type)) {
+                cachedIdentifiersForType.addAll(result.getChangeSets().get(type).getAllIds());
+              }
 
               Collection<String> evictableIdentifiers =
                   cache.filterIdentifiers(type, cacheKeyPatternForType).stream()
@@ -17,6 +17,7 @@
 package com.netflix.spinnaker.cats.agent;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.spinnaker.cats.cluster.AgentChangeHistory;
 import com.netflix.spinnaker.cats.module.CatsModuleAware;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -96,6 +97,7 @@ public class DefaultAgentScheduler extends CatsModuleAware implements AgentSched
       agentFutures.get(agent).cancel(false);
       agentFutures.remove(agent);
     }
+    AgentChangeHistory.getHistory().forget(agent.getAgentType());
   }
 
   @Override
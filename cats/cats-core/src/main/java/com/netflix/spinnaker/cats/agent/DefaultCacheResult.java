@@ -28,6 +28,7 @@ public class DefaultCacheResult implements CacheResult {
   private final Map<String, Collection<String>> evictions;
   @Getter private final Map<String, Object> introspectionDetails;
   @Getter private final boolean partialResult;
+  private final Map<String, CacheChangeSet> changeSets;
 
   public DefaultCacheResult(Map<String, Collection<CacheData>> cacheResults) {
     this(cacheResults, new HashMap<>());
@@ -55,10 +56,20 @@ public class DefaultCacheResult implements CacheResult {
       Map<String, Collection<String>> evictions,
       Map<String, Object> introspectionDetails,
       boolean partialResult) {
+    this(cacheResults, evictions, introspectionDetails, partialResult, new HashMap<>());
+  }
+
+  public DefaultCacheResult(
+      Map<String, Collection<CacheData>> cacheResults,
+      Map<String, Collection<String>> evictions,
+      Map<String, Object> introspectionDetails,
+      boolean partialResult,
+      Map<String, CacheChangeSet> changeSets) {
     this.cacheResults = cacheResults;
     this.evictions = evictions;
     this.introspectionDetails = introspectionDetails;
     this.partialResult = partialResult;
+    this.changeSets = changeSets;
   }
 
   @Override
@@ -70,4 +81,9 @@ public class DefaultCacheResult implements CacheResult {
   public Map<String, Collection<String>> getEvictions() {
     return evictions;
   }
+
+  @Override
+  public Map<String, CacheChangeSet> getChangeSets() {
+    return changeSets;
+  }
 }
@@ -20,6 +20,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /** Cache provides view access to data keyed by type and identifier. */
 public interface Cache {
@@ -96,6 +97,25 @@ public interface Cache {
 
   Collection<CacheData> getAll(String type, CacheFilter cacheFilter);
 
+  /**
+   * Streams all the items for the specified type without requiring them to be held in memory at
+   * once. Implementations may hold open cursors or connections while the stream is consumed, so
+   * callers should close the returned stream (e.g. with try-with-resources).
+   *
+   * <p>The default implementation is backed by {@link #getAll(String, CacheFilter)}.
+   *
+   * @param type the type for which to retrieve items
+   * @param cacheFilter the cacheFilter to govern which relationships to fetch
+   * @return a stream over all the items for the type
+   */
+  default Stream<CacheData> stream(String type, CacheFilter cacheFilter) {
+    return getAll(type, cacheFilter).stream();
+  }
+
+  default Stream<CacheData> stream(String type) {
+    return stream(type, null);
+  }
+
   /**
    * Retrieves the items for the specified type matching the provided identifiers
    *
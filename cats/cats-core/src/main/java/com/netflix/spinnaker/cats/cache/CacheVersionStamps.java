@@ -0,0 +1,34 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.cats.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Versions shared by every node, each incremented whenever a node writes items under it. Nodes
+ * holding local copies of cache items compare versions to find out which items another node has
+ * written since they last looked.
+ *
+ * <p>The versioned names are chosen by {@link CacheVersionTracker#stamp(String, String)}.
+ */
+public interface CacheVersionStamps {
+  void increment(Collection<String> stamps);
+
+  /** @return the current version of every stamp that has been incremented */
+  Map<String, Long> getVersions();
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.cats.cache;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes the items the caches on this node change to the shared {@link CacheVersionStamps}, and
+ * tells its listeners which items other nodes have changed.
+ *
+ * <p>Versions are kept per type and hash bucket of the item ids, so that the versions read on
+ * every sync stay bounded while a write only invalidates copies of the items in its bucket. The
+ * bumps this node published itself are subtracted from the versions it reads, so they aren't
+ * mistaken for writes by another node.
+ *
+ * <p>Publishing is driven by the {@link CacheWriteNotifier}, so nodes that only write to the cache
+ * publish whether or not anything on them listens for changes; the versions are only read once a
+ * listener has been added.
+ */
+public class CacheVersionTracker implements CacheWriteNotifier.Listener, Closeable {
+  private static final Logger log = LoggerFactory.getLogger(CacheVersionTracker.class);
+
+  static final int BUCKETS = 64;
+
+  private final CacheVersionStamps versionStamps;
+  private final ScheduledExecutorService syncExecutor;
+  private final Set<String> pending = ConcurrentHashMap.newKeySet();
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+  /** How often each stamp has been incremented by this node, only used while syncing. */
+  private final Map<String, Long> published = new HashMap<>();
+
+  /** The versions last read, less the increments published by this node. */
+  private Map<String, Long> seenVersions = null;
+
+  public CacheVersionTracker(CacheVersionStamps versionStamps, Duration syncInterval) {
+    this.versionStamps = versionStamps;
+    this.syncExecutor =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("cacheVersions").setDaemon(true).build());
+
+    CacheWriteNotifier.getNotifier().addListener(this);
+    long syncIntervalMs = syncInterval.toMillis();
+    syncExecutor.scheduleWithFixedDelay(
+        this::sync, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /** @return the stamp whose version is incremented when the item is written */
+  public static String stamp(String type, String id) {
+    return type + ":" + Math.floorMod(id.hashCode(), BUCKETS);
+  }
+
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  @Override
+  public void itemsChanged(String type, Collection<String> ids) {
+    for (String id : ids) {
+      pending.add(stamp(type, id));
+    }
+  }
+
+  /**
+   * Publishes the stamps changed on this node since the last sync, then tells the listeners about
+   * the stamps another node has incremented since.
+   */
+  public synchronized void sync() {
+    List<String> changedHere = new ArrayList<>();
+    for (Iterator<String> it = pending.iterator(); it.hasNext(); ) {
+      changedHere.add(it.next());
+      it.remove();
+    }
+
+    if (!changedHere.isEmpty()) {
+      try {
+        versionStamps.increment(changedHere);
+        changedHere.forEach(stamp -> published.merge(stamp, 1L, Long::sum));
+      } catch (Exception e) {
+        log.warn("Failed to publish {} cache versions", changedHere.size(), e);
+        pending.addAll(changedHere);
+      }
+    }
+
+    if (listeners.isEmpty()) {
+      return;
+    }
+
+    Map<String, Long> versions;
+    try {
+      versions = versionStamps.getVersions();
+    } catch (Exception e) {
+      log.warn("Failed to read cache versions", e);
+      return;
+    }
+
+    Map<String, Long> remoteVersions = new HashMap<>(versions.size());
+    versions.forEach(
+        (stamp, version) -> remoteVersions.put(stamp, version - published.getOrDefault(stamp, 0L)));
+
+    if (seenVersions == null) {
+      // anything read before the first versions were known may already be out of date
+      listeners.forEach(Listener::allVersionsChanged);
+    } else {
+      Set<String> changedElsewhere = new HashSet<>();
+      remoteVersions.forEach(
+          (stamp, version) -> {
+            long seen = seenVersions.getOrDefault(stamp, 0L);
+            if (version != seen) {
+              changedElsewhere.add(stamp);
+            }
+          });
+      if (!changedElsewhere.isEmpty()) {
+        listeners.forEach(listener -> listener.versionsChanged(changedElsewhere));
+      }
+    }
+    seenVersions = remoteVersions;
+  }
+
+  @Override
+  public void close() {
+    CacheWriteNotifier.getNotifier().removeListener(this);
+    syncExecutor.shutdownNow();
+  }
+
+  public interface Listener {
+    /** Another node changed items under the stamps. */
+    void versionsChanged(Set<String> stamps);
+
+    /** Any item may have been changed by another node. */
+    void allVersionsChanged();
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.cats.cache;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tells interested readers on this node which items a {@link WriteableCache} has changed, so that
+ * copies of those items held outside the cache can be dropped.
+ *
+ * <p>Caches only report the items whose stored content actually changed, so rewriting an item with
+ * the same content is not reported.
+ */
+public class CacheWriteNotifier {
+  private static final CacheWriteNotifier notifier = new CacheWriteNotifier();
+
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+  public static CacheWriteNotifier getNotifier() {
+    return notifier;
+  }
+
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /** @return whether anything listens, so caches can skip working out which items changed */
+  public boolean hasListeners() {
+    return !listeners.isEmpty();
+  }
+
+  /** Items of the type were written with new content. */
+  public void itemsMerged(String type, Collection<String> ids) {
+    if (listeners.isEmpty() || ids == null || ids.isEmpty()) {
+      return;
+    }
+    for (Listener listener : listeners) {
+      listener.itemsStored(type, ids);
+      listener.itemsChanged(type, ids);
+    }
+  }
+
+  /**
+   * Items of the type were not written themselves but read differently now, e.g. because
+   * relationships pointing back at them were written.
+   */
+  public void itemsChanged(String type, Collection<String> ids) {
+    if (listeners.isEmpty() || ids == null || ids.isEmpty()) {
+      return;
+    }
+    for (Listener listener : listeners) {
+      listener.itemsChanged(type, ids);
+    }
+  }
+
+  public void itemsEvicted(String type, Collection<String> ids) {
+    if (listeners.isEmpty() || ids == null || ids.isEmpty()) {
+      return;
+    }
+    for (Listener listener : listeners) {
+      listener.itemsRemoved(type, ids);
+      listener.itemsChanged(type, ids);
+    }
+  }
+
+  public interface Listener {
+    /** Items of the type were written, evicted or are otherwise read differently now. */
+    void itemsChanged(String type, Collection<String> ids);
+
+    /** Items of the type were written. */
+    default void itemsStored(String type, Collection<String> ids) {}
+
+    /** Items of the type were evicted. */
+    default void itemsRemoved(String type, Collection<String> ids) {}
+  }
+}
@@ -17,14 +17,60 @@
 package com.netflix.spinnaker.cats.cache;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-/** A cache that provides a unified view of multiples, merging items from each cache together. */
+/**
+ * A cache that provides a unified view of multiples, merging items from each cache together.
+ *
+ * <p>Given an executor, reads are sent to every cache at once and the view waits at most {@code
+ * deadlineMillis} for all of them, so that a read takes as long as the slowest cache rather than
+ * the sum of them. The calling thread reads the first cache itself, along with any cache the
+ * executor has no room for, so that a saturated executor degrades to reading in turn. Results are
+ * still merged in the order of the caches, each as soon as it and the ones before it have arrived.
+ */
 public class CompositeCache implements Cache {
 
+  /** Receives the time each cache took to serve a read of the view. */
+  public interface ReadListener {
+    void read(String cacheName, String operation, long elapsedNanos, boolean timedOut);
+  }
+
   private final Collection<? extends Cache> caches;
+  private final List<String> cacheNames;
+  private final ExecutorService executor;
+  private final long deadlineMillis;
+  private final ReadListener readListener;
 
   public CompositeCache(Collection<? extends Cache> caches) {
+    this(caches, null, null, 0, null);
+  }
+
+  /**
+   * @param cacheNames the names of the caches for the read listener, in the same order
+   * @param executor the executor to read the caches concurrently on, or null to read them in turn
+   */
+  public CompositeCache(
+      Collection<? extends Cache> caches,
+      List<String> cacheNames,
+      ExecutorService executor,
+      long deadlineMillis,
+      ReadListener readListener) {
     this.caches = caches;
+    this.cacheNames = cacheNames;
+    this.executor = executor;
+    this.deadlineMillis = deadlineMillis;
+    this.readListener = readListener;
   }
 
   @Override
@@ -40,12 +86,14 @@ public class CompositeCache implements Cache {
   @Override
   public CacheData get(String type, String id, CacheFilter cacheFilter) {
     Collection<CacheData> elements = new ArrayList<>(caches.size());
-    for (Cache cache : caches) {
-      CacheData element = cache.get(type, id, cacheFilter);
-      if (element != null) {
-        elements.add(element);
-      }
-    }
+    fanOut(
+        "get",
+        cache -> cache.get(type, id, cacheFilter),
+        element -> {
+          if (element != null) {
+            elements.add(element);
+          }
+        });
     if (elements.isEmpty()) {
       return null;
     }
@@ -60,12 +108,43 @@ public class CompositeCache implements Cache {
   @Override
   public Collection<CacheData> getAll(String type, CacheFilter cacheFilter) {
     Map<String, CacheData> allItems = new HashMap<>();
-    for (Cache cache : caches) {
-      allItems = merge(allItems, cache.getAll(type, cacheFilter));
-    }
+    fanOut("getAll", cache -> cache.getAll(type, cacheFilter), items -> merge(allItems, items));
     return allItems.values();
   }
 
+  /**
+   * Streams each underlying cache in turn. Items are read in batches, and each batch is checked
+   * against the remaining caches so that an item present in several caches is merged and emitted
+   * once, without holding more than a batch (plus the ids of any merged items) in memory.
+   */
+  @Override
+  public Stream<CacheData> stream(String type, CacheFilter cacheFilter) {
+    final List<Cache> all = new ArrayList<>(caches);
+    if (all.size() == 1) {
+      return all.get(0).stream(type, cacheFilter);
+    }
+
+    final Set<String> mergedIds = new HashSet<>();
+    return IntStream.range(0, all.size())
+        .boxed()
+        .flatMap(
+            i -> {
+              Stream<CacheData> source = all.get(i).stream(type, cacheFilter);
+              Iterator<CacheData> merging =
+                  new MergingIterator(
+                      type,
+                      cacheFilter,
+                      source.iterator(),
+                      all.subList(i + 1, all.size()),
+                      mergedIds);
+              return StreamSupport.stream(
+                      Spliterators.spliteratorUnknownSize(
+                          merging, Spliterator.ORDERED | Spliterator.NONNULL),
+                      false)
+                  .onClose(source::close);
+            });
+  }
+
   @Override
   public Collection<String> existingIdentifiers(String type, Collection<String> ids) {
     HashSet<String> identifiers = new HashSet<>(ids.size());
@@ -87,18 +166,14 @@ public class CompositeCache implements Cache {
   @Override
   public Collection<String> getIdentifiers(String type) {
     HashSet<String> identifiers = new HashSet<>();
-    for (Cache cache : caches) {
-      identifiers.addAll(cache.getIdentifiers(type));
-    }
+    fanOut("getIdentifiers", cache -> cache.getIdentifiers(type), identifiers::addAll);
     return identifiers;
   }
 
   @Override
   public Collection<String> filterIdentifiers(String type, String glob) {
     HashSet<String> identifiers = new HashSet<>();
-    for (Cache cache : caches) {
-      identifiers.addAll(cache.filterIdentifiers(type, glob));
-    }
+    fanOut("filterIdentifiers", cache -> cache.filterIdentifiers(type, glob), identifiers::addAll);
     return identifiers;
   }
 
@@ -111,9 +186,10 @@ public class CompositeCache implements Cache {
   public Collection<CacheData> getAll(
       String type, Collection<String> identifiers, CacheFilter cacheFilter) {
     Map<String, CacheData> allItems = new HashMap<>();
-    for (Cache cache : caches) {
-      allItems = merge(allItems, cache.getAll(type, identifiers, cacheFilter));
-    }
+    fanOut(
+        "getAll",
+        cache -> cache.getAll(type, identifiers, cacheFilter),
+        items -> merge(allItems, items));
     return allItems.values();
   }
 
@@ -125,9 +201,10 @@ public class CompositeCache implements Cache {
   @Override
   public Map<String, Collection<CacheData>> getAllByApplication(String type, String application) {
     Map<String, Collection<CacheData>> allItems = new HashMap<>();
-    for (Cache cache : caches) {
-      allItems.putAll(cache.getAllByApplication(type, application));
-    }
+    fanOut(
+        "getAllByApplication",
+        cache -> cache.getAllByApplication(type, application),
+        allItems::putAll);
     return allItems;
   }
 
@@ -135,9 +212,10 @@ public class CompositeCache implements Cache {
   public Map<String, Collection<CacheData>> getAllByApplication(
       String type, String application, CacheFilter filter) {
     Map<String, Collection<CacheData>> allItems = new HashMap<>();
-    for (Cache cache : caches) {
-      allItems.putAll(cache.getAllByApplication(type, application, filter));
-    }
+    fanOut(
+        "getAllByApplication",
+        cache -> cache.getAllByApplication(type, application, filter),
+        allItems::putAll);
     return allItems;
   }
 
@@ -145,10 +223,96 @@ public class CompositeCache implements Cache {
   public Map<String, Collection<CacheData>> getAllByApplication(
       Collection<String> types, String application, Map<String, CacheFilter> cacheFilters) {
     Map<String, Collection<CacheData>> allItems = new HashMap<>();
+    fanOut(
+        "getAllByApplication",
+        cache -> cache.getAllByApplication(types, application, cacheFilters),
+        allItems::putAll);
+    return allItems;
+  }
+
+  /**
+   * Reads every cache and hands the results to {@code merge} in the order of the caches, reading
+   * them concurrently if an executor has been configured.
+   *
+   * @throws CacheReadTimeoutException if the caches didn't all respond within the deadline
+   */
+  private <T> void fanOut(String operation, Function<Cache, T> read, Consumer<T> merge) {
+    if (executor == null || caches.size() < 2) {
+      int index = 0;
+      for (Cache cache : caches) {
+        merge.accept(timedRead(index++, operation, cache, read));
+      }
+      return;
+    }
+
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+    List<Future<T>> results = new ArrayList<>(caches.size());
+    List<FutureTask<T>> callerReads = new ArrayList<>();
+    int index = 0;
     for (Cache cache : caches) {
-      allItems.putAll(cache.getAllByApplication(types, application, cacheFilters));
+      final int cacheIndex = index++;
+      FutureTask<T> result = new FutureTask<>(() -> timedRead(cacheIndex, operation, cache, read));
+      results.add(result);
+      if (cacheIndex == 0) {
+        callerReads.add(result);
+        continue;
+      }
+      try {
+        executor.execute(result);
+      } catch (RejectedExecutionException e) {
+        callerReads.add(result);
+      }
+    }
+    callerReads.forEach(FutureTask::run);
+
+    for (int i = 0; i < results.size(); i++) {
+      try {
+        merge.accept(results.get(i).get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+      } catch (TimeoutException e) {
+        for (int pending = i; pending < results.size(); pending++) {
+          if (results.get(pending).cancel(true) && readListener != null) {
+            readListener.read(
+                cacheName(pending),
+                operation,
+                TimeUnit.MILLISECONDS.toNanos(deadlineMillis),
+                true);
+          }
+        }
+        throw new CacheReadTimeoutException(
+            String.format(
+                "%s timed out after %dms waiting for %s", operation, deadlineMillis, cacheName(i)),
+            e);
+      } catch (ExecutionException e) {
+        results.forEach(result -> result.cancel(true));
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IllegalStateException(e.getCause());
+      } catch (InterruptedException e) {
+        results.forEach(result -> result.cancel(true));
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      }
     }
-    return allItems;
+  }
+
+  private <T> T timedRead(int index, String operation, Cache cache, Function<Cache, T> read) {
+    if (readListener == null) {
+      return read.apply(cache);
+    }
+    long start = System.nanoTime();
+    try {
+      return read.apply(cache);
+    } finally {
+      readListener.read(cacheName(index), operation, System.nanoTime() - start, false);
+    }
+  }
+
+  private String cacheName(int index) {
+    if (cacheNames != null && index < cacheNames.size()) {
+      return cacheNames.get(index);
+    }
+    return "cache" + index;
   }
 
   Map<String, CacheData> merge(
@@ -167,6 +331,70 @@ public class CompositeCache implements Cache {
     return allItems;
   }
 
+  private class MergingIterator implements Iterator<CacheData> {
+    private static final int BATCH_SIZE = 500;
+
+    private final String type;
+    private final CacheFilter cacheFilter;
+    private final Iterator<CacheData> source;
+    private final List<Cache> remainingCaches;
+    private final Set<String> mergedIds;
+    private Iterator<CacheData> batch = Collections.emptyIterator();
+
+    MergingIterator(
+        String type,
+        CacheFilter cacheFilter,
+        Iterator<CacheData> source,
+        List<Cache> remainingCaches,
+        Set<String> mergedIds) {
+      this.type = type;
+      this.cacheFilter = cacheFilter;
+      this.source = source;
+      this.remainingCaches = remainingCaches;
+      this.mergedIds = mergedIds;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!batch.hasNext() && source.hasNext()) {
+        batch = nextBatch();
+      }
+      return batch.hasNext();
+    }
+
+    @Override
+    public CacheData next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return batch.next();
+    }
+
+    private Iterator<CacheData> nextBatch() {
+      Map<String, CacheData> items = new LinkedHashMap<>();
+      while (source.hasNext() && items.size() < BATCH_SIZE) {
+        CacheData item = source.next();
+        // already emitted as part of an item merged from an earlier cache
+        if (!mergedIds.contains(item.getId())) {
+          items.put(item.getId(), item);
+        }
+      }
+
+      if (items.isEmpty() || remainingCaches.isEmpty()) {
+        return items.values().iterator();
+      }
+
+      for (Cache cache : remainingCaches) {
+        Collection<String> overlap = cache.existingIdentifiers(type, items.keySet());
+        if (!overlap.isEmpty()) {
+          merge(items, cache.getAll(type, overlap, cacheFilter));
+          mergedIds.addAll(overlap);
+        }
+      }
+      return items.values().iterator();
+    }
+  }
+
   CacheData merge(String id, CacheData... elements) {
     return merge(id, Arrays.asList(elements));
   }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.cats.cluster;
+
+import com.netflix.spinnaker.cats.agent.Agent;
+import com.netflix.spinnaker.cats.agent.CachingAgent;
+
+/**
+ * Stretches the interval of caching agents whose results stopped changing, and shortens it for
+ * agents whose results keep changing.
+ *
+ * <p>Once an agent has produced the same result {@code threshold} runs in a row, its interval is
+ * multiplied by {@code multiplier} for every further unchanged run, up to {@code maxInterval}. The
+ * first changed result restores the interval of the delegate, and {@code threshold} changed results
+ * in a row divide it by {@code multiplier} for every further changed run, down to {@code
+ * minInterval}. Intervals outside of the bounds to begin with are left as they are.
+ */
+public class AdaptiveAgentIntervalProvider implements AgentIntervalProvider {
+  private static final int MAX_STEPS = 16;
+
+  private final AgentIntervalProvider delegate;
+  private final AgentChangeHistory history;
+  private final int threshold;
+  private final double multiplier;
+  private final long minInterval;
+  private final long maxInterval;
+
+  public AdaptiveAgentIntervalProvider(
+      AgentIntervalProvider delegate,
+      int threshold,
+      double multiplier,
+      long minInterval,
+      long maxInterval) {
+    this(
+        delegate,
+        AgentChangeHistory.getHistory(),
+        threshold,
+        multiplier,
+        minInterval,
+        maxInterval);
+  }
+
+  public AdaptiveAgentIntervalProvider(
+      AgentIntervalProvider delegate,
+      AgentChangeHistory history,
+      int threshold,
+      double multiplier,
+      long minInterval,
+      long maxInterval) {
+    if (threshold < 1 || multiplier < 1) {
+      throw new IllegalArgumentException("threshold and multiplier must be at least 1");
+    }
+    this.delegate = delegate;
+    this.history = history;
+    this.threshold = threshold;
+    this.multiplier = multiplier;
+    this.minInterval = minInterval;
+    this.maxInterval = maxInterval;
+    history.enable();
+  }
+
+  @Override
+  public Interval getInterval(Agent agent) {
+    Interval interval = delegate.getInterval(agent);
+    if (!(agent instanceof CachingAgent)) {
+      return interval;
+    }
+
+    long base = interval.getInterval();
+    int unchanged = history.getUnchangedRuns(agent.getAgentType());
+    int changed = history.getChangedRuns(agent.getAgentType());
+
+    long adapted = base;
+    if (unchanged >= threshold) {
+      adapted = (long) (base * Math.pow(multiplier, steps(unchanged)));
+      adapted = Math.min(adapted, Math.max(maxInterval, base));
+    } else if (changed >= threshold) {
+      adapted = (long) (base / Math.pow(multiplier, steps(changed)));
+      adapted = Math.max(adapted, Math.min(minInterval, base));
+    }
+
+    if (adapted == base) {
+      return interval;
+    }
+    return new Interval(adapted, interval.getErrorInterval(), interval.getTimeout());
+  }
+
+  private int steps(int runs) {
+    return Math.min(runs - threshold + 1, MAX_STEPS);
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.cats.cluster;
+
+import com.netflix.spinnaker.cats.agent.CacheChangeSet;
+import com.netflix.spinnaker.cats.agent.CacheResult;
+import com.netflix.spinnaker.cats.cache.CacheData;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks, per agent, how many consecutive runs produced the same or a different result than the
+ * run before.
+ *
+ * <p>Results are compared by a fingerprint of their items (ids, attributes and relationships),
+ * evictions and change sets, built from the {@code hashCode} of each. Attribute values without a
+ * content based {@code hashCode} make every run look changed, which only means the agent isn't
+ * backed off. Nothing is recorded until the history has been enabled.
+ *
+ * <p>The history is kept per JVM, so it only sees the runs of the agents that execute on this
+ * node. That makes it suited to schedulers that keep running an agent on the same node (the
+ * default and the sharded SQL schedulers); the lock based Redis and SQL schedulers spread the runs
+ * of an agent over every node, so a streak builds about as many times slower as there are nodes.
+ * Schedulers forget the history of the agents they unschedule.
+ */
+public class AgentChangeHistory {
+  private static final AgentChangeHistory history = new AgentChangeHistory();
+
+  private final Map<String, Runs> agents = new ConcurrentHashMap<>();
+  private volatile boolean enabled = false;
+
+  public static AgentChangeHistory getHistory() {
+    return history;
+  }
+
+  public void enable() {
+    enabled = true;
+  }
+
+  public void record(String agentType, CacheResult result) {
+    if (!enabled) {
+      return;
+    }
+
+    long fingerprint = fingerprint(result);
+    boolean partial = result.isPartialResult();
+    agents.compute(
+        agentType,
+        (key, previous) -> {
+          if (previous == null) {
+            return new Runs(fingerprint, 0, 0);
+          }
+          if (!partial && previous.fingerprint == fingerprint) {
+            return new Runs(fingerprint, previous.unchanged + 1, 0);
+          }
+          return new Runs(fingerprint, 0, previous.changed + 1);
+        });
+  }
+
+  /** @return the number of consecutive runs that produced the same result as the run before */
+  public int getUnchangedRuns(String agentType) {
+    Runs runs = agents.get(agentType);
+    return runs == null ? 0 : runs.unchanged;
+  }
+
+  /** @return the number of consecutive runs that produced a different result than the run before */
+  public int getChangedRuns(String agentType) {
+    Runs runs = agents.get(agentType);
+    return runs == null ? 0 : runs.changed;
+  }
+
+  public void forget(String agentType) {
+    agents.remove(agentType);
+  }
+
+  static long fingerprint(CacheResult result) {
+    // a sum of the item hashes, as the order items are returned in doesn't matter
+    long fingerprint = 0;
+    for (Map.Entry<String, Collection<CacheData>> type : result.getCacheResults().entrySet()) {
+      fingerprint += fingerprint(type.getKey(), type.getValue());
+    }
+    for (Map.Entry<String, Collection<String>> type : result.getEvictions().entrySet()) {
+      for (String id : type.getValue()) {
+        fingerprint += mix(type.getKey().hashCode(), id.hashCode(), -1);
+      }
+    }
+    for (Map.Entry<String, CacheChangeSet> type : result.getChangeSets().entrySet()) {
+      fingerprint += fingerprint(type.getKey(), type.getValue().getUpserts());
+      for (String id : type.getValue().getDeletes()) {
+        fingerprint += mix(type.getKey().hashCode(), id.hashCode(), -2);
+      }
+    }
+    return fingerprint;
+  }
+
+  private static long fingerprint(String type, Collection<CacheData> items) {
+    long fingerprint = 0;
+    for (CacheData item : items) {
+      fingerprint +=
+          mix(
+              type.hashCode(),
+              item.getId().hashCode(),
+              item.getAttributes().hashCode(),
+              item.getRelationships().hashCode());
+    }
+    return fingerprint;
+  }
+
+  private static long mix(long... values) {
+    long hash = 0x9E3779B97F4A7C15L;
+    for (long value : values) {
+      hash ^= value;
+      hash *= 0xBF58476D1CE4E5B9L;
+      hash ^= hash >>> 31;
+    }
+    return hash;
+  }
+
+  private static class Runs {
+    final long fingerprint;
+    final int unchanged;
+    final int changed;
+
+    Runs(long fingerprint, int unchanged, int changed) {
+      this.fingerprint = fingerprint;
+      this.unchanged = unchanged;
+      this.changed = changed;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.cats.cluster;
+
+import com.netflix.spinnaker.cats.agent.Agent;
+import java.util.regex.Pattern;
+
+/**
+ * Assigns agents whose type matches the critical pattern to {@link Priority#CRITICAL}, those
+ * matching the low pattern to {@link Priority#LOW}, and everything else to {@link
+ * Priority#NORMAL}.
+ */
+public class DefaultAgentPriorityProvider implements AgentPriorityProvider {
+  private final Pattern criticalPattern;
+  private final Pattern lowPattern;
+
+  public DefaultAgentPriorityProvider(String criticalPattern, String lowPattern) {
+    this.criticalPattern = Pattern.compile(criticalPattern, Pattern.CASE_INSENSITIVE);
+    this.lowPattern = Pattern.compile(lowPattern, Pattern.CASE_INSENSITIVE);
+  }
+
+  @Override
+  public Priority getPriority(Agent agent) {
+    if (criticalPattern.matcher(agent.getAgentType()).matches()) {
+      return Priority.CRITICAL;
+    }
+    if (lowPattern.matcher(agent.getAgentType()).matches()) {
+      return Priority.LOW;
+    }
+    return Priority.NORMAL;
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.codec;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Serializes cache payloads (attributes, relationships or whole CacheData bodies) to the values
+ * held by a backing store.
+ *
+ * <p>Each codec owns a payload format; {@link #canDecode(byte[])} lets a store that holds a mix of
+ * formats (e.g. during a migration) route a stored value to the codec that wrote it.
+ */
+public interface CacheDataCodec {
+
+  /** @return the name of the format written by this codec */
+  String getFormat();
+
+  /**
+   * @return true if payloads written by this codec are binary, and must be stored in a binary safe
+   *     value or column rather than as text
+   */
+  boolean isBinary();
+
+  /** @return true if the payload was written in this codec's format */
+  boolean canDecode(byte[] payload);
+
+  byte[] encode(Object value) throws IOException;
+
+  /**
+   * Writes the bytes of {@link #encode(Object)} to a stream, which lets a caller digest a payload
+   * without materializing it. Codecs that can serialize straight to the stream should.
+   */
+  default void encode(Object value, OutputStream out) throws IOException {
+    out.write(encode(value));
+  }
+
+  <T> T decode(byte[] payload, TypeReference<T> type) throws IOException;
+
+  <T> T decode(byte[] payload, Class<T> type) throws IOException;
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Plain JSON payloads, the format CATS stores have always written. Payloads are the UTF-8 bytes of
+ * the JSON document, so they may be stored as text.
+ */
+public class JsonCacheDataCodec implements CacheDataCodec {
+
+  public static final String FORMAT = "json";
+
+  private final ObjectMapper objectMapper;
+
+  public JsonCacheDataCodec(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+  }
+
+  @Override
+  public String getFormat() {
+    return FORMAT;
+  }
+
+  @Override
+  public boolean isBinary() {
+    return false;
+  }
+
+  @Override
+  public boolean canDecode(byte[] payload) {
+    return payload != null && !SmileCacheDataCodec.hasHeader(payload);
+  }
+
+  @Override
+  public byte[] encode(Object value) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    encode(value, out);
+    return out.toByteArray();
+  }
+
+  /**
+   * Serializes through a character generator, as {@link ObjectMapper#writeValueAsString} does; the
+   * UTF-8 byte generator escapes characters outside the BMP, which would change the bytes of
+   * payloads already held by stores that digest them.
+   */
+  @Override
+  public void encode(Object value, OutputStream out) throws IOException {
+    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    try (JsonGenerator generator =
+        objectMapper
+            .getFactory()
+            .createGenerator(writer)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+      objectMapper.writeValue(generator, value);
+    }
+    writer.flush();
+  }
+
+  @Override
+  public <T> T decode(byte[] payload, TypeReference<T> type) throws IOException {
+    return objectMapper.readValue(payload, type);
+  }
+
+  @Override
+  public <T> T decode(byte[] payload, Class<T> type) throws IOException {
+    return objectMapper.readValue(payload, type);
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.codec;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes payloads in a single configured format while reading any known format, allowing a store
+ * to be migrated between formats without a flush.
+ */
+public class MultiFormatCacheDataCodec implements CacheDataCodec {
+
+  private final CacheDataCodec writer;
+  private final List<CacheDataCodec> readers;
+
+  public MultiFormatCacheDataCodec(CacheDataCodec writer, List<CacheDataCodec> readers) {
+    this.writer = writer;
+    this.readers = readers;
+  }
+
+  /**
+   * @param format the format to write, {@code json} or {@code smile}; null defaults to json
+   * @param objectMapper the mapper used to (de)serialize values in every format
+   */
+  public static MultiFormatCacheDataCodec forFormat(String format, ObjectMapper objectMapper) {
+    CacheDataCodec json = new JsonCacheDataCodec(objectMapper);
+    CacheDataCodec smile = new SmileCacheDataCodec(objectMapper);
+
+    final CacheDataCodec writer;
+    if (format == null || JsonCacheDataCodec.FORMAT.equalsIgnoreCase(format)) {
+      writer = json;
+    } else if (SmileCacheDataCodec.FORMAT.equalsIgnoreCase(format)) {
+      writer = smile;
+    } else {
+      throw new IllegalArgumentException("Unsupported cache data format: " + format);
+    }
+
+    return new MultiFormatCacheDataCodec(writer, Arrays.asList(smile, json));
+  }
+
+  @Override
+  public String getFormat() {
+    return writer.getFormat();
+  }
+
+  @Override
+  public boolean isBinary() {
+    return writer.isBinary();
+  }
+
+  @Override
+  public boolean canDecode(byte[] payload) {
+    return readers.stream().anyMatch(r -> r.canDecode(payload));
+  }
+
+  @Override
+  public byte[] encode(Object value) throws IOException {
+    return writer.encode(value);
+  }
+
+  @Override
+  public void encode(Object value, OutputStream out) throws IOException {
+    writer.encode(value, out);
+  }
+
+  @Override
+  public <T> T decode(byte[] payload, TypeReference<T> type) throws IOException {
+    return readerFor(payload).decode(payload, type);
+  }
+
+  @Override
+  public <T> T decode(byte[] payload, Class<T> type) throws IOException {
+    return readerFor(payload).decode(payload, type);
+  }
+
+  private CacheDataCodec readerFor(byte[] payload) throws IOException {
+    for (CacheDataCodec reader : readers) {
+      if (reader.canDecode(payload)) {
+        return reader;
+      }
+    }
+    throw new IOException("No codec available for payload");
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Binary (Smile) payloads.
+ *
+ * <p>Smile back-references repeated property names and short string values within a payload, so
+ * the attribute keys and relationship prefixes that dominate CATS payloads are written once.
+ * Payloads are stored as raw bytes, starting with the Smile document header, which can never start
+ * a JSON document.
+ *
+ * <p>Values are (de)serialized by the supplied {@link ObjectMapper}, so its modules and
+ * configuration apply exactly as they do for JSON.
+ */
+public class SmileCacheDataCodec implements CacheDataCodec {
+
+  public static final String FORMAT = "smile";
+
+  /** The leading bytes of every Smile document, {@code ":)\n"}. */
+  static final byte[] HEADER = {':', ')', '\n'};
+
+  private final ObjectMapper objectMapper;
+  private final SmileFactory smileFactory;
+
+  public SmileCacheDataCodec(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+    this.smileFactory =
+        new SmileFactory()
+            .enable(SmileGenerator.Feature.WRITE_HEADER)
+            .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+  }
+
+  @Override
+  public String getFormat() {
+    return FORMAT;
+  }
+
+  @Override
+  public boolean isBinary() {
+    return true;
+  }
+
+  @Override
+  public boolean canDecode(byte[] payload) {
+    return payload != null && hasHeader(payload);
+  }
+
+  @Override
+  public byte[] encode(Object value) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    encode(value, out);
+    return out.toByteArray();
+  }
+
+  @Override
+  public void encode(Object value, OutputStream out) throws IOException {
+    try (JsonGenerator generator =
+        smileFactory.createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+      objectMapper.writeValue(generator, value);
+    }
+  }
+
+  @Override
+  public <T> T decode(byte[] payload, TypeReference<T> type) throws IOException {
+    try (JsonParser parser = smileFactory.createParser(payload)) {
+      return objectMapper.readValue(parser, type);
+    }
+  }
+
+  @Override
+  public <T> T decode(byte[] payload, Class<T> type) throws IOException {
+    try (JsonParser parser = smileFactory.createParser(payload)) {
+      return objectMapper.readValue(parser, type);
+    }
+  }
+
+  static boolean hasHeader(byte[] payload) {
+    if (payload.length < HEADER.length) {
+      return false;
+    }
+    for (int i = 0; i < HEADER.length; i++) {
+      if (payload[i] != HEADER[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base for stream based compression strategies whose values carry a self-describing header.
+ *
+ * <p>Compressed text values are written as {@code ~<frame>:<base64 payload>}, and compressed binary
+ * values as the same ASCII header followed by the raw payload. The frame name identifies the
+ * algorithm (and any dictionary) used, so values without a recognised header are handed to the
+ * gzip decoder; existing gzip compressed and uncompressed values remain readable.
+ *
+ * <p>Values smaller than {@code thresholdBytesSize} are stored uncompressed.
+ */
+public abstract class FramedCompression implements CompressionStrategy {
+
+  private static final Logger log = LoggerFactory.getLogger(FramedCompression.class);
+
+  private static final char HEADER_START = '~';
+  private static final char HEADER_END = ':';
+  private static final int MAX_HEADER_LENGTH = 32;
+
+  private final long thresholdBytesSize;
+  private final boolean enabled;
+
+  protected FramedCompression(long thresholdBytesSize, boolean enabled) {
+    this.thresholdBytesSize = thresholdBytesSize;
+    this.enabled = enabled;
+  }
+
+  /** @return the frame name newly compressed values are written with */
+  protected abstract String frame();
+
+  /** @return true if values written with the frame name can be decompressed by this strategy */
+  protected abstract boolean accepts(String frame);
+
+  protected abstract OutputStream compressing(OutputStream out) throws IOException;
+
+  protected abstract InputStream decompressing(String frame, InputStream in) throws IOException;
+
+  @Override
+  public String compress(final String str) {
+    if (str == null) {
+      return null;
+    }
+
+    byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    if (!shouldCompress(bytes)) {
+      return str;
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+    try {
+      out.write(header());
+      try (OutputStream compressed = compressing(Base64.getEncoder().wrap(out))) {
+        compressed.write(bytes);
+      }
+    } catch (IOException e) {
+      log.error("Failed to {} compress string", frame(), e);
+      return str;
+    }
+
+    return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+  }
+
+  @Override
+  public String decompress(final String compressed) {
+    if (compressed == null) {
+      return null;
+    }
+
+    String frame = frameOf(compressed);
+    if (frame == null || !accepts(frame)) {
+      return GZipCompression.decompressIfCompressed(compressed);
+    }
+
+    int offset = frame.length() + 2;
+    InputStream payload =
+        Base64.getDecoder()
+            .wrap(
+                new ByteArrayInputStream(
+                    compressed.getBytes(StandardCharsets.US_ASCII),
+                    offset,
+                    compressed.length() - offset));
+    try (InputStream in = decompressing(frame, payload)) {
+      return CompressionSupport.readUtf8(in);
+    } catch (IOException | IllegalArgumentException e) {
+      log.error("Failed to {} decompress string", frame, e);
+      return compressed;
+    }
+  }
+
+  /**
+   * Compresses to a binary value, for backends that store bytes and so need no base64 encoding.
+   */
+  public byte[] compress(final byte[] bytes) {
+    if (bytes == null || !shouldCompress(bytes)) {
+      return bytes;
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+    try {
+      out.write(header());
+      try (OutputStream compressed = compressing(out)) {
+        compressed.write(bytes);
+      }
+    } catch (IOException e) {
+      log.error("Failed to {} compress bytes", frame(), e);
+      return bytes;
+    }
+
+    return out.toByteArray();
+  }
+
+  /** Decompresses a binary value written by {@link #compress(byte[])}. */
+  public byte[] decompress(final byte[] compressed) throws IOException {
+    if (compressed == null) {
+      return null;
+    }
+
+    String frame = frameOf(compressed);
+    InputStream in;
+    if (frame != null && accepts(frame)) {
+      int offset = frame.length() + 2;
+      in =
+          decompressing(
+              frame, new ByteArrayInputStream(compressed, offset, compressed.length - offset));
+    } else if (compressed.length >= 2 && GZipCompression.isCompressed(compressed)) {
+      in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+    } else {
+      return compressed;
+    }
+
+    try (InputStream decompressed = in) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = decompressed.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  private boolean shouldCompress(byte[] bytes) {
+    return enabled && bytes.length >= thresholdBytesSize;
+  }
+
+  private byte[] header() {
+    return (HEADER_START + frame() + HEADER_END).getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static String frameOf(String value) {
+    if (value.isEmpty() || value.charAt(0) != HEADER_START) {
+      return null;
+    }
+    int end = value.indexOf(HEADER_END, 1);
+    return end > 1 && end <= MAX_HEADER_LENGTH ? value.substring(1, end) : null;
+  }
+
+  private static String frameOf(byte[] value) {
+    if (value.length == 0 || value[0] != HEADER_START) {
+      return null;
+    }
+    for (int i = 2; i < Math.min(value.length, MAX_HEADER_LENGTH + 1); i++) {
+      if (value[i] == HEADER_END) {
+        return new String(Arrays.copyOfRange(value, 1, i), StandardCharsets.US_ASCII);
+      }
+    }
+    return null;
+  }
+}
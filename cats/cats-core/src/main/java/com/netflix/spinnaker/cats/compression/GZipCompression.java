@@ -15,12 +15,11 @@
  */
 package com.netflix.spinnaker.cats.compression;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -31,8 +30,6 @@ public class GZipCompression implements CompressionStrategy {
 
   private static final Logger log = LoggerFactory.getLogger(GZipCompression.class);
 
-  private static final String CHARSET = "UTF-8";
-
   private final long thresholdBytesSize;
   private final boolean enabled;
 
@@ -51,72 +48,55 @@ public class GZipCompression implements CompressionStrategy {
       return null;
     }
 
-    byte[] bytes;
-    try {
-      bytes = str.getBytes(CHARSET);
-    } catch (UnsupportedEncodingException e) {
-      log.error("Failed to compress string: {}", str, e);
-      return str;
-    }
-
+    byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
     if (!enabled || bytes.length < thresholdBytesSize) {
       return str;
     }
 
-    ByteArrayOutputStream obj = new ByteArrayOutputStream();
-    try {
-      GZIPOutputStream gzip = new GZIPOutputStream(obj);
+    ByteArrayOutputStream obj = new ByteArrayOutputStream(bytes.length / 2);
+    try (OutputStream gzip = new GZIPOutputStream(Base64.getEncoder().wrap(obj))) {
       gzip.write(bytes);
-      gzip.flush();
-      gzip.close();
     } catch (IOException e) {
       log.error("Failed to compress string: {}", str, e);
       return str;
     }
 
-    try {
-      return new String(Base64.getEncoder().encode(obj.toByteArray()), CHARSET);
-    } catch (UnsupportedEncodingException e) {
-      log.error("Failed to compress string: {}", str, e);
-      return str;
-    }
+    return new String(obj.toByteArray(), StandardCharsets.US_ASCII);
   }
 
   @Override
   public String decompress(final String compressed) {
+    return decompressIfCompressed(compressed);
+  }
+
+  /**
+   * Decompresses a value written by {@link #compress(String)}, returning any other value as is.
+   */
+  static String decompressIfCompressed(final String compressed) {
     if (compressed == null) {
       return null;
     }
 
     byte[] bytes;
     try {
-      bytes = Base64.getDecoder().decode(compressed.getBytes(CHARSET));
-    } catch (IllegalArgumentException | UnsupportedEncodingException e) {
+      bytes = Base64.getDecoder().decode(compressed.getBytes(StandardCharsets.US_ASCII));
+    } catch (IllegalArgumentException e) {
       return compressed;
     }
 
-    if (bytes.length == 0 || !isCompressed(bytes)) {
+    if (bytes.length < 2 || !isCompressed(bytes)) {
       return compressed;
     }
 
-    final StringBuilder outStr = new StringBuilder();
-    try {
-      final GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(bytes));
-      final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(gis, CHARSET));
-
-      String line;
-      while ((line = bufferedReader.readLine()) != null) {
-        outStr.append(line);
-      }
+    try (GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+      return CompressionSupport.readUtf8(gis);
     } catch (IOException e) {
       log.error("Failed to decompress string: {}", compressed, e);
       return compressed;
     }
-
-    return outStr.toString();
   }
 
-  private static boolean isCompressed(final byte[] compressed) {
+  static boolean isCompressed(final byte[] compressed) {
     return compressed[0] == (byte) (GZIPInputStream.GZIP_MAGIC)
         && compressed[1] == (byte) (GZIPInputStream.GZIP_MAGIC >> 8);
   }
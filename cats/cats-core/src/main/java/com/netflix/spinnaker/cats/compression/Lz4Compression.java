@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * LZ4 frame compression. Uses the native LZ4 bindings when they can be loaded, falling back to the
+ * pure Java implementation otherwise.
+ */
+public class Lz4Compression extends FramedCompression {
+
+  private static final Logger log = LoggerFactory.getLogger(Lz4Compression.class);
+
+  static final String FRAME = "lz4";
+
+  public Lz4Compression(long thresholdBytesSize, boolean enabled) {
+    super(thresholdBytesSize, enabled);
+    log.info(
+        "Cats using lz4 compression: {} bytes threshold, compress enabled: {}",
+        thresholdBytesSize,
+        enabled);
+  }
+
+  @Override
+  protected String frame() {
+    return FRAME;
+  }
+
+  @Override
+  protected boolean accepts(String frame) {
+    return FRAME.equals(frame);
+  }
+
+  @Override
+  protected OutputStream compressing(OutputStream out) throws IOException {
+    return new LZ4FrameOutputStream(out);
+  }
+
+  @Override
+  protected InputStream decompressing(String frame, InputStream in) throws IOException {
+    return new LZ4FrameInputStream(in);
+  }
+}
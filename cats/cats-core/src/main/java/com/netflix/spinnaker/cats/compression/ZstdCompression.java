@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.compression;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.github.luben.zstd.util.Native;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Zstandard compression, optionally primed with pre-trained dictionaries.
+ *
+ * <p>Values are written with the first dictionary supplied; all supplied dictionaries are
+ * available for reads, so a dictionary can be rotated by prepending its replacement. Dictionaries
+ * are identified in each value's header and must be retained for as long as values written with
+ * them are stored. See {@link #trainDictionary(Collection, int)}.
+ *
+ * <p>Requires the zstd native library; check {@link #isAvailable()} and fall back to another
+ * strategy on platforms where it cannot be loaded.
+ */
+public class ZstdCompression extends FramedCompression {
+
+  private static final Logger log = LoggerFactory.getLogger(ZstdCompression.class);
+
+  static final String FRAME = "zstd";
+
+  public static final int DEFAULT_LEVEL = 3;
+
+  private final int level;
+  private final Map<String, byte[]> dictionaries = new HashMap<>();
+  private final String writeFrame;
+  private final byte[] writeDictionary;
+
+  public ZstdCompression(long thresholdBytesSize, boolean enabled) {
+    this(thresholdBytesSize, enabled, DEFAULT_LEVEL, Collections.emptyList());
+  }
+
+  public ZstdCompression(
+      long thresholdBytesSize, boolean enabled, int level, List<byte[]> dictionaries) {
+    super(thresholdBytesSize, enabled);
+    this.level = level;
+    for (byte[] dictionary : dictionaries) {
+      this.dictionaries.put(frameFor(dictionary), dictionary);
+    }
+    this.writeDictionary = dictionaries.isEmpty() ? null : dictionaries.get(0);
+    this.writeFrame = writeDictionary == null ? FRAME : frameFor(writeDictionary);
+
+    log.info(
+        "Cats using zstd compression: {} bytes threshold, compress enabled: {}, level: {}, dictionaries: {}",
+        thresholdBytesSize,
+        enabled,
+        level,
+        dictionaries.size());
+  }
+
+  /** @return true if the zstd native library is available on this platform */
+  public static boolean isAvailable() {
+    try {
+      Native.load();
+      return true;
+    } catch (UnsatisfiedLinkError e) {
+      log.warn("zstd native library unavailable", e);
+      return false;
+    }
+  }
+
+  /**
+   * Trains a dictionary from representative values, e.g. serialized items of a single cache type.
+   *
+   * @param samples sample values
+   * @param dictionarySizeBytes the maximum size of the dictionary, typically around 100KB
+   */
+  public static byte[] trainDictionary(Collection<String> samples, int dictionarySizeBytes) {
+    List<byte[]> encoded = new ArrayList<>(samples.size());
+    long sampleSize = 0;
+    for (String sample : samples) {
+      byte[] bytes = sample.getBytes(StandardCharsets.UTF_8);
+      encoded.add(bytes);
+      sampleSize += bytes.length;
+    }
+
+    ZstdDictTrainer trainer =
+        new ZstdDictTrainer((int) Math.min(sampleSize, Integer.MAX_VALUE), dictionarySizeBytes);
+    encoded.forEach(trainer::addSample);
+    return trainer.trainSamples();
+  }
+
+  @Override
+  protected String frame() {
+    return writeFrame;
+  }
+
+  @Override
+  protected boolean accepts(String frame) {
+    return FRAME.equals(frame) || dictionaries.containsKey(frame);
+  }
+
+  @Override
+  protected OutputStream compressing(OutputStream out) throws IOException {
+    ZstdOutputStream zstd = new ZstdOutputStream(out, level);
+    if (writeDictionary != null) {
+      zstd.setDict(writeDictionary);
+    }
+    return zstd;
+  }
+
+  @Override
+  protected InputStream decompressing(String frame, InputStream in) throws IOException {
+    ZstdInputStream zstd = new ZstdInputStream(in);
+    byte[] dictionary = dictionaries.get(frame);
+    if (dictionary != null) {
+      zstd.setDict(dictionary);
+    }
+    return zstd;
+  }
+
+  private static String frameFor(byte[] dictionary) {
+    return FRAME + "." + Long.toHexString(Zstd.getDictIdFromDict(dictionary));
+  }
+}
@@ -18,7 +18,7 @@ package com.netflix.spinnaker.cats.mem;
 
 import com.netflix.spinnaker.cats.cache.CacheData;
 import com.netflix.spinnaker.cats.cache.CacheFilter;
-import com.netflix.spinnaker.cats.cache.DefaultCacheData;
+import com.netflix.spinnaker.cats.cache.CacheWriteNotifier;
 import com.netflix.spinnaker.cats.cache.WriteableCache;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -27,41 +27,62 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /** A WriteableCache that stores objects in an in-memory map. */
 public class InMemoryCache implements WriteableCache {
   private ConcurrentMap<String, ConcurrentMap<String, CacheData>> typeMap =
       new ConcurrentHashMap<>();
 
+  /**
+   * Sorted view of the identifiers in each type map, used to turn the literal prefix of a glob into
+   * a range scan in {@link #filterIdentifiers(String, String)}.
+   *
+   * <p>An identifier is only added or removed while its type map entry is being created or removed,
+   * so that concurrent merges and evictions of the same identifier can't leave the two out of step.
+   */
+  private ConcurrentMap<String, NavigableSet<String>> keyIndex = new ConcurrentHashMap<>();
+
   @Override
   public void merge(String type, CacheData cacheData) {
-    merge(getOrCreate(type, cacheData.getId()), cacheData);
+    mergeAll(type, Collections.singleton(cacheData));
   }
 
   @Override
   public void mergeAll(String type, Collection<CacheData> items) {
+    CacheWriteNotifier notifier = CacheWriteNotifier.getNotifier();
+    boolean notify = notifier.hasListeners();
+    List<String> changed = new ArrayList<>();
     for (CacheData item : items) {
-      merge(type, item);
+      if (merge(getOrCreate(type, item.getId()), item, notify)) {
+        changed.add(item.getId());
+      }
     }
+    notifier.itemsMerged(type, changed);
   }
 
   @Override
   public void evict(String type, String id) {
-    getTypeMap(type).remove(id);
+    remove(type, id);
+    CacheWriteNotifier.getNotifier().itemsEvicted(type, Collections.singleton(id));
   }
 
   @Override
   public void evictAll(String type, Collection<String> ids) {
-    ConcurrentMap<String, CacheData> map = getTypeMap(type);
     for (String id : ids) {
-      map.remove(id);
+      remove(type, id);
     }
+    CacheWriteNotifier.getNotifier().itemsEvicted(type, ids);
   }
 
   @Override
@@ -90,12 +111,19 @@ public class InMemoryCache implements WriteableCache {
     for (CacheData data : map.values()) {
       CacheData toReturn = wrap(data, cacheFilter);
       if (toReturn != null) {
-        values.add(wrap(data, cacheFilter));
+        values.add(toReturn);
       }
     }
     return values;
   }
 
+  @Override
+  public Stream<CacheData> stream(String type, CacheFilter cacheFilter) {
+    return getTypeMap(type).values().stream()
+        .map(data -> wrap(data, cacheFilter))
+        .filter(Objects::nonNull);
+  }
+
   @Override
   public Collection<CacheData> getAll(String type, Collection<String> identifiers) {
     return getAll(type, identifiers, null);
@@ -132,10 +160,30 @@ public class InMemoryCache implements WriteableCache {
   }
 
   public Collection<String> filterIdentifiers(String type, String glob) {
-    final Pattern pattern = new Glob(glob).toPattern();
+    final Glob compiled = new Glob(glob);
+    final ConcurrentMap<String, CacheData> map = getTypeMap(type);
     final HashSet<String> matches = new HashSet<>();
-    for (String key : getTypeMap(type).keySet()) {
-      if (pattern.matcher(key).matches()) {
+
+    final String prefix = compiled.getLiteralPrefix();
+    if (compiled.isLiteral()) {
+      if (map.containsKey(prefix)) {
+        matches.add(prefix);
+      }
+      return matches;
+    }
+
+    final String suffix = compiled.getLiteralSuffix();
+    final int minLength = prefix.length() + suffix.length();
+    final Pattern pattern = compiled.toPattern();
+    for (String key : getKeyIndex(type).tailSet(prefix, true)) {
+      if (!key.startsWith(prefix)) {
+        break;
+      }
+      // a key may be evicted while the index is scanned
+      if (key.length() >= minLength
+          && key.endsWith(suffix)
+          && pattern.matcher(key).matches()
+          && map.containsKey(key)) {
         matches.add(key);
       }
     }
@@ -143,7 +191,7 @@ public class InMemoryCache implements WriteableCache {
   }
 
   private CacheData getOrCreate(String type, String id) {
-    return getCacheData(getTypeMap(type), id);
+    return getCacheData(type, id);
   }
 
   private ConcurrentMap<String, CacheData> getTypeMap(String type) {
@@ -156,43 +204,72 @@ public class InMemoryCache implements WriteableCache {
     return existing;
   }
 
+  private NavigableSet<String> getKeyIndex(String type) {
+    NavigableSet<String> newValue = new ConcurrentSkipListSet<>();
+    NavigableSet<String> existing = keyIndex.putIfAbsent(type, newValue);
+    if (existing == null) {
+      return newValue;
+    }
+
+    return existing;
+  }
+
   private CacheData wrap(CacheData data, CacheFilter cacheFilter) {
     if (data == null || data.getAttributes().isEmpty()) {
       return null;
     }
 
-    Map<String, Collection<String>> relationships = data.getRelationships();
-    if (cacheFilter != null) {
-      relationships = new HashMap<>();
-      for (String relationship :
-          cacheFilter.filter(CacheFilter.Type.RELATIONSHIP, data.getRelationships().keySet())) {
-        relationships.put(relationship, data.getRelationships().get(relationship));
-      }
-    }
-
-    return new DefaultCacheData(data.getId(), data.getAttributes(), relationships);
+    return new CacheDataView(data, cacheFilter);
   }
 
-  private CacheData getCacheData(ConcurrentMap<String, CacheData> map, String id) {
-    CacheData newValue = new BackingData(id);
-    CacheData existing = map.putIfAbsent(id, newValue);
-    if (existing == null) {
-      return newValue;
-    }
+  private CacheData getCacheData(String type, String id) {
+    NavigableSet<String> index = getKeyIndex(type);
+    return getTypeMap(type)
+        .computeIfAbsent(
+            id,
+            key -> {
+              index.add(key);
+              return new BackingData(key);
+            });
+  }
 
-    return existing;
+  private void remove(String type, String id) {
+    NavigableSet<String> index = getKeyIndex(type);
+    getTypeMap(type)
+        .computeIfPresent(
+            id,
+            (key, existing) -> {
+              index.remove(key);
+              return null;
+            });
   }
 
-  private void merge(CacheData existing, CacheData update) {
+  /**
+   * @param compare whether to work out if the item changed, which copies its previous content
+   * @return whether the attributes or relationships of the existing item changed, or false if not
+   *     compared
+   */
+  private boolean merge(CacheData existing, CacheData update, boolean compare) {
     MapMutation<String, Object> attributes = new MapMutation<>(update.getAttributes());
     MapMutation<String, Collection<String>> relationships =
         new MapMutation<>(update.getRelationships());
 
+    Map<String, Object> previousAttributes =
+        compare ? new HashMap<>(existing.getAttributes()) : null;
+    Map<String, Collection<String>> previousRelationships =
+        compare ? new HashMap<>(existing.getRelationships()) : null;
+
     Set<String> missingAttributes = new HashSet<>(existing.getAttributes().keySet());
     missingAttributes.removeAll(update.getAttributes().keySet());
     attributes.apply(existing.getAttributes());
     existing.getAttributes().keySet().removeAll(missingAttributes);
     relationships.apply(existing.getRelationships());
+
+    if (!compare) {
+      return false;
+    }
+    return !previousAttributes.equals(existing.getAttributes())
+        || !previousRelationships.equals(existing.getRelationships());
   }
 
   /**
@@ -257,6 +334,87 @@ public class InMemoryCache implements WriteableCache {
     }
   }
 
+  /**
+   * A view of a BackingData that defers copying its attributes and filtering its relationships
+   * until they are first read, so that reads only looking at some items of a type don't copy all
+   * of them.
+   *
+   * <p>The attributes are copied on first access, so callers may modify them without affecting the
+   * backing data. Like the copies returned before, unfiltered relationships are shared with it.
+   */
+  private static class CacheDataView implements CacheData {
+    private final CacheData backing;
+    private final CacheFilter cacheFilter;
+    private volatile Map<String, Object> attributes;
+    private volatile Map<String, Collection<String>> relationships;
+
+    CacheDataView(CacheData backing, CacheFilter cacheFilter) {
+      this.backing = backing;
+      this.cacheFilter = cacheFilter;
+    }
+
+    @Override
+    public String getId() {
+      return backing.getId();
+    }
+
+    @Override
+    public int getTtlSeconds() {
+      Object cacheExpiry = backing.getAttributes().get("cacheExpiry");
+      if (cacheExpiry instanceof Number) {
+        return (int) (System.currentTimeMillis() - ((Number) cacheExpiry).longValue()) * -1 / 1000;
+      }
+      return -1;
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+      Map<String, Object> result = attributes;
+      if (result == null) {
+        synchronized (this) {
+          result = attributes;
+          if (result == null) {
+            result = new HashMap<>(backing.getAttributes());
+            attributes = result;
+          }
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public Map<String, Collection<String>> getRelationships() {
+      Map<String, Collection<String>> result = relationships;
+      if (result == null) {
+        synchronized (this) {
+          result = relationships;
+          if (result == null) {
+            result = filterRelationships();
+            relationships = result;
+          }
+        }
+      }
+      return result;
+    }
+
+    private Map<String, Collection<String>> filterRelationships() {
+      Map<String, Collection<String>> source = backing.getRelationships();
+      if (cacheFilter == null) {
+        return source;
+      }
+
+      Map<String, Collection<String>> filtered = new HashMap<>();
+      for (String relationship :
+          cacheFilter.filter(CacheFilter.Type.RELATIONSHIP, source.keySet())) {
+        Collection<String> value = source.get(relationship);
+        if (value != null) {
+          filtered.put(relationship, value);
+        }
+      }
+      return filtered;
+    }
+  }
+
   public static class Glob {
     private static final String TOKENS = "*?[]\\";
 
@@ -270,8 +428,11 @@ public class InMemoryCache implements WriteableCache {
     private final StringTokenizer globTokenizer;
     private final StringBuilder regex = new StringBuilder();
     private final StringBuilder capture = new StringBuilder();
+    private final StringBuilder literalPrefix = new StringBuilder();
+    private final StringBuilder literalSuffix = new StringBuilder();
 
     private State state = State.INIT;
+    private boolean literal = true;
 
     private final Pattern pattern;
 
@@ -285,6 +446,35 @@ public class InMemoryCache implements WriteableCache {
       return pattern;
     }
 
+    /** @return the unescaped text every match must start with */
+    public String getLiteralPrefix() {
+      return literalPrefix.toString();
+    }
+
+    /** @return the unescaped text every match must end with */
+    public String getLiteralSuffix() {
+      return literalSuffix.toString();
+    }
+
+    /** @return true if the glob contains no wildcards or character groups */
+    public boolean isLiteral() {
+      return literal;
+    }
+
+    private void appendLiteral(String s) {
+      regex.append(Pattern.quote(s));
+      if (literal) {
+        literalPrefix.append(s);
+      }
+      literalSuffix.append(s);
+    }
+
+    private void appendWildcard(String s) {
+      regex.append(s);
+      literal = false;
+      literalSuffix.setLength(0);
+    }
+
     private void toInit() {
       state = State.INIT;
       capture.setLength(0);
@@ -305,7 +495,7 @@ public class InMemoryCache implements WriteableCache {
     private void handleDelim(String s) {
       switch (state) {
         case ESCAPING:
-          regex.append(Pattern.quote(s));
+          appendLiteral(s);
           toInit();
           break;
         case CAPTURING_ESCAPE:
@@ -316,7 +506,7 @@ public class InMemoryCache implements WriteableCache {
           if ("\\".equals(s)) {
             toCapturingEscape();
           } else if ("]".equals(s)) {
-            regex.append("[").append(capture).append("]");
+            appendWildcard("[" + capture + "]");
             toInit();
           } else {
             capture.append(Pattern.quote(s));
@@ -329,18 +519,21 @@ public class InMemoryCache implements WriteableCache {
               toEscaping();
               break;
             case "*":
-              regex.append(".*");
+              appendWildcard(".*");
               toInit();
               break;
             case "?":
-              regex.append(".");
+              appendWildcard(".");
               toInit();
               break;
             case "[":
+              // an unterminated group is matched literally, treating it as a wildcard keeps the
+              // literal prefix and suffix conservative
+              appendWildcard("");
               toCapturing();
               break;
             case "]":
-              regex.append(Pattern.quote("]"));
+              appendLiteral("]");
               toInit();
               break;
             default:
@@ -356,7 +549,7 @@ public class InMemoryCache implements WriteableCache {
           toCapturing();
           break;
         default:
-          regex.append(Pattern.quote(s));
+          appendLiteral(s);
           toInit();
       }
     }
@@ -22,6 +22,7 @@ import com.netflix.spinnaker.cats.agent.DefaultAgentScheduler;
 import com.netflix.spinnaker.cats.agent.ExecutionInstrumentation;
 import com.netflix.spinnaker.cats.agent.NoopExecutionInstrumentation;
 import com.netflix.spinnaker.cats.cache.Cache;
+import com.netflix.spinnaker.cats.cache.CompositeCache;
 import com.netflix.spinnaker.cats.cache.NamedCacheFactory;
 import com.netflix.spinnaker.cats.mem.InMemoryNamedCacheFactory;
 import com.netflix.spinnaker.cats.provider.Provider;
@@ -29,6 +30,7 @@ import com.netflix.spinnaker.cats.provider.ProviderRegistry;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -52,6 +54,9 @@ public interface CatsModule {
     private AgentScheduler scheduler;
     private ProviderRegistry providerRegistry;
     private Collection<ExecutionInstrumentation> instrumentations = new LinkedList<>();
+    private ExecutorService viewExecutor;
+    private long viewDeadlineMillis;
+    private CompositeCache.ReadListener viewReadListener;
 
     public Builder scheduler(AgentScheduler agentScheduler) {
       if (this.scheduler != null) {
@@ -91,6 +96,18 @@ public interface CatsModule {
       return this;
     }
 
+    /**
+     * Reads the provider caches of the view concurrently on {@code executor}, failing reads that
+     * take longer than {@code deadlineMillis}.
+     */
+    public Builder parallelView(
+        ExecutorService executor, long deadlineMillis, CompositeCache.ReadListener readListener) {
+      this.viewExecutor = executor;
+      this.viewDeadlineMillis = deadlineMillis;
+      this.viewReadListener = readListener;
+      return this;
+    }
+
     public CatsModule build(Provider... providers) {
       return build(Arrays.asList(providers));
     }
@@ -111,7 +128,14 @@ public interface CatsModule {
         cacheFactory = new InMemoryNamedCacheFactory();
       }
       return new DefaultCatsModule(
-          providerRegistry, providers, cacheFactory, scheduler, instrumentation);
+          providerRegistry,
+          providers,
+          cacheFactory,
+          scheduler,
+          instrumentation,
+          viewExecutor,
+          viewDeadlineMillis,
+          viewReadListener);
     }
   }
 }
@@ -25,7 +25,12 @@ import com.netflix.spinnaker.cats.cache.NamedCacheFactory;
 import com.netflix.spinnaker.cats.provider.DefaultProviderRegistry;
 import com.netflix.spinnaker.cats.provider.Provider;
 import com.netflix.spinnaker.cats.provider.ProviderRegistry;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 public class DefaultCatsModule implements CatsModule {
   private final NamedCacheFactory namedCacheFactory;
@@ -40,6 +45,30 @@ public class DefaultCatsModule implements CatsModule {
       NamedCacheFactory namedCacheFactory,
       AgentScheduler agentScheduler,
       ExecutionInstrumentation executionInstrumentation) {
+    this(
+        registry,
+        providers,
+        namedCacheFactory,
+        agentScheduler,
+        executionInstrumentation,
+        null,
+        0,
+        null);
+  }
+
+  /**
+   * @param viewExecutor the executor to read the provider caches of the view concurrently on, or
+   *     null to read them in turn
+   */
+  public DefaultCatsModule(
+      ProviderRegistry registry,
+      Collection<Provider> providers,
+      NamedCacheFactory namedCacheFactory,
+      AgentScheduler agentScheduler,
+      ExecutionInstrumentation executionInstrumentation,
+      ExecutorService viewExecutor,
+      long viewDeadlineMillis,
+      CompositeCache.ReadListener viewReadListener) {
     if (registry == null) {
       this.providerRegistry = new DefaultProviderRegistry(providers, namedCacheFactory);
     } else {
@@ -54,11 +83,34 @@ public class DefaultCatsModule implements CatsModule {
       ((CatsModuleAware) agentScheduler).setCatsModule(this);
     }
 
-    view = new CompositeCache(providerRegistry.getProviderCaches());
+    Collection<Cache> providerCaches = providerRegistry.getProviderCaches();
+    view =
+        new CompositeCache(
+            providerCaches,
+            cacheNames(providerRegistry, providerCaches),
+            viewExecutor,
+            viewDeadlineMillis,
+            viewReadListener);
     this.executionInstrumentation = executionInstrumentation;
     new AgentController(providerRegistry, agentScheduler, executionInstrumentation);
   }
 
+  private static List<String> cacheNames(
+      ProviderRegistry providerRegistry, Collection<Cache> providerCaches) {
+    Map<Cache, String> names = new IdentityHashMap<>();
+    for (Provider provider : providerRegistry.getProviders()) {
+      names.putIfAbsent(
+          providerRegistry.getProviderCache(provider.getProviderName()),
+          provider.getProviderName());
+    }
+
+    List<String> cacheNames = new ArrayList<>(providerCaches.size());
+    for (Cache cache : providerCaches) {
+      cacheNames.add(names.getOrDefault(cache, "cache" + cacheNames.size()));
+    }
+    return cacheNames;
+  }
+
   public NamedCacheFactory getNamedCacheFactory() {
     return namedCacheFactory;
   }
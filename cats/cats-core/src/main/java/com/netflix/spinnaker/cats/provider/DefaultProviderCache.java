@@ -16,6 +16,7 @@
 
 package com.netflix.spinnaker.cats.provider;
 
+import com.netflix.spinnaker.cats.agent.CacheChangeSet;
 import com.netflix.spinnaker.cats.agent.CacheResult;
 import com.netflix.spinnaker.cats.cache.CacheData;
 import com.netflix.spinnaker.cats.cache.CacheFilter;
@@ -30,6 +31,9 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
 
 /**
  * An implementation of ProviderCache that writes through to a provided backing WriteableCache.
@@ -50,6 +54,12 @@ public class DefaultProviderCache implements ProviderCache {
 
   private final WriteableCache backingStore;
 
+  /**
+   * Relationship keys in the backing store are of the form {@code type:sourceAgentType}. There are
+   * only as many distinct keys as (relationship type, agent) pairs, so parse each one once.
+   */
+  private final ConcurrentMap<String, String> relationshipTypes = new ConcurrentHashMap<>();
+
   public DefaultProviderCache(WriteableCache backingStore) {
     this.backingStore = backingStore;
   }
@@ -85,6 +95,15 @@ public class DefaultProviderCache implements ProviderCache {
     return buildResponse(all);
   }
 
+  @Override
+  public Stream<CacheData> stream(String type, CacheFilter cacheFilter) {
+    validateTypes(type);
+    return backingStore
+        .stream(type, cacheFilter)
+        .filter(item -> !ALL_ID.equals(item.getId()))
+        .map(this::mergeRelationships);
+  }
+
   @Override
   public Collection<CacheData> getAll(String type, Collection<String> identifiers) {
     return getAll(type, identifiers, null);
@@ -133,18 +152,25 @@ public class DefaultProviderCache implements ProviderCache {
     Set<String> allTypes = new HashSet<>(cacheResult.getCacheResults().keySet());
     allTypes.addAll(authoritativeTypes);
     allTypes.addAll(cacheResult.getEvictions().keySet());
+    allTypes.addAll(cacheResult.getChangeSets().keySet());
     validateTypes(allTypes);
 
     Map<String, Collection<String>> evictions = new HashMap<>();
 
     for (String type : allTypes) {
       final Collection<String> previousSet;
-      if (authoritativeTypes.contains(type)) {
+      final CacheChangeSet changeSet = cacheResult.getChangeSets().get(type);
+      if (changeSet != null) {
+        // the agent has already worked out what changed, so write only the upserts and skip
+        // diffing against the stored _ALL_ membership
+        cacheDataType(type, sourceAgentType, changeSet.getUpserts(), changeSet.getAllIds());
+        previousSet = new HashSet<>(changeSet.getDeletes());
+      } else if (authoritativeTypes.contains(type)) {
         previousSet = getExistingSourceIdentifiers(type, sourceAgentType);
       } else {
         previousSet = new HashSet<>();
       }
-      if (cacheResult.getCacheResults().containsKey(type)) {
+      if (changeSet == null && cacheResult.getCacheResults().containsKey(type)) {
         cacheDataType(type, sourceAgentType, cacheResult.getCacheResults().get(type));
         for (CacheData data : cacheResult.getCacheResults().get(type)) {
           previousSet.remove(data.getId());
@@ -225,11 +251,23 @@ public class DefaultProviderCache implements ProviderCache {
 
   private void cacheDataType(String type, String sourceAgentType, Collection<CacheData> items) {
     Collection<String> idSet = new HashSet<>();
+    for (CacheData item : items) {
+      idSet.add(item.getId());
+    }
+    cacheDataType(type, sourceAgentType, items, idSet);
+  }
 
+  /**
+   * Stores items along with the _ALL_ membership of the source agent.
+   *
+   * @param idSet the ids of every item of the type cached by the agent, which may be a superset of
+   *     the ids of the items being stored
+   */
+  private void cacheDataType(
+      String type, String sourceAgentType, Collection<CacheData> items, Collection<String> idSet) {
     int ttlSeconds = -1;
     Collection<CacheData> toStore = new ArrayList<>(items.size() + 1);
     for (CacheData item : items) {
-      idSet.add(item.getId());
       toStore.add(uniqueifyRelationships(item, sourceAgentType));
 
       if (item.getTtlSeconds() > ttlSeconds) {
@@ -253,25 +291,77 @@ public class DefaultProviderCache implements ProviderCache {
   }
 
   private CacheData mergeRelationships(CacheData source) {
-    Map<String, Collection<String>> relationships = new HashMap<>(source.getRelationships().size());
-    for (Map.Entry<String, Collection<String>> entry : source.getRelationships().entrySet()) {
-      int idx = entry.getKey().indexOf(':');
-      if (idx == -1) {
-        throw new IllegalStateException("Expected delimiter in relationship key");
-      }
-      String type = entry.getKey().substring(0, idx);
-      Collection<String> values = relationships.get(type);
-      if (values == null) {
-        values = new HashSet<>();
-        relationships.put(type, values);
-      }
-      values.addAll(entry.getValue());
-    }
-    return new DefaultCacheData(source.getId(), source.getAttributes(), relationships);
+    return new MergedRelationshipsCacheData(source, this);
+  }
+
+  private String relationshipType(String relationshipKey) {
+    return relationshipTypes.computeIfAbsent(
+        relationshipKey,
+        key -> {
+          int idx = key.indexOf(':');
+          if (idx == -1) {
+            throw new IllegalStateException("Expected delimiter in relationship key");
+          }
+          return key.substring(0, idx);
+        });
   }
 
   @Override
   public void evictDeletedItems(String type, Collection<String> ids) {
     backingStore.evictAll(type, ids);
   }
+
+  /**
+   * A view of an item in the backing store that shares its id and attributes, and merges the
+   * per-agent relationships into a single relationship per type the first time they are read.
+   */
+  private static class MergedRelationshipsCacheData implements CacheData {
+    private final CacheData source;
+    private final DefaultProviderCache providerCache;
+    private volatile Map<String, Collection<String>> relationships;
+
+    MergedRelationshipsCacheData(CacheData source, DefaultProviderCache providerCache) {
+      this.source = source;
+      this.providerCache = providerCache;
+    }
+
+    @Override
+    public String getId() {
+      return source.getId();
+    }
+
+    @Override
+    public int getTtlSeconds() {
+      return source.getTtlSeconds();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+      return source.getAttributes();
+    }
+
+    @Override
+    public Map<String, Collection<String>> getRelationships() {
+      Map<String, Collection<String>> result = relationships;
+      if (result == null) {
+        result = merge();
+        relationships = result;
+      }
+      return result;
+    }
+
+    private Map<String, Collection<String>> merge() {
+      Map<String, Collection<String>> merged = new HashMap<>(source.getRelationships().size());
+      for (Map.Entry<String, Collection<String>> entry : source.getRelationships().entrySet()) {
+        String type = providerCache.relationshipType(entry.getKey());
+        Collection<String> values = merged.get(type);
+        if (values == null) {
+          values = new HashSet<>();
+          merged.put(type, values);
+        }
+        values.addAll(entry.getValue());
+      }
+      return merged;
+    }
+  }
 }
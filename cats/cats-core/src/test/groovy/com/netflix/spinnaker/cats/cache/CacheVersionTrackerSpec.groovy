@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.cats.cache
+
+import spock.lang.Specification
+
+import java.time.Duration
+
+class CacheVersionTrackerSpec extends Specification {
+  def versionStamps = new VersionStamps()
+  def tracker = new CacheVersionTracker(versionStamps, Duration.ofHours(1))
+  def listener = Mock(CacheVersionTracker.Listener)
+
+  def cleanup() {
+    tracker.close()
+  }
+
+  def "changes on this node are published without a listener"() {
+    when:
+    CacheWriteNotifier.notifier.itemsMerged("serverGroups", ["sg-1", "sg-2"])
+    CacheWriteNotifier.notifier.itemsEvicted("instances", ["i-1"])
+    tracker.sync()
+
+    then:
+    versionStamps.stored.keySet() == [
+      CacheVersionTracker.stamp("serverGroups", "sg-1"),
+      CacheVersionTracker.stamp("serverGroups", "sg-2"),
+      CacheVersionTracker.stamp("instances", "i-1")
+    ] as Set
+    versionStamps.reads == 0
+  }
+
+  def "listeners hear about the stamps changed by other nodes only"() {
+    given:
+    tracker.addListener(listener)
+    tracker.sync()
+    def local = CacheVersionTracker.stamp("serverGroups", "sg-1")
+    def remote = CacheVersionTracker.stamp("instances", "i-1")
+
+    when:
+    CacheWriteNotifier.notifier.itemsMerged("serverGroups", ["sg-1"])
+    tracker.sync()
+
+    then:
+    0 * listener.versionsChanged(_)
+
+    when:
+    versionStamps.increment([remote, local])
+    tracker.sync()
+
+    then:
+    1 * listener.versionsChanged([remote, local] as Set)
+
+    when:
+    CacheWriteNotifier.notifier.itemsMerged("serverGroups", ["sg-1"])
+    versionStamps.increment([remote])
+    tracker.sync()
+
+    then:
+    1 * listener.versionsChanged([remote] as Set)
+  }
+
+  def "every copy is out of date until the versions have first been read"() {
+    given:
+    tracker.addListener(listener)
+
+    when:
+    tracker.sync()
+    tracker.sync()
+
+    then:
+    1 * listener.allVersionsChanged()
+  }
+
+  def "stamps that failed to publish are retried with the next sync"() {
+    given:
+    versionStamps.failures = 1
+    CacheWriteNotifier.notifier.itemsMerged("serverGroups", ["sg-1"])
+
+    when:
+    tracker.sync()
+
+    then:
+    versionStamps.stored.isEmpty()
+
+    when:
+    tracker.sync()
+
+    then:
+    versionStamps.stored == [(CacheVersionTracker.stamp("serverGroups", "sg-1")): 1L]
+  }
+
+  private static class VersionStamps implements CacheVersionStamps {
+    Map<String, Long> stored = [:]
+    int reads = 0
+    int failures = 0
+
+    @Override
+    void increment(Collection<String> stamps) {
+      if (failures > 0) {
+        failures--
+        throw new IllegalStateException("unavailable")
+      }
+      stamps.each { stored[it] = (stored[it] ?: 0L) + 1 }
+    }
+
+    @Override
+    Map<String, Long> getVersions() {
+      reads++
+      return new HashMap<>(stored)
+    }
+  }
+}
@@ -18,6 +18,8 @@ package com.netflix.spinnaker.cats.cache
 
 import com.netflix.spinnaker.cats.mem.InMemoryCache
 
+import java.util.stream.Collectors
+
 class CompositeCacheSpec extends CacheSpec {
 
     WriteableCache c1
@@ -47,4 +49,24 @@ class CompositeCacheSpec extends CacheSpec {
         bar.attributes.c1Att == 'c1washere'
         bar.attributes.c2Att == 'c2washere'
     }
+
+    def "streamed items present in both caches are merged and returned once"() {
+        setup:
+        c1.merge('foo', createData('bar', [c1Att: 'c1washere'], [rel: ['a']]))
+        c1.merge('foo', createData('c1only'))
+        c2.merge('foo', createData('bar', [c2Att: 'c2washere'], [rel: ['b']]))
+        c2.merge('foo', createData('c2only'))
+
+        when:
+        def stream = cache.stream('foo')
+        def items = stream.collect(Collectors.toList())
+        stream.close()
+        def bar = items.find { it.id == 'bar' }
+
+        then:
+        items*.id.sort() == ['bar', 'c1only', 'c2only']
+        bar.attributes.c1Att == 'c1washere'
+        bar.attributes.c2Att == 'c2washere'
+        bar.relationships.rel as Set == ['a', 'b'] as Set
+    }
 }
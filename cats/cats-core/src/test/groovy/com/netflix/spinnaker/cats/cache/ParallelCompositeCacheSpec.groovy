@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.cats.cache
+
+import com.netflix.spinnaker.cats.mem.InMemoryCache
+import spock.lang.AutoCleanup
+import spock.lang.Shared
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class ParallelCompositeCacheSpec extends CompositeCacheSpec {
+
+    @Shared
+    @AutoCleanup("shutdownNow")
+    ExecutorService executor = Executors.newFixedThreadPool(4)
+
+    List<List> reads = [].asSynchronized()
+
+    @Override
+    Cache getSubject() {
+        c1 = new InMemoryCache()
+        c2 = new InMemoryCache()
+        new CompositeCache(Arrays.asList(c1, c2), ['c1', 'c2'], executor, 1000, listener())
+    }
+
+    def "reads of each cache are reported"() {
+        setup:
+        c1.merge('foo', createData('bar'))
+
+        when:
+        cache.getIdentifiers('foo')
+
+        then:
+        reads*.take(2) as Set == [['c1', 'getIdentifiers'], ['c2', 'getIdentifiers']] as Set
+    }
+
+    def "reads fail once a cache has not responded within the deadline"() {
+        setup:
+        def slow = Stub(Cache) {
+            getIdentifiers(_) >> { Thread.sleep(5000); ['slow'] }
+        }
+        def composite = new CompositeCache([new InMemoryCache(), slow], ['fast', 'slow'], executor, 100, listener())
+
+        when:
+        composite.getIdentifiers('foo')
+
+        then:
+        def e = thrown(CacheReadTimeoutException)
+        e.message.contains('slow')
+        reads.any { it[0] == 'slow' && it[3] }
+    }
+
+    def "reads are made in turn when the executor has no room for them"() {
+        setup:
+        def full = Executors.newSingleThreadExecutor()
+        full.shutdown()
+        def c3 = new InMemoryCache()
+        c3.merge('foo', createData('baz'))
+        def composite = new CompositeCache([c1, c2, c3], ['c1', 'c2', 'c3'], full, 1000, listener())
+        c1.merge('foo', createData('bar'))
+
+        expect:
+        composite.getIdentifiers('foo') as Set == ['bar', 'baz'] as Set
+        reads*.take(2) == [['c1', 'getIdentifiers'], ['c2', 'getIdentifiers'], ['c3', 'getIdentifiers']]
+    }
+
+    def "a failed read cancels the reads still in flight"() {
+        setup:
+        def started = new CountDownLatch(1)
+        def interrupted = new CountDownLatch(1)
+        def failing = Stub(Cache) {
+            getIdentifiers(_) >> { started.await(1, TimeUnit.SECONDS); throw new IllegalStateException('boom') }
+        }
+        def slow = Stub(Cache) {
+            getIdentifiers(_) >> {
+                started.countDown()
+                try {
+                    Thread.sleep(5000)
+                } catch (InterruptedException e) {
+                    interrupted.countDown()
+                }
+                ['slow']
+            }
+        }
+        def composite = new CompositeCache([new InMemoryCache(), failing, slow], ['fast', 'failing', 'slow'], executor, 10000, null)
+
+        when:
+        composite.getIdentifiers('foo')
+
+        then:
+        def e = thrown(IllegalStateException)
+        e.message == 'boom'
+        interrupted.await(1, TimeUnit.SECONDS)
+    }
+
+    private CompositeCache.ReadListener listener() {
+        return { String cacheName, String operation, long elapsedNanos, boolean timedOut ->
+            reads << [cacheName, operation, elapsedNanos, timedOut]
+        } as CompositeCache.ReadListener
+    }
+}
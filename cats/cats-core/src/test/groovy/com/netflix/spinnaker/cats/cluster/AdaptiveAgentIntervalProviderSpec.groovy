@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.cats.cluster
+
+import com.netflix.spinnaker.cats.agent.CachingAgent
+import com.netflix.spinnaker.cats.agent.DefaultCacheResult
+import com.netflix.spinnaker.cats.cache.DefaultCacheData
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Unroll
+
+class AdaptiveAgentIntervalProviderSpec extends Specification {
+
+  def history = new AgentChangeHistory()
+  def agent = Stub(CachingAgent) {
+    getAgentType() >> 'test/TestAgent'
+  }
+
+  @Subject
+  def provider = new AdaptiveAgentIntervalProvider(new DefaultAgentIntervalProvider(60000, 120000), history, 2, 2.0, 30000, 300000)
+
+  @Unroll
+  def 'interval is #expected after #unchanged unchanged runs'() {
+    given:
+    (unchanged + 1).times { history.record(agent.agentType, result('a')) }
+
+    expect:
+    provider.getInterval(agent).interval == expected
+    provider.getInterval(agent).timeout == 120000
+
+    where:
+    unchanged || expected
+    0         || 60000
+    1         || 60000
+    2         || 120000
+    3         || 240000
+    4         || 300000
+  }
+
+  def 'interval is restored once results change and tightened while they keep changing'() {
+    given:
+    4.times { history.record(agent.agentType, result('a')) }
+
+    when:
+    history.record(agent.agentType, result('b'))
+
+    then:
+    provider.getInterval(agent).interval == 60000
+
+    when:
+    history.record(agent.agentType, result('c'))
+
+    then:
+    provider.getInterval(agent).interval == 30000
+  }
+
+  private static DefaultCacheResult result(String value) {
+    new DefaultCacheResult([things: [new DefaultCacheData('thing', [value: value], [:])]])
+  }
+}
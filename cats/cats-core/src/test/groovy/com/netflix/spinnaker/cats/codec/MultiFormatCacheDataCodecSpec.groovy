@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.codec
+
+import com.fasterxml.jackson.core.type.TypeReference
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.netflix.spinnaker.cats.cache.DefaultCacheData
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class MultiFormatCacheDataCodecSpec extends Specification {
+
+  static final TypeReference<Map<String, Object>> ATTRIBUTES = new TypeReference<Map<String, Object>>() {}
+
+  def mapper = new ObjectMapper()
+
+  @Unroll
+  def 'should decode #readFormat payloads written as #writeFormat'() {
+    given:
+    def writer = MultiFormatCacheDataCodec.forFormat(writeFormat, mapper)
+    def reader = MultiFormatCacheDataCodec.forFormat(readFormat, mapper)
+    def attributes = [name: 'i-1234', tags: ['a', 'b'], nested: [count: 3, enabled: true]]
+
+    when:
+    def payload = writer.encode(attributes)
+
+    then:
+    reader.decode(payload, ATTRIBUTES) == attributes
+
+    where:
+    writeFormat | readFormat
+    'json'      | 'json'
+    'json'      | 'smile'
+    'smile'     | 'json'
+    'smile'     | 'smile'
+  }
+
+  def 'should round trip cache data bodies'() {
+    given:
+    def codec = MultiFormatCacheDataCodec.forFormat('smile', mapper)
+    def data = new DefaultCacheData('id', [a: 'b'], [instances: ['aws:instances:test:us-east-1:i-1']])
+
+    when:
+    def decoded = codec.decode(codec.encode(data), DefaultCacheData)
+
+    then:
+    decoded.id == data.id
+    decoded.attributes == data.attributes
+    decoded.relationships == data.relationships
+  }
+
+  def 'smile payloads are raw binary and json payloads are utf-8 text'() {
+    given:
+    def smile = MultiFormatCacheDataCodec.forFormat('smile', mapper)
+    def json = MultiFormatCacheDataCodec.forFormat('json', mapper)
+
+    expect:
+    smile.binary
+    !json.binary
+    smile.encode([a: 'b'])[0..2] == SmileCacheDataCodec.HEADER as List
+    new String(json.encode([a: 'b']), 'UTF-8') == '{"a":"b"}'
+  }
+
+  def 'smile payloads are smaller than json payloads'() {
+    given:
+    def data = new DefaultCacheData(
+      'aws:instances:test:us-east-1:i-1',
+      [name: 'i-1', account: 'test', region: 'us-east-1'],
+      [serverGroups: (1..20).collect { "aws:serverGroups:app-main:test:us-east-1:app-main-v00$it" }]
+    )
+
+    expect:
+    MultiFormatCacheDataCodec.forFormat('smile', mapper).encode(data).length <
+      MultiFormatCacheDataCodec.forFormat('json', mapper).encode(data).length
+  }
+
+  @Unroll
+  def 'streamed #format payloads have the bytes of the encoded payload'() {
+    given:
+    def codec = MultiFormatCacheDataCodec.forFormat(format, mapper)
+    def data = new DefaultCacheData('id', [name: 'caf\u00e9 \ud83d\ude00'], [:])
+    def out = new ByteArrayOutputStream()
+
+    when:
+    codec.encode(data, out)
+
+    then:
+    out.toByteArray() == codec.encode(data)
+
+    where:
+    format << ['json', 'smile']
+  }
+
+  def 'should reject unknown formats'() {
+    when:
+    MultiFormatCacheDataCodec.forFormat('xml', mapper)
+
+    then:
+    thrown(IllegalArgumentException)
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.compression
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.charset.StandardCharsets
+
+class FramedCompressionSpec extends Specification {
+
+  static final String DATA = '{"name":"i-1234",\n"tags":["a","b"]}\n' * 20
+
+  @Unroll
+  def '#frame should compress and decompress values'() {
+    when:
+    def result = subject.compress(DATA)
+
+    then:
+    result.startsWith("~${frame}:")
+    result.length() < DATA.length()
+    subject.decompress(result) == DATA
+    subject.decompress(subject.compress(DATA.getBytes(StandardCharsets.UTF_8))) == DATA.getBytes(StandardCharsets.UTF_8)
+
+    where:
+    subject                           || frame
+    new Lz4Compression(16, true)      || 'lz4'
+    new ZstdCompression(16, true)     || 'zstd'
+  }
+
+  @Unroll
+  def '#subject.class.simpleName should leave small values uncompressed'() {
+    expect:
+    subject.compress('a') == 'a'
+    subject.decompress('a') == 'a'
+
+    where:
+    subject << [new Lz4Compression(16, true), new ZstdCompression(16, true)]
+  }
+
+  @Unroll
+  def '#subject.class.simpleName should read gzip compressed values'() {
+    given:
+    def gzipped = new GZipCompression(16, true).compress(DATA)
+
+    expect:
+    subject.decompress(gzipped) == DATA
+
+    where:
+    subject << [new Lz4Compression(16, true), new ZstdCompression(16, true)]
+  }
+
+  def 'zstd dictionaries are identified in the value header'() {
+    given:
+    def samples = (0..1000).collect { """{"name":"i-${it}","account":"test","region":"us-east-1"}""".toString() }
+    def dictionary = ZstdCompression.trainDictionary(samples, 4096)
+    def replacement = ZstdCompression.trainDictionary(samples.reverse(), 2048)
+    def subject = new ZstdCompression(16, true, ZstdCompression.DEFAULT_LEVEL, [dictionary])
+    def rotated = new ZstdCompression(16, true, ZstdCompression.DEFAULT_LEVEL, [replacement, dictionary])
+
+    when:
+    def result = subject.compress(samples[0])
+
+    then:
+    result.startsWith('~zstd.')
+    subject.decompress(result) == samples[0]
+    rotated.decompress(result) == samples[0]
+    new ZstdCompression(16, true).decompress(result) == result
+  }
+}
@@ -40,4 +40,13 @@ class GZipCompressionStrategySpec extends Specification {
     'foo bar baz' || true
     'a'           || false
   }
+
+  def 'should preserve line breaks'() {
+    given:
+    def subject = new GZipCompression(0, true)
+    def data = 'line one\nline two\r\n\n'
+
+    expect:
+    subject.decompress(subject.compress(data)) == data
+  }
 }
@@ -147,4 +147,26 @@ class GlobSpec extends Specification {
         matches = expected ? 'matches' : 'does not match'
     }
 
+    @Unroll("literal bounds: #globString")
+    def 'literal prefix and suffix tests'() {
+        setup:
+        glob = new InMemoryCache.Glob(globString)
+
+        expect:
+        glob.literalPrefix == prefix
+        glob.literalSuffix == suffix
+        glob.literal == literal
+
+        where:
+        globString             | prefix                | suffix            | literal
+        'foo'                  | 'foo'                 | 'foo'             | true
+        'fo\\*'                | 'fo*'                 | 'fo*'             | true
+        'aws:instances:acct:*' | 'aws:instances:acct:' | ''                | false
+        '*:acct'               | ''                    | ':acct'           | false
+        'aws:*:acct:us-east-1' | 'aws:'                | ':acct:us-east-1' | false
+        'f[aeo]o'              | 'f'                   | 'o'               | false
+        'f?o'                  | 'f'                   | 'o'               | false
+        'dontcare[\\'          | 'dontcare'            | ''                | false
+    }
+
 }
@@ -18,10 +18,81 @@ package com.netflix.spinnaker.cats.mem
 
 import com.netflix.spinnaker.cats.cache.WriteableCacheSpec
 
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
 class InMemoryCacheSpec extends WriteableCacheSpec {
 
     @Override
     InMemoryCache getSubject() {
         new InMemoryCache()
     }
+
+    def 'filterIdentifiers does not return evicted identifiers'() {
+        setup:
+        ['aws:instances:test:us-east-1:i-1', 'aws:instances:test:us-east-1:i-2', 'aws:instances:prod:us-east-1:i-3'].each {
+            cache.merge('instances', createData(it))
+        }
+
+        when:
+        cache.evict('instances', 'aws:instances:test:us-east-1:i-1')
+
+        then:
+        cache.filterIdentifiers('instances', 'aws:instances:test:*') as Set == ['aws:instances:test:us-east-1:i-2'] as Set
+        cache.filterIdentifiers('instances', '*:us-east-1:*') as Set == ['aws:instances:test:us-east-1:i-2', 'aws:instances:prod:us-east-1:i-3'] as Set
+        cache.filterIdentifiers('instances', 'aws:instances:test:us-east-1:i-1').isEmpty()
+    }
+
+    def 'changes to the attributes of returned items do not affect the cache'() {
+        setup:
+        cache.merge('foo', createData('bar', [att1: 'val1'], [rel1: ['abc']]))
+
+        when:
+        def bar = cache.get('foo', 'bar')
+        bar.attributes.put('att2', 'val2')
+        bar.attributes.remove('att1')
+
+        then:
+        bar.attributes == [att2: 'val2']
+        cache.get('foo', 'bar').attributes == [att1: 'val1']
+
+        when:
+        cache.merge('foo', createData('bar', [att1: 'val2']))
+
+        then:
+        cache.get('foo', 'bar').attributes == [att1: 'val2']
+        cache.get('foo', 'bar').relationships.rel1 == ['abc']
+    }
+
+    def 'filterIdentifiers stays consistent with concurrent merges and evictions'() {
+        setup:
+        def ids = (1..20).collect { "aws:instances:test:us-east-1:i-$it".toString() }
+        def executor = Executors.newFixedThreadPool(4)
+        def start = new CountDownLatch(1)
+
+        when:
+        def tasks = (1..4).collect { worker ->
+            executor.submit {
+                start.await()
+                def random = new Random(worker)
+                1000.times {
+                    def id = ids[random.nextInt(ids.size())]
+                    if (worker % 2) {
+                        cache.merge('instances', createData(id))
+                    } else {
+                        cache.evictAll('instances', [id])
+                    }
+                }
+            }
+        }
+        start.countDown()
+        tasks*.get(30, TimeUnit.SECONDS)
+
+        then:
+        cache.filterIdentifiers('instances', 'aws:instances:test:*') as Set == cache.getIdentifiers('instances') as Set
+
+        cleanup:
+        executor.shutdownNow()
+    }
 }
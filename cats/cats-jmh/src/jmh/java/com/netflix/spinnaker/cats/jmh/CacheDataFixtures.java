@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.cats.jmh;
+
+import com.netflix.spinnaker.cats.cache.CacheData;
+import com.netflix.spinnaker.cats.cache.DefaultCacheData;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates synthetic CacheData shaped like the keys written by the AWS caching agents, so that
+ * glob and relationship heavy code paths see realistic input.
+ */
+final class CacheDataFixtures {
+  static final String INSTANCES = "instances";
+  static final String SERVER_GROUPS = "serverGroups";
+  static final String LOAD_BALANCERS = "loadBalancers";
+
+  static final int ACCOUNTS = 4;
+  static final String[] REGIONS = {"us-east-1", "us-west-2", "eu-west-1"};
+
+  private CacheDataFixtures() {}
+
+  static String instanceKey(int i) {
+    return String.join(
+        ":", "aws", INSTANCES, account(i), REGIONS[i % REGIONS.length], "i-" + Integer.toHexString(i));
+  }
+
+  static String serverGroupKey(int i) {
+    return String.join(
+        ":",
+        "aws",
+        SERVER_GROUPS,
+        "app" + (i % 50) + "-main",
+        account(i),
+        REGIONS[i % REGIONS.length],
+        "app" + (i % 50) + "-main-v" + String.format("%03d", i % 1000));
+  }
+
+  static String loadBalancerKey(int i) {
+    return String.join(
+        ":", "aws", LOAD_BALANCERS, account(i), REGIONS[i % REGIONS.length], "lb-" + i);
+  }
+
+  static String account(int i) {
+    return "account" + (i % ACCOUNTS);
+  }
+
+  /**
+   * @param itemCount number of items to generate
+   * @param fanOut number of ids per relationship type
+   * @param attributeSize approximate size (in characters) of the attribute payload per item
+   */
+  static List<CacheData> instances(int itemCount, int fanOut, int attributeSize) {
+    List<CacheData> items = new ArrayList<>(itemCount);
+    for (int i = 0; i < itemCount; i++) {
+      items.add(instance(i, fanOut, attributeSize));
+    }
+    return items;
+  }
+
+  static CacheData instance(int i, int fanOut, int attributeSize) {
+    Map<String, Collection<String>> relationships = new HashMap<>();
+    List<String> serverGroups = new ArrayList<>(fanOut);
+    List<String> loadBalancers = new ArrayList<>(fanOut);
+    for (int r = 0; r < fanOut; r++) {
+      serverGroups.add(serverGroupKey(i + r));
+      loadBalancers.add(loadBalancerKey(i + r));
+    }
+    relationships.put(SERVER_GROUPS, serverGroups);
+    relationships.put(LOAD_BALANCERS, loadBalancers);
+
+    return new DefaultCacheData(instanceKey(i), attributes(i, attributeSize), relationships);
+  }
+
+  static Map<String, Object> attributes(int i, int attributeSize) {
+    Map<String, Object> attributes = new HashMap<>();
+    attributes.put("name", "i-" + Integer.toHexString(i));
+    attributes.put("account", account(i));
+    attributes.put("region", REGIONS[i % REGIONS.length]);
+    attributes.put("launchTime", 1500000000000L + i);
+
+    StringBuilder payload = new StringBuilder(attributeSize);
+    while (payload.length() < attributeSize) {
+      payload.append("abcdefghijklmnopqrstuvwxyz0123456789");
+    }
+    payload.setLength(attributeSize);
+    attributes.put("payload", payload.toString());
+    return attributes;
+  }
+
+  static List<String> ids(Collection<CacheData> items) {
+    List<String> ids = new ArrayList<>(items.size());
+    for (CacheData item : items) {
+      ids.add(item.getId());
+    }
+    return ids;
+  }
+}
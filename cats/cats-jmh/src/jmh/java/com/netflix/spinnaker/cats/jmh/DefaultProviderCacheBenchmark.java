@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.cats.jmh;
+
+import static com.netflix.spinnaker.cats.jmh.CacheDataFixtures.INSTANCES;
+
+import com.netflix.spinnaker.cats.agent.CacheResult;
+import com.netflix.spinnaker.cats.agent.DefaultCacheResult;
+import com.netflix.spinnaker.cats.cache.CacheData;
+import com.netflix.spinnaker.cats.mem.InMemoryCache;
+import com.netflix.spinnaker.cats.provider.DefaultProviderCache;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the provider cache layer on top of an {@link InMemoryCache}. Relationship merging is
+ * private to {@link DefaultProviderCache} and is exercised through {@code getAll}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DefaultProviderCacheBenchmark {
+  private static final String AGENT = "benchmark/InstanceCachingAgent";
+
+  @Param({"1000", "50000"})
+  public int itemCount;
+
+  @Param({"1", "10"})
+  public int fanOut;
+
+  @Param({"64", "4096"})
+  public int attributeSize;
+
+  private CacheResult cacheResult;
+  private DefaultProviderCache populated;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    List<CacheData> items = CacheDataFixtures.instances(itemCount, fanOut, attributeSize);
+    cacheResult = new DefaultCacheResult(Collections.singletonMap(INSTANCES, items));
+
+    populated = new DefaultProviderCache(new InMemoryCache());
+    populated.putCacheResult(AGENT, Collections.singleton(INSTANCES), cacheResult);
+  }
+
+  @Benchmark
+  public DefaultProviderCache putCacheResultInitial() {
+    DefaultProviderCache cache = new DefaultProviderCache(new InMemoryCache());
+    cache.putCacheResult(AGENT, Collections.singleton(INSTANCES), cacheResult);
+    return cache;
+  }
+
+  @Benchmark
+  public DefaultProviderCache putCacheResultUnchanged() {
+    populated.putCacheResult(AGENT, Collections.singleton(INSTANCES), cacheResult);
+    return populated;
+  }
+
+  @Benchmark
+  public Collection<CacheData> mergeRelationships() {
+    return populated.getAll(INSTANCES);
+  }
+}
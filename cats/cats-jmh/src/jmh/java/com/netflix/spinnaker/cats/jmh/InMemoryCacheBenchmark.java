@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.cats.jmh;
+
+import static com.netflix.spinnaker.cats.jmh.CacheDataFixtures.INSTANCES;
+
+import com.netflix.spinnaker.cats.cache.CacheData;
+import com.netflix.spinnaker.cats.mem.InMemoryCache;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class InMemoryCacheBenchmark {
+
+  @Param({"1000", "50000"})
+  public int itemCount;
+
+  @Param({"1", "10"})
+  public int fanOut;
+
+  @Param({"64", "4096"})
+  public int attributeSize;
+
+  private List<CacheData> items;
+  private InMemoryCache cache;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    items = CacheDataFixtures.instances(itemCount, fanOut, attributeSize);
+    cache = new InMemoryCache();
+    cache.mergeAll(INSTANCES, items);
+  }
+
+  @Benchmark
+  public InMemoryCache merge() {
+    InMemoryCache target = new InMemoryCache();
+    target.mergeAll(INSTANCES, items);
+    return target;
+  }
+
+  @Benchmark
+  public Collection<CacheData> getAll() {
+    return cache.getAll(INSTANCES);
+  }
+
+  @Benchmark
+  public Collection<String> filterIdentifiersLiteralPrefix() {
+    return cache.filterIdentifiers(INSTANCES, "aws:instances:account1:us-east-1:*");
+  }
+
+  @Benchmark
+  public Collection<String> filterIdentifiersSegmentWildcard() {
+    return cache.filterIdentifiers(INSTANCES, "aws:instances:*:us-west-2:*");
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.cats.jmh;
+
+import static com.netflix.spinnaker.cats.jmh.CacheDataFixtures.INSTANCES;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.spinnaker.cats.cache.CacheData;
+import com.netflix.spinnaker.cats.redis.cache.RedisCache;
+import com.netflix.spinnaker.cats.redis.cache.RedisCacheOptions;
+import com.netflix.spinnaker.kork.jedis.EmbeddedRedis;
+import com.netflix.spinnaker.kork.jedis.JedisClientDelegate;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Measures {@code RedisCache.mergeItems} and {@code RedisCache.getItems} (through {@code mergeAll}
+ * and {@code getAll}) against an embedded redis server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RedisCacheBenchmark {
+
+  @Param({"1000", "10000"})
+  public int itemCount;
+
+  @Param({"1", "10"})
+  public int fanOut;
+
+  @Param({"64", "4096"})
+  public int attributeSize;
+
+  @Param({"true", "false"})
+  public boolean hashing;
+
+  private EmbeddedRedis embeddedRedis;
+  private RedisCache cache;
+  private List<CacheData> items;
+  private List<String> ids;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    embeddedRedis = EmbeddedRedis.embed();
+    JedisPool pool = (JedisPool) embeddedRedis.getPool();
+    try (Jedis jedis = pool.getResource()) {
+      jedis.flushAll();
+    }
+
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    cache =
+        new RedisCache(
+            "jmh",
+            new JedisClientDelegate(pool),
+            mapper,
+            RedisCacheOptions.builder().hashing(hashing).build(),
+            null);
+
+    items = CacheDataFixtures.instances(itemCount, fanOut, attributeSize);
+    ids = CacheDataFixtures.ids(items);
+    cache.mergeAll(INSTANCES, items);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    cache.close();
+    embeddedRedis.destroy();
+  }
+
+  /** With hashing enabled this is the steady state of an agent whose data has not changed. */
+  @Benchmark
+  public RedisCache mergeItems() {
+    cache.mergeAll(INSTANCES, items);
+    return cache;
+  }
+
+  @Benchmark
+  public Collection<CacheData> getItems() {
+    return cache.getAll(INSTANCES, ids);
+  }
+
+  @Benchmark
+  public Collection<String> filterIdentifiers() {
+    return cache.filterIdentifiers(INSTANCES, "aws:instances:account1:us-east-1:*");
+  }
+}
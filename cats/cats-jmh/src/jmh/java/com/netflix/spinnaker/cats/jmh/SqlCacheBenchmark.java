@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.cats.jmh;
+
+import static com.netflix.spinnaker.cats.jmh.CacheDataFixtures.INSTANCES;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.spinnaker.cats.cache.CacheData;
+import com.netflix.spinnaker.cats.sql.cache.NoopCacheMetrics;
+import com.netflix.spinnaker.cats.sql.cache.SqlCache;
+import com.netflix.spinnaker.config.SqlConstraints;
+import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService;
+import com.netflix.spinnaker.kork.sql.config.RetryProperties;
+import com.netflix.spinnaker.kork.sql.config.SqlRetryProperties;
+import com.netflix.spinnaker.kork.sql.test.SqlTestUtil;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures {@link SqlCache#mergeAll} and {@link SqlCache#getAll} against a MySQL test container,
+ * matching the database used by {@code SqlCacheSpec}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SqlCacheBenchmark {
+  private static final String AGENT = "benchmark/InstanceCachingAgent";
+
+  @Param({"1000", "10000"})
+  public int itemCount;
+
+  @Param({"1", "10"})
+  public int fanOut;
+
+  @Param({"64", "4096"})
+  public int attributeSize;
+
+  private SqlTestUtil.TestDatabase database;
+  private SqlCache cache;
+  private List<CacheData> items;
+  private List<String> ids;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    database = SqlTestUtil.initTcMysqlDatabase();
+
+    cache =
+        new SqlCache(
+            "jmh",
+            database.context,
+            new ObjectMapper(),
+            null,
+            Clock.systemDefaultZone(),
+            new SqlRetryProperties(new RetryProperties(1, 10), new RetryProperties(1, 10)),
+            "jmh",
+            new NoopCacheMetrics(),
+            DynamicConfigService.NOOP,
+            new SqlConstraints());
+
+    items = CacheDataFixtures.instances(itemCount, fanOut, attributeSize);
+    ids = CacheDataFixtures.ids(items);
+    cache.mergeAll(INSTANCES, AGENT, new ArrayList<>(items), true, true);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    SqlTestUtil.cleanupDb(database.context);
+    database.dataSource.close();
+  }
+
+  /** Every body hash matches what is already stored, so this is the unchanged-agent case. */
+  @Benchmark
+  public SqlCache mergeAll() {
+    cache.mergeAll(INSTANCES, AGENT, new ArrayList<>(items), true, true);
+    return cache;
+  }
+
+  @Benchmark
+  public Collection<CacheData> getAll() {
+    return cache.getAll(INSTANCES);
+  }
+
+  @Benchmark
+  public Collection<CacheData> getAllByIds() {
+    return cache.getAll(INSTANCES, ids);
+  }
+}
@@ -17,13 +17,22 @@ package com.netflix.spinnaker.cats.redis.cache;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterables;
 import com.netflix.spinnaker.cats.cache.CacheData;
 import com.netflix.spinnaker.cats.cache.CacheFilter;
+import com.netflix.spinnaker.cats.cache.CacheWriteNotifier;
 import com.netflix.spinnaker.cats.cache.WriteableCache;
+import com.netflix.spinnaker.cats.codec.CacheDataCodec;
+import com.netflix.spinnaker.cats.codec.MultiFormatCacheDataCodec;
 import com.netflix.spinnaker.kork.jedis.RedisClientDelegate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Response;
@@ -40,12 +49,22 @@ public abstract class AbstractRedisCache implements WriteableCache {
   protected static final TypeReference<Map<String, Object>> ATTRIBUTES =
       new TypeReference<Map<String, Object>>() {};
 
+  /**
+   * Upper bound on how long a relationship catalog is trusted without a version change, in case
+   * relationship names are added by a writer that does not bump the version.
+   */
+  private static final long RELATIONSHIP_CATALOG_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
   private final Logger log = LoggerFactory.getLogger(getClass());
 
+  private final ConcurrentMap<String, RelationshipCatalog> relationshipCatalogs =
+      new ConcurrentHashMap<>();
+
   protected final String prefix;
   protected final RedisClientDelegate redisClientDelegate;
   protected final ObjectMapper objectMapper;
   protected final RedisCacheOptions options;
+  protected final CacheDataCodec codec;
 
   protected AbstractRedisCache(
       String prefix,
@@ -56,9 +75,11 @@ public abstract class AbstractRedisCache implements WriteableCache {
     this.redisClientDelegate = redisClientDelegate;
     this.objectMapper = objectMapper;
     this.options = options;
+    this.codec = MultiFormatCacheDataCodec.forFormat(options.getCacheDataFormat(), objectMapper);
   }
 
-  protected abstract void mergeItems(String type, Collection<CacheData> items);
+  /** @return the ids of the items whose stored values changed */
+  protected abstract Collection<String> mergeItems(String type, Collection<CacheData> items);
 
   protected abstract void evictItems(
       String type, List<String> identifiers, Collection<String> allRelationships);
@@ -73,9 +94,11 @@ public abstract class AbstractRedisCache implements WriteableCache {
 
   @Override
   public void mergeAll(String type, Collection<CacheData> items) {
+    List<String> changed = new ArrayList<>();
     for (List<CacheData> partition : Iterables.partition(items, options.getMaxMergeBatchSize())) {
-      mergeItems(type, partition);
+      changed.addAll(mergeItems(type, partition));
     }
+    CacheWriteNotifier.getNotifier().itemsMerged(type, changed);
   }
 
   @Override
@@ -88,11 +111,12 @@ public abstract class AbstractRedisCache implements WriteableCache {
     if (identifiers.isEmpty()) {
       return;
     }
-    final Collection<String> allRelationships = scanMembers(allRelationshipsId(type));
+    final Collection<String> allRelationships = getRelationshipCatalog(type);
     for (List<String> items :
         Iterables.partition(new HashSet<>(identifiers), options.getMaxEvictBatchSize())) {
       evictItems(type, items, allRelationships);
     }
+    CacheWriteNotifier.getNotifier().itemsEvicted(type, identifiers);
   }
 
   @Override
@@ -154,14 +178,7 @@ public abstract class AbstractRedisCache implements WriteableCache {
       return new ArrayList<>();
     }
     Collection<String> ids = new LinkedHashSet<>(identifiers);
-    final List<String> knownRels;
-    Set<String> allRelationships = scanMembers(allRelationshipsId(type));
-    if (cacheFilter == null) {
-      knownRels = new ArrayList<>(allRelationships);
-    } else {
-      knownRels =
-          new ArrayList<>(cacheFilter.filter(CacheFilter.Type.RELATIONSHIP, allRelationships));
-    }
+    final List<String> knownRels = getKnownRelationships(type, cacheFilter);
 
     Collection<CacheData> result = new ArrayList<>(ids.size());
 
@@ -172,6 +189,65 @@ public abstract class AbstractRedisCache implements WriteableCache {
     return result;
   }
 
+  /**
+   * Streams the members of the type with a cursor driven SSCAN, fetching items in batches of {@link
+   * RedisCacheOptions#getMaxGetBatchSize()} as the stream is consumed.
+   *
+   * <p>SSCAN may return a member more than once if the set is rehashed during the scan, so the ids
+   * already returned are tracked; the items themselves are not retained.
+   */
+  @Override
+  public Stream<CacheData> stream(String type, CacheFilter cacheFilter) {
+    final List<String> knownRels = getKnownRelationships(type, cacheFilter);
+    final String setKey = allOfTypeId(type);
+    final Set<String> seen = new HashSet<>();
+
+    Iterator<CacheData> items =
+        new AbstractIterator<CacheData>() {
+          private final ScanParams scanParams = new ScanParams().count(options.getScanSize());
+          private final Deque<String> pendingIds = new ArrayDeque<>();
+          private Iterator<CacheData> batch = Collections.emptyIterator();
+          private String cursor = "0";
+          private boolean scanComplete = false;
+
+          @Override
+          protected CacheData computeNext() {
+            while (!batch.hasNext()) {
+              while (!scanComplete && pendingIds.size() < options.getMaxGetBatchSize()) {
+                scanPage();
+              }
+              if (pendingIds.isEmpty()) {
+                return endOfData();
+              }
+
+              List<String> ids = new ArrayList<>(options.getMaxGetBatchSize());
+              while (!pendingIds.isEmpty() && ids.size() < options.getMaxGetBatchSize()) {
+                ids.add(pendingIds.poll());
+              }
+              batch = getItems(type, ids, knownRels).iterator();
+            }
+            return batch.next();
+          }
+
+          private void scanPage() {
+            ScanResult<String> scanResult =
+                redisClientDelegate.withCommandsClient(
+                    client -> client.sscan(setKey, cursor, scanParams));
+            for (String id : scanResult.getResult()) {
+              if (seen.add(id)) {
+                pendingIds.add(id);
+              }
+            }
+            cursor = scanResult.getCursor();
+            scanComplete = "0".equals(cursor);
+          }
+        };
+
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(items, Spliterator.ORDERED | Spliterator.NONNULL),
+        false);
+  }
+
   @Override
   public Collection<String> getIdentifiers(String type) {
     return scanMembers(allOfTypeId(type));
@@ -182,6 +258,51 @@ public abstract class AbstractRedisCache implements WriteableCache {
     return scanMembers(allOfTypeId(type), Optional.of(glob));
   }
 
+  private List<String> getKnownRelationships(String type, CacheFilter cacheFilter) {
+    Set<String> allRelationships = getRelationshipCatalog(type);
+    if (cacheFilter == null) {
+      return new ArrayList<>(allRelationships);
+    }
+    return new ArrayList<>(cacheFilter.filter(CacheFilter.Type.RELATIONSHIP, allRelationships));
+  }
+
+  /**
+   * Returns the relationship names known for a type, rescanning the relationship set only when its
+   * version has been bumped since the last scan.
+   *
+   * <p>The version is read before scanning, so names added during a scan bump the version past the
+   * one cached and are picked up by the next read.
+   */
+  protected Set<String> getRelationshipCatalog(String type) {
+    final String version =
+        redisClientDelegate.withCommandsClient(
+            client -> {
+              return client.get(relationshipsVersionId(type));
+            });
+    final long now = System.currentTimeMillis();
+
+    RelationshipCatalog catalog = relationshipCatalogs.get(type);
+    if (catalog != null
+        && Objects.equals(catalog.version, version)
+        && now - catalog.loadedAt < RELATIONSHIP_CATALOG_MAX_AGE_MILLIS) {
+      return catalog.relationships;
+    }
+
+    catalog =
+        new RelationshipCatalog(
+            version, Collections.unmodifiableSet(scanMembers(allRelationshipsId(type))), now);
+    relationshipCatalogs.put(type, catalog);
+    return catalog.relationships;
+  }
+
+  /** Invalidates the relationship catalog of a type after new relationship names were added. */
+  protected void relationshipCatalogChanged(String type) {
+    redisClientDelegate.withCommandsClient(
+        client -> {
+          client.incr(relationshipsVersionId(type));
+        });
+  }
+
   private Set<String> scanMembers(String setKey) {
     return scanMembers(setKey, Optional.empty());
   }
@@ -222,10 +343,14 @@ public abstract class AbstractRedisCache implements WriteableCache {
     return String.join(":", prefix, type, "relationships", id, relationship);
   }
 
-  private String hashesDisabled(String type) {
+  protected String hashesDisabled(String type) {
     return String.join(":", prefix, type, "hashes.disabled");
   }
 
+  protected String relationshipsVersionId(String type) {
+    return String.join(":", prefix, type, "relationships.version");
+  }
+
   protected String allRelationshipsId(String type) {
     return String.join(":", prefix, type, "relationships");
   }
@@ -237,4 +362,16 @@ public abstract class AbstractRedisCache implements WriteableCache {
   protected TypeReference<? extends Collection<String>> getRelationshipsTypeReference() {
     return options.isTreatRelationshipsAsSet() ? RELATIONSHIPS_SET : RELATIONSHIPS_LIST;
   }
+
+  private static class RelationshipCatalog {
+    private final String version;
+    private final Set<String> relationships;
+    private final long loadedAt;
+
+    RelationshipCatalog(String version, Set<String> relationships, long loadedAt) {
+      this.version = version;
+      this.relationships = relationships;
+      this.loadedAt = loadedAt;
+    }
+  }
 }
@@ -15,15 +15,16 @@
  */
 package com.netflix.spinnaker.cats.redis.cache;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.spinnaker.cats.cache.CacheData;
 import com.netflix.spinnaker.cats.cache.DefaultCacheData;
 import com.netflix.spinnaker.kork.jedis.RedisClientDelegate;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -32,15 +33,22 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.commands.BinaryScriptingCommands;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
 
-public class RedisCache extends AbstractRedisCache {
+public class RedisCache extends AbstractRedisCache implements AutoCloseable {
 
   public interface CacheMetrics {
     default void merge(
@@ -82,29 +90,169 @@ public class RedisCache extends AbstractRedisCache {
       // noop
     }
 
+    /**
+     * Records a single MGET partition of a read.
+     *
+     * @param keysRequested keys requested by the partition
+     * @param durationNanos time taken to fetch the partition
+     */
+    default void getPartition(String prefix, String type, int keysRequested, long durationNanos) {
+      // noop
+    }
+
     class NOOP implements CacheMetrics {}
   }
 
+  /**
+   * Merges a batch server-side in a single round-trip.
+   *
+   * <p>KEYS: all-of-type set, relationship names set, hashes, hashes-disabled flag, relationship
+   * catalog version, then one key per value to write.
+   *
+   * <p>ARGV: hashing enabled ('1'/'0'), id count, ids..., relationship name count, relationship
+   * names..., then a (value, hash, ttl seconds) triple per value key. An empty hash means the value
+   * is written unconditionally and its hash is not tracked.
+   *
+   * <p>Returns {keys written, hash matches, hash updates}, followed by the (1-based) position among
+   * the value keys of every key written.
+   */
+  private static final String MERGE_SCRIPT =
+      "local function sadd(key, from, count)\n"
+          + "  local added = 0\n"
+          + "  for first = from, from + count - 1, 1000 do\n"
+          + "    added = added + redis.call('sadd', key,"
+          + " unpack(ARGV, first, math.min(first + 999, from + count - 1)))\n"
+          + "  end\n"
+          + "  return added\n"
+          + "end\n"
+          + "local compare = ARGV[1] == '1' and redis.call('exists', KEYS[4]) == 0\n"
+          + "local idCount = tonumber(ARGV[2])\n"
+          + "sadd(KEYS[1], 3, idCount)\n"
+          + "local relOffset = 3 + idCount\n"
+          + "local relCount = tonumber(ARGV[relOffset])\n"
+          + "if sadd(KEYS[2], relOffset + 1, relCount) > 0 then\n"
+          + "  redis.call('incr', KEYS[5])\n"
+          + "end\n"
+          + "local arg = relOffset + 1 + relCount\n"
+          + "local written, matched, hashed = 0, 0, 0\n"
+          + "local result = {0, 0, 0}\n"
+          + "for k = 6, #KEYS do\n"
+          + "  local value, hash, ttl = ARGV[arg], ARGV[arg + 1], tonumber(ARGV[arg + 2])\n"
+          + "  arg = arg + 3\n"
+          + "  if compare and hash ~= '' and redis.call('hget', KEYS[3], KEYS[k]) == hash then\n"
+          + "    matched = matched + 1\n"
+          + "  else\n"
+          + "    if ttl > 0 then\n"
+          + "      redis.call('set', KEYS[k], value, 'EX', ttl)\n"
+          + "    else\n"
+          + "      redis.call('set', KEYS[k], value)\n"
+          + "    end\n"
+          + "    if hash ~= '' then\n"
+          + "      redis.call('hset', KEYS[3], KEYS[k], hash)\n"
+          + "      hashed = hashed + 1\n"
+          + "    end\n"
+          + "    written = written + 1\n"
+          + "    result[#result + 1] = k - 5\n"
+          + "  end\n"
+          + "end\n"
+          + "result[1], result[2], result[3] = written, matched, hashed\n"
+          + "return result\n";
+
   private final CacheMetrics cacheMetrics;
+  private final ExecutorService readExecutor;
+  private final boolean ownsReadExecutor;
 
+  private volatile byte[] mergeScriptSha;
+
+  /**
+   * Creates a cache with its own read executor (when {@link RedisCacheOptions#getReadParallelism()}
+   * is above one), which is shut down by {@link #close()}.
+   */
   public RedisCache(
       String prefix,
       RedisClientDelegate redisClientDelegate,
       ObjectMapper objectMapper,
       RedisCacheOptions options,
       CacheMetrics cacheMetrics) {
+    this(
+        prefix,
+        redisClientDelegate,
+        objectMapper,
+        options,
+        cacheMetrics,
+        newReadExecutor(options, prefix),
+        true);
+  }
+
+  /**
+   * Creates a cache reading partitions through a shared executor, which remains owned by the
+   * caller; a null executor reads partitions sequentially.
+   */
+  public RedisCache(
+      String prefix,
+      RedisClientDelegate redisClientDelegate,
+      ObjectMapper objectMapper,
+      RedisCacheOptions options,
+      CacheMetrics cacheMetrics,
+      ExecutorService readExecutor) {
+    this(prefix, redisClientDelegate, objectMapper, options, cacheMetrics, readExecutor, false);
+  }
+
+  private RedisCache(
+      String prefix,
+      RedisClientDelegate redisClientDelegate,
+      ObjectMapper objectMapper,
+      RedisCacheOptions options,
+      CacheMetrics cacheMetrics,
+      ExecutorService readExecutor,
+      boolean ownsReadExecutor) {
     super(prefix, redisClientDelegate, objectMapper, options);
     this.cacheMetrics = cacheMetrics == null ? new CacheMetrics.NOOP() : cacheMetrics;
+    this.readExecutor = readExecutor;
+    this.ownsReadExecutor = ownsReadExecutor;
+  }
+
+  /**
+   * @return an executor for the parallel partition reads of caches configured with options, or
+   *     null if they read partitions sequentially
+   */
+  static ExecutorService newReadExecutor(RedisCacheOptions options, String name) {
+    if (options.getReadParallelism() <= 1) {
+      return null;
+    }
+    return Executors.newFixedThreadPool(
+        options.getReadParallelism(),
+        new ThreadFactoryBuilder()
+            .setNameFormat(RedisCache.class.getSimpleName() + "-" + name + "-reader-%d")
+            .setDaemon(true)
+            .build());
   }
 
+  /** Shuts down the read executor if this cache created it. */
   @Override
-  protected void mergeItems(String type, Collection<CacheData> items) {
+  public void close() {
+    if (ownsReadExecutor && readExecutor != null) {
+      readExecutor.shutdown();
+    }
+  }
+
+  @Override
+  protected Collection<String> mergeItems(String type, Collection<CacheData> items) {
     if (items.isEmpty()) {
-      return;
+      return Collections.emptyList();
     }
+    if (options.isMergeScriptEnabled() && redisClientDelegate.supportsScripting()) {
+      Collection<String> changed = mergeItemsWithScript(type, items);
+      if (changed != null) {
+        return changed;
+      }
+    }
+
     final Set<String> relationshipNames = new HashSet<>();
-    final List<String> keysToSet = new LinkedList<>();
+    final List<String> keysToSet = new ArrayList<>();
+    final List<byte[]> valuesToSet = new ArrayList<>();
     final Set<String> idSet = new HashSet<>();
+    final List<String> changed = new ArrayList<>();
 
     final Map<String, Integer> ttlSecondsByKey = new HashMap<>();
     int skippedWrites = 0;
@@ -117,9 +265,13 @@ public class RedisCache extends AbstractRedisCache {
       MergeOp op = buildMergeOp(type, item, hashes);
       relationshipNames.addAll(op.relNames);
       keysToSet.addAll(op.keysToSet);
+      valuesToSet.addAll(op.valuesToSet);
       idSet.add(item.getId());
       updatedHashes.putAll(op.hashesToSet);
       skippedWrites += op.skippedWrites;
+      if (!op.keysToSet.isEmpty()) {
+        changed.add(item.getId());
+      }
 
       if (item.getTtlSeconds() > 0) {
         for (String key : op.keysToSet) {
@@ -128,6 +280,7 @@ public class RedisCache extends AbstractRedisCache {
       }
     }
 
+    List<Response<Long>> relationshipsAdded = new ArrayList<>();
     AtomicInteger saddOperations = new AtomicInteger();
     AtomicInteger msetOperations = new AtomicInteger();
     AtomicInteger hmsetOperations = new AtomicInteger();
@@ -142,17 +295,26 @@ public class RedisCache extends AbstractRedisCache {
               saddOperations.incrementAndGet();
             }
 
-            for (List<String> keys : Lists.partition(keysToSet, options.getMaxMsetSize())) {
-              pipeline.mset(keys.toArray(new String[keys.size()]));
+            // maxMsetSize bounds the arguments of each MSET, which come in key/value pairs
+            int msetPairs = Math.max(1, options.getMaxMsetSize() / 2);
+            for (int ofs = 0; ofs < keysToSet.size(); ofs += msetPairs) {
+              int end = Math.min(ofs + msetPairs, keysToSet.size());
+              byte[][] keysValues = new byte[(end - ofs) * 2][];
+              for (int i = ofs; i < end; i++) {
+                keysValues[(i - ofs) * 2] = keysToSet.get(i).getBytes(StandardCharsets.UTF_8);
+                keysValues[(i - ofs) * 2 + 1] = valuesToSet.get(i);
+              }
+              pipeline.mset(keysValues);
               msetOperations.incrementAndGet();
             }
 
             if (!relationshipNames.isEmpty()) {
               for (List<String> relNamesPart :
                   Iterables.partition(relationshipNames, options.getMaxSaddSize())) {
-                pipeline.sadd(
-                    allRelationshipsId(type),
-                    relNamesPart.toArray(new String[relNamesPart.size()]));
+                relationshipsAdded.add(
+                    pipeline.sadd(
+                        allRelationshipsId(type),
+                        relNamesPart.toArray(new String[relNamesPart.size()])));
                 saddOperations.incrementAndGet();
               }
             }
@@ -171,6 +333,10 @@ public class RedisCache extends AbstractRedisCache {
             pipelineOperations.incrementAndGet();
           });
 
+      if (relationshipsAdded.stream().anyMatch(r -> r.get() > 0)) {
+        relationshipCatalogChanged(type);
+      }
+
       redisClientDelegate.withMultiKeyPipeline(
           pipeline -> {
             for (List<Map.Entry<String, Integer>> ttlPart :
@@ -189,7 +355,7 @@ public class RedisCache extends AbstractRedisCache {
         prefix,
         type,
         items.size(),
-        keysToSet.size() / 2,
+        keysToSet.size(),
         relationshipNames.size(),
         skippedWrites,
         updatedHashes.size(),
@@ -198,6 +364,113 @@ public class RedisCache extends AbstractRedisCache {
         hmsetOperations.get(),
         pipelineOperations.get(),
         expireOperations.get());
+    return changed;
+  }
+
+  /**
+   * Ships values along with their hashes to {@link #MERGE_SCRIPT}, which compares, writes, updates
+   * hashes and sets TTLs atomically. The single round-trip is reported as a pipeline operation.
+   *
+   * @return the ids of the items whose values were written, or null if the scripting client cannot
+   *     send binary values, in which case nothing was written and the caller should fall back to a
+   *     pipelined merge
+   */
+  private Collection<String> mergeItemsWithScript(String type, Collection<CacheData> items) {
+    final Set<String> relationshipNames = new HashSet<>();
+    final Set<String> idSet = new HashSet<>();
+    final List<byte[]> keys = new ArrayList<>();
+    final List<String> keyItemIds = new ArrayList<>();
+    final List<byte[]> values = new ArrayList<>();
+
+    keys.add(bytes(allOfTypeId(type)));
+    keys.add(bytes(allRelationshipsId(type)));
+    keys.add(bytes(hashesId(type)));
+    keys.add(bytes(hashesDisabled(type)));
+    keys.add(bytes(relationshipsVersionId(type)));
+
+    for (CacheData item : items) {
+      MergeOp op = buildMergeOp(type, item, Collections.emptyMap());
+      relationshipNames.addAll(op.relNames);
+      idSet.add(item.getId());
+
+      final byte[] ttl =
+          bytes(Integer.toString(item.getTtlSeconds() > 0 ? item.getTtlSeconds() : -1));
+      for (int i = 0; i < op.keysToSet.size(); i++) {
+        final String key = op.keysToSet.get(i);
+        keys.add(bytes(key));
+        keyItemIds.add(item.getId());
+        values.add(op.valuesToSet.get(i));
+        values.add(bytes(op.hashesToSet.getOrDefault(key, "")));
+        values.add(ttl);
+      }
+    }
+
+    final List<byte[]> args =
+        new ArrayList<>(3 + idSet.size() + relationshipNames.size() + values.size());
+    args.add(bytes(options.isHashingEnabled() ? "1" : "0"));
+    args.add(bytes(Integer.toString(idSet.size())));
+    idSet.forEach(id -> args.add(bytes(id)));
+    args.add(bytes(Integer.toString(relationshipNames.size())));
+    relationshipNames.forEach(rel -> args.add(bytes(rel)));
+    args.addAll(values);
+
+    final List<Long> result =
+        redisClientDelegate.withScriptingClient(
+            client -> {
+              if (!(client instanceof BinaryScriptingCommands)) {
+                return null;
+              }
+              return evalMergeScript((BinaryScriptingCommands) client, keys, args);
+            });
+    if (result == null) {
+      return null;
+    }
+
+    cacheMetrics.merge(
+        prefix,
+        type,
+        items.size(),
+        result.get(0).intValue(),
+        relationshipNames.size(),
+        result.get(1).intValue(),
+        result.get(2).intValue(),
+        0,
+        0,
+        0,
+        1,
+        0);
+
+    final Set<String> changed = new LinkedHashSet<>();
+    for (Long position : result.subList(3, result.size())) {
+      changed.add(keyItemIds.get(position.intValue() - 1));
+    }
+    return changed;
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Long> evalMergeScript(
+      BinaryScriptingCommands client, List<byte[]> keys, List<byte[]> args) {
+    byte[] sha = mergeScriptSha;
+    if (sha == null) {
+      sha = loadMergeScript(client);
+    }
+
+    try {
+      return (List<Long>) client.evalsha(sha, keys, args);
+    } catch (JedisNoScriptException e) {
+      // the script cache was flushed (restart, failover or SCRIPT FLUSH) since it was loaded
+      return (List<Long>) client.evalsha(loadMergeScript(client), keys, args);
+    }
+  }
+
+  private byte[] loadMergeScript(BinaryScriptingCommands client) {
+    byte[] sha = client.scriptLoad(bytes(MERGE_SCRIPT));
+    mergeScriptSha = sha;
+    return sha;
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
   }
 
   @Override
@@ -255,18 +528,23 @@ public class RedisCache extends AbstractRedisCache {
       }
     }
 
-    final List<String> keyResult = new ArrayList<>(keysToGet.size());
+    final List<byte[]> keyResult = new ArrayList<>(keysToGet.size());
+    final List<List<String>> partitions = Lists.partition(keysToGet, options.getMaxMgetSize());
 
-    int mgetOperations =
-        redisClientDelegate.withMultiClient(
-            c -> {
-              int ops = 0;
-              for (List<String> part : Lists.partition(keysToGet, options.getMaxMgetSize())) {
-                ops++;
-                keyResult.addAll(c.mget(part.toArray(new String[part.size()])));
-              }
-              return ops;
-            });
+    int mgetOperations;
+    if (readExecutor != null && partitions.size() > 1) {
+      mgetOperations = mgetInParallel(type, partitions, keyResult);
+    } else {
+      redisClientDelegate.withMultiKeyPipeline(
+          pipeline -> {
+            for (List<String> part : partitions) {
+              long start = System.nanoTime();
+              keyResult.addAll(mget(pipeline, part));
+              cacheMetrics.getPartition(prefix, type, part.size(), System.nanoTime() - start);
+            }
+          });
+      mgetOperations = partitions.size();
+    }
 
     if (keyResult.size() != keysToGet.size()) {
       throw new RuntimeException("Expected same size result as request");
@@ -293,20 +571,67 @@ public class RedisCache extends AbstractRedisCache {
     return results;
   }
 
-  private CacheData extractItem(String id, List<String> keyResult, List<String> knownRels) {
+  /**
+   * Fetches each partition on its own connection via the read executor, appending the results to
+   * keyResult in partition order.
+   */
+  private int mgetInParallel(String type, List<List<String>> partitions, List<byte[]> keyResult) {
+    final List<CompletableFuture<List<byte[]>>> futures = new ArrayList<>(partitions.size());
+    for (List<String> part : partitions) {
+      futures.add(
+          CompletableFuture.supplyAsync(
+              () -> {
+                long start = System.nanoTime();
+                List<byte[]> values = new ArrayList<>(part.size());
+                redisClientDelegate.withMultiKeyPipeline(
+                    pipeline -> {
+                      values.addAll(mget(pipeline, part));
+                    });
+                cacheMetrics.getPartition(prefix, type, part.size(), System.nanoTime() - start);
+                return values;
+              },
+              readExecutor));
+    }
+
+    try {
+      for (CompletableFuture<List<byte[]>> future : futures) {
+        keyResult.addAll(future.join());
+      }
+    } catch (CompletionException e) {
+      futures.forEach(f -> f.cancel(false));
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+    return partitions.size();
+  }
+
+  /** Reads the raw values of keys, which may hold text or binary payloads. */
+  private static List<byte[]> mget(Pipeline pipeline, List<String> keys) {
+    byte[][] rawKeys = new byte[keys.size()][];
+    for (int i = 0; i < rawKeys.length; i++) {
+      rawKeys[i] = bytes(keys.get(i));
+    }
+    Response<List<byte[]>> values = pipeline.mget(rawKeys);
+    pipeline.sync();
+    return values.get();
+  }
+
+  private CacheData extractItem(String id, List<byte[]> keyResult, List<String> knownRels) {
     if (keyResult.get(0) == null) {
       return null;
     }
 
     try {
-      final Map<String, Object> attributes = objectMapper.readValue(keyResult.get(0), ATTRIBUTES);
+      final Map<String, Object> attributes = codec.decode(keyResult.get(0), ATTRIBUTES);
       final Map<String, Collection<String>> relationships = new HashMap<>(keyResult.size() - 1);
       for (int relIdx = 1; relIdx < keyResult.size(); relIdx++) {
-        String rel = keyResult.get(relIdx);
+        byte[] rel = keyResult.get(relIdx);
         if (rel != null) {
           String relType = knownRels.get(relIdx - 1);
           Collection<String> deserializedRel =
-              objectMapper.readValue(rel, getRelationshipsTypeReference());
+              codec.decode(rel, getRelationshipsTypeReference());
           relationships.put(relType, deserializedRel);
         }
       }
@@ -321,16 +646,19 @@ public class RedisCache extends AbstractRedisCache {
   private static class MergeOp {
     public final Set<String> relNames;
     public final List<String> keysToSet;
+    public final List<byte[]> valuesToSet;
     public final Map<String, String> hashesToSet;
     public final int skippedWrites;
 
     MergeOp(
         Set<String> relNames,
         List<String> keysToSet,
+        List<byte[]> valuesToSet,
         Map<String, String> hashesToSet,
         int skippedWrites) {
       this.relNames = relNames;
       this.keysToSet = keysToSet;
+      this.valuesToSet = valuesToSet;
       this.hashesToSet = hashesToSet;
       this.skippedWrites = skippedWrites;
     }
@@ -338,26 +666,28 @@ public class RedisCache extends AbstractRedisCache {
 
   private MergeOp buildMergeOp(String type, CacheData cacheData, Map<String, String> hashes) {
     int skippedWrites = 0;
-    final String serializedAttributes;
+    final byte[] serializedAttributes;
     boolean hasTtl = cacheData.getTtlSeconds() > 0;
     try {
       if (cacheData.getAttributes().isEmpty()) {
         serializedAttributes = null;
       } else {
-        serializedAttributes = objectMapper.writeValueAsString(cacheData.getAttributes());
+        serializedAttributes = codec.encode(cacheData.getAttributes());
       }
-    } catch (JsonProcessingException serializationException) {
+    } catch (IOException serializationException) {
       throw new RuntimeException("Attribute serialization failed", serializationException);
     }
 
     final Map<String, String> hashesToSet = new HashMap<>();
-    final List<String> keysToSet = new ArrayList<>((cacheData.getRelationships().size() + 1) * 2);
+    final List<String> keysToSet = new ArrayList<>(cacheData.getRelationships().size() + 1);
+    final List<byte[]> valuesToSet = new ArrayList<>(cacheData.getRelationships().size() + 1);
     if (serializedAttributes != null
         && hashCheck(
             hashes,
             attributesId(type, cacheData.getId()),
             serializedAttributes,
             keysToSet,
+            valuesToSet,
             hashesToSet,
             hasTtl)) {
       skippedWrites++;
@@ -366,11 +696,10 @@ public class RedisCache extends AbstractRedisCache {
     if (!cacheData.getRelationships().isEmpty()) {
       for (Map.Entry<String, Collection<String>> relationship :
           cacheData.getRelationships().entrySet()) {
-        final String relationshipValue;
+        final byte[] relationshipValue;
         try {
-          relationshipValue =
-              objectMapper.writeValueAsString(new LinkedHashSet<>(relationship.getValue()));
-        } catch (JsonProcessingException serializationException) {
+          relationshipValue = codec.encode(new LinkedHashSet<>(relationship.getValue()));
+        } catch (IOException serializationException) {
           throw new RuntimeException("Relationship serialization failed", serializationException);
         }
         if (hashCheck(
@@ -378,6 +707,7 @@ public class RedisCache extends AbstractRedisCache {
             relationshipId(type, cacheData.getId(), relationship.getKey()),
             relationshipValue,
             keysToSet,
+            valuesToSet,
             hashesToSet,
             hasTtl)) {
           skippedWrites++;
@@ -386,7 +716,7 @@ public class RedisCache extends AbstractRedisCache {
     }
 
     return new MergeOp(
-        cacheData.getRelationships().keySet(), keysToSet, hashesToSet, skippedWrites);
+        cacheData.getRelationships().keySet(), keysToSet, valuesToSet, hashesToSet, skippedWrites);
   }
 
   private List<String> getKeys(String type, Collection<CacheData> cacheDatas) {
@@ -424,7 +754,8 @@ public class RedisCache extends AbstractRedisCache {
    * @param hashes the existing hash values
    * @param id the id of the item
    * @param serializedValue the serialized value
-   * @param keys values to persist - if the hash does not match id and serializedValue are appended
+   * @param keys keys to persist - if the hash does not match id is appended
+   * @param values values to persist - if the hash does not match serializedValue is appended
    * @param updatedHashes hashes to persist - if the hash does not match adds an entry of id ->
    *     computed hash
    * @param hasTtl if the key has a ttl - generally this means the key should not be hashed due to
@@ -434,13 +765,13 @@ public class RedisCache extends AbstractRedisCache {
   private boolean hashCheck(
       Map<String, String> hashes,
       String id,
-      String serializedValue,
+      byte[] serializedValue,
       List<String> keys,
+      List<byte[]> values,
       Map<String, String> updatedHashes,
       boolean hasTtl) {
     if (options.isHashingEnabled() && !hasTtl) {
-      final String hash =
-          Hashing.sha1().newHasher().putUnencodedChars(serializedValue).hash().toString();
+      final String hash = hash(serializedValue);
       final String existingHash = hashes.get(id);
       if (hash.equals(existingHash)) {
         return true;
@@ -449,10 +780,25 @@ public class RedisCache extends AbstractRedisCache {
     }
 
     keys.add(id);
-    keys.add(serializedValue);
+    values.add(serializedValue);
     return false;
   }
 
+  /**
+   * Text payloads keep the hash of their characters, which existing hashes were computed from, so
+   * upgrading does not rewrite every key of a json store.
+   */
+  private String hash(byte[] serializedValue) {
+    if (codec.isBinary()) {
+      return Hashing.sha1().hashBytes(serializedValue).toString();
+    }
+    return Hashing.sha1()
+        .newHasher()
+        .putUnencodedChars(new String(serializedValue, StandardCharsets.UTF_8))
+        .hash()
+        .toString();
+  }
+
   private Map<String, String> getHashes(String type, Collection<CacheData> items) {
     if (isHashingDisabled(type)) {
       return Collections.emptyMap();
@@ -36,6 +36,9 @@ public class RedisCacheOptions {
   private final int maxGetBatchSize;
   private final boolean hashingEnabled;
   private final boolean treatRelationshipsAsSet;
+  private final String cacheDataFormat;
+  private final boolean mergeScriptEnabled;
+  private final int readParallelism;
 
   private static int posInt(String name, int value) {
     Preconditions.checkArgument(value > 0, "%s must be a positive integer (%s)", name, value);
@@ -62,6 +65,42 @@ public class RedisCacheOptions {
       int maxGetBatchSize,
       boolean hashingEnabled,
       boolean treatRelationshipsAsSet) {
+    this(
+        maxMsetSize,
+        maxMgetSize,
+        maxHmgetSize,
+        maxHmsetSize,
+        maxSaddSize,
+        maxDelSize,
+        maxPipelineSize,
+        scanSize,
+        maxMergeBatchSize,
+        maxEvictBatchSize,
+        maxGetBatchSize,
+        hashingEnabled,
+        treatRelationshipsAsSet,
+        Builder.DEFAULT_CACHE_DATA_FORMAT,
+        Builder.DEFAULT_MERGE_SCRIPT_ENABLED,
+        Builder.DEFAULT_READ_PARALLELISM);
+  }
+
+  public RedisCacheOptions(
+      int maxMsetSize,
+      int maxMgetSize,
+      int maxHmgetSize,
+      int maxHmsetSize,
+      int maxSaddSize,
+      int maxDelSize,
+      int maxPipelineSize,
+      int scanSize,
+      int maxMergeBatchSize,
+      int maxEvictBatchSize,
+      int maxGetBatchSize,
+      boolean hashingEnabled,
+      boolean treatRelationshipsAsSet,
+      String cacheDataFormat,
+      boolean mergeScriptEnabled,
+      int readParallelism) {
     this.maxMsetSize = posEven("maxMsetSize", maxMsetSize);
     this.maxMgetSize = posInt("maxMgetSize", maxMgetSize);
     this.maxHmgetSize = posInt("maxHmgetSize", maxHmgetSize);
@@ -75,6 +114,9 @@ public class RedisCacheOptions {
     this.maxGetBatchSize = posInt("maxGetBatchSize", maxGetBatchSize);
     this.hashingEnabled = hashingEnabled;
     this.treatRelationshipsAsSet = treatRelationshipsAsSet;
+    this.cacheDataFormat = Preconditions.checkNotNull(cacheDataFormat, "cacheDataFormat");
+    this.mergeScriptEnabled = mergeScriptEnabled;
+    this.readParallelism = posInt("readParallelism", readParallelism);
   }
 
   public int getMaxMsetSize() {
@@ -129,6 +171,27 @@ public class RedisCacheOptions {
     return treatRelationshipsAsSet;
   }
 
+  /** @return the format new payloads are written in; payloads in any format remain readable */
+  public String getCacheDataFormat() {
+    return cacheDataFormat;
+  }
+
+  /**
+   * @return true if merges should compare hashes and write values server-side in a single script
+   *     call per batch, rather than fetching hashes and writing in separate round-trips
+   */
+  public boolean isMergeScriptEnabled() {
+    return mergeScriptEnabled;
+  }
+
+  /**
+   * @return the number of MGET partitions of a single read that may be fetched concurrently, each
+   *     on its own connection; 1 fetches partitions in series on one connection
+   */
+  public int getReadParallelism() {
+    return readParallelism;
+  }
+
   public static class Builder {
     public static final int DEFAULT_MULTI_OP_SIZE = 200;
     public static final int DEFAULT_BATCH_SIZE = 200;
@@ -136,6 +199,9 @@ public class RedisCacheOptions {
     public static final int DEFAULT_MAX_PIPELINE_SIZE = 200;
     public static final boolean DEFAULT_HASHING_ENABLED = true;
     public static final boolean DEFAULT_TREAT_RELATIONSHIPS_AS_SET_DISABLED = false;
+    public static final String DEFAULT_CACHE_DATA_FORMAT = "json";
+    public static final boolean DEFAULT_MERGE_SCRIPT_ENABLED = false;
+    public static final int DEFAULT_READ_PARALLELISM = 1;
 
     int maxMsetSize;
     int maxMgetSize;
@@ -150,6 +216,9 @@ public class RedisCacheOptions {
     int maxGetBatchSize;
     boolean hashingEnabled;
     boolean treatRelationshipsAsSet;
+    String cacheDataFormat;
+    boolean mergeScriptEnabled;
+    int readParallelism;
 
     public Builder() {
       batchSize(DEFAULT_BATCH_SIZE);
@@ -158,6 +227,9 @@ public class RedisCacheOptions {
       maxPipeline(DEFAULT_MAX_PIPELINE_SIZE);
       hashing(DEFAULT_HASHING_ENABLED);
       treatRelationshipsAsSet(DEFAULT_TREAT_RELATIONSHIPS_AS_SET_DISABLED);
+      cacheDataFormat(DEFAULT_CACHE_DATA_FORMAT);
+      mergeScript(DEFAULT_MERGE_SCRIPT_ENABLED);
+      readParallelism(DEFAULT_READ_PARALLELISM);
     }
 
     public Builder maxMergeBatch(int maxMergeBatch) {
@@ -241,6 +313,21 @@ public class RedisCacheOptions {
       return this;
     }
 
+    public Builder cacheDataFormat(String cacheDataFormat) {
+      this.cacheDataFormat = cacheDataFormat;
+      return this;
+    }
+
+    public Builder mergeScript(boolean mergeScriptEnabled) {
+      this.mergeScriptEnabled = mergeScriptEnabled;
+      return this;
+    }
+
+    public Builder readParallelism(int readParallelism) {
+      this.readParallelism = readParallelism;
+      return this;
+    }
+
     public RedisCacheOptions build() {
       return new RedisCacheOptions(
           maxMsetSize,
@@ -255,7 +342,10 @@ public class RedisCacheOptions {
           maxEvictBatchSize,
           maxGetBatchSize,
           hashingEnabled,
-          treatRelationshipsAsSet);
+          treatRelationshipsAsSet,
+          cacheDataFormat,
+          mergeScriptEnabled,
+          readParallelism);
     }
 
     public void setBatchSize(int batchSize) {
@@ -369,5 +459,29 @@ public class RedisCacheOptions {
     public void setTreatRelationshipsAsSet(boolean treatRelationshipsAsSet) {
       this.treatRelationshipsAsSet = treatRelationshipsAsSet;
     }
+
+    public String getCacheDataFormat() {
+      return cacheDataFormat;
+    }
+
+    public void setCacheDataFormat(String cacheDataFormat) {
+      this.cacheDataFormat = cacheDataFormat;
+    }
+
+    public boolean isMergeScriptEnabled() {
+      return mergeScriptEnabled;
+    }
+
+    public void setMergeScriptEnabled(boolean mergeScriptEnabled) {
+      this.mergeScriptEnabled = mergeScriptEnabled;
+    }
+
+    public int getReadParallelism() {
+      return readParallelism;
+    }
+
+    public void setReadParallelism(int readParallelism) {
+      this.readParallelism = readParallelism;
+    }
   }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.cats.redis.cache;
+
+import com.netflix.spinnaker.cats.cache.CacheVersionStamps;
+import com.netflix.spinnaker.kork.jedis.RedisClientDelegate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Keeps the version of each stamp as a field of a single redis hash. */
+public class RedisCacheVersionStamps implements CacheVersionStamps {
+  private static final String VERSIONS_KEY = "cats:versions";
+
+  private final RedisClientDelegate redisClientDelegate;
+
+  public RedisCacheVersionStamps(RedisClientDelegate redisClientDelegate) {
+    this.redisClientDelegate = redisClientDelegate;
+  }
+
+  @Override
+  public void increment(Collection<String> stamps) {
+    if (stamps.isEmpty()) {
+      return;
+    }
+    redisClientDelegate.withCommandsClient(
+        client -> {
+          for (String stamp : stamps) {
+            client.hincrBy(VERSIONS_KEY, stamp, 1);
+          }
+        });
+  }
+
+  @Override
+  public Map<String, Long> getVersions() {
+    Map<String, String> versions =
+        redisClientDelegate.withCommandsClient(client -> client.hgetAll(VERSIONS_KEY));
+    Map<String, Long> result = new HashMap<>(versions.size());
+    versions.forEach((stamp, version) -> result.put(stamp, Long.valueOf(version)));
+    return result;
+  }
+}
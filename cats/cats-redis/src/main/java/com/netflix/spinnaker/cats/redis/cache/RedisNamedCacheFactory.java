@@ -21,13 +21,19 @@ import com.netflix.spinnaker.cats.cache.NamedCacheFactory;
 import com.netflix.spinnaker.cats.cache.WriteableCache;
 import com.netflix.spinnaker.cats.redis.cache.RedisCache.CacheMetrics;
 import com.netflix.spinnaker.kork.jedis.RedisClientDelegate;
+import java.util.concurrent.ExecutorService;
 
-public class RedisNamedCacheFactory implements NamedCacheFactory {
+/**
+ * Creates a {@link RedisCache} per name. The caches share one read executor, which is shut down
+ * when the factory is closed.
+ */
+public class RedisNamedCacheFactory implements NamedCacheFactory, AutoCloseable {
 
   private final RedisClientDelegate redisClientDelegate;
   private final ObjectMapper objectMapper;
   private final RedisCacheOptions options;
   private final CacheMetrics cacheMetrics;
+  private final ExecutorService readExecutor;
 
   public RedisNamedCacheFactory(
       RedisClientDelegate redisClientDelegate,
@@ -38,10 +44,19 @@ public class RedisNamedCacheFactory implements NamedCacheFactory {
     this.objectMapper = objectMapper;
     this.options = options;
     this.cacheMetrics = cacheMetrics;
+    this.readExecutor = RedisCache.newReadExecutor(options, "shared");
   }
 
   @Override
   public WriteableCache getCache(String name) {
-    return new RedisCache(name, redisClientDelegate, objectMapper, options, cacheMetrics);
+    return new RedisCache(
+        name, redisClientDelegate, objectMapper, options, cacheMetrics, readExecutor);
+  }
+
+  @Override
+  public void close() {
+    if (readExecutor != null) {
+      readExecutor.shutdown();
+    }
   }
 }
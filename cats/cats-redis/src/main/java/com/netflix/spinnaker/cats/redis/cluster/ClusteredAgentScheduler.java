@@ -23,6 +23,7 @@ import com.netflix.spinnaker.cats.agent.AgentLock;
 import com.netflix.spinnaker.cats.agent.AgentScheduler;
 import com.netflix.spinnaker.cats.agent.AgentSchedulerAware;
 import com.netflix.spinnaker.cats.agent.ExecutionInstrumentation;
+import com.netflix.spinnaker.cats.cluster.AgentChangeHistory;
 import com.netflix.spinnaker.cats.cluster.AgentIntervalProvider;
 import com.netflix.spinnaker.cats.cluster.NodeIdentity;
 import com.netflix.spinnaker.cats.cluster.NodeStatusProvider;
@@ -267,6 +268,7 @@ public class ClusteredAgentScheduler extends CatsModuleAware
   public void unschedule(Agent agent) {
     releaseRunKey(agent.getAgentType(), 0); // Delete lock key now.
     agents.remove(agent.getAgentType());
+    AgentChangeHistory.getHistory().forget(agent.getAgentType());
   }
 
   private static class NextAttempt {
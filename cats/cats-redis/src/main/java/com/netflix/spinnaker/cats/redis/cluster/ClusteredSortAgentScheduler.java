@@ -24,6 +24,7 @@ import com.netflix.spinnaker.cats.agent.AgentSchedulerAware;
 import com.netflix.spinnaker.cats.agent.CacheResult;
 import com.netflix.spinnaker.cats.agent.CachingAgent;
 import com.netflix.spinnaker.cats.agent.ExecutionInstrumentation;
+import com.netflix.spinnaker.cats.cluster.AgentChangeHistory;
 import com.netflix.spinnaker.cats.cluster.AgentIntervalProvider;
 import com.netflix.spinnaker.cats.cluster.NodeStatusProvider;
 import com.netflix.spinnaker.cats.module.CatsModuleAware;
@@ -258,6 +259,7 @@ public class ClusteredSortAgentScheduler extends CatsModuleAware
 
   public void unschedule(Agent agent) {
     agents.remove(agent.getAgentType());
+    AgentChangeHistory.getHistory().forget(agent.getAgentType());
     try (Jedis jedis = jedisPool.getResource()) {
       jedis.evalsha(
           getScriptSha(REMOVE_AGENT_SCRIPT, jedis),
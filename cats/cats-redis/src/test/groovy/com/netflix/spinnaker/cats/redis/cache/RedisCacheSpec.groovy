@@ -19,6 +19,7 @@ package com.netflix.spinnaker.cats.redis.cache
 import com.fasterxml.jackson.annotation.JsonInclude
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.netflix.spinnaker.cats.cache.Cache
+import com.netflix.spinnaker.cats.cache.CacheWriteNotifier
 import com.netflix.spinnaker.cats.cache.DefaultCacheData
 import com.netflix.spinnaker.cats.cache.WriteableCache
 import com.netflix.spinnaker.cats.cache.WriteableCacheSpec
@@ -208,6 +209,191 @@ class RedisCacheSpec extends WriteableCacheSpec {
     finalMergeCount = finalMerge > 0 ? 1 : 0
   }
 
+  @Unroll
+  def 'relationships added by another writer are visible once the catalog version changes (mergeScript: #mergeScript)'() {
+    setup:
+    def writer = new RedisCache(
+      'test',
+      new JedisClientDelegate(pool),
+      new ObjectMapper(),
+      RedisCacheOptions.builder().mergeScript(mergeScript).build(),
+      cacheMetrics)
+    writer.merge('foo', createData('blerp', [a: 'b'], [rel1: ['rel1:1']]))
+
+    expect:
+    cache.get('foo', 'blerp').relationships.keySet() == ['rel1'] as Set
+
+    when:
+    writer.merge('foo', createData('blerp', [a: 'b'], [rel1: ['rel1:1'], rel2: ['rel2:1']]))
+
+    then:
+    cache.get('foo', 'blerp').relationships.keySet() == ['rel1', 'rel2'] as Set
+    pool.resource.withCloseable { Jedis j -> j.get('test:foo:relationships.version') } == '2'
+
+    when: 'no new relationship names are added'
+    writer.merge('foo', createData('blerp', [a: 'c'], [rel2: ['rel2:2']]))
+
+    then:
+    pool.resource.withCloseable { Jedis j -> j.get('test:foo:relationships.version') } == '2'
+
+    where:
+    mergeScript << [false, true]
+  }
+
+  def 'should fetch mget partitions in parallel and preserve ordering'() {
+    setup:
+    def cache = new RedisCache(
+      'test',
+      new JedisClientDelegate(pool),
+      new ObjectMapper(),
+      RedisCacheOptions.builder().maxMget(3).readParallelism(4).build(),
+      cacheMetrics)
+    def ids = (0..20).collect { "item-$it".toString() }
+    cache.mergeAll('foo', ids.collect { createData(it, [id: it], [rel: ["rel:$it".toString()]]) })
+
+    when:
+    def items = cache.getAll('foo', ids.reverse()) as List
+
+    then:
+    items*.id == ids.reverse()
+    items.every { it.attributes.id == it.id && it.relationships.rel == ["rel:${it.id}".toString()] }
+    14 * cacheMetrics.getPartition('test', 'foo', _, _)
+
+    when:
+    cache.close()
+
+    then:
+    cache.readExecutor.isShutdown()
+  }
+
+  def 'merge script should skip writes for unchanged items'() {
+    setup:
+    def cache = new RedisCache(
+      'test',
+      new JedisClientDelegate(pool),
+      new ObjectMapper(),
+      RedisCacheOptions.builder().mergeScript(true).build(),
+      cacheMetrics)
+    def data = createData('blerp', [a: 'b'], [rel: ['rel:1']])
+
+    when:
+    cache.merge('foo', data)
+
+    then:
+    1 * cacheMetrics.merge('test', 'foo', 1, 2, 1, 0, 2, 0, 0, 0, 1, 0)
+    cache.get('foo', 'blerp').attributes == [a: 'b']
+    cache.get('foo', 'blerp').relationships.rel as List == ['rel:1']
+    cache.getIdentifiers('foo') as List == ['blerp']
+
+    when:
+    cache.merge('foo', data)
+
+    then:
+    1 * cacheMetrics.merge('test', 'foo', 1, 0, 1, 2, 0, 0, 0, 0, 1, 0)
+
+    when:
+    cache.merge('foo', createData('blerp', [a: 'c'], [rel: ['rel:1']]))
+
+    then:
+    1 * cacheMetrics.merge('test', 'foo', 1, 1, 1, 1, 1, 0, 0, 0, 1, 0)
+    cache.get('foo', 'blerp').attributes == [a: 'c']
+  }
+
+  def 'merge script should expire items with a ttl'() {
+    setup:
+    def cache = new RedisCache(
+      'test',
+      new JedisClientDelegate(pool),
+      new ObjectMapper(),
+      RedisCacheOptions.builder().mergeScript(true).build(),
+      cacheMetrics)
+
+    when:
+    cache.merge('foo', new DefaultCacheData('ttlTest', 1, [test: 'test'], [:]))
+
+    then:
+    cache.get('foo', 'ttlTest') != null
+
+    when:
+    Thread.sleep(1500)
+
+    then:
+    cache.get('foo', 'ttlTest') == null
+  }
+
+  @Unroll
+  def 'items written in different cache data formats remain readable (mergeScript: #mergeScript)'() {
+    setup:
+    def mapper = new ObjectMapper()
+    def jsonCache = (WriteableCache) cache
+    def smileCache = new RedisCache(
+      'test',
+      new JedisClientDelegate(pool),
+      mapper,
+      RedisCacheOptions.builder().cacheDataFormat('smile').mergeScript(mergeScript).build(),
+      cacheMetrics)
+
+    when:
+    jsonCache.merge('foo', createData('json', [a: 'b'], [rel: ['rel:1', 'rel:2']]))
+    smileCache.merge('foo', createData('smile', [c: 'd'], [rel: ['rel:3']]))
+
+    then:
+    // stored as raw smile, starting with the smile document header rather than base64 text
+    pool.resource.withCloseable { Jedis j ->
+      j.get('test:foo:attributes:smile'.getBytes('UTF-8'))
+    }[0..2] == [':', ')', '\n'].collect { it as char as byte }
+
+    [jsonCache, smileCache].each {
+      def items = it.getAll('foo').collectEntries { item -> [(item.id): item] }
+      assert items.json.attributes == [a: 'b']
+      assert items.json.relationships.rel as Set == ['rel:1', 'rel:2'] as Set
+      assert items.smile.attributes == [c: 'd']
+      assert items.smile.relationships.rel as Set == ['rel:3'] as Set
+    }
+
+    where:
+    mergeScript << [false, true]
+  }
+
+  @Unroll
+  def 'only items whose values changed are reported to write listeners (mergeScript: #mergeScript)'() {
+    setup:
+    def writer = new RedisCache(
+      'test',
+      new JedisClientDelegate(pool),
+      new ObjectMapper(),
+      RedisCacheOptions.builder().mergeScript(mergeScript).build(),
+      cacheMetrics)
+    def merged = []
+    def listener = new CacheWriteNotifier.Listener() {
+      void itemsChanged(String type, Collection<String> ids) {}
+
+      void itemsStored(String type, Collection<String> ids) {
+        merged.addAll(ids)
+      }
+    }
+    CacheWriteNotifier.notifier.addListener(listener)
+
+    when:
+    writer.mergeAll('foo', [createData('a', [a: 'b']), createData('b', [a: 'b'])])
+
+    then:
+    merged.sort() == ['a', 'b']
+
+    when:
+    merged.clear()
+    writer.mergeAll('foo', [createData('a', [a: 'b']), createData('b', [a: 'c'])])
+
+    then:
+    merged == ['b']
+
+    cleanup:
+    CacheWriteNotifier.notifier.removeListener(listener)
+
+    where:
+    mergeScript << [false, true]
+  }
+
   private static class Bean {
     String key
     Integer key2
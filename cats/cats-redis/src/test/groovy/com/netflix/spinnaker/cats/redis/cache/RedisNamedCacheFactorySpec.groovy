@@ -79,4 +79,29 @@ class RedisNamedCacheFactorySpec extends Specification {
         barC1.attributes.bar == 'baz'
         barC2 == null
     }
+
+    def 'caches share one read executor which is shut down with the factory'() {
+        setup:
+        def pool = embeddedRedis.pool as JedisPool
+        def parallelFactory = new RedisNamedCacheFactory(
+            new JedisClientDelegate(pool), new ObjectMapper(), RedisCacheOptions.builder().readParallelism(4).build(), null)
+        def c1 = parallelFactory.getCache('foo') as RedisCache
+        def c2 = parallelFactory.getCache('foo2') as RedisCache
+
+        expect:
+        c1.readExecutor != null
+        c1.readExecutor.is(c2.readExecutor)
+
+        when:
+        c1.close()
+
+        then:
+        !c1.readExecutor.isShutdown()
+
+        when:
+        parallelFactory.close()
+
+        then:
+        c1.readExecutor.isShutdown()
+    }
 }
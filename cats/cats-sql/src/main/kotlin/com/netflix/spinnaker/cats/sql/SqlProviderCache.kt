@@ -12,6 +12,7 @@ import com.netflix.spinnaker.clouddriver.core.provider.agent.Namespace.NAMED_IMA
 import com.netflix.spinnaker.clouddriver.core.provider.agent.Namespace.ON_DEMAND
 import org.slf4j.LoggerFactory
 import org.slf4j.MDC
+import java.util.stream.Stream
 import kotlin.contracts.ExperimentalContracts
 
 @ExperimentalContracts
@@ -78,6 +79,11 @@ class SqlProviderCache(private val backingStore: WriteableCache) : ProviderCache
     return backingStore.getAll(type, identifiers, cacheFilter)
   }
 
+  override fun stream(type: String, cacheFilter: CacheFilter?): Stream<CacheData> {
+    validateTypes(type)
+    return backingStore.stream(type, cacheFilter)
+  }
+
   override fun supportsGetAllByApplication(): Boolean {
     return true
   }
@@ -234,6 +240,22 @@ class SqlProviderCache(private val backingStore: WriteableCache) : ProviderCache
           }
       }
 
+      // Change sets already describe what was removed, so skip the per-agent cleanup and evict directly
+      cacheResult.changeSets
+        .filter { !cachedTypes.contains(it.key) }
+        .forEach {
+          cacheDataType(
+            it.key,
+            source,
+            it.value.upserts,
+            authoritative = authoritativeTypes.contains(it.key),
+            cleanup = false
+          )
+          if (it.value.deletes.isNotEmpty()) {
+            evictDeletedItems(it.key, it.value.deletes)
+          }
+        }
+
       if (cacheResult.evictions.isNotEmpty()) {
         cacheResult.evictions.forEach {
           evictDeletedItems(it.key, it.value)
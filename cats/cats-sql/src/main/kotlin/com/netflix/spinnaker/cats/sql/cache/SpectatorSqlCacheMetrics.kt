@@ -74,6 +74,18 @@ class SpectatorSqlCacheMetrics(
     registry.counter(id("cats.sqlCache.get", "selectOperations", tags)).increment(selectOperations.toLong())
   }
 
+  override fun read(
+    prefix: String,
+    replica: Boolean,
+    replicationLagMillis: Long?
+  ) {
+    val tags = listOf(BasicTag("prefix", prefix), BasicTag("target", if (replica) "replica" else "primary"))
+    registry.counter(id("cats.sqlCache.read", "count", tags)).increment()
+    if (replicationLagMillis != null) {
+      registry.gauge(registry.createId("cats.sqlCache.read.replicationLag")).set(replicationLagMillis.toDouble())
+    }
+  }
+
   private fun id(metricGroup: String, metric: String, tags: Iterable<Tag>) =
     registry.createId("$metricGroup.$metric", tags)
 
@@ -1,11 +1,16 @@
 package com.netflix.spinnaker.cats.sql.cache
 
 import com.fasterxml.jackson.databind.ObjectMapper
+import com.google.common.io.ByteStreams
 import com.netflix.spinnaker.cats.cache.CacheData
 import com.netflix.spinnaker.cats.cache.CacheFilter
+import com.netflix.spinnaker.cats.cache.CacheWriteNotifier
 import com.netflix.spinnaker.cats.cache.DefaultCacheData
 import com.netflix.spinnaker.cats.cache.RelationshipCacheFilter
 import com.netflix.spinnaker.cats.cache.WriteableCache
+import com.netflix.spinnaker.cats.codec.CacheDataCodec
+import com.netflix.spinnaker.cats.codec.JsonCacheDataCodec
+import com.netflix.spinnaker.cats.codec.MultiFormatCacheDataCodec
 import com.netflix.spinnaker.clouddriver.core.provider.agent.Namespace.ON_DEMAND
 import com.netflix.spinnaker.config.SqlConstraints
 import com.netflix.spinnaker.config.coroutineThreadPrefix
@@ -22,8 +27,13 @@ import kotlinx.coroutines.awaitAll
 import kotlinx.coroutines.runBlocking
 import org.jooq.Condition
 import org.jooq.DSLContext
+import org.jooq.Field
+import org.jooq.Record1
+import org.jooq.SQLDialect
+import org.jooq.Select
 import org.jooq.exception.DataAccessException
 import org.jooq.exception.SQLDialectNotSupportedException
+import org.jooq.impl.DSL.currentSchema
 import org.jooq.impl.DSL.field
 import org.jooq.impl.DSL.noCondition
 import org.jooq.impl.DSL.sql
@@ -31,6 +41,7 @@ import org.jooq.impl.DSL.table
 import org.jooq.util.mysql.MySQLDSL
 import org.slf4j.LoggerFactory
 import org.springframework.jdbc.BadSqlGrammarException
+import java.security.DigestOutputStream
 import java.security.MessageDigest
 import java.sql.ResultSet
 import java.sql.SQLException
@@ -38,25 +49,38 @@ import java.sql.SQLSyntaxErrorException
 import java.time.Clock
 import java.time.Duration
 import java.util.Arrays
+import java.util.Spliterator
+import java.util.Spliterators
+import java.util.TreeMap
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ConcurrentSkipListSet
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
+import java.util.stream.Stream
+import java.util.stream.StreamSupport
 import javax.annotation.PreDestroy
 import kotlin.contracts.ExperimentalContracts
 import kotlin.contracts.contract
 import kotlin.coroutines.CoroutineContext
+import kotlin.coroutines.EmptyCoroutineContext
 
 @ExperimentalContracts
-class SqlCache(
+class SqlCache @JvmOverloads constructor(
   private val name: String,
   private val jooq: DSLContext,
-  private val mapper: ObjectMapper,
+  mapper: ObjectMapper,
   private val coroutineContext: CoroutineContext?,
   private val clock: Clock,
   private val sqlRetryProperties: SqlRetryProperties,
   tableNamespace: String?,
   private val cacheMetrics: SqlCacheMetrics,
   private val dynamicConfigService: DynamicConfigService,
-  private val sqlConstraints: SqlConstraints
+  private val sqlConstraints: SqlConstraints,
+  private val codec: CacheDataCodec = MultiFormatCacheDataCodec.forFormat(JsonCacheDataCodec.FORMAT, mapper),
+  private val readRouter: SqlReadRouter? = null,
+  private val writeCoalescer: SqlWriteCoalescer? = null,
+  partitions: Map<String, Int> = emptyMap()
 ) : WriteableCache {
 
   companion object {
@@ -66,6 +90,12 @@ class SqlCache(
     private val useRegexp = """.*[\?\[].*""".toRegex()
     private val cleanRegexp = """\.+\*""".toRegex()
 
+    private val resourceColumns: List<Field<Any>> =
+      listOf("id", "agent", "application", "body_hash", "body", "last_updated").map { field(it) }
+
+    private val hexDigits = "0123456789abcdef".toCharArray()
+    private val sha256 = ThreadLocal.withInitial { MessageDigest.getInstance("SHA-256") }
+
     private val log = LoggerFactory.getLogger(SqlCache::class.java)
   }
 
@@ -73,6 +103,19 @@ class SqlCache(
 
   private var createdTables = ConcurrentSkipListSet<String>()
 
+  private val partitionsByType = TreeMap<String, Int>(String.CASE_INSENSITIVE_ORDER).apply {
+    putAll(partitions)
+  }
+
+  private val keySegmentTypes = ConcurrentSkipListSet<String>()
+  private val keySegmentMisses = ConcurrentHashMap<String, Long>()
+
+  // binary payloads are only written to tables whose body column is already a blob, the others
+  // keep getting text payloads until they are migrated out of band
+  private val textCodec = MultiFormatCacheDataCodec.forFormat(JsonCacheDataCodec.FORMAT, mapper)
+  private val binaryBodyTypes = ConcurrentSkipListSet<String>()
+  private val binaryBodyMisses = ConcurrentHashMap<String, Long>()
+
   init {
     log.info("Configured for $name")
   }
@@ -110,6 +153,8 @@ class SqlCache(
       itemsDeleted = deletedCount,
       deleteOperations = opCount
     )
+
+    CacheWriteNotifier.getNotifier().itemsEvicted(type, ids)
   }
 
   fun mergeAll(
@@ -162,6 +207,15 @@ class SqlCache(
       writeOperations = storeResult.writeQueries.get(),
       deleteOperations = storeResult.deleteQueries.get()
     )
+
+    // authoritative items are stored in the type's own table, informative ones only add relationships
+    storeResult.changedIds.forEach { (changedType, ids) ->
+      if (authoritative && changedType == type) {
+        CacheWriteNotifier.getNotifier().itemsMerged(changedType, ids)
+      } else {
+        CacheWriteNotifier.getNotifier().itemsChanged(changedType, ids)
+      }
+    }
   }
 
   override fun mergeAll(type: String, items: MutableCollection<CacheData>?) {
@@ -202,6 +256,37 @@ class SqlCache(
     return mergeDataAndRelationships(result.data, result.relPointers, relationshipPrefixes)
   }
 
+  /**
+   * Streams the ids of the type through a server-side cursor, fetching the items (and their
+   * relationships) in chunks of `sql.cache.read-batch-size` as the stream is consumed. The cursor
+   * holds a connection until the stream is exhausted or closed.
+   */
+  override fun stream(type: String, cacheFilter: CacheFilter?): Stream<CacheData> {
+    val batchSize = dynamicConfigService.getConfig(Int::class.java, "sql.cache.read-batch-size", 500)
+
+    val cursor = try {
+      withRetry(RetryCategory.READ) {
+        jooq.select(field("id"))
+          .from(table(sqlNames.resourceTableName(type)))
+          .fetchSize(streamFetchSize(batchSize))
+          .fetchLazy()
+      }
+    } catch (e: BadSqlGrammarException) {
+      suppressedLog("Failed streaming ids for type $type", e)
+      return Stream.empty()
+    }
+
+    val items = cursor.asSequence()
+      .map { it.get(0, String::class.java) }
+      .chunked(batchSize)
+      .flatMap { getAll(type, it.toMutableList(), cacheFilter).asSequence() }
+
+    return StreamSupport.stream(
+      Spliterators.spliteratorUnknownSize(items.iterator(), Spliterator.ORDERED or Spliterator.NONNULL),
+      false
+    ).onClose { cursor.close() }
+  }
+
   /**
    * Retrieves the items for the specified type matching the provided ids
    *
@@ -306,7 +391,7 @@ class SqlCache(
     val result = mutableMapOf<String, MutableCollection<CacheData>>()
 
     if (coroutineContext.useAsync(this::asyncEnabled)) {
-      val scope = CatsCoroutineScope(coroutineContext)
+      val scope = CatsCoroutineScope(coroutineContext + readRouting())
 
       types.chunked(dynamicConfigService.getConfig(Int::class.java, "sql.cache.max-query-concurrency", 4)) { batch ->
         val deferred = batch.map { type ->
@@ -376,7 +461,7 @@ class SqlCache(
 
     if (coroutineContext.useAsync(identifiers.size, this::useAsync)) {
       withAsync = true
-      val scope = CatsCoroutineScope(coroutineContext)
+      val scope = CatsCoroutineScope(coroutineContext + readRouting())
 
       identifiers.chunked(batchSize).chunked(
         dynamicConfigService.getConfig(Int::class.java, "sql.cache.max-query-concurrency", 4)
@@ -423,17 +508,32 @@ class SqlCache(
       return mutableSetOf()
     }
 
-    val sql = if (glob.matches(useRegexp)) {
+    val idCondition = if (glob.matches(useRegexp)) {
       val filter = glob.replace("?", ".", true).replace("*", ".*").replace(cleanRegexp, ".*")
+      field("id").likeRegex("^$filter$")
+    } else {
+      field("id").like(glob.replace('*', '%'))
+    }
+
+    val segmentCondition = if (hasKeySegments(type)) SqlKeySegments.segmentCondition(glob) else null
+    val sql: Select<Record1<Any>> = if (segmentCondition == null) {
       jooq
         .select(field("id"))
         .from(table(sqlNames.resourceTableName(type)))
-        .where(field("id").likeRegex("^$filter$"))
+        .where(idCondition)
     } else {
+      // keys that split like the glob are found through the key segment index, the (rare) keys with
+      // more segments, which a wildcard may span, are matched on their id alone
       jooq
         .select(field("id"))
         .from(table(sqlNames.resourceTableName(type)))
-        .where(field("id").like(glob.replace('*', '%')))
+        .where(segmentCondition, idCondition)
+        .unionAll(
+          jooq
+            .select(field("id"))
+            .from(table(sqlNames.resourceTableName(type)))
+            .where(SqlKeySegments.fallbackCondition(glob), idCondition)
+        )
     }
 
     val ids = try {
@@ -481,7 +581,7 @@ class SqlCache(
   }
 
   fun cleanOnDemand(maxAgeMs: Long): Int {
-    val toClean = withRetry(RetryCategory.READ) {
+    val toClean = withRetry(RetryCategory.READ, replicaSafe = false) {
       jooq.select(field("id"))
         .from(table(sqlNames.resourceTableName(onDemandType)))
         .where(field("last_updated").lt(clock.millis() - maxAgeMs))
@@ -510,6 +610,7 @@ class SqlCache(
     } else {
       agentHint ?: "unknown"
     }
+    val bodyCodec = bodyCodec(type)
 
     val existingHashIds = getHashIds(type, agent)
     result.selectQueries.incrementAndGet()
@@ -524,7 +625,7 @@ class SqlCache(
       .toSet()
     val currentIds = mutableSetOf<String>() // current ids from the caching agent
     val toStore = mutableListOf<String>() // ids that are new or changed
-    val bodies = mutableMapOf<String, String>() // id to body
+    val bodies = mutableMapOf<String, Any>() // id to body, text or bytes per the codec
     val hashes = mutableMapOf<String, String>() // id to sha256(body)
     val apps = mutableMapOf<String, String>()
 
@@ -553,33 +654,60 @@ class SqlCache(
           it.relationships.putAll(normalized)
         }
 
-        val body: String? = mapper.writeValueAsString(it)
-        val bodyHash = getHash(body)
+        // the body is only serialized when its hash shows it changed
+        val bodyHash = getHash(bodyCodec, it)
 
-        if (body != null && bodyHash != null && !existingHashes.contains(bodyHash)) {
+        if (bodyHash != null && !existingHashes.contains(bodyHash)) {
           toStore.add(it.id)
-          bodies[it.id] = body
+          bodies[it.id] = encodeBody(bodyCodec, it)
           hashes[it.id] = bodyHash
         }
       }
 
-    val now = clock.millis()
+    result.changed(type, toStore)
 
-    toStore.chunked(dynamicConfigService.getConfig(Int::class.java, "sql.cache.write-batch-size", 100)) { chunk ->
+    val now = clock.millis()
+    val columns = resourceColumns
+
+    // rows handed to the write coalescer share statements with other agents' rows; this waits for
+    // them to be written, so evictions below still follow the writes, and falls back to writing
+    // them directly if the coalesced statements failed or didn't complete in time. the upserts are
+    // idempotent, and cancelling drops the rows from statements that haven't run yet, but it
+    // doesn't stop a statement that is already executing, which may land after the direct write
+    // (or a later cycle's write of the same rows) with the bodies of this cycle
+    val directWrites = if (writeCoalescer == null || toStore.isEmpty()) {
+      toStore
+    } else {
+      var upsert: CompletableFuture<Int>? = null
       try {
-        val insert = jooq.insertInto(
-          table(sqlNames.resourceTableName(type)),
-          field("id"),
-          field("agent"),
-          field("application"),
-          field("body_hash"),
-          field("body"),
-          field("last_updated")
+        upsert = writeCoalescer.upsert(
+          sqlNames.resourceTableName(type),
+          columns.map { it.name },
+          listOf("application", "body_hash", "body", "last_updated"),
+          toStore.map { resourceValues(it, agent, apps[it], hashes[it], bodies[it], now) }
         )
+        val statements = upsert.get(writeCoalescer.writeTimeout.toMillis(), TimeUnit.MILLISECONDS)
+        result.itemsStored.addAndGet(toStore.size)
+        result.writeQueries.addAndGet(statements)
+        emptyList<String>()
+      } catch (e: InterruptedException) {
+        upsert?.cancel(false)
+        Thread.currentThread().interrupt()
+        throw e
+      } catch (e: Exception) {
+        upsert?.cancel(false)
+        log.warn("Coalesced write of ${toStore.size} $type items failed, writing them directly", e)
+        toStore
+      }
+    }
+
+    directWrites.chunked(dynamicConfigService.getConfig(Int::class.java, "sql.cache.write-batch-size", 100)) { chunk ->
+      try {
+        val insert = jooq.insertInto(table(sqlNames.resourceTableName(type)), columns)
 
         insert.apply {
           chunk.forEach {
-            values(it, agent, apps[it], hashes[it], bodies[it], now)
+            values(resourceValues(it, agent, apps[it], hashes[it], bodies[it], now))
           }
 
           onDuplicateKeyUpdate()
@@ -598,7 +726,7 @@ class SqlCache(
         log.error("Error inserting ids: $chunk", e)
       } catch (e: SQLDialectNotSupportedException) {
         chunk.forEach {
-          val exists = withRetry(RetryCategory.READ) {
+          val exists = withRetry(RetryCategory.READ, replicaSafe = false) {
             jooq.fetchExists(
               jooq.select()
                 .from(sqlNames.resourceTableName(type))
@@ -621,22 +749,9 @@ class SqlCache(
             result.itemsStored.incrementAndGet()
           } else {
             withRetry(RetryCategory.WRITE) {
-              jooq.insertInto(
-                table(sqlNames.resourceTableName(type)),
-                field("id"),
-                field("agent"),
-                field("application"),
-                field("body_hash"),
-                field("body"),
-                field("last_updated")
-              ).values(
-                it,
-                agent,
-                apps[it],
-                hashes[it],
-                bodies[it],
-                clock.millis()
-              ).execute()
+              jooq.insertInto(table(sqlNames.resourceTableName(type)), columns)
+                .values(resourceValues(it, agent, apps[it], hashes[it], bodies[it], clock.millis()))
+                .execute()
             }
             result.writeQueries.incrementAndGet()
             result.itemsStored.incrementAndGet()
@@ -672,12 +787,9 @@ class SqlCache(
       return result
     }
 
-    val existingFwdRelIds = sourceAgents
-      .map {
-        result.selectQueries.incrementAndGet()
-        getRelationshipKeys(type, it)
-      }
-      .flatten()
+    // existing pointers are read with one statement per relationship table rather than one per source agent
+    val existingFwdRelIds = getRelationshipKeys(type, sourceAgents)
+    result.selectQueries.incrementAndGet()
 
     val existingRevRelTypes = mutableSetOf<String>()
     items
@@ -694,12 +806,8 @@ class SqlCache(
 
     val existingRevRelIds = existingRevRelTypes
       .map { relType ->
-        sourceAgents
-          .map { agent ->
-            result.selectQueries.incrementAndGet()
-            getRelationshipKeys(relType, type, agent)
-          }
-          .flatten()
+        result.selectQueries.incrementAndGet()
+        getRelationshipKeys(relType, type, sourceAgents)
       }
       .flatten()
 
@@ -738,10 +846,12 @@ class SqlCache(
               if (!oldFwdIds.contains(fwdKey)) {
                 newFwdRelPointers.getOrPut(relType) { mutableListOf() }
                   .add(RelPointer(cacheData.id, r, rels.key))
+                result.changed(type, listOf(cacheData.id))
               }
 
               if (!oldRevIds.containsKey(revKey)) {
                 newRevRelIds.add(revKey)
+                result.changed(relType, listOf(r))
               }
             }
         }
@@ -820,24 +930,27 @@ class SqlCache(
 
     if (fwdToDelete.isNotEmpty() || revToDelete.isNotEmpty()) {
       try {
-        fwdToDelete.forEach {
-          withRetry(RetryCategory.WRITE) {
-            jooq.deleteFrom(table(sqlNames.relTableName(type)))
-              .where(field("uuid").eq(it.value))
-              .execute()
+        val uuidsToDelete = mutableMapOf<String, MutableList<String>>()
+        uuidsToDelete[type] = fwdToDelete.values.toMutableList()
+        result.changed(type, fwdToDelete.keys.map { it.substringBefore("|") })
+        revToDelete.forEach {
+          val relType = oldRevIdsToType.getOrDefault(it.key, "")
+          if (relType.isNotBlank()) {
+            uuidsToDelete.getOrPut(relType) { mutableListOf() }.add(it.value)
+            result.changed(relType, listOf(it.key.substringBefore("|")))
+          } else {
+            log.warn("Couldn't delete ${it.key}, no mapping to type")
           }
-          result.deleteQueries.incrementAndGet()
         }
-        revToDelete.forEach {
-          if (oldRevIdsToType.getOrDefault(it.key, "").isNotBlank()) {
+
+        uuidsToDelete.forEach { (relType, uuids) ->
+          uuids.chunked(dynamicConfigService.getConfig(Int::class.java, "sql.cache.write-batch-size", 100)) { chunk ->
             withRetry(RetryCategory.WRITE) {
-              jooq.deleteFrom(table(sqlNames.relTableName(oldRevIdsToType[it.key]!!)))
-                .where(field("uuid").eq(it.value))
+              jooq.deleteFrom(table(sqlNames.relTableName(relType)))
+                .where(field("uuid").`in`(*chunk.toTypedArray()))
                 .execute()
             }
             result.deleteQueries.incrementAndGet()
-          } else {
-            log.warn("Couldn't delete ${it.key}, no mapping to type")
           }
         }
       } catch (e: Exception) {
@@ -853,33 +966,195 @@ class SqlCache(
       try {
         withRetry(RetryCategory.WRITE) {
           jooq.execute("CREATE TABLE IF NOT EXISTS ${sqlNames.resourceTableName(type)} " +
-            "LIKE cats_v${schemaVersion}_resource_template")
+            "LIKE ${resourceTemplate()}")
           jooq.execute("CREATE TABLE IF NOT EXISTS ${sqlNames.relTableName(type)} " +
             "LIKE cats_v${schemaVersion}_rel_template")
         }
 
         createdTables.add(type)
+        keySegmentMisses.remove(type)
+        binaryBodyMisses.remove(type)
       } catch (e: Exception) {
         log.error("Error creating tables for type $type", e)
       }
+
+      if (createdTables.contains(type)) {
+        try {
+          partitionResourceTable(type)
+        } catch (e: Exception) {
+          log.error("Error partitioning resource table for type $type", e)
+        }
+      }
     }
     if (!createdTables.contains(onDemandType)) {
       // TODO not sure if best schema for onDemand
       try {
         withRetry(RetryCategory.WRITE) {
           jooq.execute("CREATE TABLE IF NOT EXISTS ${sqlNames.resourceTableName(onDemandType)} " +
-            "LIKE cats_v${schemaVersion}_resource_template")
+            "LIKE ${resourceTemplate()}")
           jooq.execute("CREATE TABLE IF NOT EXISTS ${sqlNames.relTableName(onDemandType)} " +
             "LIKE cats_v${schemaVersion}_rel_template")
         }
 
         createdTables.add(onDemandType)
+        binaryBodyMisses.remove(onDemandType)
       } catch (e: Exception) {
         log.error("Error creating $onDemandType table", e)
       }
     }
   }
 
+  /**
+   * Binary payloads can't be held by the text body column of the resource template, so new tables
+   * are created from a template with a blob body (see the `create-cats-resource-binary-template`
+   * changeset) when the codec writes them.
+   */
+  private fun resourceTemplate(): String =
+    if (codec.isBinary && jooq.dialect().family() == SQLDialect.MYSQL) {
+      "cats_v${schemaVersion}_resource_binary_template"
+    } else {
+      "cats_v${schemaVersion}_resource_template"
+    }
+
+  /**
+   * Tables created before the binary template keep a text body until they are migrated out of
+   * band (see [SqlResourceTableMigrations]), so their bodies are written by the text codec, which
+   * the codec still reads, while they do (rechecked periodically).
+   */
+  private fun bodyCodec(type: String): CacheDataCodec {
+    if (!codec.isBinary || binaryBodyTypes.contains(type)) {
+      return codec
+    }
+    val now = clock.millis()
+    if (binaryBodyMisses[type]?.let { it > now } == true) {
+      return textCodec
+    }
+
+    val tableName = sqlNames.resourceTableName(type)
+    val binary = try {
+      val dataType = withRetry(RetryCategory.READ, replicaSafe = false) {
+        jooq.select(field("data_type", String::class.java))
+          .from(table("information_schema.columns"))
+          .where(
+            field("table_schema", String::class.java).eq(currentSchema()),
+            field("table_name", String::class.java).eq(tableName),
+            field("column_name", String::class.java).eq("body")
+          )
+          .fetchOne(0, String::class.java)
+      }
+      dataType.equals("longblob", ignoreCase = true)
+    } catch (e: Exception) {
+      log.warn("Failed checking the body column type: $type reason: ${e.message}")
+      false
+    }
+
+    return if (binary) {
+      binaryBodyTypes.add(type)
+      codec
+    } else {
+      if (binaryBodyMisses.put(type, now + Duration.ofMinutes(1).toMillis()) == null) {
+        log.warn("The body of $tableName isn't a blob yet, writing ${textCodec.format} payloads " +
+          "instead of ${codec.format} until it is migrated")
+      }
+      textCodec
+    }
+  }
+
+  private fun resourceValues(
+    id: String,
+    agent: String,
+    application: String?,
+    bodyHash: String?,
+    body: Any?,
+    lastUpdated: Long
+  ): List<Any?> = listOf(id, agent, application, bodyHash, body, lastUpdated)
+
+  /**
+   * Resource tables created from the template before the key segment columns were added to it
+   * don't have them until they are migrated out of band (see [SqlResourceTableMigrations]), so
+   * whether a type's table can be searched through them is looked up (and rechecked periodically
+   * while it can't).
+   */
+  private fun hasKeySegments(type: String): Boolean {
+    if (keySegmentTypes.contains(type)) {
+      return true
+    }
+    val now = clock.millis()
+    if (keySegmentMisses[type]?.let { it > now } == true) {
+      return false
+    }
+
+    val exists = try {
+      hasColumn(sqlNames.resourceTableName(type), SqlKeySegments.SEGMENTS)
+    } catch (e: Exception) {
+      log.warn("Failed checking for key segment columns type: $type reason: ${e.message}")
+      false
+    }
+
+    if (exists) {
+      keySegmentTypes.add(type)
+    } else {
+      keySegmentMisses[type] = now + Duration.ofMinutes(1).toMillis()
+    }
+    return exists
+  }
+
+  private fun hasColumn(tableName: String, column: String): Boolean {
+    return withRetry(RetryCategory.READ, replicaSafe = false) {
+      jooq.fetchExists(
+        jooq.selectOne()
+          .from(table("information_schema.columns"))
+          .where(
+            field("table_schema", String::class.java).eq(currentSchema()),
+            field("table_name", String::class.java).eq(tableName),
+            field("column_name", String::class.java).eq(column)
+          )
+      )
+    }
+  }
+
+  /**
+   * Spreads the resource table of a type over `sql.cache.partitions.<type>` MySQL KEY partitions
+   * of the agent column. Every unique key of the table includes the agent, and the per-agent
+   * reads and deletes of [storeAuthoritative] are pruned to the partition owning the agent.
+   *
+   * Only empty tables are partitioned, since repartitioning copies the whole table; tables that
+   * already hold data are repartitioned out of band (see [SqlResourceTableMigrations]).
+   */
+  private fun partitionResourceTable(type: String) {
+    val partitions = partitionsByType[type] ?: 0
+    if (partitions < 2 || type == onDemandType || jooq.dialect().family() != SQLDialect.MYSQL) {
+      return
+    }
+
+    val tableName = sqlNames.resourceTableName(type)
+    val partitioned = withRetry(RetryCategory.READ, replicaSafe = false) {
+      jooq.fetchExists(
+        jooq.selectOne()
+          .from(table("information_schema.partitions"))
+          .where(
+            field("table_schema", String::class.java).eq(currentSchema()),
+            field("table_name", String::class.java).eq(tableName),
+            field("partition_name").isNotNull
+          )
+      )
+    }
+    if (partitioned) {
+      return
+    }
+
+    val statement = "ALTER TABLE $tableName PARTITION BY KEY(agent) PARTITIONS $partitions"
+    if (withRetry(RetryCategory.READ, replicaSafe = false) { jooq.fetchExists(table(tableName)) }) {
+      log.warn("Not partitioning $tableName as it already holds data, partition it through /admin/db/migrations")
+      return
+    }
+
+    withRetry(RetryCategory.WRITE) {
+      jooq.execute(statement)
+    }
+    log.info("Partitioned $tableName into $partitions partitions by agent")
+  }
+
   private fun getRelationshipFilterPrefixes(cacheFilter: CacheFilter?): List<String> {
     return if (cacheFilter == null) {
       listOf("ALL")
@@ -893,24 +1168,64 @@ class SqlCache(
     }
   }
 
-  private fun getHash(body: String?): String? {
-    if (body.isNullOrBlank()) {
-      return null
+  /**
+   * Binary codecs bind their payloads as bytes, which need a binary body column (see
+   * [bodyCodec]); text payloads are bound as strings, as they always have been.
+   */
+  private fun encodeBody(codec: CacheDataCodec, cacheData: CacheData): Any {
+    val body = codec.encode(cacheData)
+    return if (codec.isBinary) body else String(body, Charsets.UTF_8)
+  }
+
+  /**
+   * Text columns are read as strings and binary columns as bytes; either may hold a payload in any
+   * format the codec reads.
+   */
+  private fun decodeBody(body: Any?): CacheData {
+    val bytes = when (body) {
+      is ByteArray -> body
+      is String -> body.toByteArray(Charsets.UTF_8)
+      else -> throw IllegalArgumentException("Unexpected body type: ${body?.javaClass}")
     }
+    return codec.decode(bytes, DefaultCacheData::class.java)
+  }
+
+  private fun describeBody(body: Any): String =
+    if (body is ByteArray) "${body.size} bytes" else body.toString()
+
+  /**
+   * Computes the sha256 of the encoded body of an item by streaming its serialization into a
+   * per-thread digest, which matches the hash of the encoded payload without building it.
+   */
+  private fun getHash(codec: CacheDataCodec, cacheData: CacheData): String? {
+    val digest = sha256.get()
+    digest.reset()
     return try {
-      val digest = MessageDigest.getInstance("SHA-256")
-        .digest(body.toByteArray())
-      digest.fold("") { str, it ->
-        str + "%02x".format(it)
-      }
+      codec.encode(cacheData, DigestOutputStream(ByteStreams.nullOutputStream(), digest))
+      toHex(digest.digest())
     } catch (e: Exception) {
-      log.error("error calculating hash for body: $body", e)
+      log.error("error calculating hash for id: ${cacheData.id}", e)
       null
     }
   }
 
+  private fun toHex(bytes: ByteArray): String {
+    val chars = CharArray(bytes.size * 2)
+    bytes.forEachIndexed { i, b ->
+      val v = b.toInt() and 0xff
+      chars[i * 2] = hexDigits[v ushr 4]
+      chars[i * 2 + 1] = hexDigits[v and 0x0f]
+    }
+    return String(chars)
+  }
+
+  private fun streamFetchSize(batchSize: Int): Int {
+    // Connector/J buffers the entire result set unless the fetch size is Integer.MIN_VALUE
+    return if (jooq.dialect().family() == SQLDialect.MYSQL) Int.MIN_VALUE else batchSize
+  }
+
   private fun getHashIds(type: String, agent: String?): List<HashId> {
-    return withRetry(RetryCategory.READ) {
+    return withRetry(RetryCategory.READ, replicaSafe = false) {
       jooq
         .select(field("body_hash"), field("id"))
         .from(table(sqlNames.resourceTableName(type)))
@@ -922,24 +1237,28 @@ class SqlCache(
     }
   }
 
-  private fun getRelationshipKeys(type: String, sourceAgent: String): MutableList<RelId> {
-    return withRetry(RetryCategory.READ) {
+  private fun getRelationshipKeys(type: String, sourceAgents: Collection<String>): MutableList<RelId> {
+    return withRetry(RetryCategory.READ, replicaSafe = false) {
       jooq
         .select(field("uuid"), field("id"), field("rel_id"), field("rel_agent"))
         .from(table(sqlNames.relTableName(type)))
-        .where(field("rel_agent").eq(sourceAgent))
+        .where(field("rel_agent").`in`(*sourceAgents.toTypedArray()))
         .fetch()
         .into(RelId::class.java)
     }
   }
 
-  private fun getRelationshipKeys(type: String, origType: String, sourceAgent: String): MutableList<RelId> {
-    return withRetry(RetryCategory.READ) {
+  private fun getRelationshipKeys(
+    type: String,
+    origType: String,
+    sourceAgents: Collection<String>
+  ): MutableList<RelId> {
+    return withRetry(RetryCategory.READ, replicaSafe = false) {
       jooq
         .select(field("uuid"), field("id"), field("rel_id"), field("rel_agent"))
         .from(table(sqlNames.relTableName(type)))
         .where(
-          field("rel_agent").eq(sourceAgent),
+          field("rel_agent").`in`(*sourceAgents.toTypedArray()),
           field("rel_type").eq(origType)
         )
         .fetch()
@@ -970,7 +1289,7 @@ class SqlCache(
               .fetch()
               .getValues(0)
               .asSequence()
-              .map { mapper.readValue(it as String, DefaultCacheData::class.java) }
+              .map { decodeBody(it) }
               .toList()
           )
         }
@@ -978,7 +1297,7 @@ class SqlCache(
       } else {
         if (coroutineContext.useAsync(ids.size, this::useAsync)) {
           withAsync = true
-          val scope = CatsCoroutineScope(coroutineContext)
+          val scope = CatsCoroutineScope(coroutineContext + readRouting())
 
           ids.chunked(batchSize).chunked(
             dynamicConfigService.getConfig(Int::class.java, "sql.cache.max-query-concurrency", 4)
@@ -1033,7 +1352,7 @@ class SqlCache(
             .fetch()
             .getValues(0)
             .asSequence()
-            .map { mapper.readValue(it as String, DefaultCacheData::class.java) }
+            .map { decodeBody(it) }
             .toList()
         )
       }
@@ -1196,7 +1515,7 @@ class SqlCache(
           ids.chunked(batchSize).chunked(
             dynamicConfigService.getConfig(Int::class.java, "sql.cache.max-query-concurrency", 4)
           ) { batch ->
-            val scope = CatsCoroutineScope(coroutineContext)
+            val scope = CatsCoroutineScope(coroutineContext + readRouting())
 
             val deferred = batch.map { chunk ->
               scope.async {
@@ -1247,7 +1566,7 @@ class SqlCache(
         .where(field("ID").`in`(*ids.toTypedArray()))
         .fetch()
         .getValues(0)
-        .map { mapper.readValue(it as String, DefaultCacheData::class.java) }
+        .map { decodeBody(it) }
         .toList()
     }
   }
@@ -1303,11 +1622,12 @@ class SqlCache(
     relPointers: MutableSet<RelPointer>
   ) {
     while (resultSet.next()) {
-      if (!resultSet.getString(1).isNullOrBlank()) {
+      val body = resultSet.getObject(1)
+      if (body != null && !(body is String && body.isBlank())) {
         try {
-          cacheData.add(mapper.readValue(resultSet.getString(1), DefaultCacheData::class.java))
+          cacheData.add(decodeBody(body))
         } catch (e: Exception) {
-          log.error("Failed to deserialize cached value: type $type, body ${resultSet.getString(1)}", e)
+          log.error("Failed to deserialize cached value: type $type, body ${describeBody(body)}", e)
         }
       } else {
         try {
@@ -1449,7 +1769,15 @@ class SqlCache(
     WRITE, READ
   }
 
-  private fun <T> withRetry(category: RetryCategory, action: () -> T): T {
+  /**
+   * @param replicaSafe whether a read may be served by a read replica, which reads made while
+   *   storing items must not be
+   */
+  private fun <T> withRetry(
+    category: RetryCategory,
+    replicaSafe: Boolean = category == RetryCategory.READ,
+    action: () -> T
+  ): T {
     return if (category == RetryCategory.WRITE) {
       val retry = Retry.of(
         "sqlWrite",
@@ -1471,10 +1799,19 @@ class SqlCache(
           .build()
       )
 
-      Try.ofSupplier(Retry.decorateSupplier(retry, action)).get()
+      val read: () -> T = if (replicaSafe && readRouter != null) {
+        { readRouter.read(name, action) }
+      } else {
+        action
+      }
+      Try.ofSupplier(Retry.decorateSupplier(retry, read)).get()
     }
   }
 
+  private fun readRouting(): CoroutineContext {
+    return readRouter?.budgetContext() ?: EmptyCoroutineContext
+  }
+
   @ExperimentalContracts
   private fun useAsync(items: Int): Boolean {
     return dynamicConfigService.getConfig(Int::class.java, "sql.cache.max-query-concurrency", 4) > 1 &&
@@ -1516,6 +1853,10 @@ class SqlCache(
   fun clearCreatedTables() {
     val tables = createdTables.toList()
     createdTables.removeAll(tables)
+    keySegmentTypes.clear()
+    keySegmentMisses.clear()
+    binaryBodyTypes.clear()
+    binaryBodyMisses.clear()
   }
 
   data class HashId(
@@ -1555,6 +1896,15 @@ class SqlCache(
     val selectQueries = AtomicInteger(0)
     val writeQueries = AtomicInteger(0)
     val deleteQueries = AtomicInteger(0)
+
+    /** Ids per type of the items read differently after the store */
+    val changedIds = mutableMapOf<String, MutableSet<String>>()
+
+    fun changed(type: String, ids: Collection<String>) {
+      if (ids.isNotEmpty()) {
+        changedIds.getOrPut(type) { mutableSetOf() }.addAll(ids)
+      }
+    }
   }
 }
 
@@ -45,6 +45,17 @@ interface SqlCacheMetrics {
     selectOperations: Int,
     async: Boolean = false
   ) {}
+
+  /**
+   * Records where a read was routed by a [SqlReadRouter].
+   *
+   * @param replicationLagMillis the measured lag of the replica, or null if it is unknown
+   */
+  fun read(
+    prefix: String,
+    replica: Boolean,
+    replicationLagMillis: Long?
+  ) {}
 }
 
 class NoopCacheMetrics : SqlCacheMetrics
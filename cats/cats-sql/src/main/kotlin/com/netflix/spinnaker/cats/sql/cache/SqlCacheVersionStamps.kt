@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.sql.cache
+
+import com.netflix.spinnaker.cats.cache.CacheVersionStamps
+import com.netflix.spinnaker.config.ConnectionPools
+import com.netflix.spinnaker.kork.sql.routing.withPool
+import org.jooq.DSLContext
+import org.jooq.impl.DSL.field
+import org.jooq.impl.DSL.table
+
+/**
+ * Keeps the version of each stamp as a row of the `cats_type_versions` table, keyed by the stamp in
+ * its `type` column.
+ */
+class SqlCacheVersionStamps(
+  private val jooq: DSLContext
+) : CacheVersionStamps {
+
+  companion object {
+    private const val VERSIONS_TABLE = "cats_type_versions"
+    private val typeField = field("type", String::class.java)
+    private val versionField = field("version", Long::class.java)
+  }
+
+  override fun increment(stamps: Collection<String>) {
+    if (stamps.isEmpty()) {
+      return
+    }
+
+    withPool(ConnectionPools.CACHE_WRITER.value) {
+      var insert = jooq.insertInto(table(VERSIONS_TABLE), typeField, versionField)
+      stamps.sorted().forEach { insert = insert.values(it, 1L) }
+      insert.onDuplicateKeyUpdate()
+        .set(versionField, versionField.plus(1))
+        .execute()
+    }
+  }
+
+  override fun getVersions(): Map<String, Long> =
+    jooq.select(typeField, versionField)
+      .from(table(VERSIONS_TABLE))
+      .fetch()
+      .associate { it.value1() to it.value2() }
+}
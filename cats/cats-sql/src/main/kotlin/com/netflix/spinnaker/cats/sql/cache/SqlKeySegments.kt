@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.sql.cache
+
+import org.jooq.Condition
+import org.jooq.impl.DSL.and
+import org.jooq.impl.DSL.field
+
+/**
+ * Describes the key segment columns of the resource tables and translates globs into predicates
+ * against them.
+ *
+ * Keys follow the `provider:type:...` convention, but which of the remaining segments holds the
+ * account, region or name differs between types, so they are stored by position. The columns are
+ * generated by MySQL from the id (see the `key-segment-columns` changeset), so they are never
+ * written by the cache and hold a value for every row.
+ */
+internal object SqlKeySegments {
+  const val SEGMENTS = "key_segments"
+  const val PROVIDER = "key_provider"
+  const val INDEX = "key_segments_idx"
+
+  /** The length of the id column, which no segment can exceed. */
+  private const val MAX_SEGMENT_LENGTH = 352
+  private val positions = 2..5
+  private val wildcards = charArrayOf('*', '?', '[')
+
+  private const val SEPARATORS = "(CHAR_LENGTH(id) - CHAR_LENGTH(REPLACE(id, ':', '')))"
+
+  /**
+   * The MySQL `ALTER TABLE` clauses adding the generated key segment columns and their index to a
+   * resource table, as the `key-segment-columns` changeset adds them to the resource templates.
+   *
+   * The index leads with the segment count and provider, which every [segmentCondition] constrains,
+   * followed by the positional segments; prefixes keep it within the InnoDB key length limit.
+   */
+  val columnDefinitions: List<String> =
+    listOf(
+      "ADD COLUMN $SEGMENTS int GENERATED ALWAYS AS ($SEPARATORS + 1) STORED",
+      "ADD COLUMN $PROVIDER varchar($MAX_SEGMENT_LENGTH) GENERATED ALWAYS AS (SUBSTRING_INDEX(id, ':', 1)) STORED"
+    ) +
+      positions.map {
+        "ADD COLUMN ${positionColumn(it)} varchar($MAX_SEGMENT_LENGTH) GENERATED ALWAYS AS " +
+          "(IF($SEPARATORS >= $it, SUBSTRING_INDEX(SUBSTRING_INDEX(id, ':', ${it + 1}), ':', -1), NULL)) STORED"
+      } +
+      "ADD INDEX $INDEX ($SEGMENTS, $PROVIDER(64), ${positions.joinToString(", ") { "${positionColumn(it)}(128)" }})"
+
+  fun positionColumn(position: Int) = "key_seg_$position"
+
+  /**
+   * A glob only matches keys with the same number of segments through the key segment columns: a
+   * key with more segments can still match when a wildcard spans a separator, and those keys are
+   * selected by [fallbackCondition] instead.
+   *
+   * @return a condition selecting rows whose key segments are compatible with the glob, or null if
+   *   none of the positional segments of the glob can be matched against an index
+   */
+  fun segmentCondition(glob: String): Condition? {
+    if (glob.contains('[') || glob.contains('\\')) {
+      return null
+    }
+
+    val segments = glob.split(':')
+    val positional = positions
+      .mapNotNull { position -> segments.getOrNull(position)?.let { condition(positionColumn(position), it) } }
+    if (positional.isEmpty()) {
+      return null
+    }
+
+    val conditions = mutableListOf(field(SEGMENTS).eq(segments.size))
+    condition(PROVIDER, segments[0])?.let { conditions.add(it) }
+    conditions.addAll(positional)
+    return and(conditions)
+  }
+
+  /**
+   * @return a condition selecting the rows that [segmentCondition] can not account for
+   */
+  fun fallbackCondition(glob: String): Condition {
+    return field(SEGMENTS).gt(glob.split(':').size)
+  }
+
+  private fun condition(column: String, segment: String): Condition? {
+    val firstWildcard = segment.indexOfAny(wildcards)
+    return when {
+      firstWildcard == -1 -> field(column).eq(segment)
+      firstWildcard > 0 && firstWildcard == segment.length - 1 && segment.last() == '*' ->
+        field(column).like(escapeLike(segment.dropLast(1)) + "%", '\\')
+      else -> null
+    }
+  }
+
+  private fun escapeLike(value: String): String {
+    return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_")
+  }
+}
@@ -3,6 +3,7 @@ package com.netflix.spinnaker.cats.sql.cache
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.netflix.spinnaker.cats.cache.NamedCacheFactory
 import com.netflix.spinnaker.cats.cache.WriteableCache
+import com.netflix.spinnaker.cats.codec.MultiFormatCacheDataCodec
 import com.netflix.spinnaker.config.SqlConstraints
 import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService
 import com.netflix.spinnaker.kork.sql.config.SqlRetryProperties
@@ -20,9 +21,15 @@ class SqlNamedCacheFactory(
   private val prefix: String?,
   private val cacheMetrics: SqlCacheMetrics,
   private val dynamicConfigService: DynamicConfigService,
-  private val sqlConstraints: SqlConstraints
+  private val sqlConstraints: SqlConstraints,
+  cacheDataFormat: String,
+  private val readRouter: SqlReadRouter? = null,
+  private val writeCoalescer: SqlWriteCoalescer? = null,
+  private val partitions: Map<String, Int> = emptyMap()
 ) : NamedCacheFactory {
 
+  private val codec = MultiFormatCacheDataCodec.forFormat(cacheDataFormat, mapper)
+
   @ExperimentalContracts
   override fun getCache(name: String): WriteableCache {
     return SqlCache(
@@ -35,7 +42,11 @@ class SqlNamedCacheFactory(
       prefix,
       cacheMetrics,
       dynamicConfigService,
-      sqlConstraints
+      sqlConstraints,
+      codec,
+      readRouter,
+      writeCoalescer,
+      partitions
     )
   }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.sql.cache
+
+import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService
+import com.netflix.spinnaker.kork.sql.routing.withPool
+import kotlinx.coroutines.asContextElement
+import org.jooq.DSLContext
+import org.jooq.impl.DSL.field
+import org.jooq.impl.DSL.table
+import org.slf4j.LoggerFactory
+import java.time.Clock
+import java.time.Duration
+import kotlin.coroutines.CoroutineContext
+
+/**
+ * Routes cache reads to a replica connection pool while the replica is within the staleness
+ * budget of the read, and leaves them on the primary otherwise.
+ *
+ * Replication lag is measured from the heartbeat row that [SqlReplicationHeartbeatAgent] keeps
+ * updating on the primary: its age as seen through the replica, less the heartbeat interval. The
+ * measurement is cached for `sql.cache.read-replica.lag-check-interval-ms`, and a replica whose
+ * heartbeat can't be read is treated as too stale.
+ *
+ * The budget defaults to `sql.cache.read-replica.max-staleness-ms` and can be narrowed for a
+ * single request with [withStalenessBudget].
+ */
+class SqlReadRouter(
+  private val jooq: DSLContext,
+  private val clock: Clock,
+  private val dynamicConfigService: DynamicConfigService,
+  private val cacheMetrics: SqlCacheMetrics,
+  private val replicaPool: String,
+  private val heartbeatId: String,
+  private val heartbeatInterval: Duration
+) {
+
+  companion object {
+    const val HEARTBEAT_TABLE = "cats_replication_heartbeat"
+
+    private val stalenessBudget = ThreadLocal<Duration>()
+
+    private val log = LoggerFactory.getLogger(SqlReadRouter::class.java)
+
+    /**
+     * Runs [fn] with cache reads allowed to lag the primary by at most [budget]. A budget of
+     * [Duration.ZERO] keeps them on the primary.
+     */
+    @JvmStatic
+    fun <T> withStalenessBudget(budget: Duration, fn: () -> T): T {
+      val previous = stalenessBudget.get()
+      stalenessBudget.set(budget)
+      try {
+        return fn()
+      } finally {
+        if (previous == null) {
+          stalenessBudget.remove()
+        } else {
+          stalenessBudget.set(previous)
+        }
+      }
+    }
+  }
+
+  @Volatile
+  private var lag: ReplicationLag? = null
+
+  /**
+   * Runs a read, against the replica pool if it is fresh enough.
+   *
+   * @param prefix the name of the cache, for metrics
+   */
+  fun <T> read(prefix: String, action: () -> T): T {
+    val budget = stalenessBudget.get()
+      ?: Duration.ofMillis(dynamicConfigService.getConfig(Long::class.java, "sql.cache.read-replica.max-staleness-ms", 5000L))
+    val lagMillis = if (budget.isZero || budget.isNegative) null else replicationLagMillis()
+    val useReplica = lagMillis != null && lagMillis <= budget.toMillis()
+
+    cacheMetrics.read(prefix, useReplica, lagMillis)
+
+    return if (useReplica) withPool(replicaPool, action) else action()
+  }
+
+  /**
+   * @return the staleness budget of the current thread as a coroutine context element, so that
+   *   reads fanned out to other threads are routed the same way
+   */
+  fun budgetContext(): CoroutineContext = stalenessBudget.asContextElement()
+
+  private fun replicationLagMillis(): Long? {
+    val now = clock.millis()
+    val checkInterval = dynamicConfigService.getConfig(
+      Long::class.java, "sql.cache.read-replica.lag-check-interval-ms", 1000L
+    )
+
+    val current = lag
+    if (current != null && now - current.checkedAt < checkInterval) {
+      return current.lagMillis
+    }
+
+    synchronized(this) {
+      val latest = lag
+      if (latest != null && now - latest.checkedAt < checkInterval) {
+        return latest.lagMillis
+      }
+
+      val lagMillis = try {
+        withPool(replicaPool) {
+          jooq.select(field("last_updated"))
+            .from(table(HEARTBEAT_TABLE))
+            .where(field("id").eq(heartbeatId))
+            .fetchOne(0, Long::class.java)
+        }?.let { Math.max(0, now - it - heartbeatInterval.toMillis()) }
+      } catch (e: Exception) {
+        log.warn("Failed reading replication heartbeat, routing reads to the primary", e)
+        null
+      }
+
+      lag = ReplicationLag(now, lagMillis)
+      return lagMillis
+    }
+  }
+
+  private data class ReplicationLag(
+    val checkedAt: Long,
+    val lagMillis: Long?
+  )
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.sql.cache
+
+import com.netflix.spinnaker.cats.agent.RunnableAgent
+import com.netflix.spinnaker.clouddriver.cache.CustomScheduledAgent
+import com.netflix.spinnaker.clouddriver.core.provider.CoreProvider
+import com.netflix.spinnaker.clouddriver.sql.SqlAgent
+import com.netflix.spinnaker.config.ConnectionPools
+import com.netflix.spinnaker.kork.sql.routing.withPool
+import org.jooq.DSLContext
+import org.jooq.impl.DSL.field
+import org.jooq.impl.DSL.table
+import org.jooq.util.mysql.MySQLDSL
+import java.time.Clock
+import java.time.Duration
+
+/**
+ * Keeps the replication heartbeat row current on the primary so that [SqlReadRouter] can measure
+ * how far behind the read replicas are.
+ */
+class SqlReplicationHeartbeatAgent(
+  private val jooq: DSLContext,
+  private val clock: Clock,
+  private val heartbeatId: String,
+  private val heartbeatInterval: Duration
+) : RunnableAgent, CustomScheduledAgent, SqlAgent {
+
+  override fun run() {
+    withPool(ConnectionPools.CACHE_WRITER.value) {
+      val now = clock.millis()
+      jooq.insertInto(table(SqlReadRouter.HEARTBEAT_TABLE), field("id"), field("last_updated"))
+        .values(heartbeatId, now)
+        .onDuplicateKeyUpdate()
+        .set(field("last_updated"), MySQLDSL.values(field("last_updated")) as Any)
+        .execute()
+    }
+  }
+
+  override fun getAgentType(): String = "${javaClass.simpleName}/$heartbeatId"
+  override fun getProviderName(): String = CoreProvider.PROVIDER_NAME
+  override fun getPollIntervalMillis(): Long = heartbeatInterval.toMillis()
+  override fun getTimeoutMillis(): Long = heartbeatInterval.multipliedBy(2).toMillis()
+}
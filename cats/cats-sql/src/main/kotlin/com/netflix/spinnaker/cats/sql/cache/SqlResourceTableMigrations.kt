@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.sql.cache
+
+import com.netflix.spinnaker.config.SqlConstraints
+import org.jooq.DSLContext
+import org.jooq.impl.DSL.count
+import org.jooq.impl.DSL.currentSchema
+import org.jooq.impl.DSL.field
+import org.jooq.impl.DSL.table
+import org.slf4j.LoggerFactory
+
+/**
+ * Finds the resource tables that lack schema changes made to the resource templates after they
+ * were created from them, along with the `ALTER TABLE` statements bringing them up to date.
+ *
+ * These statements rebuild the table, holding locks that block cache writes while they run, so
+ * the caches never run them. They are run out of band instead: through the `/admin/db/migrations`
+ * endpoint for tables small enough to rebuild in place, or with an online schema change tool such
+ * as gh-ost or pt-online-schema-change for the others. The caches pick the changes up once they
+ * are in place. Tables that already held data when `sql.cache.partitions` was set for their type
+ * are repartitioned the same way.
+ */
+class SqlResourceTableMigrations(
+  private val tableNamespace: String?,
+  private val binaryBody: Boolean = false,
+  partitions: Map<String, Int> = emptyMap(),
+  sqlConstraints: SqlConstraints = SqlConstraints()
+) {
+
+  companion object {
+    private val log = LoggerFactory.getLogger(SqlResourceTableMigrations::class.java)
+  }
+
+  // onDemand tables aren't partitioned, their rows all share the same agent
+  private val partitionsByTable = SqlNames(tableNamespace, sqlConstraints).let { names ->
+    partitions
+      .filterKeys { !it.equals("onDemand", ignoreCase = true) }
+      .mapKeys { names.resourceTableName(it.key).toLowerCase() }
+  }
+
+  /**
+   * @return the pending migrations of the resource tables of the current namespace
+   */
+  fun pending(jooq: DSLContext): List<ResourceTableMigration> {
+    val prefix = "cats_v${SqlSchemaVersion.current()}_" + (tableNamespace?.let { "${it}_" } ?: "")
+    val tableName = field("table_name", String::class.java)
+    val columnName = field("column_name", String::class.java)
+    val dataType = field("data_type", String::class.java)
+
+    val columnsByTable = jooq.select(tableName, columnName, dataType)
+      .from(table("information_schema.columns"))
+      .where(field("table_schema", String::class.java).eq(currentSchema()))
+      .fetch()
+      .filter { it.value1().startsWith(prefix) && !it.value1().endsWith("_template") }
+      .groupBy { it.value1() }
+      .mapValues { (_, columns) ->
+        columns.associate { it.value2().toLowerCase() to it.value3().toLowerCase() }
+      }
+
+    val partitionsOfTable = jooq.select(tableName, count())
+      .from(table("information_schema.partitions"))
+      .where(
+        field("table_schema", String::class.java).eq(currentSchema()),
+        field("partition_name").isNotNull
+      )
+      .groupBy(tableName)
+      .fetch()
+      .associate { it.value1().toLowerCase() to it.value2() }
+
+    return columnsByTable
+      // relationship tables have no body
+      .filterValues { it.containsKey("body") }
+      .mapNotNull { (table, columns) ->
+        migration(table, columns, partitionsOfTable[table.toLowerCase()] ?: 0)
+      }
+      .sortedBy { it.table }
+  }
+
+  /**
+   * Runs the migration of a table, which blocks writes to it until the table has been rebuilt.
+   */
+  fun apply(jooq: DSLContext, migration: ResourceTableMigration) {
+    log.info("Migrating ${migration.table}: ${migration.statement}")
+    jooq.execute(migration.statement)
+    log.info("Migrated ${migration.table}")
+  }
+
+  /**
+   * @param columns the data type of each column of the table
+   * @param partitions the number of partitions of the table, 0 when it isn't partitioned
+   */
+  private fun migration(
+    table: String,
+    columns: Map<String, String>,
+    partitions: Int
+  ): ResourceTableMigration? {
+    val changes = mutableListOf<String>()
+    if (!columns.containsKey(SqlKeySegments.SEGMENTS)) {
+      changes.addAll(SqlKeySegments.columnDefinitions)
+    }
+    // binary payloads need a blob body, the caches write text payloads to the others meanwhile
+    if (binaryBody && columns["body"] != "longblob") {
+      changes.add("MODIFY body LONGBLOB NOT NULL")
+    }
+    val partitioning = partitionsByTable[table.toLowerCase()]
+      ?.takeIf { it >= 2 && it != partitions }
+      ?.let { "PARTITION BY KEY(agent) PARTITIONS $it" }
+
+    return if (changes.isEmpty() && partitioning == null) {
+      null
+    } else {
+      ResourceTableMigration(table, changes, partitioning)
+    }
+  }
+}
+
+data class ResourceTableMigration(
+  val table: String,
+  val changes: List<String>,
+  val partitioning: String? = null
+) {
+  // MySQL takes the partitioning options after every other change, without a separating comma
+  val statement: String
+    get() = listOfNotNull("ALTER TABLE `$table`", changes.joinToString(", ").ifEmpty { null }, partitioning)
+      .joinToString(" ")
+}
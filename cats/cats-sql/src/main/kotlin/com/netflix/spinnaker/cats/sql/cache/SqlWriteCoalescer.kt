@@ -0,0 +1,228 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.sql.cache
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.jooq.DSLContext
+import org.jooq.impl.DSL.field
+import org.jooq.impl.DSL.table
+import org.jooq.util.mysql.MySQLDSL
+import org.slf4j.LoggerFactory
+import java.io.Closeable
+import java.time.Duration
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Coalesces the resource upserts of concurrently running caching agents into shared multi-row
+ * `INSERT ... ON DUPLICATE KEY UPDATE` statements per table.
+ *
+ * Rows for a table are held until a statement's worth ([maxBatchSize]) has accumulated or the
+ * oldest of them has waited [maxDelay], then written on one of [writerThreads] threads. Callers
+ * get a future for their rows and are expected to wait on it before doing anything that depends
+ * on them (such as evicting what they no longer cache), which keeps each agent's writes ordered.
+ * At most [maxPendingRows] rows are held at once; further callers block until earlier rows have
+ * been written.
+ *
+ * Callers should wait at most [writeTimeout] and then cancel their future, which drops their rows
+ * from any statement that hasn't been executed yet.
+ */
+class SqlWriteCoalescer @JvmOverloads constructor(
+  private val jooq: DSLContext,
+  private val maxBatchSize: Int,
+  private val maxDelay: Duration,
+  maxPendingRows: Int,
+  writerThreads: Int,
+  val writeTimeout: Duration = Duration.ofSeconds(30)
+) : Closeable {
+
+  companion object {
+    private val log = LoggerFactory.getLogger(SqlWriteCoalescer::class.java)
+  }
+
+  private val lock = ReentrantLock()
+  private val batchReady = lock.newCondition()
+  private val pending = LinkedHashMap<BatchKey, PendingBatch>()
+  private val permits = Semaphore(Math.max(maxPendingRows, maxBatchSize))
+  private val statementIds = AtomicLong()
+
+  private val executor: ExecutorService = Executors.newFixedThreadPool(
+    writerThreads,
+    ThreadFactoryBuilder().setNameFormat("sqlWriteCoalescer-%d").setDaemon(true).build()
+  )
+
+  @Volatile
+  private var running = true
+
+  private val flusher = Thread(this::flushExpired, "sqlWriteCoalescer-flusher").apply {
+    isDaemon = true
+    start()
+  }
+
+  /**
+   * Queues rows to be upserted into a table.
+   *
+   * @param columns the column names of each row
+   * @param updateColumns the names of the columns to overwrite when a row already exists
+   * @return a future completed with the number of statements that carried the rows once every row
+   *   has been written, or exceptionally if any of those statements failed. Cancelling it drops the
+   *   rows that haven't been written yet.
+   */
+  fun upsert(
+    table: String,
+    columns: List<String>,
+    updateColumns: List<String>,
+    rows: List<List<Any?>>
+  ): CompletableFuture<Int> {
+    if (!running) {
+      throw IllegalStateException("SqlWriteCoalescer has been closed")
+    }
+
+    val key = BatchKey(table, columns, updateColumns)
+    val futures = rows.chunked(maxBatchSize).map { chunk ->
+      permits.acquire(chunk.size)
+      val future = CompletableFuture<Long>()
+      future.whenComplete { _, _ -> permits.release(chunk.size) }
+
+      lock.withLock {
+        if (!running) {
+          // closed while waiting for permits; the flusher no longer dispatches pending rows
+          future.completeExceptionally(IllegalStateException("SqlWriteCoalescer has been closed"))
+          return@map future
+        }
+
+        val batch = pending[key]
+        if (batch != null && batch.rowCount + chunk.size > maxBatchSize) {
+          dispatch(pending.remove(key)!!)
+        }
+        pending.getOrPut(key) { PendingBatch(key, statementIds.incrementAndGet(), System.nanoTime()) }.apply {
+          this.entries.add(Entry(chunk, future))
+          this.rowCount += chunk.size
+          if (this.rowCount >= maxBatchSize) {
+            dispatch(pending.remove(key)!!)
+          }
+        }
+        batchReady.signal()
+      }
+      future
+    }
+
+    val written = CompletableFuture.allOf(*futures.toTypedArray())
+      .thenApply { futures.map { it.join() }.distinct().size }
+    written.whenComplete { _, e ->
+      if (e is CancellationException) {
+        futures.forEach { it.cancel(false) }
+      }
+    }
+    return written
+  }
+
+  /**
+   * Writes out whatever is pending and stops the writer threads.
+   */
+  override fun close() {
+    running = false
+    lock.withLock {
+      pending.values.forEach { dispatch(it) }
+      pending.clear()
+      batchReady.signal()
+    }
+    executor.shutdown()
+    executor.awaitTermination(maxDelay.toMillis() + TimeUnit.SECONDS.toMillis(30), TimeUnit.MILLISECONDS)
+  }
+
+  private fun flushExpired() {
+    val maxDelayNanos = maxDelay.toNanos()
+    while (running) {
+      lock.withLock {
+        val now = System.nanoTime()
+        val expired = pending.values.filter { now - it.createdAt >= maxDelayNanos }
+        expired.forEach {
+          pending.remove(it.key)
+          dispatch(it)
+        }
+
+        val nextDeadline = pending.values.map { it.createdAt + maxDelayNanos }.min()
+        if (nextDeadline == null) {
+          batchReady.await(maxDelayNanos, TimeUnit.NANOSECONDS)
+        } else {
+          batchReady.awaitNanos(Math.max(nextDeadline - now, 0))
+        }
+      }
+    }
+  }
+
+  private fun dispatch(batch: PendingBatch) {
+    try {
+      executor.execute { write(batch) }
+    } catch (e: RejectedExecutionException) {
+      // closed; failing the futures releases their permits and lets callers write directly
+      batch.entries.forEach { it.future.completeExceptionally(e) }
+    }
+  }
+
+  private fun write(batch: PendingBatch) {
+    // callers that stopped waiting have written (or will write) their rows themselves
+    val entries = batch.entries.filter { !it.future.isDone }
+    if (entries.isEmpty()) {
+      return
+    }
+
+    try {
+      val insert = jooq.insertInto(table(batch.key.table), batch.key.columns.map { field(it) })
+      entries.forEach { entry -> entry.rows.forEach { insert.values(it) } }
+
+      val update = insert.onDuplicateKeyUpdate()
+      batch.key.updateColumns.forEach {
+        update.set(field(it), MySQLDSL.values(field(it)) as Any)
+      }
+      insert.execute()
+
+      entries.forEach { it.future.complete(batch.id) }
+    } catch (e: Exception) {
+      log.warn("Failed writing ${entries.sumBy { it.rows.size }} coalesced rows to ${batch.key.table}: ${e.message}")
+      entries.forEach { it.future.completeExceptionally(e) }
+    }
+  }
+
+  private data class BatchKey(
+    val table: String,
+    val columns: List<String>,
+    val updateColumns: List<String>
+  )
+
+  private class Entry(
+    val rows: List<List<Any?>>,
+    val future: CompletableFuture<Long>
+  )
+
+  private class PendingBatch(
+    val key: BatchKey,
+    val id: Long,
+    val createdAt: Long
+  ) {
+    val entries = mutableListOf<Entry>()
+    var rowCount = 0
+  }
+}
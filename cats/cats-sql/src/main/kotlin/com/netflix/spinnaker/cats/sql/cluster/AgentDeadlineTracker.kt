@@ -0,0 +1,160 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.sql.cluster
+
+import com.netflix.spectator.api.Registry
+import com.netflix.spinnaker.cats.agent.AccountAware
+import com.netflix.spinnaker.cats.agent.Agent
+import com.netflix.spinnaker.cats.agent.ExecutionInstrumentation
+import com.netflix.spinnaker.cats.cluster.AgentIntervalProvider
+import com.netflix.spinnaker.cats.cluster.AgentPriorityProvider
+import com.netflix.spinnaker.cats.cluster.AgentPriorityProvider.Priority
+import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.function.ToDoubleFunction
+
+/**
+ * Picks which of the agents that are due to run get the available execution slots, in priority
+ * class order and earliest deadline first within a class.
+ *
+ * An agent's deadline is one interval after it became due, and it should start early enough to
+ * finish by then given its observed run time. Agents of a single provider and account are limited
+ * to `sql.agent.deadline-scheduling.max-concurrent-per-account` concurrent runs, so that one slow
+ * account can't take every slot.
+ *
+ * How long due agents wait for a slot is reported per priority class, as the
+ * `cats.agentScheduler.waiting` gauge for agents still waiting and the
+ * `cats.agentScheduler.startDelay` timer for agents that have started.
+ */
+internal class AgentDeadlineTracker(
+  private val intervalProvider: AgentIntervalProvider,
+  private val priorityProvider: AgentPriorityProvider,
+  private val dynamicConfigService: DynamicConfigService,
+  private val registry: Registry
+) : ExecutionInstrumentation {
+
+  private val waitingSince: MutableMap<String, Waiting> = ConcurrentHashMap()
+  private val runTimes: MutableMap<String, Long> = ConcurrentHashMap()
+  private val startedAt: MutableMap<String, Long> = ConcurrentHashMap()
+
+  private val startDelayId = registry.createId("cats.agentScheduler.startDelay")
+
+  init {
+    Priority.values().forEach { priority ->
+      registry.gauge(
+        registry.createId("cats.agentScheduler.waiting", "priority", priority.tag()),
+        this,
+        ToDoubleFunction { it.longestWait(priority, System.currentTimeMillis()).toDouble() }
+      )
+    }
+  }
+
+  /**
+   * @param candidates the agents that are due to run, by agent type
+   * @param active the agents that are currently running
+   * @param limit the number of execution slots available
+   * @return the candidates that should be run, in the order they should be started
+   */
+  fun order(
+    candidates: Map<String, AgentExecutionAction>,
+    active: Collection<Agent>,
+    limit: Int
+  ): Map<String, AgentExecutionAction> {
+    val now = System.currentTimeMillis()
+
+    // agents that are no longer candidates have been picked up, here or by another node
+    waitingSince.keys.retainAll(candidates.keys)
+    val waiting = candidates.mapValues { (agentType, action) ->
+      waitingSince.computeIfAbsent(agentType) { Waiting(now, priorityProvider.getPriority(action.agent)) }
+    }
+
+    val maxPerAccount = dynamicConfigService.getConfig(
+      Int::class.java, "sql.agent.deadline-scheduling.max-concurrent-per-account", 10
+    )
+    val running = active.groupingBy { accountKey(it) }.eachCount().toMutableMap()
+
+    val selected = LinkedHashMap<String, AgentExecutionAction>()
+    candidates.entries
+      .sortedWith(
+        compareBy<Map.Entry<String, AgentExecutionAction>>(
+          { waiting.getValue(it.key).priority },
+          { latestStart(it.key, it.value.agent, waiting.getValue(it.key).since) }
+        )
+      )
+      .forEach { (agentType, action) ->
+        if (selected.size >= limit) {
+          return selected
+        }
+        val account = accountKey(action.agent)
+        val runningForAccount = running.getOrDefault(account, 0)
+        if (runningForAccount < maxPerAccount) {
+          running[account] = runningForAccount + 1
+          selected[agentType] = action
+        }
+      }
+    return selected
+  }
+
+  override fun executionStarted(agent: Agent) {
+    val now = System.currentTimeMillis()
+    startedAt[agent.agentType] = now
+    waitingSince.remove(agent.agentType)?.let {
+      registry.timer(startDelayId.withTag("priority", it.priority.tag()))
+        .record(now - it.since, TimeUnit.MILLISECONDS)
+    }
+  }
+
+  override fun executionCompleted(agent: Agent, elapsedMs: Long) {
+    startedAt.remove(agent.agentType)
+    recordRunTime(agent.agentType, elapsedMs)
+  }
+
+  override fun executionFailed(agent: Agent, cause: Throwable) {
+    startedAt.remove(agent.agentType)?.let {
+      recordRunTime(agent.agentType, System.currentTimeMillis() - it)
+    }
+  }
+
+  fun forget(agentType: String) {
+    waitingSince.remove(agentType)
+    runTimes.remove(agentType)
+    startedAt.remove(agentType)
+  }
+
+  private fun latestStart(agentType: String, agent: Agent, dueSince: Long): Long {
+    val deadline = dueSince + intervalProvider.getInterval(agent).interval
+    return deadline - runTimes.getOrDefault(agentType, 0L)
+  }
+
+  private fun recordRunTime(agentType: String, elapsedMs: Long) {
+    // an exponentially weighted average, so a single slow run doesn't dominate
+    runTimes.merge(agentType, elapsedMs) { previous, latest -> (previous * 7 + latest * 3) / 10 }
+  }
+
+  private fun longestWait(priority: Priority, now: Long): Long =
+    waitingSince.values.filter { it.priority == priority }.map { now - it.since }.max() ?: 0
+
+  private fun accountKey(agent: Agent): String =
+    "${agent.providerName}/${(agent as? AccountAware)?.accountName ?: ""}"
+
+  private fun Priority.tag() = name.toLowerCase()
+
+  private data class Waiting(
+    val since: Long,
+    val priority: Priority
+  )
+}
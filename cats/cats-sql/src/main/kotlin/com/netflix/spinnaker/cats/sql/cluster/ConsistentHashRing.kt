@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.sql.cluster
+
+import com.google.common.hash.Hashing
+import java.nio.charset.StandardCharsets.UTF_8
+import java.util.TreeMap
+
+/**
+ * Maps keys onto a set of members so that a change in membership only moves the keys of the
+ * members that joined or left.
+ *
+ * Each member is placed on the ring [virtualNodes] times to even out the share of keys it owns.
+ */
+internal class ConsistentHashRing(
+  val members: Set<String>,
+  virtualNodes: Int
+) {
+
+  private val ring = TreeMap<Long, String>()
+
+  init {
+    members.forEach { member ->
+      (0 until virtualNodes).forEach { ring[hash("$member#$it")] = member }
+    }
+  }
+
+  /**
+   * @return the member owning the key, or null if the ring has no members
+   */
+  fun ownerOf(key: String): String? {
+    if (ring.isEmpty()) {
+      return null
+    }
+    return (ring.ceilingEntry(hash(key)) ?: ring.firstEntry()).value
+  }
+
+  private fun hash(value: String): Long = Hashing.murmur3_128().hashString(value, UTF_8).asLong()
+}
@@ -16,13 +16,19 @@
 package com.netflix.spinnaker.cats.sql.cluster
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder
+import com.netflix.spectator.api.BasicTag
+import com.netflix.spectator.api.NoopRegistry
+import com.netflix.spectator.api.Registry
 import com.netflix.spinnaker.cats.agent.Agent
 import com.netflix.spinnaker.cats.agent.AgentExecution
 import com.netflix.spinnaker.cats.agent.AgentLock
 import com.netflix.spinnaker.cats.agent.AgentScheduler
 import com.netflix.spinnaker.cats.agent.AgentSchedulerAware
+import com.netflix.spinnaker.cats.agent.CompositeExecutionInstrumentation
 import com.netflix.spinnaker.cats.agent.ExecutionInstrumentation
+import com.netflix.spinnaker.cats.cluster.AgentChangeHistory
 import com.netflix.spinnaker.cats.cluster.AgentIntervalProvider
+import com.netflix.spinnaker.cats.cluster.AgentPriorityProvider
 import com.netflix.spinnaker.cats.cluster.NodeIdentity
 import com.netflix.spinnaker.cats.cluster.NodeStatusProvider
 import com.netflix.spinnaker.cats.module.CatsModuleAware
@@ -30,8 +36,11 @@ import com.netflix.spinnaker.config.ConnectionPools
 import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService
 import com.netflix.spinnaker.kork.sql.routing.withPool
 import org.jooq.DSLContext
+import org.jooq.exception.DataAccessException
 import org.jooq.impl.DSL.field
 import org.jooq.impl.DSL.table
+import org.jooq.impl.DSL.`when`
+import org.jooq.util.mysql.MySQLDSL
 import org.slf4j.LoggerFactory
 import org.springframework.dao.DataIntegrityViolationException
 import java.sql.SQLException
@@ -65,11 +74,21 @@ class SqlClusteredAgentScheduler(
   ),
   lockPollingScheduler: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor(
     ThreadFactoryBuilder().setNameFormat(SqlClusteredAgentScheduler::class.java.simpleName + "-%d").build()
-  )
+  ),
+  private val registry: Registry = NoopRegistry(),
+  agentPriorityProvider: AgentPriorityProvider? = null
 ) : CatsModuleAware(), AgentScheduler<AgentLock>, Runnable {
 
   private val log = LoggerFactory.getLogger(javaClass)
 
+  private val acquireTimerId = registry.createId("cats.sqlAgentScheduler.acquire.latency")
+  private val acquiredId = registry.createId("cats.sqlAgentScheduler.acquire.acquired")
+  private val contendedId = registry.createId("cats.sqlAgentScheduler.acquire.contended")
+
+  private val deadlineTracker = agentPriorityProvider?.let {
+    AgentDeadlineTracker(intervalProvider, it, dynamicConfigService, registry)
+  }
+
   private val agents: MutableMap<String, AgentExecutionAction> = ConcurrentHashMap()
   private val activeAgents: MutableMap<String, NextAttempt> = ConcurrentHashMap()
   private val enabledAgents: Pattern
@@ -101,12 +120,17 @@ class SqlClusteredAgentScheduler(
     if (agent is AgentSchedulerAware) {
       agent.agentScheduler = this
     }
-    agents[agent.agentType] = AgentExecutionAction(agent, agentExecution, executionInstrumentation)
+    val instrumentation = deadlineTracker
+      ?.let { CompositeExecutionInstrumentation(listOf(executionInstrumentation, it)) }
+      ?: executionInstrumentation
+    agents[agent.agentType] = AgentExecutionAction(agent, agentExecution, instrumentation)
   }
 
   override fun unschedule(agent: Agent) {
     releaseLock(agent.agentType, 0) // Release the lock immediately
     agents.remove(agent.agentType)
+    deadlineTracker?.forget(agent.agentType)
+    AgentChangeHistory.getHistory().forget(agent.agentType)
   }
 
   override fun run() {
@@ -131,7 +155,22 @@ class SqlClusteredAgentScheduler(
   }
 
   private fun tryAcquire(): Map<String, NextAttempt> {
-    return findCandidateAgentLocks()
+    val batched = dynamicConfigService.isEnabled("sql.agent.batch-lock-acquisition", false)
+    val start = System.nanoTime()
+    val candidates = findCandidateAgentLocks(batched)
+
+    val acquired = if (batched) tryAcquireBatch(candidates) else tryAcquireEach(candidates)
+
+    val tags = listOf(BasicTag("batched", batched.toString()))
+    registry.timer(acquireTimerId.withTags(tags)).record(System.nanoTime() - start, TimeUnit.NANOSECONDS)
+    registry.counter(acquiredId.withTags(tags)).increment(acquired.size.toLong())
+    registry.counter(contendedId.withTags(tags)).increment((candidates.size - acquired.size).toLong())
+
+    return acquired
+  }
+
+  private fun tryAcquireEach(candidates: Map<String, AgentExecutionAction>): Map<String, NextAttempt> {
+    return candidates
       .map {
         val agentType = it.key
         val agentExecution = it.value
@@ -148,7 +187,64 @@ class SqlClusteredAgentScheduler(
       .toMap()
   }
 
-  private fun findCandidateAgentLocks(): Map<String, AgentExecutionAction> {
+  /**
+   * Claims the candidate locks with a single multi-row upsert that only takes over rows which have
+   * expired, then reads back which of them this node now owns.
+   */
+  private fun tryAcquireBatch(candidates: Map<String, AgentExecutionAction>): Map<String, NextAttempt> {
+    if (candidates.isEmpty()) {
+      return emptyMap()
+    }
+
+    val now = System.currentTimeMillis()
+    val intervals = candidates.mapValues { intervalProvider.getInterval(it.value.agent) }
+    val owner = nodeIdentity.nodeIdentity
+
+    val acquired = try {
+      withPool(POOL_NAME) {
+        val expired = field("lock_expiry", Long::class.java).lt(now)
+        val insert = jooq.insertInto(
+          table(lockTable),
+          field("agent_name"),
+          field("owner_id"),
+          field("lock_acquired"),
+          field("lock_expiry")
+        )
+        intervals.forEach { (agentType, interval) ->
+          insert.values(agentType, owner, now, now + interval.timeout)
+        }
+
+        // lock_expiry is assigned last, so the preceding assignments still see the expiry they replace
+        insert.onDuplicateKeyUpdate()
+          .set(field("owner_id"), `when`(expired, MySQLDSL.values(field("owner_id"))).otherwise(field("owner_id")))
+          .set(
+            field("lock_acquired"),
+            `when`(expired, MySQLDSL.values(field("lock_acquired"))).otherwise(field("lock_acquired"))
+          )
+          .set(field("lock_expiry"), `when`(expired, MySQLDSL.values(field("lock_expiry"))).otherwise(field("lock_expiry")))
+        insert.execute()
+
+        jooq.select(field("agent_name"))
+          .from(table(lockTable))
+          .where(
+            field("owner_id").eq(owner),
+            field("lock_acquired").eq(now),
+            field("agent_name").`in`(*candidates.keys.toTypedArray())
+          )
+          .fetch(field("agent_name"), String::class.java)
+      }
+    } catch (e: DataAccessException) {
+      log.error("Unexpected sql exception while trying to acquire agent locks", e)
+      emptyList<String>()
+    }
+
+    return acquired.associateWith {
+      val interval = intervals.getValue(it)
+      NextAttempt(now, interval.interval, interval.errorInterval)
+    }
+  }
+
+  private fun findCandidateAgentLocks(batched: Boolean): Map<String, AgentExecutionAction> {
     val skip = HashMap(activeAgents).entries
     val maxConcurrentAgents = dynamicConfigService.getConfig(Int::class.java, "sql.agent.max-concurrent-agents", 100)
     val availableAgents = maxConcurrentAgents - skip.size
@@ -174,32 +270,62 @@ class SqlClusteredAgentScheduler(
       .filterNot { disabledAgents.contains(it.key) }
       .toMutableMap()
 
-    withPool(POOL_NAME) {
-      val existingLocks = jooq.select(field("agent_name"), field("lock_expiry"))
-        .from(table(lockTable))
-        .fetch()
-        .intoResultSet()
-
-      val now = System.currentTimeMillis()
-      while (existingLocks.next()) {
-        if (now > existingLocks.getLong("lock_expiry")) {
-          try {
-            jooq.deleteFrom(table(lockTable))
-              .where(field("agent_name").eq(existingLocks.getString("agent_name"))
-                .and(field("lock_expiry").eq(existingLocks.getString("lock_expiry"))))
-              .execute()
-          } catch (e: SQLException) {
-            log.error("Failed deleting agent lock ${existingLocks.getString("agent_name")} with expiry " +
-              existingLocks.getString("lock_expiry"), e)
+    if (batched) {
+      // expired locks are deleted in bulk through the lock_expiry index, and live locks are only
+      // read for the agents being considered
+      withPool(POOL_NAME) {
+        val now = System.currentTimeMillis()
+        try {
+          jooq.deleteFrom(table(lockTable))
+            .where(field("lock_expiry", Long::class.java).lt(now))
+            .execute()
+        } catch (e: DataAccessException) {
+          log.error("Failed deleting expired agent locks", e)
+        }
 
+        candidateAgentLocks.keys.chunked(LOCK_READ_BATCH_SIZE).forEach { agentNames ->
+          jooq.select(field("agent_name"))
+            .from(table(lockTable))
+            .where(
+              field("agent_name").`in`(*agentNames.toTypedArray()),
+              field("lock_expiry", Long::class.java).ge(now)
+            )
+            .fetch(field("agent_name"), String::class.java)
+            .forEach { candidateAgentLocks.remove(it) }
+        }
+      }
+    } else {
+      withPool(POOL_NAME) {
+        val existingLocks = jooq.select(field("agent_name"), field("lock_expiry"))
+          .from(table(lockTable))
+          .fetch()
+          .intoResultSet()
+
+        val now = System.currentTimeMillis()
+        while (existingLocks.next()) {
+          if (now > existingLocks.getLong("lock_expiry")) {
+            try {
+              jooq.deleteFrom(table(lockTable))
+                .where(field("agent_name").eq(existingLocks.getString("agent_name"))
+                  .and(field("lock_expiry").eq(existingLocks.getString("lock_expiry"))))
+                .execute()
+            } catch (e: SQLException) {
+              log.error("Failed deleting agent lock ${existingLocks.getString("agent_name")} with expiry " +
+                existingLocks.getString("lock_expiry"), e)
+
+              candidateAgentLocks.remove(existingLocks.getString("agent_name"))
+            }
+          } else {
             candidateAgentLocks.remove(existingLocks.getString("agent_name"))
           }
-        } else {
-          candidateAgentLocks.remove(existingLocks.getString("agent_name"))
         }
       }
     }
 
+    if (deadlineTracker != null && dynamicConfigService.isEnabled("sql.agent.deadline-scheduling", false)) {
+      return deadlineTracker.order(candidateAgentLocks, skip.mapNotNull { agents[it.key]?.agent }, availableAgents)
+    }
+
     val trimmedCandidates = mutableMapOf<String, AgentExecutionAction>()
     candidateAgentLocks
       .forEach { k, v ->
@@ -273,14 +399,15 @@ class SqlClusteredAgentScheduler(
 
   companion object {
     private val POOL_NAME = ConnectionPools.CACHE_WRITER.value
+    private const val LOCK_READ_BATCH_SIZE = 500
   }
 }
 
-private enum class Status {
+internal enum class Status {
   SUCCESS, FAILURE
 }
 
-private class AgentExecutionAction(
+internal class AgentExecutionAction(
   val agent: Agent,
   val agentExecution: AgentExecution,
   val executionInstrumentation: ExecutionInstrumentation
@@ -300,7 +427,7 @@ private class AgentExecutionAction(
   }
 }
 
-private class AgentJob(
+internal class AgentJob(
   private val lockReleaseTime: NextAttempt,
   private val action: AgentExecutionAction,
   private val schedulerCallback: (agentType: String, nextExecutionTime: Long) -> Unit
@@ -316,7 +443,7 @@ private class AgentJob(
   }
 }
 
-private data class NextAttempt(
+internal data class NextAttempt(
   val currentTime: Long,
   val successInterval: Long,
   val errorInterval: Long
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.sql.cluster
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import com.netflix.spectator.api.NoopRegistry
+import com.netflix.spectator.api.Registry
+import com.netflix.spinnaker.cats.agent.Agent
+import com.netflix.spinnaker.cats.agent.AgentExecution
+import com.netflix.spinnaker.cats.agent.AgentLock
+import com.netflix.spinnaker.cats.agent.AgentScheduler
+import com.netflix.spinnaker.cats.agent.AgentSchedulerAware
+import com.netflix.spinnaker.cats.agent.CompositeExecutionInstrumentation
+import com.netflix.spinnaker.cats.agent.ExecutionInstrumentation
+import com.netflix.spinnaker.cats.cluster.AgentChangeHistory
+import com.netflix.spinnaker.cats.cluster.AgentIntervalProvider
+import com.netflix.spinnaker.cats.cluster.AgentPriorityProvider
+import com.netflix.spinnaker.cats.cluster.NodeIdentity
+import com.netflix.spinnaker.cats.cluster.NodeStatusProvider
+import com.netflix.spinnaker.cats.module.CatsModuleAware
+import com.netflix.spinnaker.config.ConnectionPools
+import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService
+import com.netflix.spinnaker.kork.sql.routing.withPool
+import org.jooq.DSLContext
+import org.jooq.exception.DataAccessException as JooqDataAccessException
+import org.jooq.impl.DSL.field
+import org.jooq.impl.DSL.table
+import org.jooq.util.mysql.MySQLDSL
+import org.slf4j.LoggerFactory
+import org.springframework.dao.DataAccessException
+import org.springframework.dao.DataIntegrityViolationException
+import java.time.Clock
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.regex.Pattern
+import java.util.regex.Pattern.CASE_INSENSITIVE
+
+/**
+ * Schedules agents by sharding them across the live clouddriver nodes with a consistent-hash ring,
+ * rather than having every node compete for every agent through the lock table.
+ *
+ * Nodes announce themselves by heartbeating a row in `cats_scheduler_nodes` every
+ * [heartbeatIntervalSeconds], and a node counts as live while its heartbeat is younger than
+ * [nodeTtlSeconds]. Each node only runs the agents the ring assigns to it, on their own intervals,
+ * without touching the database.
+ *
+ * The lock table is only used while an agent moves between nodes. When membership changes, a node
+ * that loses an agent still running locks it until the run completes, and the node gaining it waits
+ * at least [nodeTtlSeconds] and then has to take the lock for its first run. A node only runs
+ * agents within a heartbeat interval of its last heartbeat, so by then the previous owner has
+ * either noticed the change (and locked what it still runs) or, if its heartbeats stopped, has long
+ * stopped starting agents. A node whose own heartbeats lapsed for longer than the TTL may have been
+ * dropped by the others, so it rejoins as a new member, locking what it still runs and handing all
+ * of its agents off again.
+ */
+class SqlShardedAgentScheduler(
+  private val jooq: DSLContext,
+  private val nodeIdentity: NodeIdentity,
+  private val intervalProvider: AgentIntervalProvider,
+  private val nodeStatusProvider: NodeStatusProvider,
+  private val dynamicConfigService: DynamicConfigService,
+  enabledAgentPattern: String,
+  private val disabledAgentsConfig: List<String>,
+  heartbeatIntervalSeconds: Long,
+  nodeTtlSeconds: Long,
+  private val virtualNodes: Int,
+  private val tableNamespace: String? = null,
+  private val agentExecutionPool: ExecutorService = Executors.newCachedThreadPool(
+    ThreadFactoryBuilder().setNameFormat(AgentExecutionAction::class.java.simpleName + "-%d").build()
+  ),
+  schedulingExecutor: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor(
+    ThreadFactoryBuilder().setNameFormat(SqlShardedAgentScheduler::class.java.simpleName + "-%d").build()
+  ),
+  registry: Registry = NoopRegistry(),
+  agentPriorityProvider: AgentPriorityProvider? = null,
+  private val clock: Clock = Clock.systemUTC()
+) : CatsModuleAware(), AgentScheduler<AgentLock>, Runnable {
+
+  private val log = LoggerFactory.getLogger(javaClass)
+
+  private val deadlineTracker = agentPriorityProvider?.let {
+    AgentDeadlineTracker(intervalProvider, it, dynamicConfigService, registry)
+  }
+
+  private val agents: MutableMap<String, AgentExecutionAction> = ConcurrentHashMap()
+  private val activeAgents: MutableMap<String, NextAttempt> = ConcurrentHashMap()
+  private val nextRuns: MutableMap<String, Long> = ConcurrentHashMap()
+  private val handoffs: MutableMap<String, Long> = ConcurrentHashMap()
+  private val lockedAgents: MutableSet<String> = ConcurrentHashMap.newKeySet()
+  private val enabledAgents: Pattern
+
+  private val heartbeatIntervalMs = TimeUnit.SECONDS.toMillis(heartbeatIntervalSeconds)
+  private val nodeTtlMs = TimeUnit.SECONDS.toMillis(nodeTtlSeconds)
+  private val handoffDelayMs = Math.max(heartbeatIntervalMs, nodeTtlMs)
+
+  @Volatile
+  private var ring: ConsistentHashRing? = null
+  private var lastHeartbeat = 0L
+
+  private val lockTable = namespaced("cats_agent_locks")
+  private val nodeTable = namespaced("cats_scheduler_nodes")
+
+  init {
+    if (!tableNamespace.isNullOrBlank()) {
+      withPool(POOL_NAME) {
+        jooq.execute("CREATE TABLE IF NOT EXISTS $lockTable LIKE cats_agent_locks")
+        jooq.execute("CREATE TABLE IF NOT EXISTS $nodeTable LIKE cats_scheduler_nodes")
+      }
+    }
+
+    schedulingExecutor.scheduleWithFixedDelay(this, 0, 1, TimeUnit.SECONDS)
+    enabledAgents = Pattern.compile(enabledAgentPattern, CASE_INSENSITIVE)
+  }
+
+  override fun schedule(
+    agent: Agent,
+    agentExecution: AgentExecution,
+    executionInstrumentation: ExecutionInstrumentation
+  ) {
+    if (agent is AgentSchedulerAware) {
+      agent.agentScheduler = this
+    }
+    val instrumentation = deadlineTracker
+      ?.let { CompositeExecutionInstrumentation(listOf(executionInstrumentation, it)) }
+      ?: executionInstrumentation
+    agents[agent.agentType] = AgentExecutionAction(agent, agentExecution, instrumentation)
+  }
+
+  override fun unschedule(agent: Agent) {
+    agents.remove(agent.agentType)
+    nextRuns.remove(agent.agentType)
+    handoffs.remove(agent.agentType)
+    deadlineTracker?.forget(agent.agentType)
+    AgentChangeHistory.getHistory().forget(agent.agentType)
+  }
+
+  override fun run() {
+    try {
+      if (!nodeStatusProvider.isNodeEnabled) {
+        if (ring != null) {
+          leave()
+        }
+        return
+      }
+
+      val now = clock.millis()
+      if (ring == null || now - lastHeartbeat >= heartbeatIntervalMs) {
+        heartbeat(now)
+      }
+      runAgents(now)
+    } catch (t: Throwable) {
+      log.error("Failed running cache agents", t)
+    }
+  }
+
+  private fun heartbeat(now: Long) {
+    val me = nodeIdentity.nodeIdentity
+    val members = withPool(POOL_NAME) {
+      jooq.insertInto(table(nodeTable), field("node_id"), field("last_heartbeat"))
+        .values(me, now)
+        .onDuplicateKeyUpdate()
+        .set(field("last_heartbeat"), MySQLDSL.values(field("last_heartbeat")) as Any)
+        .execute()
+
+      jooq.select(field("node_id"))
+        .from(table(nodeTable))
+        .where(field("last_heartbeat", Long::class.java).ge(now - nodeTtlMs))
+        .fetch(field("node_id"), String::class.java)
+        .toSet() + me
+    }
+    val sinceLastHeartbeat = now - lastHeartbeat
+    lastHeartbeat = now
+
+    if (ring != null && sinceLastHeartbeat > nodeTtlMs) {
+      log.warn("Agent scheduler did not heartbeat for {}ms, rejoining the ring", sinceLastHeartbeat)
+      activeAgents.keys.forEach { tryLock(it, now) }
+      rebalance(ConsistentHashRing(members, virtualNodes), null, now)
+    } else if (members != ring?.members) {
+      rebalance(ConsistentHashRing(members, virtualNodes), ring, now)
+    }
+  }
+
+  /**
+   * @param previous the ring this node last ran agents by, or null if it may have been dropped from
+   *   the ring and has to hand off all of its agents
+   */
+  private fun rebalance(newRing: ConsistentHashRing, previous: ConsistentHashRing?, now: Long) {
+    val me = nodeIdentity.nodeIdentity
+
+    agents.keys.forEach { agentType ->
+      val wasOwned = previous?.ownerOf(agentType) == me
+      val isOwned = newRing.ownerOf(agentType) == me
+      if (isOwned && !wasOwned) {
+        handoffs[agentType] = now + handoffDelayMs
+      } else if (!isOwned) {
+        handoffs.remove(agentType)
+        if (wasOwned && activeAgents.containsKey(agentType)) {
+          tryLock(agentType, now)
+        }
+      }
+    }
+
+    ring = newRing
+    log.info("Agent scheduler membership changed to {} nodes: {}", newRing.members.size, newRing.members)
+
+    try {
+      withPool(POOL_NAME) {
+        jooq.deleteFrom(table(nodeTable))
+          .where(field("last_heartbeat", Long::class.java).lt(now - nodeTtlMs * 10))
+          .execute()
+      }
+    } catch (e: DataAccessException) {
+      log.warn("Failed deleting departed scheduler nodes", e)
+    } catch (e: JooqDataAccessException) {
+      log.warn("Failed deleting departed scheduler nodes", e)
+    }
+  }
+
+  /**
+   * Leaves the ring so that the other nodes take over this node's agents, keeping the ones still
+   * running locked until they complete.
+   */
+  private fun leave() {
+    val now = clock.millis()
+    activeAgents.keys.forEach { tryLock(it, now) }
+    handoffs.clear()
+    ring = null
+
+    withPool(POOL_NAME) {
+      jooq.deleteFrom(table(nodeTable))
+        .where(field("node_id").eq(nodeIdentity.nodeIdentity))
+        .execute()
+    }
+    log.info("Agent scheduler left the ring as this node has been disabled")
+  }
+
+  private fun runAgents(now: Long) {
+    val currentRing = ring ?: return
+    val me = nodeIdentity.nodeIdentity
+
+    val maxConcurrentAgents = dynamicConfigService.getConfig(Int::class.java, "sql.agent.max-concurrent-agents", 100)
+    val availableAgents = maxConcurrentAgents - activeAgents.size
+    if (availableAgents <= 0) {
+      return
+    }
+
+    val disabledAgents = dynamicConfigService.getConfig(
+      String::class.java,
+      "sql.agent.disabled-agents",
+      disabledAgentsConfig.joinToString(",")
+    ).split(",").map { it.trim() }
+
+    val dueAgents = agents
+      .filter { !activeAgents.containsKey(it.key) }
+      .filter { (nextRuns[it.key] ?: 0) <= now }
+      .filter { enabledAgents.matcher(it.key).matches() }
+      .filterNot { disabledAgents.contains(it.key) }
+      .filter { currentRing.ownerOf(it.key) == me }
+
+    val toRun = if (deadlineTracker != null && dynamicConfigService.isEnabled("sql.agent.deadline-scheduling", false)) {
+      deadlineTracker.order(dueAgents, activeAgents.keys.mapNotNull { agents[it]?.agent }, availableAgents).entries
+    } else {
+      dueAgents.entries.take(availableAgents)
+    }
+
+    toRun.forEach { (agentType, action) ->
+      val interval = intervalProvider.getInterval(action.agent)
+
+      val handoff = handoffs[agentType]
+      if (handoff != null) {
+        if (now < handoff || !tryLock(agentType, now, interval.timeout)) {
+          return@forEach
+        }
+        handoffs.remove(agentType)
+      }
+
+      val nextAttempt = NextAttempt(now, interval.interval, interval.errorInterval)
+      activeAgents[agentType] = nextAttempt
+      agentExecutionPool.submit(AgentJob(nextAttempt, action, this::agentCompleted))
+    }
+  }
+
+  private fun tryLock(agentType: String, now: Long, timeout: Long? = null): Boolean {
+    val lockTimeout = timeout ?: agents[agentType]?.let { intervalProvider.getInterval(it.agent).timeout } ?: return false
+    try {
+      withPool(POOL_NAME) {
+        jooq.deleteFrom(table(lockTable))
+          .where(field("agent_name").eq(agentType), field("lock_expiry", Long::class.java).lt(now))
+          .execute()
+
+        jooq.insertInto(table(lockTable))
+          .columns(
+            field("agent_name"),
+            field("owner_id"),
+            field("lock_acquired"),
+            field("lock_expiry")
+          )
+          .values(agentType, nodeIdentity.nodeIdentity, now, now + lockTimeout)
+          .execute()
+      }
+    } catch (e: DataIntegrityViolationException) {
+      // The agent is still locked by the node it is moving from (or to)
+      return false
+    } catch (e: DataAccessException) {
+      log.error("Unexpected sql exception while trying to lock agent $agentType for handoff", e)
+      return false
+    } catch (e: JooqDataAccessException) {
+      log.error("Unexpected sql exception while trying to lock agent $agentType for handoff", e)
+      return false
+    }
+
+    lockedAgents.add(agentType)
+    return true
+  }
+
+  private fun agentCompleted(agentType: String, nextExecutionTime: Long) {
+    try {
+      nextRuns[agentType] = nextExecutionTime
+      if (lockedAgents.remove(agentType)) {
+        withPool(POOL_NAME) {
+          jooq.deleteFrom(table(lockTable))
+            .where(field("agent_name").eq(agentType), field("owner_id").eq(nodeIdentity.nodeIdentity))
+            .execute()
+        }
+      }
+    } catch (e: DataAccessException) {
+      log.error("Failed to release handoff lock for agent: $agentType", e)
+    } catch (e: JooqDataAccessException) {
+      log.error("Failed to release handoff lock for agent: $agentType", e)
+    } finally {
+      activeAgents.remove(agentType)
+    }
+  }
+
+  private fun namespaced(table: String): String =
+    if (tableNamespace.isNullOrBlank()) table else "${table}_$tableNamespace"
+
+  companion object {
+    private val POOL_NAME = ConnectionPools.CACHE_WRITER.value
+  }
+}
@@ -1,9 +1,12 @@
 package com.netflix.spinnaker.cats.sql.controllers
 
+import com.netflix.spinnaker.cats.sql.cache.ResourceTableMigration
+import com.netflix.spinnaker.cats.sql.cache.SqlResourceTableMigrations
 import com.netflix.spinnaker.cats.sql.cache.SqlSchemaVersion
 import com.netflix.spinnaker.fiat.shared.FiatPermissionEvaluator
 import com.netflix.spinnaker.kork.sql.config.SqlProperties
 import com.netflix.spinnaker.security.AuthenticatedRequest
+import org.jooq.DSLContext
 import org.jooq.SQLDialect
 import org.jooq.impl.DSL
 import org.slf4j.LoggerFactory
@@ -11,9 +14,11 @@ import org.springframework.beans.factory.annotation.Value
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
 import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.security.authentication.BadCredentialsException
+import org.springframework.web.bind.annotation.GetMapping
 import org.springframework.web.bind.annotation.PathVariable
 import org.springframework.web.bind.annotation.PutMapping
 import org.springframework.web.bind.annotation.RequestMapping
+import org.springframework.web.bind.annotation.RequestParam
 import org.springframework.web.bind.annotation.RestController
 import java.sql.DriverManager
 
@@ -25,7 +30,8 @@ import java.sql.DriverManager
 @RequestMapping("/admin/db")
 class CatsSqlAdminController(
   private val fiat: FiatPermissionEvaluator,
-  private val properties: SqlProperties
+  private val properties: SqlProperties,
+  private val migrations: SqlResourceTableMigrations
 ) {
 
   companion object {
@@ -102,6 +108,48 @@ class CatsSqlAdminController(
     return CleanTablesResult(tableCount = tablesDropped.size, tables = tablesDropped)
   }
 
+  /**
+   * Lists the resource tables that are missing schema changes, with the statement migrating each
+   * of them. Large tables should be migrated with an online schema change tool running the
+   * statement, as it blocks writes to the table until it has been rebuilt.
+   */
+  @GetMapping(path = ["/migrations"])
+  fun pendingMigrations(): Collection<ResourceTableMigration> {
+    validatePermissions()
+
+    return withMigrationContext { migrations.pending(it) }
+  }
+
+  /**
+   * Migrates the given resource tables in place, one at a time, blocking writes to each of them
+   * until it has been rebuilt.
+   */
+  @PutMapping(path = ["/migrations"])
+  fun applyMigrations(@RequestParam("table") tables: List<String>): Collection<ResourceTableMigration> {
+    validatePermissions()
+
+    return withMigrationContext { jooq ->
+      val pending = migrations.pending(jooq).associateBy { it.table }
+      val unknown = tables.filter { !pending.containsKey(it) }
+      if (unknown.isNotEmpty()) {
+        throw IllegalArgumentException("No pending migrations for tables: $unknown")
+      }
+
+      tables.map { pending.getValue(it) }
+        .onEach { migrations.apply(jooq, it) }
+    }
+  }
+
+  private fun <T> withMigrationContext(action: (DSLContext) -> T): T {
+    val conn = DriverManager.getConnection(
+      properties.migration.jdbcUrl,
+      properties.migration.user,
+      properties.migration.password
+    )
+
+    return conn.use { action(DSL.using(it, SQLDialect.MYSQL)) }
+  }
+
   private fun validateParams(currentNamespace: String?, targetNamespace: String) {
     if (currentNamespace == null) {
       throw IllegalStateException("truncate can only be called when sql.tableNamespace is set")
@@ -29,6 +29,8 @@ class SqlAgentProperties {
   var maxConcurrentAgents: Int = 100
   var agentLockAcquisitionIntervalSeconds: Long = 1
   var poll: SqlPollProperties = SqlPollProperties()
+  var sharding: SqlShardingProperties = SqlShardingProperties()
+  var priority: SqlPriorityProperties = SqlPriorityProperties()
 }
 
 class SqlPollProperties {
@@ -36,3 +38,23 @@ class SqlPollProperties {
   var errorIntervalSeconds: Long = 30
   var timeoutSeconds: Long = 300
 }
+
+/**
+ * Configures the consistent-hash sharded scheduler, used instead of lock-per-agent scheduling when
+ * [enabled].
+ */
+class SqlShardingProperties {
+  var enabled: Boolean = false
+  var heartbeatIntervalSeconds: Long = 5
+  var nodeTtlSeconds: Long = 20
+  var virtualNodes: Int = 64
+}
+
+/**
+ * Assigns agents to priority classes by agent type, for deadline-aware scheduling
+ * (`sql.agent.deadline-scheduling.enabled`).
+ */
+class SqlPriorityProperties {
+  var criticalPattern: String = ".*(Cluster|ServerGroup).*"
+  var lowPattern: String = ".*(ReservedInstances|Image).*"
+}
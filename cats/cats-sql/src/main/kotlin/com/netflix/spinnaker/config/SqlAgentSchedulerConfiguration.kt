@@ -15,14 +15,20 @@
  */
 package com.netflix.spinnaker.config
 
+import com.netflix.spectator.api.Registry
 import com.netflix.spinnaker.cats.agent.AgentScheduler
+import com.netflix.spinnaker.cats.cluster.AdaptiveAgentIntervalProvider
 import com.netflix.spinnaker.cats.cluster.AgentIntervalProvider
+import com.netflix.spinnaker.cats.cluster.DefaultAgentPriorityProvider
 import com.netflix.spinnaker.cats.cluster.DefaultNodeIdentity
 import com.netflix.spinnaker.cats.cluster.NodeStatusProvider
 import com.netflix.spinnaker.cats.sql.cluster.SqlClusteredAgentScheduler
+import com.netflix.spinnaker.cats.sql.cluster.SqlShardedAgentScheduler
 import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService
 import org.jooq.DSLContext
+import org.slf4j.LoggerFactory
 import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
@@ -31,19 +37,27 @@ import org.springframework.context.annotation.Configuration
 @ConditionalOnProperty(value = ["caching.write-enabled"], matchIfMissing = true)
 class SqlAgentSchedulerConfiguration {
 
+  companion object {
+    private val log = LoggerFactory.getLogger(SqlAgentSchedulerConfiguration::class.java)
+  }
+
   @Bean
-  @ConditionalOnProperty(value = [
-    "sql.enabled",
-    "sql.scheduler.enabled"
-  ])
+  @ConditionalOnExpression(
+    "\${sql.enabled:false} && \${sql.scheduler.enabled:false} && !\${sql.agent.sharding.enabled:false}"
+  )
   fun sqlAgentScheduler(
     jooq: DSLContext,
     agentIntervalProvider: AgentIntervalProvider,
     nodeStatusProvider: NodeStatusProvider,
     dynamicConfigService: DynamicConfigService,
     @Value("\${sql.table-namespace:#{null}}") tableNamespace: String?,
-    sqlAgentProperties: SqlAgentProperties
+    sqlAgentProperties: SqlAgentProperties,
+    registry: Registry
   ): AgentScheduler<*> {
+    if (agentIntervalProvider is AdaptiveAgentIntervalProvider) {
+      log.warn("caching.adaptive-intervals counts the runs of an agent per node, use sql.agent.sharding.enabled " +
+        "to keep running agents on the same node or intervals stretch more slowly than configured")
+    }
     return SqlClusteredAgentScheduler(
       jooq = jooq,
       nodeIdentity = DefaultNodeIdentity(),
@@ -53,7 +67,42 @@ class SqlAgentSchedulerConfiguration {
       enabledAgentPattern = sqlAgentProperties.enabledPattern,
       disabledAgentsConfig = sqlAgentProperties.disabledAgents,
       tableNamespace = tableNamespace,
-      agentLockAcquisitionIntervalSeconds = sqlAgentProperties.agentLockAcquisitionIntervalSeconds
+      agentLockAcquisitionIntervalSeconds = sqlAgentProperties.agentLockAcquisitionIntervalSeconds,
+      registry = registry,
+      agentPriorityProvider = agentPriorityProvider(sqlAgentProperties)
     )
   }
+
+  @Bean
+  @ConditionalOnExpression(
+    "\${sql.enabled:false} && \${sql.scheduler.enabled:false} && \${sql.agent.sharding.enabled:false}"
+  )
+  fun sqlShardedAgentScheduler(
+    jooq: DSLContext,
+    agentIntervalProvider: AgentIntervalProvider,
+    nodeStatusProvider: NodeStatusProvider,
+    dynamicConfigService: DynamicConfigService,
+    @Value("\${sql.table-namespace:#{null}}") tableNamespace: String?,
+    sqlAgentProperties: SqlAgentProperties,
+    registry: Registry
+  ): AgentScheduler<*> {
+    return SqlShardedAgentScheduler(
+      jooq = jooq,
+      nodeIdentity = DefaultNodeIdentity(),
+      intervalProvider = agentIntervalProvider,
+      nodeStatusProvider = nodeStatusProvider,
+      dynamicConfigService = dynamicConfigService,
+      enabledAgentPattern = sqlAgentProperties.enabledPattern,
+      disabledAgentsConfig = sqlAgentProperties.disabledAgents,
+      heartbeatIntervalSeconds = sqlAgentProperties.sharding.heartbeatIntervalSeconds,
+      nodeTtlSeconds = sqlAgentProperties.sharding.nodeTtlSeconds,
+      virtualNodes = sqlAgentProperties.sharding.virtualNodes,
+      tableNamespace = tableNamespace,
+      registry = registry,
+      agentPriorityProvider = agentPriorityProvider(sqlAgentProperties)
+    )
+  }
+
+  private fun agentPriorityProvider(sqlAgentProperties: SqlAgentProperties) =
+    DefaultAgentPriorityProvider(sqlAgentProperties.priority.criticalPattern, sqlAgentProperties.priority.lowPattern)
 }
@@ -5,7 +5,10 @@ import com.netflix.discovery.EurekaClient
 import com.netflix.spectator.api.Registry
 import com.netflix.spinnaker.cats.agent.AgentScheduler
 import com.netflix.spinnaker.cats.agent.ExecutionInstrumentation
+import com.netflix.spinnaker.cats.cache.CacheVersionStamps
+import com.netflix.spinnaker.cats.cache.CacheVersionTracker
 import com.netflix.spinnaker.cats.cache.NamedCacheFactory
+import com.netflix.spinnaker.cats.codec.MultiFormatCacheDataCodec
 import com.netflix.spinnaker.cats.cluster.AgentIntervalProvider
 import com.netflix.spinnaker.cats.cluster.DefaultNodeStatusProvider
 import com.netflix.spinnaker.cats.cluster.NodeStatusProvider
@@ -17,10 +20,16 @@ import com.netflix.spinnaker.cats.sql.SqlProviderRegistry
 import com.netflix.spinnaker.cats.sql.cache.SpectatorSqlCacheMetrics
 import com.netflix.spinnaker.cats.sql.cache.SqlUnknownAgentCleanupAgent
 import com.netflix.spinnaker.cats.sql.cache.SqlCacheMetrics
+import com.netflix.spinnaker.cats.sql.cache.SqlCacheVersionStamps
 import com.netflix.spinnaker.cats.sql.cache.SqlCleanupStaleOnDemandCachesAgent
 import com.netflix.spinnaker.cats.sql.cache.SqlNamedCacheFactory
 import com.netflix.spinnaker.cats.sql.cache.SqlNames
+import com.netflix.spinnaker.cats.sql.cache.SqlReadRouter
+import com.netflix.spinnaker.cats.sql.cache.SqlReplicationHeartbeatAgent
+import com.netflix.spinnaker.cats.sql.cache.SqlResourceTableMigrations
 import com.netflix.spinnaker.cats.sql.cache.SqlTableMetricsAgent
+import com.netflix.spinnaker.cats.sql.cache.SqlWriteCoalescer
+import com.netflix.spinnaker.clouddriver.cache.AdaptiveAgentIntervalProperties
 import com.netflix.spinnaker.clouddriver.cache.CustomSchedulableAgentIntervalProvider
 import com.netflix.spinnaker.clouddriver.cache.EurekaStatusNodeStatusProvider
 import com.netflix.spinnaker.clouddriver.sql.SqlProvider
@@ -53,7 +62,12 @@ const val coroutineThreadPrefix = "catsSql"
 @Configuration
 @ConditionalOnProperty("sql.cache.enabled")
 @Import(DefaultSqlConfiguration::class)
-@EnableConfigurationProperties(SqlAgentProperties::class, SqlConstraints::class)
+@EnableConfigurationProperties(
+  SqlAgentProperties::class,
+  SqlCacheProperties::class,
+  SqlConstraints::class,
+  AdaptiveAgentIntervalProperties::class
+)
 @ComponentScan("com.netflix.spinnaker.cats.sql.controllers")
 class SqlCacheConfiguration {
 
@@ -100,8 +114,12 @@ class SqlCacheConfiguration {
     cacheMetrics: SqlCacheMetrics,
     dynamicConfigService: DynamicConfigService,
     sqlConstraints: SqlConstraints,
+    sqlCacheProperties: SqlCacheProperties,
     @Value("\${sql.cache.async-pool-size:0}") poolSize: Int,
-    @Value("\${sql.table-namespace:#{null}}") tableNamespace: String?
+    @Value("\${sql.table-namespace:#{null}}") tableNamespace: String?,
+    @Value("\${sql.cache.data-format:json}") cacheDataFormat: String,
+    readRouter: Optional<SqlReadRouter>,
+    writeCoalescer: Optional<SqlWriteCoalescer>
   ): NamedCacheFactory {
     if (tableNamespace != null && !tableNamespace.matches("""^\w+$""".toRegex())) {
       throw IllegalArgumentException("tableNamespace can only contain characters [a-z, A-Z, 0-9, _]")
@@ -133,16 +151,130 @@ class SqlCacheConfiguration {
       tableNamespace,
       cacheMetrics,
       dynamicConfigService,
-      sqlConstraints
+      sqlConstraints,
+      cacheDataFormat,
+      readRouter.orElse(null),
+      writeCoalescer.orElse(null),
+      sqlCacheProperties.partitions
     )
   }
 
+  /**
+   * Lists and applies the schema changes that resource tables created from older templates lack, through the
+   * /admin/db/migrations endpoints. The caches never alter their tables themselves.
+   */
+  @Bean
+  fun sqlResourceTableMigrations(
+    sqlConstraints: SqlConstraints,
+    sqlCacheProperties: SqlCacheProperties,
+    @Value("\${sql.table-namespace:#{null}}") tableNamespace: String?,
+    @Value("\${sql.cache.data-format:json}") cacheDataFormat: String
+  ): SqlResourceTableMigrations =
+    SqlResourceTableMigrations(
+      tableNamespace,
+      MultiFormatCacheDataCodec.forFormat(cacheDataFormat, ObjectMapper()).isBinary,
+      sqlCacheProperties.partitions,
+      sqlConstraints
+    )
+
+  /**
+   * sql.cache.write-coalescing.enabled: Merges the resource upserts of concurrently running caching agents into
+   * shared statements of up to sql.cache.write-coalescing.batch-size rows per table, holding rows for at most
+   * sql.cache.write-coalescing.max-delay-ms. Agents block once sql.cache.write-coalescing.max-pending-rows are
+   * waiting to be written, and write their rows directly if they aren't written within
+   * sql.cache.write-coalescing.write-timeout-ms.
+   */
+  @Bean
+  @ConditionalOnExpression("!\${sql.read-only:false} && \${sql.cache.write-coalescing.enabled:false}")
+  fun sqlWriteCoalescer(
+    jooq: DSLContext,
+    @Value("\${sql.cache.write-coalescing.batch-size:500}") batchSize: Int,
+    @Value("\${sql.cache.write-coalescing.max-delay-ms:200}") maxDelayMs: Long,
+    @Value("\${sql.cache.write-coalescing.max-pending-rows:10000}") maxPendingRows: Int,
+    @Value("\${sql.cache.write-coalescing.threads:4}") threads: Int,
+    @Value("\${sql.cache.write-coalescing.write-timeout-ms:30000}") writeTimeoutMs: Long
+  ): SqlWriteCoalescer =
+    SqlWriteCoalescer(
+      jooq,
+      batchSize,
+      Duration.ofMillis(maxDelayMs),
+      maxPendingRows,
+      threads,
+      Duration.ofMillis(writeTimeoutMs)
+    )
+
+  /**
+   * sql.cache.read-replica.enabled: Routes cache reads to the sql.cache.read-replica.pool-name connection pool
+   * (default: cacheReader) while the replica's lag, measured from a heartbeat row written to the primary every
+   * sql.cache.read-replica.heartbeat-interval-ms, is within sql.cache.read-replica.max-staleness-ms.
+   */
+  @Bean
+  @ConditionalOnProperty("sql.cache.read-replica.enabled")
+  fun sqlReadRouter(
+    jooq: DSLContext,
+    clock: Clock,
+    cacheMetrics: SqlCacheMetrics,
+    dynamicConfigService: DynamicConfigService,
+    @Value("\${sql.cache.read-replica.pool-name:cacheReader}") poolName: String,
+    @Value("\${sql.cache.read-replica.heartbeat-interval-ms:5000}") heartbeatIntervalMs: Long,
+    @Value("\${sql.table-namespace:#{null}}") tableNamespace: String?
+  ): SqlReadRouter =
+    SqlReadRouter(
+      jooq,
+      clock,
+      dynamicConfigService,
+      cacheMetrics,
+      poolName,
+      tableNamespace ?: "default",
+      Duration.ofMillis(heartbeatIntervalMs)
+    )
+
+  @Bean
+  @ConditionalOnExpression("!\${sql.read-only:false} && \${sql.cache.read-replica.enabled:false}")
+  fun sqlReplicationHeartbeatAgent(
+    jooq: DSLContext,
+    clock: Clock,
+    @Value("\${sql.cache.read-replica.heartbeat-interval-ms:5000}") heartbeatIntervalMs: Long,
+    @Value("\${sql.table-namespace:#{null}}") tableNamespace: String?
+  ): SqlReplicationHeartbeatAgent =
+    SqlReplicationHeartbeatAgent(jooq, clock, tableNamespace ?: "default", Duration.ofMillis(heartbeatIntervalMs))
+
+  /**
+   * caching.near-cache.enabled / caching.near-cache.publish-versions: Shares versions of the cache items between
+   * nodes, so that nodes keeping local copies of cache items know when another node has written them. Nodes that only
+   * write to the cache need publish-versions when other nodes have the near cache enabled. The in-memory search index
+   * uses the versions to only read the types other nodes have written.
+   */
+  @Bean
+  @ConditionalOnExpression(
+    "\${caching.near-cache.enabled:false} || \${caching.near-cache.publish-versions:false} || " +
+      "\${caching.search.in-memory.enabled:false}"
+  )
+  fun cacheVersionStamps(jooq: DSLContext): CacheVersionStamps =
+    SqlCacheVersionStamps(jooq)
+
+  @Bean
+  @ConditionalOnExpression(
+    "\${caching.near-cache.enabled:false} || \${caching.near-cache.publish-versions:false} || " +
+      "\${caching.search.in-memory.enabled:false}"
+  )
+  fun cacheVersionTracker(
+    cacheVersionStamps: CacheVersionStamps,
+    @Value("\${caching.near-cache.version-poll-interval-ms:1000}") pollIntervalMs: Long
+  ): CacheVersionTracker =
+    CacheVersionTracker(cacheVersionStamps, Duration.ofMillis(pollIntervalMs))
+
   @Bean
-  fun agentIntervalProvider(sqlAgentProperties: SqlAgentProperties): AgentIntervalProvider {
-    return CustomSchedulableAgentIntervalProvider(
-      Duration.ofSeconds(sqlAgentProperties.poll.intervalSeconds).toMillis(),
-      Duration.ofSeconds(sqlAgentProperties.poll.errorIntervalSeconds).toMillis(),
-      Duration.ofSeconds(sqlAgentProperties.poll.timeoutSeconds).toMillis()
+  fun agentIntervalProvider(
+    sqlAgentProperties: SqlAgentProperties,
+    adaptiveAgentIntervalProperties: AdaptiveAgentIntervalProperties
+  ): AgentIntervalProvider {
+    return adaptiveAgentIntervalProperties.apply(
+      CustomSchedulableAgentIntervalProvider(
+        Duration.ofSeconds(sqlAgentProperties.poll.intervalSeconds).toMillis(),
+        Duration.ofSeconds(sqlAgentProperties.poll.errorIntervalSeconds).toMillis(),
+        Duration.ofSeconds(sqlAgentProperties.poll.timeoutSeconds).toMillis()
+      )
     )
   }
 
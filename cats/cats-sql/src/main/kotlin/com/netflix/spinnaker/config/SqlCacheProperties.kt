@@ -0,0 +1,29 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.config
+
+import org.springframework.boot.context.properties.ConfigurationProperties
+
+@ConfigurationProperties("sql.cache")
+class SqlCacheProperties {
+  /**
+   * The number of MySQL KEY partitions by agent of the resource table of a type, such as
+   * `sql.cache.partitions.[serverGroups]: 8`. New tables are created partitioned, existing ones
+   * are repartitioned out of band through the /admin/db/migrations endpoints.
+   */
+  var partitions: Map<String, Int> = emptyMap()
+}
@@ -4,8 +4,10 @@ import com.fasterxml.jackson.databind.ObjectMapper
 import com.netflix.spinnaker.cats.cache.Cache
 import com.netflix.spinnaker.cats.cache.RelationshipCacheFilter
 import com.netflix.spinnaker.cats.cache.WriteableCacheSpec
+import com.netflix.spinnaker.cats.codec.MultiFormatCacheDataCodec
 import com.netflix.spinnaker.cats.sql.cache.SqlCache
 import com.netflix.spinnaker.cats.sql.cache.SqlCacheMetrics
+import com.netflix.spinnaker.cats.sql.cache.SqlResourceTableMigrations
 import com.netflix.spinnaker.config.SqlConstraints
 import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService
 import com.netflix.spinnaker.kork.sql.config.RetryProperties
@@ -80,6 +82,131 @@ class SqlCacheSpec extends WriteableCacheSpec {
     retrieved.findAll { it.id == "fnord-5" }.size() == 1
   }
 
+  def 'resource tables are partitioned by agent when configured'() {
+    when:
+    ((SqlCache) cache).merge('foo', createData('blerp'))
+
+    then:
+    partitions('cats_v1_test_foo') == 2
+    ((SqlCache) cache).get('foo', 'blerp') != null
+  }
+
+  def 'populated resource tables are partitioned by their migration'() {
+    given:
+    ((SqlCache) cache).merge('bar', createData('blerp'))
+    def migrations = new SqlResourceTableMigrations('test', false, [foo: 2, bar: 3], new SqlConstraints())
+
+    when:
+    def pending = migrations.pending(context)
+
+    then:
+    partitions('cats_v1_test_bar') == 0
+    pending*.statement == ['ALTER TABLE `cats_v1_test_bar` PARTITION BY KEY(agent) PARTITIONS 3']
+
+    when:
+    pending.each { migrations.apply(context, it) }
+
+    then:
+    partitions('cats_v1_test_bar') == 3
+    migrations.pending(context).isEmpty()
+    ((SqlCache) cache).get('bar', 'blerp') != null
+  }
+
+  @Unroll
+  def 'filters identifiers by key segments for glob #glob'() {
+    given:
+    ((SqlCache) cache).mergeAll('serverGroups', [
+      'aws:serverGroups:app-main:test:us-east-1:app-main-v001',
+      'aws:serverGroups:app-main:prod:us-east-1:app-main-v001',
+      'aws:serverGroups:app-main:test:us-west-2:app-main-v001',
+      'aws:serverGroups:app:extra:test:us-east-1:app-extra-v001',
+      'titus:serverGroups:app-main:test:us-east-1:app-main-v002'
+    ].collect { createData(it) })
+
+    expect:
+    ((SqlCache) cache).filterIdentifiers('serverGroups', glob).sort() == expected
+
+    where:
+    glob                                     || expected
+    'aws:serverGroups:*:test:us-east-1:*'    || ['aws:serverGroups:app-main:test:us-east-1:app-main-v001', 'aws:serverGroups:app:extra:test:us-east-1:app-extra-v001']
+    '*:serverGroups:app-main:test:us-*:*'    || ['aws:serverGroups:app-main:test:us-east-1:app-main-v001', 'aws:serverGroups:app-main:test:us-west-2:app-main-v001', 'titus:serverGroups:app-main:test:us-east-1:app-main-v002']
+    'aws:serverGroups:*:pro?:*:*'            || ['aws:serverGroups:app-main:prod:us-east-1:app-main-v001']
+    'aws:serverGroups:*:*:*:app-main-v00[2]' || []
+  }
+
+  def 'resource tables created before key segments are searched by id until they are migrated'() {
+    given: 'a table created from the template before it had key segment columns'
+    def legacy = 'aws:legacy:test:us-east-1:legacy-1'
+    def migrations = new SqlResourceTableMigrations('test')
+    context.execute('CREATE TABLE cats_v1_test_legacy LIKE cats_v1_resource_template')
+    context.execute('ALTER TABLE cats_v1_test_legacy DROP INDEX key_segments_idx, ' +
+      'DROP COLUMN key_segments, DROP COLUMN key_provider, DROP COLUMN key_seg_2, ' +
+      'DROP COLUMN key_seg_3, DROP COLUMN key_seg_4, DROP COLUMN key_seg_5')
+    context.insertInto(DSL.table('cats_v1_test_legacy'),
+      DSL.field('id'), DSL.field('agent'), DSL.field('body_hash'), DSL.field('body'), DSL.field('last_updated'))
+      .values(legacy, 'legacyAgent', 'a' * 64, new ObjectMapper().writeValueAsString(createData(legacy)), 0L)
+      .execute()
+
+    when: 'the type is written'
+    ((SqlCache) cache).merge('legacy', createData('aws:legacy:test:us-east-1:legacy-2'))
+
+    then: 'the table is left alone'
+    columns('cats_v1_test_legacy').every { !it.startsWith('key_') }
+    migrations.pending(context)*.table == ['cats_v1_test_legacy']
+    ((SqlCache) cache).filterIdentifiers('legacy', 'aws:legacy:test:us-east-1:*').sort() ==
+      [legacy, 'aws:legacy:test:us-east-1:legacy-2']
+
+    when: 'the table is migrated'
+    migrations.pending(context).each { migrations.apply(context, it) }
+    def segments = context.select(
+      DSL.field('key_segments'), DSL.field('key_provider'), DSL.field('key_seg_2'), DSL.field('key_seg_3'))
+      .from(DSL.table('cats_v1_test_legacy'))
+      .where(DSL.field('id').eq(legacy))
+      .fetchOne()
+
+    then: 'the key segments of existing rows are generated'
+    segments.intoList() == [5, 'aws', 'test', 'us-east-1']
+    migrations.pending(context).isEmpty()
+    ((SqlCache) cache).filterIdentifiers('legacy', 'aws:legacy:test:us-east-1:*').sort() ==
+      [legacy, 'aws:legacy:test:us-east-1:legacy-2']
+  }
+
+  def 'smile bodies are stored as raw bytes once the body is a blob'() {
+    given:
+    ((SqlCache) cache).merge('foo', createData('json', [a: 'b'], [rel: ['rel:1']]))
+    def smileCache = smileCache()
+
+    when: 'tables are created by a cache writing smile'
+    smileCache.merge('bar', createData('smile', [c: 'd'], [rel: ['rel:2']]))
+
+    then:
+    bodyType('cats_v1_test_bar') == 'longblob'
+    isSmile(body('cats_v1_test_bar', 'smile'))
+
+    when: 'the text body of existing tables is left alone'
+    smileCache.merge('foo', createData('smile', [c: 'd'], [rel: ['rel:2']]))
+
+    then:
+    bodyType('cats_v1_test_foo') != 'longblob'
+    !isSmile(body('cats_v1_test_foo', 'smile'))
+
+    when: 'the tables are migrated'
+    def migrations = new SqlResourceTableMigrations('test', true)
+    migrations.pending(context).each { migrations.apply(context, it) }
+    smileCache = smileCache()
+    smileCache.merge('foo', createData('smile', [e: 'f'], [rel: ['rel:2']]))
+
+    then:
+    bodyType('cats_v1_test_foo') == 'longblob'
+    isSmile(body('cats_v1_test_foo', 'smile'))
+    migrations.pending(context).isEmpty()
+    [cache, smileCache].each {
+      def items = it.getAll('foo').collectEntries { item -> [(item.id): item] }
+      assert items.json.attributes == [a: 'b']
+      assert items.smile.attributes == [e: 'f']
+    }
+  }
+
   @Unroll
   def 'generates where clause based on cacheFilters'() {
     when:
@@ -98,6 +225,64 @@ class SqlCacheSpec extends WriteableCacheSpec {
     null                                                   || null                              || "1 = 1"
   }
 
+  private SqlCache smileCache() {
+    new SqlCache(
+      "test",
+      context,
+      new ObjectMapper(),
+      null,
+      new Clock.FixedClock(Instant.EPOCH, ZoneId.of("UTC")),
+      new SqlRetryProperties(new RetryProperties(1, 10), new RetryProperties(1, 10)),
+      "test",
+      Mock(SqlCacheMetrics),
+      Mock(DynamicConfigService) {
+        getConfig(_ as Class, _ as String, _) >> 2
+      },
+      new SqlConstraints(),
+      MultiFormatCacheDataCodec.forFormat('smile', new ObjectMapper())
+    )
+  }
+
+  private String bodyType(String table) {
+    context.select(DSL.field('data_type'))
+      .from(DSL.table('information_schema.columns'))
+      .where(
+        DSL.field('table_name').eq(table),
+        DSL.field('column_name').eq('body')
+      )
+      .fetchOne(0, String)
+      .toLowerCase()
+  }
+
+  private byte[] body(String table, String id) {
+    context.select(DSL.field('body'))
+      .from(DSL.table(table))
+      .where(DSL.field('id').eq(id))
+      .fetchOne(0, byte[])
+  }
+
+  private static boolean isSmile(byte[] body) {
+    body[0..2] == [':', ')', '\n'].collect { it as char as byte }
+  }
+
+  private int partitions(String table) {
+    context.selectCount()
+      .from(DSL.table('information_schema.partitions'))
+      .where(
+        DSL.field('table_name').eq(table),
+        DSL.field('partition_name').isNotNull()
+      )
+      .fetchOne(0, Integer)
+  }
+
+  private List<String> columns(String table) {
+    context.select(DSL.field('column_name'))
+      .from(DSL.table('information_schema.columns'))
+      .where(DSL.field('table_name').eq(table))
+      .fetch(0, String)
+      *.toLowerCase()
+  }
+
   @Override
   Cache getSubject() {
     def mapper = new ObjectMapper()
@@ -122,7 +307,11 @@ class SqlCacheSpec extends WriteableCacheSpec {
       "test",
       Mock(SqlCacheMetrics),
       dynamicConfigService,
-      new SqlConstraints()
+      new SqlConstraints(),
+      MultiFormatCacheDataCodec.forFormat('json', mapper),
+      null,
+      null,
+      [foo: 2]
     )
   }
 
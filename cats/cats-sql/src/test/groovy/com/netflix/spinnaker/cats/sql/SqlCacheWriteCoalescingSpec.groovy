@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.cats.sql
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.netflix.spinnaker.cats.cache.Cache
+import com.netflix.spinnaker.cats.codec.JsonCacheDataCodec
+import com.netflix.spinnaker.cats.codec.MultiFormatCacheDataCodec
+import com.netflix.spinnaker.cats.sql.cache.SqlCache
+import com.netflix.spinnaker.cats.sql.cache.SqlCacheMetrics
+import com.netflix.spinnaker.cats.sql.cache.SqlWriteCoalescer
+import com.netflix.spinnaker.config.SqlConstraints
+import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService
+import com.netflix.spinnaker.kork.sql.config.RetryProperties
+import com.netflix.spinnaker.kork.sql.config.SqlRetryProperties
+import com.netflix.spinnaker.kork.sql.test.SqlTestUtil
+import org.jooq.impl.DSL
+import spock.lang.AutoCleanup
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+
+/**
+ * Runs the cache behaviour specs with resource writes going through a {@link SqlWriteCoalescer}.
+ */
+class SqlCacheWriteCoalescingSpec extends SqlCacheSpec {
+
+  @AutoCleanup("close")
+  SqlWriteCoalescer writeCoalescer
+
+  def 'concurrent merges are coalesced without losing items'() {
+    given:
+    def threads = (1..4).collect { n ->
+      Thread.start {
+        ((SqlCache) cache).mergeAll("foo", "agent$n", (1..25).collect { createData("agent$n-item$it") }, true, true)
+      }
+    }
+
+    when:
+    threads*.join()
+
+    then:
+    ((SqlCache) cache).getIdentifiers('foo').size() == 100
+  }
+
+  def 'upserts complete with the number of statements that carried their rows'() {
+    given:
+    context.execute('CREATE TABLE coalesced_statements LIKE cats_v1_resource_template')
+
+    when:
+    def statements = writeCoalescer.upsert('coalesced_statements', COLUMNS, ['body'], (1..25).collect { row("item$it") }).get()
+
+    then:
+    statements == 3
+    context.fetchCount(DSL.table('coalesced_statements')) == 25
+  }
+
+  def 'cancelled upserts are dropped from statements that have not run'() {
+    given:
+    context.execute('CREATE TABLE coalesced_cancelled LIKE cats_v1_resource_template')
+    def coalescer = new SqlWriteCoalescer(context, 10, Duration.ofHours(1), 100, 1)
+
+    when:
+    coalescer.upsert('coalesced_cancelled', COLUMNS, ['body'], [row('cancelled')]).cancel(false)
+    def written = coalescer.upsert('coalesced_cancelled', COLUMNS, ['body'], [row('written')])
+    coalescer.close()
+
+    then:
+    written.get() == 1
+    context.select(DSL.field('id')).from(DSL.table('coalesced_cancelled')).fetch(0, String) == ['written']
+  }
+
+  def 'permits are released when a batch is rejected by a closed executor'() {
+    given:
+    def coalescer = new SqlWriteCoalescer(context, 10, Duration.ofHours(1), 10, 1)
+    coalescer.executor.shutdown()
+
+    when:
+    def future = coalescer.upsert('coalesced', COLUMNS, ['body'], (1..10).collect { row("item$it") })
+
+    then:
+    future.isCompletedExceptionally()
+    coalescer.permits.availablePermits() == 10
+
+    cleanup:
+    coalescer.close()
+  }
+
+  private static final List<String> COLUMNS = ['id', 'agent', 'body_hash', 'body', 'last_updated']
+
+  private static List<Object> row(String id) {
+    return [id, 'agent', 'a' * 64, '{}', 0L]
+  }
+
+  @Override
+  Cache getSubject() {
+    def mapper = new ObjectMapper()
+    def clock = new Clock.FixedClock(Instant.EPOCH, ZoneId.of("UTC"))
+    def sqlRetryProperties = new SqlRetryProperties(new RetryProperties(1, 10), new RetryProperties(1, 10))
+
+    def dynamicConfigService = Mock(DynamicConfigService) {
+      getConfig(_ as Class, _ as String, _) >> 2
+    }
+
+    SqlTestUtil.TestDatabase testDatabase = SqlTestUtil.initTcMysqlDatabase()
+    context = testDatabase.context
+    dataSource = testDatabase.dataSource
+    writeCoalescer = new SqlWriteCoalescer(context, 10, Duration.ofMillis(20), 100, 2)
+
+    return new SqlCache(
+      "test",
+      context,
+      mapper,
+      null,
+      clock,
+      sqlRetryProperties,
+      "test",
+      Mock(SqlCacheMetrics),
+      dynamicConfigService,
+      new SqlConstraints(),
+      MultiFormatCacheDataCodec.forFormat(JsonCacheDataCodec.FORMAT, mapper),
+      null,
+      writeCoalescer
+    )
+  }
+}
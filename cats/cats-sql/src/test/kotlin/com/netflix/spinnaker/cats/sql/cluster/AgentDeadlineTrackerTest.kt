@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.sql.cluster
+
+import com.netflix.spectator.api.NoopRegistry
+import com.netflix.spinnaker.cats.agent.AgentExecution
+import com.netflix.spinnaker.cats.agent.NoopExecutionInstrumentation
+import com.netflix.spinnaker.cats.cluster.AgentIntervalProvider
+import com.netflix.spinnaker.cats.cluster.DefaultAgentPriorityProvider
+import com.netflix.spinnaker.cats.test.TestAgent
+import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService
+import dev.minutest.junit.JUnit5Minutests
+import dev.minutest.rootContext
+import strikt.api.expectThat
+import strikt.assertions.containsExactly
+import strikt.assertions.isEmpty
+
+class AgentDeadlineTrackerTest : JUnit5Minutests {
+
+  fun tests() = rootContext<AgentDeadlineTracker> {
+    fixture {
+      AgentDeadlineTracker(
+        AgentIntervalProvider {
+          if (it.agentType.startsWith("fast")) {
+            AgentIntervalProvider.Interval(10_000, 20_000)
+          } else {
+            AgentIntervalProvider.Interval(60_000, 120_000)
+          }
+        },
+        DefaultAgentPriorityProvider(".*Cluster.*", ".*Image.*"),
+        DynamicConfigService.NOOP,
+        NoopRegistry()
+      )
+    }
+
+    test("higher priority classes get the available slots first") {
+      val candidates = candidates("slowImage", "slowOther", "slowCluster")
+
+      expectThat(order(candidates, emptyList(), 2).keys)
+        .containsExactly("slowCluster/TestAgent", "slowOther/TestAgent")
+    }
+
+    test("agents with earlier deadlines run first within a class") {
+      val candidates = candidates("slowOther", "fastOther")
+
+      expectThat(order(candidates, emptyList(), 2).keys)
+        .containsExactly("fastOther/TestAgent", "slowOther/TestAgent")
+    }
+
+    test("agents of an account that is at its concurrency limit wait") {
+      val running = (1..10).map { TestAgent().apply { scope = "running$it" } }
+
+      expectThat(order(candidates("slowCluster"), running, 2)).isEmpty()
+    }
+  }
+
+  private fun candidates(vararg scopes: String): Map<String, AgentExecutionAction> =
+    scopes
+      .map { TestAgent().apply { scope = it } }
+      .associate {
+        it.agentType to AgentExecutionAction(it, AgentExecution {}, NoopExecutionInstrumentation())
+      }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.sql.cluster
+
+import dev.minutest.junit.JUnit5Minutests
+import dev.minutest.rootContext
+import strikt.api.expectThat
+import strikt.assertions.all
+import strikt.assertions.isEqualTo
+import strikt.assertions.isGreaterThan
+import strikt.assertions.isNull
+
+class ConsistentHashRingTest : JUnit5Minutests {
+
+  private val agents = (1..1000).map { "aws/test/us-east-1/Agent$it" }
+
+  fun tests() = rootContext<ConsistentHashRing> {
+    fixture {
+      ConsistentHashRing(setOf("node-a", "node-b", "node-c"), 64)
+    }
+
+    test("every member owns a share of the agents") {
+      val shares = agents.groupingBy { ownerOf(it) }.eachCount()
+      expectThat(shares.keys).isEqualTo(members)
+      expectThat(shares.values).all { isGreaterThan(agents.size / 10) }
+    }
+
+    test("a departing member only moves its own agents") {
+      val reduced = ConsistentHashRing(members - "node-c", 64)
+      agents
+        .filter { ownerOf(it) != "node-c" }
+        .forEach { expectThat(reduced.ownerOf(it)).isEqualTo(ownerOf(it)) }
+    }
+
+    test("an empty ring owns nothing") {
+      expectThat(ConsistentHashRing(emptySet(), 64).ownerOf(agents.first())).isNull()
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.sql.cluster
+
+import com.netflix.spinnaker.cats.agent.AgentExecution
+import com.netflix.spinnaker.cats.agent.NoopExecutionInstrumentation
+import com.netflix.spinnaker.cats.cluster.AgentIntervalProvider
+import com.netflix.spinnaker.cats.cluster.NodeIdentity
+import com.netflix.spinnaker.cats.cluster.NodeStatusProvider
+import com.netflix.spinnaker.cats.test.TestAgent
+import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService
+import com.netflix.spinnaker.kork.sql.test.SqlTestUtil
+import dev.minutest.junit.JUnit5Minutests
+import dev.minutest.rootContext
+import io.mockk.mockk
+import org.jooq.impl.DSL.field
+import org.jooq.impl.DSL.table
+import strikt.api.expectThat
+import strikt.assertions.containsExactlyInAnyOrder
+import strikt.assertions.isEqualTo
+
+/**
+ * Exercises the batched lock acquisition path (`sql.agent.batch-lock-acquisition`) against MySQL.
+ */
+class SqlClusteredAgentSchedulerTest : JUnit5Minutests {
+
+  fun tests() = rootContext<Fixture> {
+    fixture { Fixture() }
+
+    after {
+      SqlTestUtil.cleanupDb(dslContext)
+      dslContext.close()
+    }
+
+    test("acquires every unlocked agent") {
+      subject.run()
+
+      expectThat(owners()).isEqualTo(agents.associate { it to NODE })
+    }
+
+    test("skips agents locked by another node") {
+      lock(agents[0], "other", System.currentTimeMillis() + 60_000)
+
+      subject.run()
+
+      expectThat(owners()).isEqualTo(mapOf(agents[0] to "other", agents[1] to NODE, agents[2] to NODE))
+    }
+
+    test("takes over expired locks") {
+      lock(agents[0], "other", System.currentTimeMillis() - 1)
+
+      subject.run()
+
+      expectThat(owners()).isEqualTo(agents.associate { it to NODE })
+    }
+
+    test("deletes expired locks of agents it does not run and leaves live ones alone") {
+      lock("expired/TestAgent", "other", System.currentTimeMillis() - 1)
+      lock("live/TestAgent", "other", System.currentTimeMillis() + 60_000)
+
+      subject.run()
+
+      expectThat(owners().keys).containsExactlyInAnyOrder(agents + "live/TestAgent")
+    }
+  }
+
+  private inner class Fixture {
+    val testDatabase = SqlTestUtil.initTcMysqlDatabase()
+    val dslContext = testDatabase.context
+
+    val subject = SqlClusteredAgentScheduler(
+      jooq = dslContext,
+      nodeIdentity = NodeIdentity { NODE },
+      intervalProvider = AgentIntervalProvider { AgentIntervalProvider.Interval(60_000, 120_000) },
+      nodeStatusProvider = NodeStatusProvider { true },
+      dynamicConfigService = object : DynamicConfigService by DynamicConfigService.NOOP {
+        override fun isEnabled(flagName: String, defaultValue: Boolean): Boolean =
+          flagName == "sql.agent.batch-lock-acquisition" || defaultValue
+      },
+      enabledAgentPattern = ".*",
+      disabledAgentsConfig = emptyList(),
+      // agents are never run, so the locks they acquire stay in place
+      agentExecutionPool = mockk(relaxed = true),
+      lockPollingScheduler = mockk(relaxed = true)
+    )
+
+    val agents = (1..3).map { n ->
+      TestAgent().apply { scope = "agent$n" }
+        .also { subject.schedule(it, AgentExecution {}, NoopExecutionInstrumentation()) }
+        .agentType
+    }
+
+    fun lock(agentType: String, owner: String, expiry: Long) {
+      dslContext.insertInto(table("cats_agent_locks"))
+        .columns(field("agent_name"), field("owner_id"), field("lock_acquired"), field("lock_expiry"))
+        .values(agentType, owner, expiry - 60_000, expiry)
+        .execute()
+    }
+
+    fun owners(): Map<String, String> =
+      dslContext.select(field("agent_name"), field("owner_id"))
+        .from(table("cats_agent_locks"))
+        .fetch()
+        .associate { it.get(0) as String to it.get(1) as String }
+  }
+
+  companion object {
+    private const val NODE = "node1"
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.spinnaker.cats.sql.cluster
+
+import com.google.common.util.concurrent.MoreExecutors
+import com.netflix.spinnaker.cats.agent.AgentExecution
+import com.netflix.spinnaker.cats.agent.NoopExecutionInstrumentation
+import com.netflix.spinnaker.cats.cluster.AgentIntervalProvider
+import com.netflix.spinnaker.cats.cluster.NodeIdentity
+import com.netflix.spinnaker.cats.cluster.NodeStatusProvider
+import com.netflix.spinnaker.cats.test.TestAgent
+import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService
+import com.netflix.spinnaker.kork.sql.test.SqlTestUtil
+import dev.minutest.junit.JUnit5Minutests
+import dev.minutest.rootContext
+import io.mockk.mockk
+import org.jooq.impl.DSL.field
+import org.jooq.impl.DSL.table
+import strikt.api.expectThat
+import strikt.assertions.containsExactlyInAnyOrder
+import strikt.assertions.isEmpty
+import strikt.assertions.isEqualTo
+import strikt.assertions.isNotEmpty
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZoneOffset
+import java.util.concurrent.TimeUnit
+
+/**
+ * Runs several sharded schedulers against one MySQL database on a shared test clock, with agents
+ * executing inline when they are started.
+ */
+class SqlShardedAgentSchedulerTest : JUnit5Minutests {
+
+  fun tests() = rootContext<Fixture> {
+    fixture { Fixture() }
+
+    after {
+      SqlTestUtil.cleanupDb(dslContext)
+      dslContext.close()
+    }
+
+    test("runs every agent on exactly one node") {
+      tick(NODE_TTL_MS)
+
+      expectThat(runs.groupBy({ it.agentType }, { it.node }))
+        .isEqualTo(agents.associateWith { listOf(ring.ownerOf(it)) })
+      expectThat(runs.map { it.node }.toSet()).containsExactlyInAnyOrder(nodes.keys)
+      expectThat(locks()).isEmpty()
+    }
+
+    test("does not run agents before the node TTL has passed since joining") {
+      tick(NODE_TTL_MS - HEARTBEAT_MS)
+
+      expectThat(runs).isEmpty()
+    }
+
+    context("a node joining") {
+      modifyFixture {
+        nodeEnabled["node-c"] = false
+        tick(NODE_TTL_MS)
+        runs.clear()
+        nodeEnabled["node-c"] = true
+      }
+
+      test("waits the node TTL and takes the lock before running the agents it gains") {
+        val gained = agents.filter { ring.ownerOf(it) == "node-c" }
+        expectThat(gained).isNotEmpty()
+        lock(gained.first(), "node-a", clock.now + 10 * NODE_TTL_MS)
+
+        tick(NODE_TTL_MS - HEARTBEAT_MS)
+        expectThat(runs.filter { it.agentType in gained }).isEmpty()
+
+        tick(2 * HEARTBEAT_MS)
+        expectThat(runs.filter { it.agentType in gained }.map { it.node }.toSet())
+          .containsExactlyInAnyOrder("node-c")
+        expectThat(runs.filter { it.node == "node-c" }.map { it.agentType }.toSet())
+          .containsExactlyInAnyOrder(gained - gained.first())
+      }
+    }
+
+    context("a node leaving") {
+      modifyFixture {
+        tick(NODE_TTL_MS)
+        runs.clear()
+        nodeEnabled["node-c"] = false
+      }
+
+      test("has its agents taken over by the remaining nodes after the node TTL") {
+        val lost = agents.filter { ring.ownerOf(it) == "node-c" }
+
+        tick(NODE_TTL_MS - HEARTBEAT_MS)
+        expectThat(runs.filter { it.agentType in lost }).isEmpty()
+
+        tick(2 * HEARTBEAT_MS + INTERVAL_MS)
+        expectThat(runs.filter { it.agentType in lost }.map { it.node to it.agentType }.toSet())
+          .containsExactlyInAnyOrder(lost.map { survivors.ownerOf(it) to it })
+        expectThat(runs.filter { it.node == "node-c" }).isEmpty()
+      }
+    }
+
+    context("a node failing") {
+      modifyFixture {
+        tick(NODE_TTL_MS)
+        runs.clear()
+        stalled += "node-c"
+      }
+
+      test("has its agents taken over once its heartbeat is older than the node TTL") {
+        val lost = agents.filter { ring.ownerOf(it) == "node-c" }
+
+        tick(NODE_TTL_MS)
+        expectThat(runs.filter { it.agentType in lost }).isEmpty()
+
+        tick(NODE_TTL_MS + HEARTBEAT_MS + INTERVAL_MS)
+        expectThat(runs.filter { it.agentType in lost }.map { it.node to it.agentType }.toSet())
+          .containsExactlyInAnyOrder(lost.map { survivors.ownerOf(it) to it })
+      }
+
+      test("rejoins through handoffs when its heartbeats resume") {
+        tick(3 * NODE_TTL_MS)
+        runs.clear()
+        stalled -= "node-c"
+        val rejoined = clock.now
+        val owned = agents.filter { ring.ownerOf(it) == "node-c" }
+
+        tick(NODE_TTL_MS - HEARTBEAT_MS)
+        expectThat(runs.filter { it.node == "node-c" }).isEmpty()
+
+        tick(2 * HEARTBEAT_MS)
+        expectThat(runs.filter { it.node == "node-c" }.map { it.agentType }.toSet())
+          .containsExactlyInAnyOrder(owned)
+        val handedOff = runs.filter { it.agentType in owned && it.at > rejoined + HEARTBEAT_MS }
+        expectThat(handedOff.map { it.node }.toSet()).containsExactlyInAnyOrder("node-c")
+      }
+    }
+  }
+
+  private data class Run(val node: String, val agentType: String, val at: Long)
+
+  private class TestClock(var now: Long) : Clock() {
+    override fun millis() = now
+    override fun instant(): Instant = Instant.ofEpochMilli(now)
+    override fun getZone(): ZoneId = ZoneOffset.UTC
+    override fun withZone(zone: ZoneId?): Clock = this
+  }
+
+  private inner class Fixture {
+    val testDatabase = SqlTestUtil.initTcMysqlDatabase()
+    val dslContext = testDatabase.context
+
+    val clock = TestClock(1_000_000_000)
+    val runs = mutableListOf<Run>()
+    val nodeEnabled = mutableMapOf("node-a" to true, "node-b" to true, "node-c" to true)
+    val stalled = mutableSetOf<String>()
+
+    val testAgents = (1..30).map { TestAgent().apply { scope = "agent$it" } }
+    val agents = testAgents.map { it.agentType }
+    val ring = ConsistentHashRing(nodeEnabled.keys, VIRTUAL_NODES)
+    val survivors = ConsistentHashRing(nodeEnabled.keys - "node-c", VIRTUAL_NODES)
+
+    val nodes = nodeEnabled.keys.associateWith { node ->
+      SqlShardedAgentScheduler(
+        jooq = dslContext,
+        nodeIdentity = NodeIdentity { node },
+        intervalProvider = AgentIntervalProvider { AgentIntervalProvider.Interval(INTERVAL_MS, 10 * INTERVAL_MS) },
+        nodeStatusProvider = NodeStatusProvider { nodeEnabled.getValue(node) },
+        dynamicConfigService = DynamicConfigService.NOOP,
+        enabledAgentPattern = ".*",
+        disabledAgentsConfig = emptyList(),
+        heartbeatIntervalSeconds = TimeUnit.MILLISECONDS.toSeconds(HEARTBEAT_MS),
+        nodeTtlSeconds = TimeUnit.MILLISECONDS.toSeconds(NODE_TTL_MS),
+        virtualNodes = VIRTUAL_NODES,
+        agentExecutionPool = MoreExecutors.newDirectExecutorService(),
+        // the test drives the schedulers itself
+        schedulingExecutor = mockk(relaxed = true),
+        clock = clock
+      ).also { scheduler ->
+        testAgents.forEach { agent ->
+          scheduler.schedule(
+            agent,
+            AgentExecution { runs.add(Run(node, it.agentType, clock.now)) },
+            NoopExecutionInstrumentation()
+          )
+        }
+      }
+    }
+
+    /**
+     * Advances the clock a second at a time for [millis], running every scheduler that has not
+     * stalled on each step.
+     */
+    fun tick(millis: Long) {
+      val until = clock.now + millis
+      do {
+        nodes.filterKeys { it !in stalled }.values.forEach { it.run() }
+        clock.now += 1000
+      } while (clock.now <= until)
+    }
+
+    fun lock(agentType: String, owner: String, expiry: Long) {
+      dslContext.insertInto(table("cats_agent_locks"))
+        .columns(field("agent_name"), field("owner_id"), field("lock_acquired"), field("lock_expiry"))
+        .values(agentType, owner, clock.now, expiry)
+        .execute()
+    }
+
+    fun locks(): List<String> =
+      dslContext.select(field("agent_name"))
+        .from(table("cats_agent_locks"))
+        .fetch(field("agent_name"), String::class.java)
+  }
+
+  companion object {
+    private const val HEARTBEAT_MS = 10_000L
+    private const val NODE_TTL_MS = 60_000L
+    private const val INTERVAL_MS = 30_000L
+    private const val VIRTUAL_NODES = 64
+  }
+}
@@ -20,6 +20,8 @@ import spock.lang.Specification
 import spock.lang.Subject
 import spock.lang.Unroll
 
+import java.util.stream.Collectors
+
 abstract class CacheSpec extends Specification {
 
     @Subject
@@ -125,6 +127,21 @@ abstract class CacheSpec extends Specification {
         results.find { it.id == 'baz' }
     }
 
+    def 'stream behaviour'() {
+        setup:
+        ['bar', 'baz', 'qux'].each { populateOne('foo', it) }
+
+        when:
+        def stream = cache.stream('foo')
+        def streamed = stream.collect(Collectors.toList())
+        stream.close()
+
+        then:
+        streamed*.id.sort() == ['bar', 'baz', 'qux']
+        streamed*.id.sort() == cache.getAll('foo')*.id.sort()
+        cache.stream('nothere').count() == 0
+    }
+
     @Unroll
     def 'relationship filtering behaviour'() {
         setup:
@@ -16,6 +16,7 @@
 
 package com.netflix.spinnaker.cats.provider
 
+import com.netflix.spinnaker.cats.agent.CacheChangeSet
 import com.netflix.spinnaker.cats.agent.CacheResult
 import com.netflix.spinnaker.cats.agent.DefaultCacheResult
 import com.netflix.spinnaker.cats.cache.*
@@ -104,6 +105,33 @@ abstract class ProviderCacheSpec extends CacheSpec {
 
     }
 
+    def 'change sets upsert and delete without touching unchanged items'() {
+        setup:
+        String agent = 'agent'
+        defaultProviderCache.putCacheResult(agent, ['test'], new DefaultCacheResult(test: [
+                new DefaultCacheData('a', [v: 1], [:]),
+                new DefaultCacheData('b', [v: 1], [:]),
+                new DefaultCacheData('c', [v: 1], [:])
+        ]))
+
+        when:
+        def changeSet = new CacheChangeSet([new DefaultCacheData('a', [v: 2], [:]), new DefaultCacheData('d', [v: 2], [:])], ['c'], ['b'])
+        defaultProviderCache.putCacheResult(agent, ['test'], new DefaultCacheResult([:], [:], [:], false, [test: changeSet]))
+
+        then:
+        defaultProviderCache.get('test', 'a').attributes.v == 2
+        defaultProviderCache.get('test', 'b').attributes.v == 1
+        defaultProviderCache.get('test', 'c') == null
+        defaultProviderCache.get('test', 'd').attributes.v == 2
+        defaultProviderCache.getIdentifiers('test').sort() == ['a', 'b', 'd']
+
+        when: 'a later full result evicts items that only the change set knew about'
+        defaultProviderCache.putCacheResult(agent, ['test'], new DefaultCacheResult(test: [new DefaultCacheData('a', [v: 3], [:])]))
+
+        then:
+        defaultProviderCache.getIdentifiers('test').sort() == ['a']
+    }
+
     def "items can be evicted by type and id"() {
         setup:
         String usEast1Agent = 'AwsProvider:test/us-east-1/ClusterCachingAgent'
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.clouddriver.cache;
+
+import com.netflix.spinnaker.cats.cluster.AdaptiveAgentIntervalProvider;
+import com.netflix.spinnaker.cats.cluster.AgentIntervalProvider;
+import java.util.concurrent.TimeUnit;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configures the {@link AdaptiveAgentIntervalProvider} used when {@code enabled}.
+ *
+ * <p>Only meant for the default and the sharded SQL schedulers, which keep running an agent on the
+ * same node: the runs of an agent are counted per node, so lock based schedulers that spread them
+ * over N nodes stretch its interval about N times slower.
+ */
+@ConfigurationProperties("caching.adaptive-intervals")
+public class AdaptiveAgentIntervalProperties {
+  private boolean enabled = false;
+  private int unchangedThreshold = 3;
+  private double multiplier = 2.0;
+  private long minIntervalSeconds = 30;
+  private long maxIntervalSeconds = 600;
+
+  /** @return the interval provider, made adaptive if {@code enabled} */
+  public AgentIntervalProvider apply(AgentIntervalProvider intervalProvider) {
+    if (!enabled) {
+      return intervalProvider;
+    }
+    return new AdaptiveAgentIntervalProvider(
+        intervalProvider,
+        unchangedThreshold,
+        multiplier,
+        TimeUnit.SECONDS.toMillis(minIntervalSeconds),
+        TimeUnit.SECONDS.toMillis(maxIntervalSeconds));
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public int getUnchangedThreshold() {
+    return unchangedThreshold;
+  }
+
+  public void setUnchangedThreshold(int unchangedThreshold) {
+    this.unchangedThreshold = unchangedThreshold;
+  }
+
+  public double getMultiplier() {
+    return multiplier;
+  }
+
+  public void setMultiplier(double multiplier) {
+    this.multiplier = multiplier;
+  }
+
+  public long getMinIntervalSeconds() {
+    return minIntervalSeconds;
+  }
+
+  public void setMinIntervalSeconds(long minIntervalSeconds) {
+    this.minIntervalSeconds = minIntervalSeconds;
+  }
+
+  public long getMaxIntervalSeconds() {
+    return maxIntervalSeconds;
+  }
+
+  public void setMaxIntervalSeconds(long maxIntervalSeconds) {
+    this.maxIntervalSeconds = maxIntervalSeconds;
+  }
+}
@@ -16,6 +16,7 @@
 package com.netflix.spinnaker.clouddriver.cache;
 
 import com.netflix.spinnaker.cats.agent.AgentScheduler;
+import com.netflix.spinnaker.cats.cluster.AdaptiveAgentIntervalProvider;
 import com.netflix.spinnaker.cats.cluster.AgentIntervalProvider;
 import com.netflix.spinnaker.cats.cluster.DefaultNodeIdentity;
 import com.netflix.spinnaker.cats.cluster.NodeStatusProvider;
@@ -25,6 +26,8 @@ import com.netflix.spinnaker.clouddriver.core.RedisConfigurationProperties;
 import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService;
 import com.netflix.spinnaker.kork.jedis.RedisClientDelegate;
 import java.net.URI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
@@ -34,6 +37,7 @@ import redis.clients.jedis.JedisPool;
 @Configuration
 @ConditionalOnProperty(value = "caching.write-enabled", matchIfMissing = true)
 public class AgentSchedulerConfig {
+  private static final Logger log = LoggerFactory.getLogger(AgentSchedulerConfig.class);
 
   @Bean
   @ConditionalOnExpression("${redis.enabled:true} && ${redis.scheduler.enabled:true}")
@@ -44,6 +48,11 @@ public class AgentSchedulerConfig {
       AgentIntervalProvider agentIntervalProvider,
       NodeStatusProvider nodeStatusProvider,
       DynamicConfigService dynamicConfigService) {
+    if (agentIntervalProvider instanceof AdaptiveAgentIntervalProvider) {
+      log.warn(
+          "caching.adaptive-intervals counts the runs of an agent per node, the Redis schedulers "
+              + "spread them over every node so intervals stretch more slowly than configured");
+    }
     if (redisConfigurationProperties.getScheduler().equalsIgnoreCase("default")) {
       URI redisUri = URI.create(redisConfigurationProperties.getConnection());
       String redisHost = redisUri.getHost();
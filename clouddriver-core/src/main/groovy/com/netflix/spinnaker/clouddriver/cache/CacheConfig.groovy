@@ -16,6 +16,7 @@
 
 package com.netflix.spinnaker.clouddriver.cache
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder
 import com.netflix.spectator.api.Registry
 import com.netflix.spinnaker.cats.agent.Agent
 import com.netflix.spinnaker.cats.agent.AgentExecution
@@ -23,6 +24,8 @@ import com.netflix.spinnaker.cats.agent.AgentScheduler
 import com.netflix.spinnaker.cats.agent.DefaultAgentScheduler
 import com.netflix.spinnaker.cats.agent.ExecutionInstrumentation
 import com.netflix.spinnaker.cats.cache.Cache
+import com.netflix.spinnaker.cats.cache.CacheVersionTracker
+import com.netflix.spinnaker.cats.cache.CompositeCache
 import com.netflix.spinnaker.cats.cache.NamedCacheFactory
 import com.netflix.spinnaker.cats.mem.InMemoryNamedCacheFactory
 import com.netflix.spinnaker.cats.module.CatsModule
@@ -37,14 +40,21 @@ import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.ComponentScan
 import org.springframework.context.annotation.Configuration
 
+import javax.annotation.PreDestroy
+import java.time.Duration
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.ThreadPoolExecutor
 import java.util.concurrent.TimeUnit
 
 @Configuration
 @ComponentScan([
   'com.netflix.spinnaker.clouddriver.cache',
 ])
-@EnableConfigurationProperties(CatsInMemorySearchProperties)
+@EnableConfigurationProperties([CatsInMemorySearchProperties, AdaptiveAgentIntervalProperties, ParallelCacheViewProperties, NearCacheProperties])
 class CacheConfig {
+  private ExecutorService cacheViewExecutor
+
   @Bean
   @ConditionalOnMissingBean(NamedCacheFactory)
   NamedCacheFactory namedCacheFactory() {
@@ -72,13 +82,53 @@ class CacheConfig {
 
   @Bean
   @ConditionalOnMissingBean(CatsModule)
-  CatsModule catsModule(List<Provider> providers, List<ExecutionInstrumentation> executionInstrumentation, NamedCacheFactory cacheFactory, AgentScheduler agentScheduler) {
-    new CatsModule.Builder().cacheFactory(cacheFactory).scheduler(agentScheduler).instrumentation(executionInstrumentation).build(providers)
+  CatsModule catsModule(List<Provider> providers,
+                        List<ExecutionInstrumentation> executionInstrumentation,
+                        NamedCacheFactory cacheFactory,
+                        AgentScheduler agentScheduler,
+                        ParallelCacheViewProperties parallelCacheViewProperties,
+                        Registry registry) {
+    def builder = new CatsModule.Builder().cacheFactory(cacheFactory).scheduler(agentScheduler).instrumentation(executionInstrumentation)
+    if (parallelCacheViewProperties.enabled) {
+      // reads rejected by a full queue are made by the requesting thread (see CompositeCache)
+      cacheViewExecutor = new ThreadPoolExecutor(
+        parallelCacheViewProperties.threads,
+        parallelCacheViewProperties.threads,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(parallelCacheViewProperties.queueSize),
+        new ThreadFactoryBuilder().setNameFormat("cacheView-%d").setDaemon(true).build(),
+        new ThreadPoolExecutor.AbortPolicy()
+      )
+      def readId = registry.createId("cats.view.read")
+      builder.parallelView(cacheViewExecutor, parallelCacheViewProperties.deadlineMs, { String cacheName, String operation, long elapsedNanos, boolean timedOut ->
+        registry.timer(readId.withTags("provider", cacheName, "operation", operation, "timedOut", timedOut.toString()))
+          .record(elapsedNanos, TimeUnit.NANOSECONDS)
+      } as CompositeCache.ReadListener)
+    }
+    builder.build(providers)
+  }
+
+  @PreDestroy
+  void shutdownCacheViewExecutor() {
+    cacheViewExecutor?.shutdown()
   }
 
   @Bean
-  Cache cacheView(CatsModule catsModule) {
-    catsModule.view
+  Cache cacheView(CatsModule catsModule,
+                  NearCacheProperties nearCacheProperties,
+                  Optional<CacheVersionTracker> cacheVersionTracker,
+                  Registry registry) {
+    if (!nearCacheProperties.enabled) {
+      return catsModule.view
+    }
+    new NearCache(
+      catsModule.view,
+      nearCacheProperties.maxSizeMb * 1024 * 1024,
+      Duration.ofSeconds(nearCacheProperties.maxStalenessSeconds),
+      cacheVersionTracker.orElse(null),
+      registry
+    )
   }
 
   @Bean
@@ -107,8 +157,9 @@ class CacheConfig {
                                     List<SearchableProvider> providers,
                                     ProviderRegistry providerRegistry,
                                     Optional<FiatPermissionEvaluator> permissionEvaluator,
-                                    Optional<List<KeyParser>> keyParsers) {
-    new CatsSearchProvider(catsInMemorySearchProperties, cacheView, providers, providerRegistry, permissionEvaluator, keyParsers)
+                                    Optional<List<KeyParser>> keyParsers,
+                                    Optional<CacheVersionTracker> cacheVersionTracker) {
+    new CatsSearchProvider(catsInMemorySearchProperties, cacheView, providers, providerRegistry, permissionEvaluator, keyParsers, cacheVersionTracker)
   }
 
   @Bean
@@ -0,0 +1,550 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.clouddriver.cache;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.netflix.spinnaker.cats.cache.CacheVersionTracker;
+import com.netflix.spinnaker.cats.cache.CacheWriteNotifier;
+import com.netflix.spinnaker.cats.provider.ProviderRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * An in-memory index of the keys of every searchable cache type, or of the searchable instances
+ * only, for finding the keys containing a search term without going to the backing store.
+ *
+ * <p>Keys are split into their {@code :} separated segments, skipping the leading provider and type
+ * segments, and each lower case segment maps to the keys it is part of. The distinct segments are
+ * in turn indexed by their trigrams, so a search only looks at the segments sharing the rarest
+ * trigram of the term (or of its longest {@code :} free part) and at the keys of those containing
+ * it. Terms shorter than a trigram fall back to looking at every key of the type.
+ *
+ * <p>The application and account of each key are parsed once when it is indexed, so that searches
+ * can check whether they may be read without parsing the key again.
+ *
+ * <p>The index is kept current by the writes of the caches on this node and reconciled with the
+ * provider caches by {@link #refresh()}, which also picks up the writes of other nodes. Writes made
+ * while a refresh is reading the provider caches win over what it read. Given a {@link
+ * CacheVersionTracker}, a refresh only reads the types other nodes have written since the last one,
+ * and every type at most once per {@code fullRefreshInterval} otherwise.
+ */
+public class CacheKeySearchIndex
+    implements CacheWriteNotifier.Listener, CacheVersionTracker.Listener {
+  private static final int SKIPPED_SEGMENTS = 2;
+  private static final String INSTANCES = "instances";
+
+  private final List<SearchableProvider> providers;
+  private final ProviderRegistry providerRegistry;
+  private final boolean allTypes;
+  private final boolean versionsTracked;
+  private final long fullRefreshIntervalMillis;
+  private final Map<String, TypeIndex> types = new ConcurrentHashMap<>();
+  private final Set<String> changedTypes = ConcurrentHashMap.newKeySet();
+  private final AtomicBoolean allChanged = new AtomicBoolean();
+  private final Interner<String> names = Interners.newWeakInterner();
+
+  /** @param allTypes whether to index every searchable type, rather than only the instances */
+  public CacheKeySearchIndex(
+      List<SearchableProvider> providers, ProviderRegistry providerRegistry, boolean allTypes) {
+    this(providers, providerRegistry, allTypes, null, Duration.ZERO);
+  }
+
+  /**
+   * @param versionTracker tracks the types written by other nodes, or null to read every type on
+   *     each refresh; the index has to be added to it as a listener
+   * @param fullRefreshInterval how often types are read even though no other node wrote them
+   */
+  public CacheKeySearchIndex(
+      List<SearchableProvider> providers,
+      ProviderRegistry providerRegistry,
+      boolean allTypes,
+      CacheVersionTracker versionTracker,
+      Duration fullRefreshInterval) {
+    this.providers = providers;
+    this.providerRegistry = providerRegistry;
+    this.allTypes = allTypes;
+    this.versionsTracked = versionTracker != null;
+    this.fullRefreshIntervalMillis = fullRefreshInterval.toMillis();
+  }
+
+  /**
+   * Reconciles the index with the identifiers of the indexed types in the provider caches.
+   *
+   * @return the number of indexed keys
+   */
+  public int refresh() {
+    Map<String, List<SearchableProvider>> providersByType = new HashMap<>();
+    for (SearchableProvider provider : new ArrayList<>(providers)) {
+      for (String type : provider.getDefaultCaches()) {
+        if ((allTypes || INSTANCES.equals(type))
+            && provider.supportsSearch(type, Collections.emptyMap())) {
+          providersByType.computeIfAbsent(type, t -> new ArrayList<>()).add(provider);
+        }
+      }
+    }
+
+    boolean all = allChanged.getAndSet(false);
+    long now = System.currentTimeMillis();
+    int indexed = 0;
+    for (Map.Entry<String, List<SearchableProvider>> type : providersByType.entrySet()) {
+      TypeIndex index = types.computeIfAbsent(type.getKey(), t -> new TypeIndex());
+      index.providers = type.getValue();
+      // cleared before reading, so writes made elsewhere while reading are read next time
+      boolean changed = changedTypes.remove(type.getKey()) || all;
+      if (versionsTracked
+          && index.loaded
+          && !changed
+          && now - index.refreshedAt < fullRefreshIntervalMillis) {
+        indexed += index.keys.size();
+        continue;
+      }
+
+      // writes notified from here on may be newer than the identifiers read below
+      long generation = index.generation.incrementAndGet();
+      for (SearchableProvider provider : type.getValue()) {
+        Collection<String> identifiers =
+            providerRegistry
+                .getProviderCache(provider.getProviderName())
+                .getIdentifiers(type.getKey());
+        Map<String, IndexedKey> keys = new HashMap<>(identifiers.size());
+        for (String key : identifiers) {
+          IndexedKey indexedKey = index.keys.get(key);
+          if (indexedKey == null || !provider.getProviderName().equals(indexedKey.provider)) {
+            indexedKey = parse(provider, key);
+          }
+          // the provider may still reject keys it can't parse
+          if (indexedKey != null) {
+            keys.put(key, indexedKey);
+          }
+        }
+        index.replace(provider.getProviderName(), keys, generation);
+        indexed += keys.size();
+      }
+      index.written.values().removeIf(written -> written < generation);
+      index.refreshedAt = now;
+      index.loaded = true;
+    }
+    return indexed;
+  }
+
+  /** @return whether searches for the type can be served from the index */
+  public boolean isLoaded(String type) {
+    TypeIndex index = types.get(type);
+    return index != null && index.loaded;
+  }
+
+  /** @return the indexed keys of the type */
+  public Set<String> getKeys(String type) {
+    TypeIndex index = types.get(type);
+    if (index == null) {
+      return Collections.emptySet();
+    }
+    return Collections.unmodifiableSet(index.keys.keySet());
+  }
+
+  /**
+   * Passes every key of the type that contains the term, ignoring case, to the consumer once.
+   *
+   * @param term the lower case search term
+   * @param providerNames the providers whose keys to consider
+   */
+  public void forEachMatch(
+      String type, String term, Set<String> providerNames, Consumer<IndexedKey> consumer) {
+    TypeIndex index = types.get(type);
+    if (index == null) {
+      return;
+    }
+
+    // every part of the term between separators is part of a single segment of a matching key
+    String part = longestPart(term);
+    if (part.length() < SegmentTrigrams.LENGTH) {
+      index.keys.forEach(
+          (key, indexedKey) -> {
+            if (providerNames.contains(indexedKey.provider)
+                && searchablePart(key).contains(term)) {
+              consumer.accept(indexedKey);
+            }
+          });
+      return;
+    }
+
+    boolean wholeTerm = part.length() == term.length();
+    Set<String> matched = new HashSet<>();
+    for (String segment : index.trigrams.find(part)) {
+      Set<String> keys = index.keysBySegment.get(segment);
+      if (keys == null) {
+        continue;
+      }
+      for (String key : keys) {
+        IndexedKey indexedKey = index.keys.get(key);
+        if (indexedKey != null
+            && providerNames.contains(indexedKey.provider)
+            && (wholeTerm || searchablePart(key).contains(term))
+            // a key with several matching segments is only passed on once
+            && matched.add(key)) {
+          consumer.accept(indexedKey);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void itemsChanged(String type, Collection<String> ids) {}
+
+  @Override
+  public void itemsStored(String type, Collection<String> ids) {
+    TypeIndex index = types.get(type);
+    if (index == null) {
+      return;
+    }
+
+    for (String key : ids) {
+      if (key == null) {
+        continue;
+      }
+      if (!index.keys.containsKey(key)) {
+        for (SearchableProvider provider : index.providers) {
+          IndexedKey indexedKey = parse(provider, key);
+          if (indexedKey != null) {
+            index.add(indexedKey);
+            break;
+          }
+        }
+      }
+      index.written(key);
+    }
+  }
+
+  @Override
+  public void itemsRemoved(String type, Collection<String> ids) {
+    TypeIndex index = types.get(type);
+    if (index == null) {
+      return;
+    }
+    for (String key : ids) {
+      if (key != null) {
+        index.remove(key);
+        index.written(key);
+      }
+    }
+  }
+
+  @Override
+  public void versionsChanged(Set<String> stamps) {
+    for (String stamp : stamps) {
+      changedTypes.add(stamp.substring(0, stamp.lastIndexOf(':')));
+    }
+  }
+
+  @Override
+  public void allVersionsChanged() {
+    allChanged.set(true);
+  }
+
+  private IndexedKey parse(SearchableProvider provider, String key) {
+    if (key == null) {
+      return null;
+    }
+    Map<String, String> parsed = provider.parseKey(key);
+    if (parsed == null) {
+      return null;
+    }
+    return new IndexedKey(
+        key,
+        provider.getProviderName(),
+        intern(parsed.get("application")),
+        intern(parsed.get("account")));
+  }
+
+  private String intern(String value) {
+    return value == null || value.isEmpty() ? null : names.intern(value);
+  }
+
+  private static String longestPart(String term) {
+    String longest = "";
+    for (String part : term.split(":")) {
+      if (part.length() > longest.length()) {
+        longest = part;
+      }
+    }
+    return longest;
+  }
+
+  private static String searchablePart(String key) {
+    int start = 0;
+    for (int i = 0; i < SKIPPED_SEGMENTS; i++) {
+      int separator = key.indexOf(':', start);
+      if (separator < 0) {
+        return key.toLowerCase();
+      }
+      start = separator + 1;
+    }
+    return key.substring(start).toLowerCase();
+  }
+
+  private static Set<String> segments(String key) {
+    Set<String> segments = new LinkedHashSet<>();
+    for (String segment : searchablePart(key).split(":")) {
+      if (!segment.isEmpty()) {
+        segments.add(segment);
+      }
+    }
+    return segments;
+  }
+
+  /** An indexed key, with the parts of it that decide who may read it. */
+  public static class IndexedKey {
+    private final String key;
+    private final String provider;
+    private final String application;
+    private final String account;
+
+    IndexedKey(String key, String provider, String application, String account) {
+      this.key = key;
+      this.provider = provider;
+      this.application = application;
+      this.account = account;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    /** @return the application of the key, or null if it doesn't belong to one */
+    public String getApplication() {
+      return application;
+    }
+
+    /** @return the account of the key, or null if it doesn't belong to one */
+    public String getAccount() {
+      return account;
+    }
+  }
+
+  private static class TypeIndex {
+    final Map<String, IndexedKey> keys = new ConcurrentHashMap<>();
+
+    final Map<String, Set<String>> keysBySegment = new ConcurrentHashMap<>();
+
+    final SegmentTrigrams trigrams = new SegmentTrigrams();
+
+    /** The providers searching the type. */
+    volatile List<SearchableProvider> providers = Collections.emptyList();
+
+    volatile boolean loaded = false;
+
+    /** When the identifiers of the type were last read. */
+    volatile long refreshedAt = 0;
+
+    /** Incremented as each refresh of the type starts. */
+    final AtomicLong generation = new AtomicLong();
+
+    /**
+     * The generation during which each key was last stored or removed by a write on this node,
+     * kept until a refresh started after the write has finished.
+     */
+    final Map<String, Long> written = new ConcurrentHashMap<>();
+
+    /** Records a write of the key, once it has been applied to the index. */
+    void written(String key) {
+      written.put(key, generation.get());
+    }
+
+    /** @return whether the key was written since the refresh of the generation started */
+    boolean writtenSince(String key, long since) {
+      Long at = written.get(key);
+      return at != null && at >= since;
+    }
+
+    void add(IndexedKey indexedKey) {
+      String key = indexedKey.key;
+      if (keys.putIfAbsent(key, indexedKey) != null) {
+        return;
+      }
+      for (String segment : segments(key)) {
+        keysBySegment.compute(
+            segment,
+            (s, segmentKeys) -> {
+              Set<String> updated = segmentKeys;
+              if (updated == null) {
+                updated = ConcurrentHashMap.newKeySet();
+                trigrams.add(s);
+              }
+              updated.add(key);
+              return updated;
+            });
+      }
+    }
+
+    void remove(String key) {
+      if (keys.remove(key) == null) {
+        return;
+      }
+      for (String segment : segments(key)) {
+        keysBySegment.computeIfPresent(
+            segment,
+            (s, segmentKeys) -> {
+              segmentKeys.remove(key);
+              if (!segmentKeys.isEmpty()) {
+                return segmentKeys;
+              }
+              trigrams.remove(s);
+              return null;
+            });
+      }
+    }
+
+    /**
+     * Replaces the keys of the provider with those read by the refresh of the generation, leaving
+     * alone the keys written since it started.
+     */
+    void replace(String provider, Map<String, IndexedKey> providerKeys, long since) {
+      providerKeys.forEach(
+          (key, indexedKey) -> {
+            if (!writtenSince(key, since)) {
+              add(indexedKey);
+            }
+          });
+      keys.forEach(
+          (key, indexedKey) -> {
+            if (provider.equals(indexedKey.provider)
+                && !providerKeys.containsKey(key)
+                && !writtenSince(key, since)) {
+              remove(key);
+            }
+          });
+    }
+  }
+
+  /**
+   * Finds the segments containing a term through posting lists of the ids of the segments having
+   * each trigram, which take a few bytes per character of the distinct segments.
+   */
+  private static class SegmentTrigrams {
+    static final int LENGTH = 3;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    /** The segments by id, null once removed. */
+    private final List<String> segments = new ArrayList<>();
+
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    private int removed = 0;
+
+    synchronized void add(String segment) {
+      if (ids.containsKey(segment)) {
+        return;
+      }
+      int id = segments.size();
+      ids.put(segment, id);
+      segments.add(segment);
+      index(segment, id);
+    }
+
+    synchronized void remove(String segment) {
+      Integer id = ids.remove(segment);
+      if (id == null) {
+        return;
+      }
+      segments.set(id, null);
+      // the postings keep the ids of removed segments until they are mostly made of them
+      if (++removed > ids.size()) {
+        compact();
+      }
+    }
+
+    /** @return the segments containing the term, which is at least a trigram long */
+    synchronized List<String> find(String term) {
+      Postings rarest = null;
+      for (int i = 0; i + LENGTH <= term.length(); i++) {
+        Postings candidates = postings.get(trigram(term, i));
+        if (candidates == null) {
+          return Collections.emptyList();
+        }
+        if (rarest == null || candidates.size < rarest.size) {
+          rarest = candidates;
+        }
+      }
+
+      List<String> found = new ArrayList<>();
+      for (int i = 0; i < rarest.size; i++) {
+        String segment = segments.get(rarest.ids[i]);
+        if (segment != null && segment.contains(term)) {
+          found.add(segment);
+        }
+      }
+      return found;
+    }
+
+    private void index(String segment, int id) {
+      for (int i = 0; i + LENGTH <= segment.length(); i++) {
+        postings.computeIfAbsent(trigram(segment, i), t -> new Postings()).add(id);
+      }
+    }
+
+    private void compact() {
+      List<String> live = new ArrayList<>(ids.size());
+      for (String segment : segments) {
+        if (segment != null) {
+          live.add(segment);
+        }
+      }
+      ids.clear();
+      segments.clear();
+      postings.clear();
+      removed = 0;
+      live.forEach(this::add);
+    }
+
+    private static long trigram(String value, int start) {
+      return ((long) value.charAt(start) << 32)
+          | ((long) value.charAt(start + 1) << 16)
+          | value.charAt(start + 2);
+    }
+  }
+
+  private static class Postings {
+    int[] ids = new int[2];
+    int size = 0;
+
+    void add(int id) {
+      // ids are added in increasing order, once per segment with the trigram
+      if (size > 0 && ids[size - 1] == id) {
+        return;
+      }
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      ids[size++] = id;
+    }
+  }
+}
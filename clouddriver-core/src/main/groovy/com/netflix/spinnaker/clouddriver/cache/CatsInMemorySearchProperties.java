@@ -23,6 +23,15 @@ public class CatsInMemorySearchProperties {
   private boolean enabled = false;
   private int refreshIntervalSeconds = 30;
 
+  /** Whether to index the keys of every searchable type, rather than only the instances. */
+  private boolean indexAllTypes = true;
+
+  /**
+   * How often each indexed type is read in full when a cache version tracker reports the types
+   * written by other nodes, which are read on the next refresh.
+   */
+  private int fullRefreshIntervalSeconds = 600;
+
   public boolean isEnabled() {
     return enabled;
   }
@@ -38,4 +47,20 @@ public class CatsInMemorySearchProperties {
   public void setRefreshIntervalSeconds(int refreshIntervalSeconds) {
     this.refreshIntervalSeconds = refreshIntervalSeconds;
   }
+
+  public int getFullRefreshIntervalSeconds() {
+    return fullRefreshIntervalSeconds;
+  }
+
+  public void setFullRefreshIntervalSeconds(int fullRefreshIntervalSeconds) {
+    this.fullRefreshIntervalSeconds = fullRefreshIntervalSeconds;
+  }
+
+  public boolean isIndexAllTypes() {
+    return indexAllTypes;
+  }
+
+  public void setIndexAllTypes(boolean indexAllTypes) {
+    this.indexAllTypes = indexAllTypes;
+  }
 }
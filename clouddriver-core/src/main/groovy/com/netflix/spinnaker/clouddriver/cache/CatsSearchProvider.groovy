@@ -18,6 +18,8 @@ package com.netflix.spinnaker.clouddriver.cache
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder
 import com.netflix.spinnaker.cats.cache.Cache
+import com.netflix.spinnaker.cats.cache.CacheVersionTracker
+import com.netflix.spinnaker.cats.cache.CacheWriteNotifier
 import com.netflix.spinnaker.cats.provider.ProviderRegistry
 import com.netflix.spinnaker.clouddriver.search.SearchProvider
 import com.netflix.spinnaker.clouddriver.search.SearchResultSet
@@ -26,15 +28,17 @@ import groovy.text.SimpleTemplateEngine
 import groovy.text.Template
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
-import org.springframework.security.core.Authentication
 import org.springframework.security.core.context.SecurityContextHolder
 
 import javax.annotation.PostConstruct
+import java.time.Duration
 import java.util.concurrent.Executors
 import java.util.concurrent.ScheduledExecutorService
 import java.util.concurrent.TimeUnit
-import java.util.concurrent.atomic.AtomicReference
+import java.util.function.BooleanSupplier
+import java.util.function.Consumer
 
+import static com.netflix.spinnaker.clouddriver.cache.CacheKeySearchIndex.IndexedKey
 import static com.netflix.spinnaker.clouddriver.cache.SearchableProvider.SearchableResource
 
 class CatsSearchProvider implements SearchProvider, Runnable {
@@ -50,11 +54,7 @@ class CatsSearchProvider implements SearchProvider, Runnable {
   private final Map<String, Template> urlMappings
   private final ProviderRegistry providerRegistry
 
-
-
-  private final AtomicReference<Map<String, Collection<String>>> cachedIdentifiersByType = new AtomicReference(
-    [:]
-  )
+  private final CacheKeySearchIndex searchIndex
 
   private final FiatPermissionEvaluator permissionEvaluator
   private final List<KeyParser> keyParsers
@@ -66,7 +66,8 @@ class CatsSearchProvider implements SearchProvider, Runnable {
                      List<SearchableProvider> providers,
                      ProviderRegistry providerRegistry,
                      Optional<FiatPermissionEvaluator> permissionEvaluator,
-                     Optional<List<KeyParser>> keyParsers) {
+                     Optional<List<KeyParser>> keyParsers,
+                     Optional<CacheVersionTracker> cacheVersionTracker) {
     this.catsInMemorySearchProperties = catsInMemorySearchProperties
     this.cacheView = cacheView
     this.providers = providers
@@ -87,7 +88,16 @@ class CatsSearchProvider implements SearchProvider, Runnable {
       return mappings
     }
 
+    searchIndex = new CacheKeySearchIndex(
+      providers,
+      providerRegistry,
+      catsInMemorySearchProperties.indexAllTypes,
+      cacheVersionTracker.orElse(null),
+      Duration.ofSeconds(catsInMemorySearchProperties.fullRefreshIntervalSeconds)
+    )
     if (catsInMemorySearchProperties.enabled) {
+      CacheWriteNotifier.notifier.addListener(searchIndex)
+      cacheVersionTracker.ifPresent { it.addListener(searchIndex) }
       scheduledExecutorService =
         Executors.newScheduledThreadPool(
           1,
@@ -97,6 +107,15 @@ class CatsSearchProvider implements SearchProvider, Runnable {
     }
   }
 
+  CatsSearchProvider(CatsInMemorySearchProperties catsInMemorySearchProperties,
+                     Cache cacheView,
+                     List<SearchableProvider> providers,
+                     ProviderRegistry providerRegistry,
+                     Optional<FiatPermissionEvaluator> permissionEvaluator,
+                     Optional<List<KeyParser>> keyParsers) {
+    this(catsInMemorySearchProperties, cacheView, providers, providerRegistry, permissionEvaluator, keyParsers, Optional.empty())
+  }
+
   CatsSearchProvider(CatsInMemorySearchProperties catsInMemorySearchProperties,
                      Cache cacheView,
                      List<SearchableProvider> providers,
@@ -113,32 +132,23 @@ class CatsSearchProvider implements SearchProvider, Runnable {
   }
 
   /**
-   * Periodically refresh cache identifiers that can then be searched over in-memory vs. in-redis.
+   * Periodically reconcile the in-memory search index with the provider caches, picking up the keys written or
+   * evicted by other nodes.
    *
-   * This is beneficial for sets (like instances) that may have hundreds of thousands of keys.
+   * With a cache version tracker, only the types other nodes wrote since the last refresh are read, and every type at
+   * least every caching.search.in-memory.full-refresh-interval-seconds; without one every indexed type is read on
+   * each refresh.
+   *
+   * Keys written or evicted on this node are indexed as they are written.
    */
   @Override
   void run() {
     try {
-      log.info("Refreshing Cached Identifiers (instances)")
-      def instanceIdentifiers = providers.findAll { provider ->
-        provider.supportsSearch('instances', Collections.emptyMap())
-      }.collect { provider ->
-        def cache = providerRegistry.getProviderCache(provider.getProviderName())
-        return cache.getIdentifiers("instances").findResults { key ->
-          // Even though we don't need the parsed Map, we should still allow the provider to reject invalid keys
-          if (provider.parseKey(key))
-            return key?.toLowerCase()
-        }
-      }.flatten()
-
-      if (instanceIdentifiers) {
-        cachedIdentifiersByType.set(["instances": instanceIdentifiers])
-      }
-
-      log.info("Refreshed Cached Identifiers (found ${instanceIdentifiers.size()} instances)")
+      log.info("Refreshing search index")
+      int indexed = searchIndex.refresh()
+      log.info("Refreshed search index (found ${indexed} keys)")
     } catch (Exception e) {
-      log.error("Unable to refresh cached identifiers (instances)", e)
+      log.error("Unable to refresh search index", e)
     }
   }
 
@@ -167,32 +177,53 @@ class CatsSearchProvider implements SearchProvider, Runnable {
     // ensure we're only searching for types supported by the backing providers
     types = defaultCaches.intersect(types)
 
-    List<String> matches = findMatches(query, types, filters)
-    if (permissionEvaluator) {
-      Authentication auth = SecurityContextHolder.context.authentication
-
-      matches = new ArrayList(matches).findResults { String key ->
-        Map<String, String> result = providers.findResult { it.parseKey(key) }
-        if (!result) {
-          log.warn("No supporting provider found for key (key: ${key})")
-          return key
-        }
+    String q = resolveQuery(query, types, filters)
+    if (q == null) {
+      return generateResultSet(query, [], 0, pageNumber, pageSize)
+    }
 
-        boolean canView = true
-        if (result.application) {
-          canView = permissionEvaluator.hasPermission(auth, result.application as String, 'APPLICATION', 'READ')
-        }
-        if (canView && result.account) {
-          canView = permissionEvaluator.hasPermission(auth, result.account as String, 'ACCOUNT', 'READ')
+    log.info("Querying ${types} for term: ${q}")
+    String normalizedWord = q.toLowerCase()
+    SearchReadPermissions permissions = new SearchReadPermissions(
+      permissionEvaluator,
+      permissionEvaluator ? SecurityContextHolder.context.authentication : null
+    )
+    RankedSearchMatches matches = new RankedSearchMatches(normalizedWord, pageSize * pageNumber)
+    types.each { String cache ->
+      if (searchIndex.isLoaded(cache)) {
+        Set<String> providerNames = providers.findAll { it.supportsSearch(cache, filters) }*.providerName as Set
+        searchIndex.forEachMatch(cache, normalizedWord, providerNames, { IndexedKey match ->
+          matches.offer(match.key, {
+            permissions.canRead(match.application, match.account) && filtersMatch(cache, match.key, filters)
+          } as BooleanSupplier)
+        } as Consumer<IndexedKey>)
+      } else {
+        findStoredMatches(cache, normalizedWord, filters).each { String key ->
+          matches.offer(key, {
+            canView(permissions, key) && filtersMatch(cache, key, filters)
+          } as BooleanSupplier)
         }
-        return canView ? key : null
       }
     }
-    generateResultSet(query, matches, pageNumber, pageSize)
+
+    log.info("Paginating ${matches.total} results; page number: ${pageNumber}, items per page: ${pageSize}")
+    generateResultSet(query, matches.getPage(pageNumber, pageSize), matches.total, pageNumber, pageSize)
   }
 
-  private SearchResultSet generateResultSet(String query, List<String> matches, Integer pageNumber, Integer pageSize) {
-    List<String> resultPage = paginateResults(matches, pageSize, pageNumber)
+  private boolean canView(SearchReadPermissions permissions, String key) {
+    if (!permissionEvaluator) {
+      return true
+    }
+
+    Map<String, String> result = providers.findResult { it.parseKey(key) }
+    if (!result) {
+      log.warn("No supporting provider found for key (key: ${key})")
+      return true
+    }
+    return permissions.canRead(result.application as String, result.account as String)
+  }
+
+  private SearchResultSet generateResultSet(String query, List<String> resultPage, int totalMatches, Integer pageNumber, Integer pageSize) {
     List<Map<String, String>> results = resultPage.findResults { String key ->
       Map<String, String> result = providers.findResult { it.parseKey(key) }
       if (result) {
@@ -209,7 +240,7 @@ class CatsSearchProvider implements SearchProvider, Runnable {
     int filteredItems = resultPage.size() - results.size()
 
     SearchResultSet resultSet = new SearchResultSet(
-      totalMatches: matches.size() - filteredItems,
+      totalMatches: totalMatches - filteredItems,
       platform: getPlatform(),
       query: query,
       pageNumber: pageNumber,
@@ -230,8 +261,11 @@ class CatsSearchProvider implements SearchProvider, Runnable {
     resultSet
   }
 
-  private List<String> findMatches(String q, List<String> cachesToQuery, Map<String, String> filters) {
-
+  /**
+   * @return the query, or a sensible default taken from the filters if there's none, or null if there's nothing to
+   * search for
+   */
+  private String resolveQuery(String q, List<String> cachesToQuery, Map<String, String> filters) {
     if (!q && keyParsers && filters) {
       // no keyword search so find sensible default value to set for searching
       Set<String> filterKeys = filters.keySet()
@@ -252,80 +286,51 @@ class CatsSearchProvider implements SearchProvider, Runnable {
         )
       } else {
         log.info("no query string specified and no sensible default found (cachesToQuery: {})", cachesToQuery)
-        return []
+        return null
       }
     }
+    return q
+  }
 
-    log.info("Querying ${cachesToQuery} for term: ${q}")
-    String normalizedWord = q.toLowerCase()
-    List<String> matches = cachesToQuery.collect { String cache ->
-      Closure filtersMatch = { String key ->
-        try {
-          if (!filters) {
-            return true
-          }
-
-          KeyParser parser = keyParsers?.find { it.cloudProvider == filters.cloudProvider && it.canParseType(cache) }
-          if (parser) {
-            Map<String, String> parsed = parser.parseKey(key)
-            return filters.entrySet().every { filter ->
-              String[] vals = filter.value.split(',')
-              filter.key == 'cloudProvider' || parsed &&
-                ((parsed.containsKey(filter.key) && vals.contains(parsed[filter.key])) ||
-                  (parsed.containsKey(parser.getNameMapping(cache)) && vals.contains(parsed[parser.getNameMapping(cache)])))
-            }
-          } else {
-            log.debug("No parser found for $cache:$key")
-            return true
-          }
-        } catch (Exception e) {
-          log.warn("Failed on $cache:$key", e)
-        }
+  private boolean filtersMatch(String cache, String key, Map<String, String> filters) {
+    try {
+      if (!filters) {
+        return true
       }
 
-      def identifiers
-      def cached = cachedIdentifiersByType.get()
-      if (cached.containsKey(cache)) {
-        /**
-         * Attempt an exact match of the query against any attribute of an instance key (account, region, etc.).
-         *
-         * This is not 100% consistent with doing `*:${cache}:*${normalizedWord}*` in redis _but_ for instances it
-         * should be sufficient.
-         */
-        def identifiersForCache = cached.get(cache)
-        identifiers = identifiersForCache.findAll { it.contains(normalizedWord) }
-      } else {
-        List<SearchableProvider> validProviders = providers.findAll { it.supportsSearch(cache, filters) }
-        identifiers = new HashSet<>()
-        for (SearchableProvider sp : validProviders) {
-          def providerCache = providerRegistry.getProviderCache(sp.getProviderName())
-          def searchGlob = sp.buildSearchTerm(cache, normalizedWord)
-          def filteredIds = providerCache.filterIdentifiers(cache, searchGlob)
-          filteredIds.removeAll(identifiers)
-          def existingIds = providerCache.existingIdentifiers(cache, filteredIds)
-          identifiers.addAll(existingIds)
+      KeyParser parser = keyParsers?.find { it.cloudProvider == filters.cloudProvider && it.canParseType(cache) }
+      if (parser) {
+        Map<String, String> parsed = parser.parseKey(key)
+        return filters.entrySet().every { filter ->
+          String[] vals = filter.value.split(',')
+          filter.key == 'cloudProvider' || parsed &&
+            ((parsed.containsKey(filter.key) && vals.contains(parsed[filter.key])) ||
+              (parsed.containsKey(parser.getNameMapping(cache)) && vals.contains(parsed[parser.getNameMapping(cache)])))
         }
+      } else {
+        log.debug("No parser found for $cache:$key")
+        return true
       }
-
-      return identifiers
-        .findAll(filtersMatch)
-    }.flatten()
-
-    matches.sort { String a, String b ->
-      def aKey = a.toLowerCase().substring(a.indexOf(':'))
-      def bKey = b.toLowerCase().substring(b.indexOf(':'))
-      def indexA = aKey.indexOf(q)
-      def indexB = bKey.indexOf(q)
-      return indexA == indexB ? aKey <=> bKey : indexA - indexB
+    } catch (Exception e) {
+      log.warn("Failed on $cache:$key", e)
+      return false
     }
   }
 
-  private static List<String> paginateResults(List<String> matches, Integer pageSize, Integer pageNumber) {
-    log.info("Paginating ${matches.size()} results; page number: ${pageNumber}, items per page: ${pageSize}")
-    Integer startingIndex = pageSize * (pageNumber - 1)
-    Integer endIndex = Math.min(pageSize * pageNumber, matches.size())
-    boolean hasResults = startingIndex < endIndex
-    List<String> toReturn = hasResults ? matches[startingIndex..endIndex - 1] : new ArrayList<String>()
-    toReturn
+  /**
+   * Searches the provider caches of a type that isn't (yet) in the in-memory search index.
+   */
+  private Collection<String> findStoredMatches(String cache, String normalizedWord, Map<String, String> filters) {
+    List<SearchableProvider> validProviders = providers.findAll { it.supportsSearch(cache, filters) }
+    Set<String> identifiers = new HashSet<>()
+    for (SearchableProvider sp : validProviders) {
+      def providerCache = providerRegistry.getProviderCache(sp.getProviderName())
+      def searchGlob = sp.buildSearchTerm(cache, normalizedWord)
+      def filteredIds = providerCache.filterIdentifiers(cache, searchGlob)
+      filteredIds.removeAll(identifiers)
+      def existingIds = providerCache.existingIdentifiers(cache, filteredIds)
+      identifiers.addAll(existingIds)
+    }
+    return identifiers
   }
 }
@@ -16,19 +16,25 @@
 package com.netflix.spinnaker.clouddriver.cache
 
 import com.fasterxml.jackson.databind.ObjectMapper
+import com.netflix.spinnaker.cats.cache.CacheVersionStamps
+import com.netflix.spinnaker.cats.cache.CacheVersionTracker
 import com.netflix.spinnaker.cats.cache.NamedCacheFactory
 import com.netflix.spinnaker.cats.redis.cache.RedisCache.CacheMetrics
 import com.netflix.spinnaker.cats.redis.cache.RedisCacheOptions
+import com.netflix.spinnaker.cats.redis.cache.RedisCacheVersionStamps
 import com.netflix.spinnaker.cats.redis.cache.RedisNamedCacheFactory
 import com.netflix.spinnaker.clouddriver.core.RedisConfigurationProperties
 import com.netflix.spinnaker.kork.jedis.JedisClientDelegate
 import com.netflix.spinnaker.kork.jedis.RedisClientDelegate
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression
 import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
 import redis.clients.jedis.JedisPool
 
+import java.time.Duration
+
 @Configuration
 @ConditionalOnExpression("\${redis.enabled:true} && \${redis.cache.enabled:true}")
 @EnableConfigurationProperties(RedisConfigurationProperties)
@@ -47,4 +53,21 @@ class JedisCacheConfig {
     CacheMetrics cacheMetrics) {
     new RedisNamedCacheFactory(redisClientDelegate, objectMapper, redisCacheOptions, cacheMetrics)
   }
+
+  /**
+   * Nodes that only write to the cache need caching.near-cache.publish-versions when other nodes have the near cache
+   * enabled.
+   */
+  @Bean
+  @ConditionalOnExpression("\${caching.near-cache.enabled:false} || \${caching.near-cache.publish-versions:false}")
+  CacheVersionStamps cacheVersionStamps(RedisClientDelegate redisClientDelegate) {
+    new RedisCacheVersionStamps(redisClientDelegate)
+  }
+
+  @Bean
+  @ConditionalOnExpression("\${caching.near-cache.enabled:false} || \${caching.near-cache.publish-versions:false}")
+  CacheVersionTracker cacheVersionTracker(CacheVersionStamps cacheVersionStamps,
+                                          @Value("\${caching.near-cache.version-poll-interval-ms:1000}") long pollIntervalMs) {
+    new CacheVersionTracker(cacheVersionStamps, Duration.ofMillis(pollIntervalMs))
+  }
 }
@@ -0,0 +1,426 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.clouddriver.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spinnaker.cats.cache.Cache;
+import com.netflix.spinnaker.cats.cache.CacheData;
+import com.netflix.spinnaker.cats.cache.CacheFilter;
+import com.netflix.spinnaker.cats.cache.CacheVersionTracker;
+import com.netflix.spinnaker.cats.cache.CacheWriteNotifier;
+import com.netflix.spinnaker.cats.cache.DefaultCacheData;
+import com.netflix.spinnaker.cats.cache.RelationshipCacheFilter;
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps local copies of the items read by id from the cache view, so that repeated reads of the
+ * same items within a short time don't all go to the shared backing store.
+ *
+ * <p>Copies are bounded by their approximate size in bytes and evicted by Caffeine's W-TinyLFU
+ * policy. They are dropped when a {@link com.netflix.spinnaker.cats.cache.WriteableCache} on this
+ * node changes the item, when the {@link CacheVersionTracker} reports that another node has changed
+ * items hashed to the same version stamp, and in any case once they are older than the max
+ * staleness.
+ *
+ * <p>Callers get their own copy of each item, since some modify the items they read.
+ *
+ * <p>Only reads without a filter or with a {@link RelationshipCacheFilter} are served from the
+ * copies, and reads of whole types or identifiers always go to the cache view.
+ */
+public class NearCache
+    implements Cache, CacheWriteNotifier.Listener, CacheVersionTracker.Listener, Closeable {
+  private static final String NO_FILTER = "*";
+
+  private final Cache delegate;
+  private final CacheVersionTracker versionTracker;
+  private final com.github.benmanes.caffeine.cache.Cache<Key, Map<String, CacheData>> items;
+  private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+  private final Map<String, Set<Key>> keysByStamp = new ConcurrentHashMap<>();
+  private final Counter hits;
+  private final Counter misses;
+
+  /**
+   * @param versionTracker tracks the changes made by other nodes, or null if this node is the only
+   *     one writing to the backing store
+   */
+  public NearCache(
+      Cache delegate,
+      long maxSizeBytes,
+      Duration maxStaleness,
+      CacheVersionTracker versionTracker,
+      Registry registry) {
+    this.delegate = delegate;
+    this.versionTracker = versionTracker;
+    this.items =
+        Caffeine.newBuilder()
+            .maximumWeight(maxSizeBytes)
+            .<Key, Map<String, CacheData>>weigher(
+                (key, copies) ->
+                    (int) Math.min(Integer.MAX_VALUE, estimateBytes(key, copies.values())))
+            .expireAfterWrite(maxStaleness)
+            .<Key, Map<String, CacheData>>removalListener(
+                (key, copies, cause) -> {
+                  if (cause != RemovalCause.REPLACED) {
+                    unindex(key);
+                  }
+                })
+            .executor(Runnable::run)
+            .build();
+    this.hits = registry.counter("cats.nearCache.requests", "result", "hit");
+    this.misses = registry.counter("cats.nearCache.requests", "result", "miss");
+
+    CacheWriteNotifier.getNotifier().addListener(this);
+    if (versionTracker != null) {
+      versionTracker.addListener(this);
+    }
+  }
+
+  @Override
+  public CacheData get(String type, String id) {
+    return get(type, id, null);
+  }
+
+  @Override
+  public CacheData get(String type, String id, CacheFilter cacheFilter) {
+    String filterKey = filterKey(cacheFilter);
+    if (filterKey == null) {
+      return delegate.get(type, id, cacheFilter);
+    }
+
+    CacheData copy = getCopy(type, id, filterKey);
+    if (copy != null) {
+      hits.increment();
+      return copyOf(copy);
+    }
+
+    misses.increment();
+    long generation = generation(type).get();
+    CacheData item = delegate.get(type, id, cacheFilter);
+    if (item != null) {
+      putCopy(type, filterKey, item, generation);
+    }
+    return item;
+  }
+
+  @Override
+  public Collection<CacheData> getAll(String type, Collection<String> identifiers) {
+    return getAll(type, identifiers, null);
+  }
+
+  @Override
+  public Collection<CacheData> getAll(String type, String... identifiers) {
+    return getAll(type, Arrays.asList(identifiers));
+  }
+
+  @Override
+  public Collection<CacheData> getAll(
+      String type, Collection<String> identifiers, CacheFilter cacheFilter) {
+    String filterKey = filterKey(cacheFilter);
+    if (filterKey == null) {
+      return delegate.getAll(type, identifiers, cacheFilter);
+    }
+
+    List<CacheData> result = new ArrayList<>(identifiers.size());
+    List<String> missing = new ArrayList<>();
+    for (String id : identifiers) {
+      CacheData copy = getCopy(type, id, filterKey);
+      if (copy == null) {
+        missing.add(id);
+      } else {
+        result.add(copyOf(copy));
+      }
+    }
+    hits.increment(result.size());
+    misses.increment(missing.size());
+
+    if (!missing.isEmpty()) {
+      long generation = generation(type).get();
+      for (CacheData item : delegate.getAll(type, missing, cacheFilter)) {
+        putCopy(type, filterKey, item, generation);
+        result.add(item);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Collection<CacheData> getAll(String type) {
+    return delegate.getAll(type);
+  }
+
+  @Override
+  public Collection<CacheData> getAll(String type, CacheFilter cacheFilter) {
+    return delegate.getAll(type, cacheFilter);
+  }
+
+  @Override
+  public Collection<String> existingIdentifiers(String type, Collection<String> identifiers) {
+    return delegate.existingIdentifiers(type, identifiers);
+  }
+
+  @Override
+  public Collection<String> getIdentifiers(String type) {
+    return delegate.getIdentifiers(type);
+  }
+
+  @Override
+  public Collection<String> filterIdentifiers(String type, String glob) {
+    return delegate.filterIdentifiers(type, glob);
+  }
+
+  @Override
+  public boolean supportsGetAllByApplication() {
+    return delegate.supportsGetAllByApplication();
+  }
+
+  @Override
+  public Map<String, Collection<CacheData>> getAllByApplication(String type, String application) {
+    return delegate.getAllByApplication(type, application);
+  }
+
+  @Override
+  public Map<String, Collection<CacheData>> getAllByApplication(
+      String type, String application, CacheFilter cacheFilter) {
+    return delegate.getAllByApplication(type, application, cacheFilter);
+  }
+
+  @Override
+  public Map<String, Collection<CacheData>> getAllByApplication(
+      Collection<String> types, String application, Map<String, CacheFilter> cacheFilters) {
+    return delegate.getAllByApplication(types, application, cacheFilters);
+  }
+
+  @Override
+  public void itemsChanged(String type, Collection<String> ids) {
+    generation(type).incrementAndGet();
+    List<Key> keys = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      keys.add(new Key(type, id));
+    }
+    items.invalidateAll(keys);
+  }
+
+  @Override
+  public void versionsChanged(Set<String> stamps) {
+    for (String stamp : stamps) {
+      generation(stamp.substring(0, stamp.lastIndexOf(':'))).incrementAndGet();
+      Set<Key> keys = keysByStamp.get(stamp);
+      if (keys != null) {
+        items.invalidateAll(new ArrayList<>(keys));
+      }
+    }
+  }
+
+  @Override
+  public void allVersionsChanged() {
+    generations.values().forEach(AtomicLong::incrementAndGet);
+    items.invalidateAll();
+  }
+
+  @Override
+  public void close() {
+    CacheWriteNotifier.getNotifier().removeListener(this);
+    if (versionTracker != null) {
+      versionTracker.removeListener(this);
+    }
+  }
+
+  private CacheData getCopy(String type, String id, String filterKey) {
+    Map<String, CacheData> copies = items.getIfPresent(new Key(type, id));
+    return copies == null ? null : copies.get(filterKey);
+  }
+
+  private void putCopy(String type, String filterKey, CacheData item, long generation) {
+    AtomicLong current = generation(type);
+    items
+        .asMap()
+        .compute(
+            new Key(type, item.getId()),
+            (key, copies) -> {
+              // the item was written while it was being read, so the read may be out of date
+              if (current.get() != generation) {
+                return copies;
+              }
+              Map<String, CacheData> updated =
+                  copies == null ? new HashMap<>() : new HashMap<>(copies);
+              updated.put(filterKey, copyOf(item));
+              return Collections.unmodifiableMap(updated);
+            });
+    index(new Key(type, item.getId()));
+  }
+
+  /**
+   * Copies are indexed by their version stamp, so that the copies of the items in a changed bucket
+   * are found without going through all of them.
+   */
+  private void index(Key key) {
+    if (!items.asMap().containsKey(key)) {
+      return;
+    }
+    keysByStamp
+        .computeIfAbsent(key.stamp(), stamp -> ConcurrentHashMap.newKeySet())
+        .add(key);
+  }
+
+  private void unindex(Key key) {
+    Set<Key> keys = keysByStamp.get(key.stamp());
+    if (keys != null) {
+      keys.remove(key);
+      // the item may have been read again meanwhile, in which case it must stay indexed
+      if (items.asMap().containsKey(key)) {
+        keys.add(key);
+      }
+    }
+  }
+
+  private AtomicLong generation(String type) {
+    return generations.computeIfAbsent(type, t -> new AtomicLong());
+  }
+
+  /** @return a key for the filter, or null if reads with the filter aren't served from copies */
+  private static String filterKey(CacheFilter cacheFilter) {
+    if (cacheFilter == null) {
+      return NO_FILTER;
+    }
+    if (cacheFilter instanceof RelationshipCacheFilter) {
+      return String.join(
+          ",", ((RelationshipCacheFilter) cacheFilter).getAllowableRelationshipPrefixes());
+    }
+    return null;
+  }
+
+  /**
+   * Copies the attribute and relationship maps and the maps and collections nested in them, so
+   * that neither the caller nor the cache see changes the other makes.
+   */
+  static CacheData copyOf(CacheData item) {
+    Map<String, Collection<String>> relationships = new HashMap<>();
+    item.getRelationships()
+        .forEach((name, ids) -> relationships.put(name, ids == null ? null : new ArrayList<>(ids)));
+    // a negative ttl keeps the cacheExpiry attribute of the item as it is
+    return new DefaultCacheData(item.getId(), -1, copyMap(item.getAttributes()), relationships);
+  }
+
+  private static Map<String, Object> copyMap(Map<String, Object> map) {
+    Map<String, Object> copy = new LinkedHashMap<>(map.size());
+    map.forEach((key, value) -> copy.put(key, copyValue(value)));
+    return copy;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object copyValue(Object value) {
+    if (value instanceof Map) {
+      return copyMap((Map<String, Object>) value);
+    }
+    if (value instanceof Set) {
+      Set<Object> copy = new LinkedHashSet<>();
+      ((Set<?>) value).forEach(element -> copy.add(copyValue(element)));
+      return copy;
+    }
+    if (value instanceof Collection) {
+      List<Object> copy = new ArrayList<>(((Collection<?>) value).size());
+      ((Collection<?>) value).forEach(element -> copy.add(copyValue(element)));
+      return copy;
+    }
+    return value;
+  }
+
+  /** A rough estimate of the heap used by the copies, good enough to bound the total. */
+  static long estimateBytes(Key key, Collection<CacheData> copies) {
+    long bytes = 64 + estimateBytes(key.type) + estimateBytes(key.id);
+    for (CacheData copy : copies) {
+      bytes += 64 + estimateBytes(copy.getAttributes());
+      for (Map.Entry<String, Collection<String>> relationship :
+          copy.getRelationships().entrySet()) {
+        bytes += 48 + estimateBytes(relationship.getKey()) + estimateBytes(relationship.getValue());
+      }
+    }
+    return bytes;
+  }
+
+  private static long estimateBytes(Object value) {
+    if (value == null) {
+      return 0;
+    }
+    if (value instanceof CharSequence) {
+      return 40 + 2L * ((CharSequence) value).length();
+    }
+    if (value instanceof Map) {
+      long bytes = 48;
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        bytes += 32 + estimateBytes(entry.getKey()) + estimateBytes(entry.getValue());
+      }
+      return bytes;
+    }
+    if (value instanceof Collection) {
+      long bytes = 32;
+      for (Object element : (Collection<?>) value) {
+        bytes += 8 + estimateBytes(element);
+      }
+      return bytes;
+    }
+    return 16;
+  }
+
+  static final class Key {
+    final String type;
+    final String id;
+
+    Key(String type, String id) {
+      this.type = type;
+      this.id = id;
+    }
+
+    String stamp() {
+      return CacheVersionTracker.stamp(type, id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return type.equals(other.type) && id.equals(other.id);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(type, id);
+    }
+  }
+}
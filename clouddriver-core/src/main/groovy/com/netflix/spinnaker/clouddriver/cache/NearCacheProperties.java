@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.clouddriver.cache;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/** Configures the local copies of cache items kept in front of the cache view. */
+@ConfigurationProperties("caching.near-cache")
+public class NearCacheProperties {
+  private boolean enabled = false;
+  private long maxSizeMb = 256;
+  private long maxStalenessSeconds = 30;
+  private long versionPollIntervalMs = 1000;
+
+  /**
+   * Publishes the versions of the items this node writes without keeping local copies itself, for
+   * nodes that only write to the cache while others have the near cache enabled.
+   */
+  private boolean publishVersions = false;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public long getMaxSizeMb() {
+    return maxSizeMb;
+  }
+
+  public void setMaxSizeMb(long maxSizeMb) {
+    this.maxSizeMb = maxSizeMb;
+  }
+
+  public long getMaxStalenessSeconds() {
+    return maxStalenessSeconds;
+  }
+
+  public void setMaxStalenessSeconds(long maxStalenessSeconds) {
+    this.maxStalenessSeconds = maxStalenessSeconds;
+  }
+
+  public long getVersionPollIntervalMs() {
+    return versionPollIntervalMs;
+  }
+
+  public void setVersionPollIntervalMs(long versionPollIntervalMs) {
+    this.versionPollIntervalMs = versionPollIntervalMs;
+  }
+
+  public boolean isPublishVersions() {
+    return publishVersions;
+  }
+
+  public void setPublishVersions(boolean publishVersions) {
+    this.publishVersions = publishVersions;
+  }
+}
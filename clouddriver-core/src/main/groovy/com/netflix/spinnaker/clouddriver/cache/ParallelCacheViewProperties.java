@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.clouddriver.cache;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configures reading the provider caches of the cache view concurrently.
+ *
+ * <p>Reads wait in a queue of at most {@code queueSize} reads for one of the {@code threads}, and
+ * are made by the requesting thread instead when it is full.
+ */
+@ConfigurationProperties("caching.parallel-view")
+public class ParallelCacheViewProperties {
+  private boolean enabled = false;
+  private int threads = 16;
+  private int queueSize = 64;
+  private long deadlineMs = 10000;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  public int getQueueSize() {
+    return queueSize;
+  }
+
+  public void setQueueSize(int queueSize) {
+    this.queueSize = queueSize;
+  }
+
+  public long getDeadlineMs() {
+    return deadlineMs;
+  }
+
+  public void setDeadlineMs(long deadlineMs) {
+    this.deadlineMs = deadlineMs;
+  }
+}
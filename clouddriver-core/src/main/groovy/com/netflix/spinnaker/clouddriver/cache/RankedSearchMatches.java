@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.clouddriver.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Counts the matches of a search and keeps only the highest ranked ones needed for a page of
+ * results, so that broad searches don't hold on to every match.
+ *
+ * <p>Matches are ranked by how early the term appears in the key after its provider, then by key.
+ *
+ * <p>Whether a match is accepted (e.g. may be read by the caller) is only checked for matches that
+ * rank high enough to be kept. The total of the others is estimated from the share of checked
+ * matches that were accepted, which is exact as long as no match was rejected.
+ */
+public class RankedSearchMatches {
+  private static final Comparator<Match> RANKING =
+      Comparator.<Match>comparingInt(match -> match.position)
+          .thenComparing(match -> match.rankKey);
+
+  private final String term;
+  private final int limit;
+  private final PriorityQueue<Match> top;
+  private int accepted = 0;
+  private int rejected = 0;
+  private int unchecked = 0;
+
+  /**
+   * @param term the lower case search term
+   * @param limit the number of highest ranked matches to keep
+   */
+  public RankedSearchMatches(String term, int limit) {
+    this.term = term;
+    this.limit = Math.max(0, limit);
+    // the lowest ranked match is at the head, to be dropped first
+    this.top = new PriorityQueue<>(Math.max(1, this.limit), RANKING.reversed());
+  }
+
+  /**
+   * @param key a key matching the search
+   * @param accept whether the match should be part of the results, only called if the match ranks
+   *     high enough to be kept
+   */
+  public void offer(String key, BooleanSupplier accept) {
+    String lowerCaseKey = key.toLowerCase();
+    String rankKey = lowerCaseKey.substring(Math.max(0, lowerCaseKey.indexOf(':')));
+    Match match = new Match(key, rankKey, rankKey.indexOf(term));
+
+    boolean full = top.size() >= limit;
+    if (full && (limit == 0 || RANKING.compare(match, top.peek()) >= 0)) {
+      unchecked++;
+      return;
+    }
+
+    if (!accept.getAsBoolean()) {
+      rejected++;
+      return;
+    }
+
+    accepted++;
+    if (full) {
+      top.poll();
+    }
+    top.add(match);
+  }
+
+  /** @return the number of accepted matches, estimated if some weren't checked */
+  public int getTotal() {
+    int checked = accepted + rejected;
+    if (unchecked == 0 || checked == 0) {
+      return accepted + unchecked;
+    }
+    return accepted + (int) Math.round((double) unchecked * accepted / checked);
+  }
+
+  /** @return the kept matches of the page, with pages numbered from 1 */
+  public List<String> getPage(int pageNumber, int pageSize) {
+    List<Match> ranked = new ArrayList<>(top);
+    ranked.sort(RANKING);
+
+    int start = Math.max(0, pageSize * (pageNumber - 1));
+    int end = Math.min(pageSize * pageNumber, ranked.size());
+    if (start >= end) {
+      return Collections.emptyList();
+    }
+
+    List<String> page = new ArrayList<>(end - start);
+    for (Match match : ranked.subList(start, end)) {
+      page.add(match.key);
+    }
+    return page;
+  }
+
+  private static class Match {
+    final String key;
+    final String rankKey;
+    final int position;
+
+    Match(String key, String rankKey, int position) {
+      this.key = key;
+      this.rankKey = rankKey;
+      this.position = position;
+    }
+  }
+}
@@ -54,12 +54,13 @@ class RedisCacheConfig {
   }
 
   @Bean
-  AgentIntervalProvider agentIntervalProvider(RedisConfigurationProperties redisConfigurationProperties) {
-    new CustomSchedulableAgentIntervalProvider(
+  AgentIntervalProvider agentIntervalProvider(RedisConfigurationProperties redisConfigurationProperties,
+                                              AdaptiveAgentIntervalProperties adaptiveAgentIntervalProperties) {
+    adaptiveAgentIntervalProperties.apply(new CustomSchedulableAgentIntervalProvider(
       TimeUnit.SECONDS.toMillis(redisConfigurationProperties.poll.intervalSeconds),
       TimeUnit.SECONDS.toMillis(redisConfigurationProperties.poll.errorIntervalSeconds),
       TimeUnit.SECONDS.toMillis(redisConfigurationProperties.poll.timeoutSeconds)
-    )
+    ))
   }
 
   @Bean
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.clouddriver.cache;
+
+import com.netflix.spinnaker.fiat.shared.FiatPermissionEvaluator;
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.security.core.Authentication;
+
+/**
+ * The applications and accounts the caller of a search may read, asking the permission evaluator
+ * only once per application and account however many matches belong to them.
+ *
+ * <p>Not thread safe, it's meant to live for a single search.
+ */
+public class SearchReadPermissions {
+  private final FiatPermissionEvaluator permissionEvaluator;
+  private final Authentication authentication;
+  private final Map<String, Boolean> applications = new HashMap<>();
+  private final Map<String, Boolean> accounts = new HashMap<>();
+
+  /** @param permissionEvaluator the permission evaluator, or null if everything may be read */
+  public SearchReadPermissions(
+      FiatPermissionEvaluator permissionEvaluator, Authentication authentication) {
+    this.permissionEvaluator = permissionEvaluator;
+    this.authentication = authentication;
+  }
+
+  /**
+   * @param application the application of a match, or null if it doesn't belong to one
+   * @param account the account of a match, or null if it doesn't belong to one
+   */
+  public boolean canRead(String application, String account) {
+    if (permissionEvaluator == null) {
+      return true;
+    }
+    if (application != null
+        && !application.isEmpty()
+        && !applications.computeIfAbsent(
+            application, name -> hasReadPermission(name, "APPLICATION"))) {
+      return false;
+    }
+    return account == null
+        || account.isEmpty()
+        || accounts.computeIfAbsent(account, name -> hasReadPermission(name, "ACCOUNT"));
+  }
+
+  private boolean hasReadPermission(String name, String resourceType) {
+    return permissionEvaluator.hasPermission(authentication, name, resourceType, "READ");
+  }
+}
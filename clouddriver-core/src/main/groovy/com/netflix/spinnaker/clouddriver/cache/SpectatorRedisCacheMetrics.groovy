@@ -22,6 +22,8 @@ import com.netflix.spectator.api.Registry
 import com.netflix.spectator.api.Tag
 import com.netflix.spinnaker.cats.redis.cache.RedisCache.CacheMetrics
 
+import java.util.concurrent.TimeUnit
+
 class SpectatorRedisCacheMetrics implements CacheMetrics {
   private final Registry registry
 
@@ -72,6 +74,11 @@ class SpectatorRedisCacheMetrics implements CacheMetrics {
     registry.counter(id("cats.redisCache.get", "mgetOperations", tags)).increment(mgetOperations)
   }
 
+  @Override
+  void getPartition(String prefix, String type, int keysRequested, long durationNanos) {
+    registry.timer(id("cats.redisCache.get", "partitionLatency", tags(prefix, type))).record(durationNanos, TimeUnit.NANOSECONDS)
+  }
+
   private Id id(String metricGroup, String metric, Iterable<Tag> tags) {
     return registry.createId(metricGroup + '.' + metric, tags)
   }
@@ -20,6 +20,7 @@ import com.netflix.spectator.api.Registry;
 import com.netflix.spinnaker.clouddriver.requestqueue.pooled.PooledRequestQueue;
 import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /** RequestQueue. */
@@ -41,7 +42,8 @@ public interface RequestQueue {
         registry,
         config.getStartWorkTimeoutMillis(),
         config.getTimeoutMillis(),
-        config.getPoolSize());
+        config.getPoolSize(),
+        config.getMaxQueueDepth());
   }
 
   static RequestQueue noop() {
@@ -64,8 +66,24 @@ public interface RequestQueue {
       long startWorkTimeoutMillis,
       long timeoutMillis,
       int poolSize) {
+    return pooled(
+        dynamicConfigService, registry, startWorkTimeoutMillis, timeoutMillis, poolSize, 0);
+  }
+
+  static RequestQueue pooled(
+      DynamicConfigService dynamicConfigService,
+      Registry registry,
+      long startWorkTimeoutMillis,
+      long timeoutMillis,
+      int poolSize,
+      int maxQueueDepth) {
     return new PooledRequestQueue(
-        dynamicConfigService, registry, startWorkTimeoutMillis, timeoutMillis, poolSize);
+        dynamicConfigService,
+        registry,
+        startWorkTimeoutMillis,
+        timeoutMillis,
+        poolSize,
+        maxQueueDepth);
   }
 
   default long getDefaultTimeoutMillis() {
@@ -89,6 +107,32 @@ public interface RequestQueue {
       String partition, Callable<T> operation, long startWorkTimeout, long timeout, TimeUnit unit)
       throws Throwable;
 
+  default <T> CompletableFuture<T> executeAsync(String partition, Callable<T> operation) {
+    return executeAsync(
+        partition,
+        operation,
+        getDefaultStartWorkTimeoutMillis(),
+        getDefaultTimeoutMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Like {@link #execute}, but completes the returned future with the result instead of blocking
+   * the caller until it is available.
+   *
+   * <p>Queues that don't hand the operation off to other threads run it before returning.
+   */
+  default <T> CompletableFuture<T> executeAsync(
+      String partition, Callable<T> operation, long startWorkTimeout, long timeout, TimeUnit unit) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    try {
+      result.complete(execute(partition, operation, startWorkTimeout, timeout, unit));
+    } catch (Throwable t) {
+      result.completeExceptionally(t);
+    }
+    return result;
+  }
+
   class NOOP implements RequestQueue {
     @Override
     public <T> T execute(
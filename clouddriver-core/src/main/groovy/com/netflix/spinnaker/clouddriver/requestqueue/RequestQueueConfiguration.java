@@ -24,6 +24,7 @@ public class RequestQueueConfiguration {
   private long startWorkTimeoutMillis = RequestQueue.DEFAULT_START_WORK_TIMEOUT_MILLIS;
   private long timeoutMillis = RequestQueue.DEFAULT_TIMEOUT_MILLIS;
   private int poolSize = 10;
+  private int maxQueueDepth = 0;
 
   public boolean isEnabled() {
     return enabled;
@@ -56,4 +57,13 @@ public class RequestQueueConfiguration {
   public void setPoolSize(int poolSize) {
     this.poolSize = poolSize;
   }
+
+  /** @return the most requests a partition may have waiting to start, 0 for no limit */
+  public int getMaxQueueDepth() {
+    return maxQueueDepth;
+  }
+
+  public void setMaxQueueDepth(int maxQueueDepth) {
+    this.maxQueueDepth = maxQueueDepth;
+  }
 }
@@ -23,18 +23,24 @@ import java.util.concurrent.CancellationException;
 import java.util.concurrent.TimeUnit;
 
 class PooledRequest<T> implements Runnable {
+  private final String partition;
   private final Timer timer;
   private final Promise<T> result;
   private final Callable<T> work;
   private final long startTime = System.nanoTime();
 
   PooledRequest(Registry registry, String partition, Callable<T> work) {
+    this.partition = partition;
     this.timer =
         registry.timer(registry.createId("pooledRequestQueue.enqueueTime", "partition", partition));
     this.result = new Promise<>(registry, partition);
     this.work = work;
   }
 
+  String getPartition() {
+    return partition;
+  }
+
   Promise<T> getPromise() {
     return result;
   }
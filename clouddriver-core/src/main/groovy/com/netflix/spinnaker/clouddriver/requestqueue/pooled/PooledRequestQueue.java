@@ -25,13 +25,16 @@ import java.util.Collection;
 import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,12 +44,18 @@ public class PooledRequestQueue implements RequestQueue {
   private final Logger log = LoggerFactory.getLogger(getClass());
   private final ConcurrentMap<String, Queue<PooledRequest<?>>> partitionedRequests =
       new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Integer> partitionWeights = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Integer> partitionMaxQueueDepths = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, AtomicInteger> waitingRequests = new ConcurrentHashMap<>();
   private final PollCoordinator pollCoordinator = new PollCoordinator();
+  private final AtomicInteger runningRequests = new AtomicInteger();
 
   private final long defaultStartWorkTimeout;
   private final long defaultTimeout;
   private final int defaultCorePoolSize;
+  private final int defaultMaxQueueDepth;
   private final ThreadPoolExecutor executorService;
+  private final ScheduledThreadPoolExecutor timeoutScheduler;
   private final BlockingQueue<Runnable> submittedRequests;
   private final Collection<Queue<PooledRequest<?>>> requestQueues;
   private final RequestDistributor requestDistributor;
@@ -62,6 +71,23 @@ public class PooledRequestQueue implements RequestQueue {
       long defaultStartWorkTimeout,
       long defaultTimeout,
       int requestPoolSize) {
+    this(
+        dynamicConfigService,
+        registry,
+        defaultStartWorkTimeout,
+        defaultTimeout,
+        requestPoolSize,
+        0);
+  }
+
+  /** @param defaultMaxQueueDepth the most requests a partition may have waiting, 0 for no limit */
+  public PooledRequestQueue(
+      DynamicConfigService dynamicConfigService,
+      Registry registry,
+      long defaultStartWorkTimeout,
+      long defaultTimeout,
+      int requestPoolSize,
+      int defaultMaxQueueDepth) {
 
     if (defaultStartWorkTimeout <= 0) {
       throw new IllegalArgumentException("defaultStartWorkTimeout");
@@ -75,12 +101,17 @@ public class PooledRequestQueue implements RequestQueue {
       throw new IllegalArgumentException("requestPoolSize");
     }
 
+    if (defaultMaxQueueDepth < 0) {
+      throw new IllegalArgumentException("defaultMaxQueueDepth");
+    }
+
     this.dynamicConfigService = dynamicConfigService;
     this.registry = registry;
 
     this.defaultStartWorkTimeout = defaultStartWorkTimeout;
     this.defaultTimeout = defaultTimeout;
     this.defaultCorePoolSize = requestPoolSize;
+    this.defaultMaxQueueDepth = defaultMaxQueueDepth;
 
     this.submittedRequests = new LinkedBlockingQueue<>();
     registry.gauge("pooledRequestQueue.executorQueue.size", submittedRequests, Queue::size);
@@ -95,13 +126,42 @@ public class PooledRequestQueue implements RequestQueue {
             submittedRequests,
             new ThreadFactoryBuilder()
                 .setNameFormat(PooledRequestQueue.class.getSimpleName() + "-%d")
-                .build());
+                .build()) {
+          @Override
+          protected void afterExecute(Runnable r, Throwable t) {
+            if (r instanceof PooledRequest) {
+              // a worker is free, the distributor may be waiting to hand it a request
+              runningRequests.decrementAndGet();
+              pollCoordinator.notifyItemsAdded();
+            }
+          }
+        };
     registry.gauge(
         "pooledRequestQueue.corePoolSize", executorService, ThreadPoolExecutor::getCorePoolSize);
 
+    this.timeoutScheduler =
+        new ScheduledThreadPoolExecutor(
+            1,
+            new ThreadFactoryBuilder()
+                .setNameFormat(PooledRequestQueue.class.getSimpleName() + "-timeouts-%d")
+                .setDaemon(true)
+                .build());
+    // most requests complete well within their timeouts
+    timeoutScheduler.setRemoveOnCancelPolicy(true);
+
     this.requestQueues = new CopyOnWriteArrayList<>();
     this.requestDistributor =
-        new RequestDistributor(registry, pollCoordinator, executorService, requestQueues);
+        new RequestDistributor(
+            registry,
+            pollCoordinator,
+            request -> {
+              runningRequests.incrementAndGet();
+              executorService.execute(request);
+            },
+            requestQueues,
+            partition -> partitionWeights.getOrDefault(partition, 1),
+            // the distributor itself occupies one of the threads
+            () -> runningRequests.get() < executorService.getMaximumPoolSize() - 1);
     executorService.submit(requestDistributor);
 
     registry.gauge("pooledRequestQueue.enabled", isEnabled, value -> value.get() ? 1.0 : 0.0);
@@ -111,10 +171,16 @@ public class PooledRequestQueue implements RequestQueue {
   public void shutdown() {
     requestDistributor.shutdown();
     executorService.shutdown();
+    timeoutScheduler.shutdown();
     PooledRequest<?> req;
     while ((req = (PooledRequest<?>) submittedRequests.poll()) != null) {
       req.cancel();
     }
+    for (Queue<PooledRequest<?>> queue : requestQueues) {
+      while ((req = queue.poll()) != null) {
+        req.cancel();
+      }
+    }
   }
 
   @Override
@@ -136,8 +202,53 @@ public class PooledRequestQueue implements RequestQueue {
     }
 
     final long startTime = System.nanoTime();
+    Throwable failure = null;
+    try {
+      return enqueue(partition, operation)
+          .getPromise()
+          .blockingGetOrThrow(startWorkTimeout, timeout, unit);
+    } catch (Throwable t) {
+      failure = t;
+      throw t;
+    } finally {
+      recordTotalTime(partition, startTime, failure);
+    }
+  }
+
+  /**
+   * Like {@link #execute}, but without a caller thread waiting for the result. The timeouts are
+   * enforced by a scheduler instead.
+   */
+  @Override
+  public <T> CompletableFuture<T> executeAsync(
+      String partition, Callable<T> operation, long startWorkTimeout, long timeout, TimeUnit unit) {
+    if (!isEnabled.get()) {
+      return RequestQueue.super.executeAsync(
+          partition, operation, startWorkTimeout, timeout, unit);
+    }
+
+    final long startTime = System.nanoTime();
+    final PooledRequest<T> request;
+    try {
+      request = enqueue(partition, operation);
+    } catch (PartitionQueueFullException e) {
+      recordTotalTime(partition, startTime, e);
+      CompletableFuture<T> rejected = new CompletableFuture<>();
+      rejected.completeExceptionally(e);
+      return rejected;
+    }
+
+    return request
+        .getPromise()
+        .asFuture(timeoutScheduler, startWorkTimeout, timeout, unit)
+        .whenComplete((result, t) -> recordTotalTime(partition, startTime, t));
+  }
+
+  private <T> PooledRequest<T> enqueue(String partition, Callable<T> operation) {
     final Queue<PooledRequest<?>> queue;
     if (!partitionedRequests.containsKey(partition)) {
+      // the first requests of a partition are subject to its settings too
+      refreshPartitionSettings(partition, getDefaultMaxQueueDepth());
       Queue<PooledRequest<?>> newQueue = new LinkedBlockingQueue<>();
       Queue<PooledRequest<?>> existing = partitionedRequests.putIfAbsent(partition, newQueue);
       if (existing == null) {
@@ -154,22 +265,35 @@ public class PooledRequestQueue implements RequestQueue {
       queue = partitionedRequests.get(partition);
     }
 
+    // requests that timed out stay in the queue until the distributor discards them, so only
+    // those still waiting to start count towards the limit
+    AtomicInteger waiting = waitingRequests.computeIfAbsent(partition, p -> new AtomicInteger());
+    int maxQueueDepth = partitionMaxQueueDepths.getOrDefault(partition, defaultMaxQueueDepth);
+    if (waiting.incrementAndGet() > maxQueueDepth && maxQueueDepth > 0) {
+      waiting.decrementAndGet();
+      // shed the request rather than have it wait behind more than the partition can work through
+      registry
+          .counter(registry.createId("pooledRequestQueue.partition.shed", "partition", partition))
+          .increment();
+      throw new PartitionQueueFullException();
+    }
+
     final PooledRequest<T> request = new PooledRequest<>(registry, partition, operation);
+    request.getPromise().whenStartedOrDone(waiting::decrementAndGet);
 
     queue.offer(request);
     pollCoordinator.notifyItemsAdded();
+    return request;
+  }
 
+  private void recordTotalTime(String partition, long startTime, Throwable t) {
     Id id = registry.createId("pooledRequestQueue.totalTime", "partition", partition);
-    try {
-      T result = request.getPromise().blockingGetOrThrow(startWorkTimeout, timeout, unit);
+    if (t == null) {
       id = id.withTag("success", "true");
-      return result;
-    } catch (Throwable t) {
+    } else {
       id = id.withTags("success", "false", "cause", t.getClass().getSimpleName());
-      throw t;
-    } finally {
-      registry.timer(id).record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
     }
+    registry.timer(id).record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
   }
 
   @Scheduled(fixedDelayString = "${request-queue.core-pool-size-refresh-ms:120000}")
@@ -191,4 +315,32 @@ public class PooledRequestQueue implements RequestQueue {
 
     isEnabled.set(dynamicConfigService.isEnabled("request-queue", true));
   }
+
+  /**
+   * Reads the weight and queue depth limit of each partition seen so far from {@code
+   * request-queue.partitions.<partition>.weight} and {@code
+   * request-queue.partitions.<partition>.max-queue-depth}.
+   */
+  @Scheduled(fixedDelayString = "${request-queue.core-pool-size-refresh-ms:120000}")
+  public void refreshPartitionSettings() {
+    int maxQueueDepth = getDefaultMaxQueueDepth();
+    for (String partition : partitionedRequests.keySet()) {
+      refreshPartitionSettings(partition, maxQueueDepth);
+    }
+  }
+
+  private int getDefaultMaxQueueDepth() {
+    return dynamicConfigService.getConfig(
+        Integer.class, "request-queue.max-queue-depth", defaultMaxQueueDepth);
+  }
+
+  private void refreshPartitionSettings(String partition, int maxQueueDepth) {
+    String prefix = "request-queue.partitions." + partition;
+    partitionWeights.put(
+        partition,
+        Math.max(1, dynamicConfigService.getConfig(Integer.class, prefix + ".weight", 1)));
+    partitionMaxQueueDepths.put(
+        partition,
+        dynamicConfigService.getConfig(Integer.class, prefix + ".max-queue-depth", maxQueueDepth));
+  }
 }
@@ -18,7 +18,10 @@ package com.netflix.spinnaker.clouddriver.requestqueue.pooled;
 
 import com.netflix.spectator.api.Registry;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -52,6 +55,8 @@ class Promise<T> {
   private final CountDownLatch startingLatch = new CountDownLatch(1);
   private final CountDownLatch latch = new CountDownLatch(1);
   private final AtomicReference<Either<T>> result = new AtomicReference<>();
+  private final CompletableFuture<Void> started = new CompletableFuture<>();
+  private final CompletableFuture<T> future = new CompletableFuture<>();
   private final Registry registry;
   private final String partition;
 
@@ -65,15 +70,24 @@ class Promise<T> {
       return result.get() == null;
     } finally {
       startingLatch.countDown();
+      started.complete(null);
     }
   }
 
+  /** Runs the action once, when the request starts or completes without starting. */
+  void whenStartedOrDone(Runnable action) {
+    started.thenRun(action);
+  }
+
   void complete(T result) {
     registry
         .counter(registry.createId("pooledRequestQueue.promise.complete", "partition", partition))
         .increment();
-    this.result.compareAndSet(null, Either.forResult(result));
+    if (this.result.compareAndSet(null, Either.forResult(result))) {
+      future.complete(result);
+    }
     startingLatch.countDown();
+    started.complete(null);
     latch.countDown();
   }
 
@@ -88,8 +102,11 @@ class Promise<T> {
             registry.createId(
                 "pooledRequestQueue.promise.exception", "partition", partition, "cause", cause))
         .increment();
-    this.result.compareAndSet(null, Either.forException(exception));
+    if (this.result.compareAndSet(null, Either.forException(exception))) {
+      future.completeExceptionally(exception);
+    }
     startingLatch.countDown();
+    started.complete(null);
     latch.countDown();
   }
 
@@ -97,21 +114,65 @@ class Promise<T> {
     try {
       if (startingLatch.await(startWorkTimeout, unit)) {
         if (!latch.await(timeout, unit)) {
-          registry
-              .counter(
-                  registry.createId("pooledRequestQueue.promise.timeout", "partition", partition))
-              .increment();
-          completeWithException(new PromiseTimeoutException());
+          timeOut();
         }
       } else {
-        registry
-            .counter(registry.createId("pooledRequest.promise.notStarted", "partition", partition))
-            .increment();
-        completeWithException(new PromiseNotStartedException());
+        failToStart();
       }
     } catch (Throwable t) {
       completeWithException(t);
     }
     return this.result.get().getOrThrow();
   }
+
+  /**
+   * The non-blocking equivalent of {@link #blockingGetOrThrow}, with the timeouts enforced by the
+   * scheduler rather than by a waiting caller.
+   */
+  CompletableFuture<T> asFuture(
+      ScheduledExecutorService scheduler, long startWorkTimeout, long timeout, TimeUnit unit) {
+    ScheduledFuture<?> startTimeout =
+        scheduler.schedule(
+            () -> {
+              if (!started.isDone()) {
+                failToStart();
+              }
+            },
+            startWorkTimeout,
+            unit);
+
+    started.thenRun(
+        () -> {
+          startTimeout.cancel(false);
+          if (future.isDone()) {
+            return;
+          }
+          ScheduledFuture<?> workTimeout =
+              scheduler.schedule(
+                  () -> {
+                    if (!future.isDone()) {
+                      timeOut();
+                    }
+                  },
+                  timeout,
+                  unit);
+          future.whenComplete((value, exception) -> workTimeout.cancel(false));
+        });
+
+    return future;
+  }
+
+  private void timeOut() {
+    registry
+        .counter(registry.createId("pooledRequestQueue.promise.timeout", "partition", partition))
+        .increment();
+    completeWithException(new PromiseTimeoutException());
+  }
+
+  private void failToStart() {
+    registry
+        .counter(registry.createId("pooledRequest.promise.notStarted", "partition", partition))
+        .increment();
+    completeWithException(new PromiseNotStartedException());
+  }
 }
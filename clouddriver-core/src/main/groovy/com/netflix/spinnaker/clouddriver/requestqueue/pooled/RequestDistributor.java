@@ -18,20 +18,37 @@ package com.netflix.spinnaker.clouddriver.requestqueue.pooled;
 
 import com.netflix.spectator.api.Counter;
 import com.netflix.spectator.api.Registry;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToIntFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Hands the queued requests of every partition to the executor, taking turns between partitions so
+ * that a busy partition can't starve the others.
+ *
+ * <p>Each turn a partition may hand off as many requests as its weight. Requests are only handed
+ * off while the executor has capacity for them, so that waiting requests stay in their partition
+ * queues, where the turns apply, rather than piling up in the executor queue in arrival order.
+ */
 class RequestDistributor implements Runnable {
   private final AtomicBoolean continueRunning = new AtomicBoolean(true);
   private final PollCoordinator pollCoordinator;
   private final Executor executor;
   private final Collection<Queue<PooledRequest<?>>> requestQueues;
+  private final ToIntFunction<String> partitionWeight;
+  private final BooleanSupplier hasCapacity;
   private final Counter submissionCounter;
 
+  /** The position in the request queues of the partition to take the next turn. */
+  private int nextTurn = 0;
+
   private final Logger log = LoggerFactory.getLogger(getClass());
 
   RequestDistributor(
@@ -39,9 +56,25 @@ class RequestDistributor implements Runnable {
       PollCoordinator pollCoordinator,
       Executor executor,
       Collection<Queue<PooledRequest<?>>> requestQueues) {
+    this(registry, pollCoordinator, executor, requestQueues, partition -> 1, () -> true);
+  }
+
+  /**
+   * @param partitionWeight the number of requests a partition may hand off per turn
+   * @param hasCapacity whether the executor can start another request right away
+   */
+  RequestDistributor(
+      Registry registry,
+      PollCoordinator pollCoordinator,
+      Executor executor,
+      Collection<Queue<PooledRequest<?>>> requestQueues,
+      ToIntFunction<String> partitionWeight,
+      BooleanSupplier hasCapacity) {
     this.pollCoordinator = pollCoordinator;
     this.executor = executor;
     this.requestQueues = requestQueues;
+    this.partitionWeight = partitionWeight;
+    this.hasCapacity = hasCapacity;
     this.submissionCounter = registry.counter("pooledRequestQueue.submitted");
   }
 
@@ -60,12 +93,33 @@ class RequestDistributor implements Runnable {
     try {
       boolean hadItems = false;
       pollCoordinator.reset();
-      for (Queue<PooledRequest<?>> queue : requestQueues) {
-        final PooledRequest<?> request = queue.poll();
-        if (request != null) {
-          hadItems = true;
-          submissionCounter.increment();
-          executor.execute(request);
+      List<Queue<PooledRequest<?>>> queues = new ArrayList<>(requestQueues);
+      int first = queues.isEmpty() ? 0 : nextTurn % queues.size();
+      for (int i = 0; i < queues.size(); i++) {
+        int turn = (first + i) % queues.size();
+        if (!hasCapacity.getAsBoolean()) {
+          // pick up from this partition once there is capacity again
+          nextTurn = turn;
+          hadItems = false;
+          break;
+        }
+        nextTurn = turn + 1;
+
+        Queue<PooledRequest<?>> queue = queues.get(turn);
+        PooledRequest<?> request = queue.poll();
+        if (request == null) {
+          continue;
+        }
+        hadItems = true;
+        submit(request);
+
+        int weight = partitionWeight.applyAsInt(request.getPartition());
+        for (int handedOff = 1; handedOff < weight && hasCapacity.getAsBoolean(); handedOff++) {
+          request = queue.poll();
+          if (request == null) {
+            break;
+          }
+          submit(request);
         }
       }
 
@@ -74,4 +128,9 @@ class RequestDistributor implements Runnable {
       log.warn("Throwable during processPartitions", t);
     }
   }
+
+  private void submit(PooledRequest<?> request) {
+    submissionCounter.increment();
+    executor.execute(request);
+  }
 }
@@ -18,10 +18,16 @@ package com.netflix.spinnaker.clouddriver.cache
 
 import com.netflix.spinnaker.cats.agent.AgentDataType
 import com.netflix.spinnaker.cats.agent.CachingAgent
+import com.netflix.spinnaker.cats.cache.CacheVersionStamps
+import com.netflix.spinnaker.cats.cache.CacheVersionTracker
 import com.netflix.spinnaker.cats.provider.ProviderCache
 import com.netflix.spinnaker.cats.provider.ProviderRegistry
+import com.netflix.spinnaker.fiat.shared.FiatPermissionEvaluator
 import spock.lang.Shared
-import spock.lang.Specification;
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.time.Duration
 
 class CatsSearchProviderSpec extends Specification {
   def catsInMemorySearchProperties = new CatsInMemorySearchProperties()
@@ -33,11 +39,13 @@ class CatsSearchProviderSpec extends Specification {
 
   def providers = [
     Stub(SearchableProvider) {
+      getDefaultCaches() >> ['instances']
       supportsSearch('instances', _) >> true
       getAgents() >> [ instanceAgent ]
       parseKey(_) >> { String k -> return null }
     },
     Stub(SearchableProvider) {
+      getDefaultCaches() >> ['instances']
       supportsSearch('instances', _) >> true
       getAgents() >> [ instanceAgent ]
       parseKey(_) >> { String k -> return ["originalKey": k] }
@@ -70,9 +78,8 @@ class CatsSearchProviderSpec extends Specification {
     catsSearchProvider.run()
 
     then:
-    catsSearchProvider.cachedIdentifiersByType.get() == [
-      "instances": instanceIdentifiers.collect { it.toLowerCase() }
-    ]
+    catsSearchProvider.searchIndex.isLoaded("instances")
+    catsSearchProvider.searchIndex.getKeys("instances") == instanceIdentifiers as Set
   }
 
   def "should handle unparseable instance identifiers"() {
@@ -83,7 +90,7 @@ class CatsSearchProviderSpec extends Specification {
     catsSearchProvider.run()
 
     then:
-    catsSearchProvider.cachedIdentifiersByType.get() == [:]
+    catsSearchProvider.searchIndex.getKeys("instances").isEmpty()
 
     when:
     providers.add(
@@ -93,6 +100,199 @@ class CatsSearchProviderSpec extends Specification {
     )
 
     then:
-    catsSearchProvider.cachedIdentifiersByType.get() == [:]
+    catsSearchProvider.searchIndex.getKeys("instances").isEmpty()
+  }
+
+  def "should search indexed identifiers without querying the cache"() {
+    given:
+    cache.getIdentifiers("instances") >> { return instanceIdentifiers }
+    catsSearchProvider.run()
+
+    when:
+    def resultSet = catsSearchProvider.search("i-1234", ["instances"], 1, 10)
+
+    then:
+    0 * cache.filterIdentifiers(_, _)
+    resultSet.totalMatches == 1
+    resultSet.results*.originalKey == ["aws:instances:prod:us-west-2:I-1234"]
+  }
+
+  def "should only rank the matches needed for the requested page"() {
+    given:
+    cache.getIdentifiers("instances") >> { return instanceIdentifiers }
+    catsSearchProvider.run()
+
+    when:
+    def resultSet = catsSearchProvider.search("us-west-2", ["instances"], 2, 2)
+
+    then:
+    resultSet.totalMatches == 5
+    resultSet.results*.originalKey == [
+      "aws:instances:prod:us-west-2:I-5678",
+      "aws:instances:prod:us-west-2:I-7890"
+    ]
+  }
+
+  def "should check each application and account once per search"() {
+    given:
+    def permissionEvaluator = Mock(FiatPermissionEvaluator)
+    def provider = Stub(SearchableProvider) {
+      getDefaultCaches() >> ['instances']
+      supportsSearch('instances', _) >> true
+      getAgents() >> [ instanceAgent ]
+      parseKey(_) >> { String k -> return [application: "app", account: k.split(":")[2]] }
+    }
+    def searchProvider = new CatsSearchProvider(
+      catsInMemorySearchProperties, cache, [provider], providerRegistry, Optional.of(permissionEvaluator), Optional.empty()
+    )
+    cache.getIdentifiers("instances") >> { return instanceIdentifiers }
+    searchProvider.run()
+
+    when:
+    def resultSet = searchProvider.search("i-", ["instances"], 1, 10)
+
+    then:
+    1 * permissionEvaluator.hasPermission(_, "app", "APPLICATION", "READ") >> true
+    1 * permissionEvaluator.hasPermission(_, "prod", "ACCOUNT", "READ") >> false
+    resultSet.totalMatches == 0
+    resultSet.results.isEmpty()
+  }
+
+  def "should index identifiers as they are written and evicted"() {
+    given:
+    cache.getIdentifiers("instances") >> { return instanceIdentifiers }
+    catsSearchProvider.run()
+
+    when:
+    catsSearchProvider.searchIndex.itemsStored("instances", ["aws:instances:prod:us-west-2:I-0000"])
+    catsSearchProvider.searchIndex.itemsRemoved("instances", ["aws:instances:prod:us-west-2:I-1234"])
+
+    then:
+    catsSearchProvider.searchIndex.getKeys("instances") ==
+      (instanceIdentifiers - "aws:instances:prod:us-west-2:I-1234" + "aws:instances:prod:us-west-2:I-0000") as Set
+  }
+
+  def "should keep identifiers written or evicted while the index is refreshed"() {
+    given:
+    def index = catsSearchProvider.searchIndex
+    cache.getIdentifiers("instances") >> { return instanceIdentifiers }
+    catsSearchProvider.run()
+
+    when:
+    catsSearchProvider.run()
+
+    then:
+    cache.getIdentifiers("instances") >> {
+      // read before these writes are notified
+      def identifiers = new ArrayList<String>(instanceIdentifiers)
+      index.itemsStored("instances", ["aws:instances:prod:us-west-2:I-0000"])
+      index.itemsRemoved("instances", ["aws:instances:prod:us-west-2:I-1234"])
+      return identifiers
+    }
+    index.getKeys("instances") ==
+      (instanceIdentifiers - "aws:instances:prod:us-west-2:I-1234" + "aws:instances:prod:us-west-2:I-0000") as Set
+
+    when:
+    catsSearchProvider.run()
+
+    then:
+    cache.getIdentifiers("instances") >> { return instanceIdentifiers }
+    index.getKeys("instances") == instanceIdentifiers as Set
+  }
+
+  def "should only index instances unless every type is enabled"() {
+    given:
+    def properties = new CatsInMemorySearchProperties(indexAllTypes: indexAllTypes)
+    def provider = Stub(SearchableProvider) {
+      getDefaultCaches() >> ['instances', 'serverGroups']
+      supportsSearch(_, _) >> true
+      parseKey(_) >> { String k -> return ["originalKey": k] }
+    }
+    def searchProvider = new CatsSearchProvider(properties, cache, [provider], providerRegistry)
+
+    when:
+    searchProvider.run()
+
+    then:
+    1 * cache.getIdentifiers("instances") >> instanceIdentifiers
+    (indexAllTypes ? 1 : 0) * cache.getIdentifiers("serverGroups") >> ["aws:serverGroups:app-v000:prod:us-west-2"]
+    searchProvider.searchIndex.isLoaded("instances")
+    searchProvider.searchIndex.isLoaded("serverGroups") == indexAllTypes
+
+    where:
+    indexAllTypes << [false, true]
+  }
+
+  @Unroll
+  def "should find indexed keys containing '#term'"() {
+    given:
+    cache.getIdentifiers("instances") >> { return instanceIdentifiers + "aws:instances:test:us-east-1:I-1234" }
+    catsSearchProvider.run()
+    def matches = []
+
+    when:
+    catsSearchProvider.searchIndex.forEachMatch("instances", term, providers*.providerName as Set, { matches << it.key })
+
+    then:
+    matches.sort() == expected.sort()
+
+    where:
+    term              || expected
+    "i-1234"          || ["aws:instances:prod:us-west-2:I-1234", "aws:instances:test:us-east-1:I-1234"]
+    "34"              || ["aws:instances:prod:us-west-2:I-1234", "aws:instances:prod:us-west-2:I-3456", "aws:instances:test:us-east-1:I-1234"]
+    "west-2:i-12"     || ["aws:instances:prod:us-west-2:I-1234"]
+    "test:us-east-1:" || ["aws:instances:test:us-east-1:I-1234"]
+    "us-"             || instanceIdentifiers + "aws:instances:test:us-east-1:I-1234"
+    "instances"       || []
+    "i-0000"          || []
+  }
+
+  def "should keep finding keys as segments are removed and added"() {
+    given:
+    def index = catsSearchProvider.searchIndex
+    cache.getIdentifiers("instances") >> { return instanceIdentifiers }
+    catsSearchProvider.run()
+    def matches = []
+
+    when:
+    index.itemsRemoved("instances", instanceIdentifiers)
+    index.itemsStored("instances", ["aws:instances:prod:us-west-2:I-4321"])
+    index.forEachMatch("instances", "i-", providers*.providerName as Set, { matches << it.key })
+
+    then:
+    matches == ["aws:instances:prod:us-west-2:I-4321"]
+  }
+
+  def "should only read the types written elsewhere when versions are tracked"() {
+    given:
+    def tracker = new CacheVersionTracker(Stub(CacheVersionStamps), Duration.ofHours(1))
+    def index = new CacheKeySearchIndex(providers, providerRegistry, true, tracker, Duration.ofHours(1))
+
+    when:
+    index.refresh()
+    index.refresh()
+
+    then:
+    1 * cache.getIdentifiers("instances") >> instanceIdentifiers
+    index.getKeys("instances") == instanceIdentifiers as Set
+
+    when:
+    index.versionsChanged([CacheVersionTracker.stamp("instances", "aws:instances:prod:us-west-2:I-0000")] as Set)
+    index.refresh()
+    index.refresh()
+
+    then:
+    1 * cache.getIdentifiers("instances") >> instanceIdentifiers + "aws:instances:prod:us-west-2:I-0000"
+    index.getKeys("instances").contains("aws:instances:prod:us-west-2:I-0000")
+
+    when:
+    index.allVersionsChanged()
+    index.refresh()
+
+    then:
+    1 * cache.getIdentifiers("instances") >> instanceIdentifiers
+
+    cleanup:
+    tracker.close()
   }
 }
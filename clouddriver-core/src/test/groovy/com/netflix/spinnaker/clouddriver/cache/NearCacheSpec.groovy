@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.clouddriver.cache
+
+import com.netflix.spectator.api.NoopRegistry
+import com.netflix.spinnaker.cats.cache.Cache
+import com.netflix.spinnaker.cats.cache.CacheVersionTracker
+import com.netflix.spinnaker.cats.cache.CacheWriteNotifier
+import com.netflix.spinnaker.cats.cache.DefaultCacheData
+import com.netflix.spinnaker.cats.cache.RelationshipCacheFilter
+import spock.lang.Specification
+
+import java.time.Duration
+
+class NearCacheSpec extends Specification {
+  def delegate = Mock(Cache)
+
+  def nearCache = new NearCache(delegate, 1024 * 1024, Duration.ofMinutes(1), null, new NoopRegistry())
+
+  def cleanup() {
+    nearCache.close()
+  }
+
+  def "repeated reads are served from the local copy"() {
+    when:
+    def first = nearCache.get("serverGroups", "sg-1")
+    def second = nearCache.get("serverGroups", "sg-1")
+
+    then:
+    1 * delegate.get("serverGroups", "sg-1", null) >> item("sg-1")
+    second.id == first.id
+    second.attributes == first.attributes
+  }
+
+  def "callers modifying the items they read don't change the local copy"() {
+    given:
+    delegate.get("serverGroups", "sg-1", null) >> item("sg-1", [instances: ["i-1"]], [nested: [key: "value"]])
+
+    when:
+    def first = nearCache.get("serverGroups", "sg-1")
+    first.attributes.remove("name")
+    first.attributes.nested.key = "changed"
+    first.relationships.instances.add("i-2")
+
+    def second = nearCache.get("serverGroups", "sg-1")
+    second.attributes.remove("nested")
+
+    def third = nearCache.getAll("serverGroups", ["sg-1"]).first()
+
+    then:
+    !second.is(first)
+    second.attributes.name == "sg-1"
+    second.relationships.instances == ["i-1"]
+    third.attributes == [name: "sg-1", nested: [key: "value"]]
+  }
+
+  def "reads with different relationship filters are kept apart"() {
+    when:
+    nearCache.get("serverGroups", "sg-1", RelationshipCacheFilter.none())
+    nearCache.get("serverGroups", "sg-1", RelationshipCacheFilter.include("instances"))
+    nearCache.get("serverGroups", "sg-1", RelationshipCacheFilter.include("instances"))
+
+    then:
+    2 * delegate.get("serverGroups", "sg-1", _) >> item("sg-1")
+  }
+
+  def "only the missing items of a batch are read from the cache view"() {
+    given:
+    delegate.getAll("serverGroups", ["sg-1"], null) >> [item("sg-1")]
+    nearCache.getAll("serverGroups", ["sg-1"])
+
+    when:
+    def result = nearCache.getAll("serverGroups", ["sg-1", "sg-2"])
+
+    then:
+    1 * delegate.getAll("serverGroups", ["sg-2"], null) >> [item("sg-2")]
+    result*.id.sort() == ["sg-1", "sg-2"]
+  }
+
+  def "local changes drop the copies of the changed items only"() {
+    given:
+    delegate.get("serverGroups", "sg-1", null) >> item("sg-1")
+    delegate.get("serverGroups", "sg-2", null) >> item("sg-2")
+    nearCache.get("serverGroups", "sg-1")
+    nearCache.get("serverGroups", "sg-2")
+
+    when:
+    CacheWriteNotifier.notifier.itemsMerged("serverGroups", ["sg-1"])
+    nearCache.get("serverGroups", "sg-1")
+    nearCache.get("serverGroups", "sg-2")
+
+    then:
+    1 * delegate.get("serverGroups", "sg-1", null) >> item("sg-1")
+    0 * delegate.get("serverGroups", "sg-2", null)
+  }
+
+  def "changes on another node drop the copies under the changed version stamps only"() {
+    given:
+    def ids = (1..200).collect { "sg-$it".toString() }
+    def reads = []
+    delegate.get("serverGroups", _, null) >> { String type, String id, filter -> reads << id; item(id) }
+    ids.each { nearCache.get("serverGroups", it) }
+    def stamp = CacheVersionTracker.stamp("serverGroups", "sg-1")
+    reads.clear()
+
+    when:
+    nearCache.versionsChanged([stamp] as Set)
+    ids.each { nearCache.get("serverGroups", it) }
+
+    then:
+    reads.contains("sg-1")
+    reads.size() < ids.size()
+    reads.sort() == ids.findAll { CacheVersionTracker.stamp("serverGroups", it) == stamp }.sort()
+  }
+
+  def "copies read again after being dropped are dropped by version changes"() {
+    given:
+    def stamp = CacheVersionTracker.stamp("serverGroups", "sg-1")
+    delegate.get("serverGroups", "sg-1", null) >> item("sg-1")
+    nearCache.get("serverGroups", "sg-1")
+    nearCache.itemsChanged("serverGroups", ["sg-1"])
+    nearCache.get("serverGroups", "sg-1")
+
+    when:
+    nearCache.versionsChanged([stamp] as Set)
+    nearCache.get("serverGroups", "sg-1")
+
+    then:
+    1 * delegate.get("serverGroups", "sg-1", null) >> item("sg-1")
+  }
+
+  private static DefaultCacheData item(String id,
+                                       Map<String, Collection<String>> relationships = [:],
+                                       Map<String, Object> attributes = [:]) {
+    new DefaultCacheData(id, [name: id] + attributes, relationships)
+  }
+}
@@ -22,10 +22,12 @@ import spock.lang.Specification
 
 import java.util.concurrent.Callable
 import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicBoolean
 
 class PooledRequestQueueSpec extends Specification {
-  def dynamicConfigService = Mock(DynamicConfigService)
+  def dynamicConfigService = DynamicConfigService.NOOP
 
   def "should execute requests"() {
     given:
@@ -80,4 +82,122 @@ class PooledRequestQueueSpec extends Specification {
     thrown(PromiseNotStartedException)
     !itRan.get()
   }
+
+  def "should execute requests without blocking the caller"() {
+    given:
+    def queue = new PooledRequestQueue(dynamicConfigService, new NoopRegistry(), 1000, 1000, 1)
+    def latch = new CountDownLatch(1)
+
+    when:
+    def result = queue.executeAsync("foo", { latch.await(); return 12345L })
+
+    then:
+    !result.isDone()
+
+    when:
+    latch.countDown()
+
+    then:
+    result.get(1, TimeUnit.SECONDS) == 12345L
+  }
+
+  def "should time out asynchronous requests that do not complete"() {
+    given:
+    def queue = new PooledRequestQueue(dynamicConfigService, new NoopRegistry(), 5000, 10, 1)
+
+    when:
+    queue.executeAsync("foo", { Thread.sleep(100); return 12345L }).get(1, TimeUnit.SECONDS)
+
+    then:
+    ExecutionException e = thrown()
+    e.cause instanceof PromiseTimeoutException
+  }
+
+  def "should shed requests once a partition has too many waiting"() {
+    given: "a queue with one worker thread and room for one waiting request"
+    def queue = new PooledRequestQueue(dynamicConfigService, new NoopRegistry(), 1000, 1000, 1, 1)
+    def latch = new CountDownLatch(1)
+    def running = new CountDownLatch(1)
+
+    when: "the worker is busy and a request is waiting"
+    def busy = queue.executeAsync("foo", { running.countDown(); latch.await(); return 1 })
+    running.await()
+    def waiting = queue.executeAsync("foo", { return 2 })
+    def shed = queue.executeAsync("foo", { return 3 })
+    def otherPartition = queue.executeAsync("bar", { return 4 })
+
+    then:
+    shed.isCompletedExceptionally()
+
+    when:
+    shed.get()
+
+    then:
+    ExecutionException e = thrown()
+    e.cause instanceof PartitionQueueFullException
+
+    when:
+    latch.countDown()
+
+    then:
+    busy.get(1, TimeUnit.SECONDS) == 1
+    waiting.get(1, TimeUnit.SECONDS) == 2
+    otherPartition.get(1, TimeUnit.SECONDS) == 4
+  }
+
+  def "should not count requests that timed out waiting towards the queue depth"() {
+    given: "a queue with one worker thread and room for one waiting request"
+    def queue = new PooledRequestQueue(dynamicConfigService, new NoopRegistry(), 200, 5000, 1, 1)
+    def latch = new CountDownLatch(1)
+    def running = new CountDownLatch(1)
+
+    when: "the worker is busy and the waiting request times out"
+    def busy = queue.executeAsync("foo", { running.countDown(); latch.await(); return 1 })
+    running.await()
+    queue.executeAsync("foo", { return 2 }).get(1, TimeUnit.SECONDS)
+
+    then:
+    ExecutionException e = thrown()
+    e.cause instanceof PromiseNotStartedException
+
+    when: "another request arrives"
+    def accepted = queue.executeAsync("foo", { return 3 })
+
+    then:
+    !accepted.isDone()
+
+    when:
+    latch.countDown()
+
+    then:
+    busy.get(1, TimeUnit.SECONDS) == 1
+    accepted.get(1, TimeUnit.SECONDS) == 3
+  }
+
+  def "should apply partition settings to the first requests of a partition"() {
+    given: "a queue without a default limit and room for one waiting request in one partition"
+    def dynamicConfigService = Stub(DynamicConfigService) {
+      getConfig(Integer, "request-queue.partitions.foo.max-queue-depth", _) >> 1
+      getConfig(Integer, _, _) >> { type, name, defaultValue -> defaultValue }
+    }
+    def queue = new PooledRequestQueue(dynamicConfigService, new NoopRegistry(), 1000, 1000, 1, 0)
+    def latch = new CountDownLatch(1)
+    def running = new CountDownLatch(1)
+
+    when:
+    def busy = queue.executeAsync("foo", { running.countDown(); latch.await(); return 1 })
+    running.await()
+    def waiting = queue.executeAsync("foo", { return 2 })
+    def shed = queue.executeAsync("foo", { return 3 })
+
+    then:
+    shed.isCompletedExceptionally()
+
+    when:
+    latch.countDown()
+
+    then:
+    busy.get(1, TimeUnit.SECONDS) == 1
+    waiting.get(1, TimeUnit.SECONDS) == 2
+  }
 }
@@ -57,4 +57,56 @@ class RequestDistributorSpec extends Specification {
     reqs[1].getPromise().blockingGetOrThrow(1, 1, TimeUnit.MILLISECONDS) == 2
 
   }
+
+  def "should let each partition hand off as many items as its weight per turn"() {
+    given:
+    Registry registry = new NoopRegistry()
+    Collection<Queue<PooledRequest<Integer>>> queues = [new LinkedBlockingQueue<>(), new LinkedBlockingQueue<>()]
+    (0..2).each { i -> queues[0].add(new PooledRequest<Integer>(registry, "appA", { return i })) }
+    (3..5).each { i -> queues[1].add(new PooledRequest<Integer>(registry, "appB", { return i })) }
+    List<PooledRequest<Integer>> reqs = []
+    def exec = Stub(Executor) {
+      execute(_) >> { Runnable r -> reqs.add(r) }
+    }
+
+    RequestDistributor dist = new RequestDistributor(
+      registry, Mock(PollCoordinator), exec, queues, { it == "appA" ? 2 : 1 }, { true })
+
+    when:
+    dist.processPartitions()
+
+    then:
+    reqs*.partition == ["appA", "appA", "appB"]
+  }
+
+  def "should only hand off items while the executor has capacity"() {
+    given:
+    Registry registry = new NoopRegistry()
+    Collection<Queue<PooledRequest<Integer>>> queues = [new LinkedBlockingQueue<>(), new LinkedBlockingQueue<>()]
+    (0..1).each { i -> queues[0].add(new PooledRequest<Integer>(registry, "appA", { return i })) }
+    (2..3).each { i -> queues[1].add(new PooledRequest<Integer>(registry, "appB", { return i })) }
+    def coord = Mock(PollCoordinator)
+    List<PooledRequest<Integer>> reqs = []
+    def exec = Stub(Executor) {
+      execute(_) >> { Runnable r -> reqs.add(r) }
+    }
+    int capacity = 1
+
+    RequestDistributor dist = new RequestDistributor(
+      registry, coord, exec, queues, { 1 }, { reqs.size() < capacity })
+
+    when: "only one item can be handed off"
+    dist.processPartitions()
+
+    then: "the distributor waits for capacity"
+    1 * coord.waitForItems(false)
+    reqs*.partition == ["appA"]
+
+    when: "capacity frees up"
+    capacity = 4
+    dist.processPartitions()
+
+    then: "the turn picks up with the partition that missed out"
+    reqs*.partition == ["appA", "appB", "appA"]
+  }
 }
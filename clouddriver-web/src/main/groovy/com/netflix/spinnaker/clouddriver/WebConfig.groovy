@@ -31,11 +31,13 @@ import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.ComponentScan
 import org.springframework.context.annotation.Configuration
 import org.springframework.core.Ordered
+import org.springframework.core.env.Environment
 import org.springframework.http.HttpStatus
 import org.springframework.http.MediaType
 import org.springframework.web.bind.annotation.ControllerAdvice
 import org.springframework.web.bind.annotation.ExceptionHandler
 import org.springframework.web.filter.ShallowEtagHeaderFilter
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer
 import org.springframework.web.servlet.config.annotation.ContentNegotiationConfigurer
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter
@@ -55,6 +57,12 @@ public class WebConfig extends WebMvcConfigurerAdapter {
   @Autowired
   Registry registry
 
+  @Autowired
+  RequestQueueConfiguration requestQueueConfiguration
+
+  @Autowired
+  Environment environment
+
   @Override
   public void addInterceptors(InterceptorRegistry registry) {
     registry.addInterceptor(
@@ -83,6 +91,26 @@ public class WebConfig extends WebMvcConfigurerAdapter {
     return frb
   }
 
+  /**
+   * Controllers that return the future of a queued request must not time out before the request
+   * queue does, so unless spring.mvc.async.request-timeout is set, async requests are given as long
+   * as the queue may take.
+   */
+  @Override
+  void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+    if (!environment.containsProperty("spring.mvc.async.request-timeout")) {
+      configurer.setDefaultTimeout(asyncRequestTimeoutMillis(requestQueueConfiguration))
+    }
+  }
+
+  /**
+   * An application lookup queues a second round of work for its cluster summaries once the
+   * application is found, so it may wait for the queue twice.
+   */
+  static long asyncRequestTimeoutMillis(RequestQueueConfiguration config) {
+    return 2 * (config.startWorkTimeoutMillis + config.timeoutMillis)
+  }
+
   @Override
   void configureContentNegotiation(ContentNegotiationConfigurer configurer) {
     configurer
@@ -22,6 +22,7 @@ import com.netflix.spinnaker.clouddriver.model.Cluster
 import com.netflix.spinnaker.clouddriver.model.ClusterProvider
 import com.netflix.spinnaker.clouddriver.model.view.ApplicationClusterViewModel
 import com.netflix.spinnaker.clouddriver.model.view.ApplicationViewModel
+import com.netflix.spinnaker.clouddriver.requestqueue.QueuedRequestException
 import com.netflix.spinnaker.clouddriver.requestqueue.RequestQueue
 import com.netflix.spinnaker.kork.web.exceptions.NotFoundException
 import groovy.util.logging.Slf4j
@@ -33,6 +34,9 @@ import org.springframework.security.access.prepost.PostFilter
 import org.springframework.security.access.prepost.PreAuthorize
 import org.springframework.web.bind.annotation.*
 
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+
 @Slf4j
 @RestController
 @RequestMapping("/applications")
@@ -64,35 +68,49 @@ class ApplicationsController {
 
   @PreAuthorize("hasPermission(#name, 'APPLICATION', 'READ')")
   @RequestMapping(value = "/{name:.+}", method = RequestMethod.GET)
-  ApplicationViewModel get(@PathVariable String name) {
-    try {
-      def apps = requestQueue.execute(name, {
-        applicationProviders.collect { it.getApplication(name) }
-      }) - null
+  CompletableFuture<ApplicationViewModel> get(@PathVariable String name) {
+    // the request thread is released while the request queue looks the application up, and a
+    // request shed or timed out by the queue fails with its 429 rather than a 404
+    requestQueue.executeAsync(name, {
+      applicationProviders.collect { it.getApplication(name) } - null
+    }).thenCompose { List<Application> apps ->
       if (!apps) {
         throw new NotFoundException("Application does not exist (name: ${name})")
-      } else {
-        return transform(apps)
       }
-    } catch (e) {
+      return transform(apps)
+    }.exceptionally { Throwable e ->
+      Throwable cause = e instanceof CompletionException ? e.cause : e
+      if (cause instanceof QueuedRequestException) {
+        throw cause
+      }
       throw new NotFoundException("Application does not exist (name: ${name})")
     }
   }
 
-  private ApplicationViewModel transform(List<Application> apps) {
+  private CompletableFuture<ApplicationViewModel> transform(List<Application> apps) {
+    List<List<CompletableFuture<Collection<Cluster>>>> clusterSummaries = apps.collect { Application app ->
+      clusterProviders.collect { provider ->
+        requestQueue.executeAsync(app.name, {
+          provider.getClusterSummaries(app.name)?.values()?.flatten() as Set ?: []
+        })
+      }
+    }
+
+    CompletableFuture.allOf(clusterSummaries.flatten() as CompletableFuture[]).thenApply {
+      transform(apps, clusterSummaries.collect { it*.join() })
+    }
+  }
+
+  private ApplicationViewModel transform(List<Application> apps, List<List<Collection<Cluster>>> clusterSummaries) {
     def attributes = [:]
     ApplicationViewModel result = null
-    for (Application app in apps) {
+    apps.eachWithIndex { Application app, int i ->
       if (!result) {
         result = new ApplicationViewModel(name: app.name, clusters: [:])
       }
       attributes << app.attributes
 
-      clusterProviders.collectMany { provider ->
-        requestQueue.execute(app.name, {
-          provider.getClusterSummaries(app.name)?.values()?.flatten() as Set ?: []
-        })
-      }.each { Cluster cluster ->
+      clusterSummaries[i].flatten().each { Cluster cluster ->
         def account = cluster.accountName
         if (!result.clusters.containsKey(account)) {
           result.clusters[account] = []
@@ -36,6 +36,8 @@ import org.springframework.security.access.prepost.PostAuthorize
 import org.springframework.security.access.prepost.PreAuthorize
 import org.springframework.web.bind.annotation.*
 
+import java.util.concurrent.CompletableFuture
+
 import static com.netflix.spinnaker.clouddriver.model.view.ModelObjectViewModelPostProcessor.applyExtensions
 import static com.netflix.spinnaker.clouddriver.model.view.ModelObjectViewModelPostProcessor.applyExtensionsToObject
 
@@ -114,14 +116,28 @@ class ClusterController {
 
   @PreAuthorize("hasPermission(#application, 'APPLICATION', 'READ') && hasPermission(#account, 'ACCOUNT', 'READ')")
   @RequestMapping(value = "/{account:.+}/{name:.+}", method = RequestMethod.GET)
-  Set<Cluster> getForAccountAndName(@PathVariable String application,
-                                    @PathVariable String account,
-                                    @PathVariable String name,
-                                    @RequestParam(required = false, value = 'expand', defaultValue = 'true') boolean expand) {
-    def clusters = clusterProviders.collect { provider ->
-        applyExtensionsToObject(clusterExtensions,
-          requestQueue.execute(application, { provider.getCluster(application, account, name, expand) }))
+  CompletableFuture<Set<Cluster>> getForAccountAndName(@PathVariable String application,
+                                                       @PathVariable String account,
+                                                       @PathVariable String name,
+                                                       @RequestParam(required = false, value = 'expand', defaultValue = 'true') boolean expand) {
+    // the request thread is released while the request queue looks the clusters up
+    List<CompletableFuture<Cluster>> clusters = clusterProviders.collect { provider ->
+      requestQueue.executeAsync(application, { provider.getCluster(application, account, name, expand) })
+    }
+
+    CompletableFuture.allOf(clusters as CompletableFuture[]).thenApply {
+      toClusters(application, account, name, clusters*.join())
     }
+  }
+
+  private Set<Cluster> findClusters(String application, String account, String name, boolean expand) {
+    toClusters(application, account, name, clusterProviders.collect { provider ->
+      requestQueue.execute(application, { provider.getCluster(application, account, name, expand) })
+    })
+  }
+
+  private Set<Cluster> toClusters(String application, String account, String name, List<Cluster> found) {
+    def clusters = found.collect { applyExtensionsToObject(clusterExtensions, it) }
 
     clusters.removeAll([null])
     if (!clusters) {
@@ -137,7 +153,7 @@ class ClusterController {
                                       @PathVariable String name,
                                       @PathVariable String type,
                                       @RequestParam(required = false, value = 'expand', defaultValue = 'true') boolean expand) {
-    Set<Cluster> allClusters = applyExtensions(clusterExtensions, getForAccountAndName(application, account, name, expand))
+    Set<Cluster> allClusters = applyExtensions(clusterExtensions, findClusters(application, account, name, expand))
     def cluster = allClusters.find { it.type == type }
     if (!cluster) {
       throw new NotFoundException("No clusters found (application: ${application}, account: ${account}, type: ${type})")
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.spinnaker.clouddriver
+
+import com.netflix.spinnaker.clouddriver.requestqueue.RequestQueueConfiguration
+import org.springframework.mock.env.MockEnvironment
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer
+import spock.lang.Specification
+
+class WebConfigSpec extends Specification {
+
+  def requestQueueConfiguration = new RequestQueueConfiguration()
+  def environment = new MockEnvironment()
+  def webConfig = new WebConfig(requestQueueConfiguration: requestQueueConfiguration, environment: environment)
+  def configurer = new AsyncSupportConfigurer()
+
+  def "async requests outlast the request queue timeouts"() {
+    given:
+    requestQueueConfiguration.startWorkTimeoutMillis = 5000
+    requestQueueConfiguration.timeoutMillis = 20000
+
+    when:
+    webConfig.configureAsyncSupport(configurer)
+
+    then:
+    configurer.timeout == 50000
+    configurer.timeout >= requestQueueConfiguration.startWorkTimeoutMillis + requestQueueConfiguration.timeoutMillis
+  }
+
+  def "the default request queue timeouts outlast the default async timeout"() {
+    when:
+    webConfig.configureAsyncSupport(configurer)
+
+    then:
+    configurer.timeout == 140000
+  }
+
+  def "a configured async timeout is left alone"() {
+    given:
+    environment.setProperty("spring.mvc.async.request-timeout", "5s")
+
+    when:
+    webConfig.configureAsyncSupport(configurer)
+
+    then:
+    configurer.timeout == null
+  }
+}
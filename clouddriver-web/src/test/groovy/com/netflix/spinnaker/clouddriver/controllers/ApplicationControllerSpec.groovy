@@ -16,13 +16,23 @@
 
 package com.netflix.spinnaker.clouddriver.controllers
 
+import com.netflix.spectator.api.NoopRegistry
 import com.netflix.spinnaker.clouddriver.model.*
+import com.netflix.spinnaker.clouddriver.requestqueue.QueuedRequestException
 import com.netflix.spinnaker.clouddriver.requestqueue.RequestQueue
+import com.netflix.spinnaker.clouddriver.requestqueue.pooled.PooledRequestQueue
+import com.netflix.spinnaker.kork.dynamicconfig.DynamicConfigService
 import com.netflix.spinnaker.kork.web.exceptions.NotFoundException
+import org.springframework.http.HttpStatus
+import org.springframework.web.bind.annotation.ResponseStatus
 import spock.lang.Shared
 import spock.lang.Specification
 import spock.lang.Unroll
 
+import java.util.concurrent.CompletionException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
 class ApplicationControllerSpec extends Specification {
 
   @Shared
@@ -67,7 +77,7 @@ class ApplicationControllerSpec extends Specification {
     cluster.getServerGroups() >> [sg1, sg2]
 
     when:
-    def result = applicationsController.get("foo")
+    def result = applicationsController.get("foo").join()
 
     then:
     2 * cluProvider1.getClusterSummaries("foo") >> [test: cluster]
@@ -96,7 +106,7 @@ class ApplicationControllerSpec extends Specification {
     cluster.getServerGroups() >> [sg1]
 
     when:
-    def result = applicationsController.get("foo")
+    def result = applicationsController.get("foo").join()
 
     then:
     1 * cluProvider1.getClusterSummaries("foo") >> [test: cluster]
@@ -114,13 +124,75 @@ class ApplicationControllerSpec extends Specification {
     applicationsController.applicationProviders = [appProvider1, appProvider2]
 
     when:
-    def result = applicationsController.get("foo")
+    def result = applicationsController.get("foo").join()
 
     then:
     1 * appProvider1.getApplication("foo") >> null
     1 * appProvider2.getApplication("foo") >> null
-    NotFoundException e = thrown()
-    e.message == "Application does not exist (name: foo)"
+    CompletionException e = thrown()
+    e.cause instanceof NotFoundException
+    e.cause.message == "Application does not exist (name: foo)"
+  }
+
+  def "throw NotFoundException when an application provider fails"() {
+    setup:
+    def appProvider1 = Mock(ApplicationProvider)
+    applicationsController.applicationProviders = [appProvider1]
+
+    when:
+    applicationsController.get("foo").join()
+
+    then:
+    1 * appProvider1.getApplication("foo") >> { throw new IllegalStateException("unavailable") }
+    CompletionException e = thrown()
+    e.cause instanceof NotFoundException
+    e.cause.message == "Application does not exist (name: foo)"
+  }
+
+  def "fail with a 429 rather than a 404 when the application lookup times out in the queue"() {
+    setup:
+    def requestQueue = new PooledRequestQueue(DynamicConfigService.NOOP, new NoopRegistry(), 1000, 10, 1)
+    applicationsController.requestQueue = requestQueue
+    def latch = new CountDownLatch(1)
+    def appProvider1 = Mock(ApplicationProvider)
+    appProvider1.getApplication("foo") >> { latch.await(); return null }
+    applicationsController.applicationProviders = [appProvider1]
+
+    when:
+    applicationsController.get("foo").join()
+
+    then:
+    CompletionException e = thrown()
+    e.cause instanceof QueuedRequestException
+
+    cleanup:
+    latch.countDown()
+    requestQueue.shutdown()
+  }
+
+  def "fail with a 429 rather than a 404 when the partition of the application is full"() {
+    setup:
+    def requestQueue = new PooledRequestQueue(DynamicConfigService.NOOP, new NoopRegistry(), 1000, 1000, 1, 1)
+    applicationsController.requestQueue = requestQueue
+    def latch = new CountDownLatch(1)
+    def running = new CountDownLatch(1)
+    def busy = requestQueue.executeAsync("foo", { running.countDown(); latch.await(); return null })
+    running.await()
+    def waiting = requestQueue.executeAsync("foo", { return null })
+
+    when:
+    applicationsController.get("foo").join()
+
+    then:
+    CompletionException e = thrown()
+    e.cause instanceof QueuedRequestException
+    e.cause.class.getAnnotation(ResponseStatus).value() == HttpStatus.TOO_MANY_REQUESTS
+
+    cleanup:
+    latch.countDown()
+    busy.get(1, TimeUnit.SECONDS)
+    waiting.get(1, TimeUnit.SECONDS)
+    requestQueue.shutdown()
   }
 
   @Unroll
@@ -145,7 +217,7 @@ class ApplicationControllerSpec extends Specification {
     cluster1.getServerGroups() >> []
 
     when:
-    def result = applicationsController.get("foo")
+    def result = applicationsController.get("foo").join()
 
     then:
     1 * cluProvider.getClusterSummaries("foo") >> [test: [cluster, cluster1]]
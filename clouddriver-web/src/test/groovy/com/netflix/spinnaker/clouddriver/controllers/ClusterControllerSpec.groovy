@@ -23,6 +23,8 @@ import spock.lang.Shared
 import spock.lang.Specification
 import spock.lang.Unroll
 
+import java.util.concurrent.CompletionException
+
 class ClusterControllerSpec extends Specification {
 
   @Shared
@@ -136,11 +138,12 @@ class ClusterControllerSpec extends Specification {
       clusterController.clusterProviders = [clusterProvider1]
 
     when:
-      clusterController.getForAccountAndName("app", "account", "name", true)
+      clusterController.getForAccountAndName("app", "account", "name", true).join()
 
     then:
       1 * clusterProvider1.getCluster(*_) >> null
-      thrown NotFoundException
+      CompletionException e = thrown()
+      e.cause instanceof NotFoundException
   }
 
   @Unroll